@@ -0,0 +1,122 @@
+package org.isisoft.morphoo.benchmark;
+
+import org.isisoft.morphoo.benchmark.model.Ladder;
+import org.isisoft.morphoo.core.CompiledTransformation;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures multi-step transformations along the {@link Ladder}, with the route given explicitly using
+ * {@link Transformation#through(Class)} or derived by the framework, against nesting the transformer method calls by hand.
+ *
+ * @author Carlos Munoz
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChainBenchmark
+{
+   /** Number of transformer methods in the chain */
+   @Param({"2", "4", "8"})
+   public int length;
+
+   private Ladder.S0 source;
+
+   private Class<?> targetType;
+
+   private Transformation<?> through;
+
+   private Transformation<?> deriving;
+
+   private CompiledTransformation<Ladder.S0, ?> compiledThrough;
+
+   private CompiledTransformation<Ladder.S0, ?> compiledDeriving;
+
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      Morphoo.reset();
+      Morphoo.registerClasses(Ladder.Transformers.class);
+
+      this.source = new Ladder.S0(0);
+      this.targetType = Ladder.TYPES[this.length];
+
+      Transformation<?> t = Transformation.into(this.targetType);
+      for( int i = 1; i < this.length; i++ )
+      {
+         t = t.through(Ladder.TYPES[i]);
+      }
+      this.through = t;
+      this.deriving = Transformation.into(this.targetType).deriving();
+      this.compiledThrough = t.compile(Ladder.S0.class);
+      this.compiledDeriving = Transformation.into(this.targetType).deriving().compile(Ladder.S0.class);
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown()
+   {
+      Morphoo.reset();
+   }
+
+   @Benchmark
+   public Object handWritten()
+   {
+      switch( this.length )
+      {
+         case 8:
+            return Ladder.Transformers.up7(Ladder.Transformers.up6(Ladder.Transformers.up5(Ladder.Transformers.up4(
+                  Ladder.Transformers.up3(Ladder.Transformers.up2(Ladder.Transformers.up1(
+                        Ladder.Transformers.up0(this.source))))))));
+         case 4:
+            return Ladder.Transformers.up3(Ladder.Transformers.up2(Ladder.Transformers.up1(
+                  Ladder.Transformers.up0(this.source))));
+         case 2:
+            return Ladder.Transformers.up1(Ladder.Transformers.up0(this.source));
+         default:
+            throw new IllegalStateException("No hand-written chain of length " + this.length);
+      }
+   }
+
+   @Benchmark
+   public Object through()
+   {
+      return this.through.performOn(this.source);
+   }
+
+   @Benchmark
+   public Object deriving()
+   {
+      return this.deriving.performOn(this.source);
+   }
+
+   @Benchmark
+   public Object compiledThrough()
+   {
+      return this.compiledThrough.performOn(this.source);
+   }
+
+   @Benchmark
+   public Object compiledDeriving()
+   {
+      return this.compiledDeriving.performOn(this.source);
+   }
+}
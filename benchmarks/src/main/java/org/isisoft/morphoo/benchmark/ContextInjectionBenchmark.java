@@ -0,0 +1,102 @@
+package org.isisoft.morphoo.benchmark;
+
+import org.isisoft.morphoo.benchmark.model.Person;
+import org.isisoft.morphoo.benchmark.model.PersonTransformers;
+import org.isisoft.morphoo.core.CompiledTransformation;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.core.TransformationContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures transformer methods that receive context variables, either injected as
+ * {@link org.isisoft.morphoo.annotation.ContextParam}s or read from the whole {@link TransformationContext}.
+ *
+ * @author Carlos Munoz
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContextInjectionBenchmark
+{
+   private static final String PREFIX = "Name: ";
+
+   private Person person;
+
+   private PersonTransformers transformers;
+
+   private TransformationContext context;
+
+   private CompiledTransformation<Person, String> compiledParam;
+
+   private CompiledTransformation<Person, String> compiledContext;
+
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      Morphoo.reset();
+      Morphoo.registerClasses(PersonTransformers.class);
+
+      this.person = new Person("Jane Doe", 42);
+      this.transformers = new PersonTransformers();
+      this.context = new TransformationContext();
+      this.context.put("prefix", PREFIX);
+      this.compiledParam = Transformation.into(String.class).using("label").withContext("prefix", PREFIX)
+            .compile(Person.class);
+      this.compiledContext = Transformation.into(String.class).using("labelFromContext").withContext("prefix", PREFIX)
+            .compile(Person.class);
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown()
+   {
+      Morphoo.reset();
+   }
+
+   @Benchmark
+   public String handWrittenParam()
+   {
+      return this.transformers.toLabel(this.person, PREFIX);
+   }
+
+   @Benchmark
+   public String handWrittenContext()
+   {
+      return this.transformers.toLabelFromContext(this.person, this.context);
+   }
+
+   @Benchmark
+   public String compiledContextParam()
+   {
+      return this.compiledParam.performOn(this.person);
+   }
+
+   @Benchmark
+   public String compiledWholeContext()
+   {
+      return this.compiledContext.performOn(this.person);
+   }
+
+   @Benchmark
+   public String newTransformationContextParam()
+   {
+      return Transformation.into(String.class).using("label").withContext("prefix", PREFIX).performOn(this.person);
+   }
+}
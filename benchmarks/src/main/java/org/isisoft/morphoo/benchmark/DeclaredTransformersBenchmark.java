@@ -0,0 +1,89 @@
+package org.isisoft.morphoo.benchmark;
+
+import org.isisoft.morphoo.benchmark.model.Account;
+import org.isisoft.morphoo.benchmark.model.AccountTransformers;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures transformations of a class that declares its transformers with
+ * {@link org.isisoft.morphoo.annotation.Transformers} instead of having them registered. The cold benchmarks reset
+ * the framework before every invocation, so they include finding and analyzing the declared transformer methods.
+ *
+ * @author Carlos Munoz
+ */
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class DeclaredTransformersBenchmark
+{
+   private Account account;
+
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      Morphoo.reset();
+      this.account = new Account(1234567890L);
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown()
+   {
+      Morphoo.reset();
+   }
+
+   @Benchmark
+   @BenchmarkMode(Mode.AverageTime)
+   @Warmup(iterations = 5, time = 1)
+   @Measurement(iterations = 5, time = 1)
+   public String handWritten()
+   {
+      return AccountTransformers.toAccountNumber(this.account);
+   }
+
+   @Benchmark
+   @BenchmarkMode(Mode.AverageTime)
+   @Warmup(iterations = 5, time = 1)
+   @Measurement(iterations = 5, time = 1)
+   public String declared()
+   {
+      return Transformation.into(String.class).performOn(this.account);
+   }
+
+   @Benchmark
+   @BenchmarkMode(Mode.SingleShotTime)
+   @Warmup(iterations = 100)
+   @Measurement(iterations = 1000)
+   public String declaredCold( Cold cold )
+   {
+      return Transformation.into(String.class).performOn(this.account);
+   }
+
+   /**
+    * Resets the framework before each invocation, so the declared transformers have to be found again.
+    */
+   @State(Scope.Thread)
+   public static class Cold
+   {
+      @Setup(Level.Invocation)
+      public void reset()
+      {
+         Morphoo.reset();
+      }
+   }
+}
@@ -0,0 +1,110 @@
+package org.isisoft.morphoo.benchmark;
+
+import org.isisoft.morphoo.benchmark.model.Person;
+import org.isisoft.morphoo.benchmark.model.PersonSummary;
+import org.isisoft.morphoo.benchmark.model.PersonTransformers;
+import org.isisoft.morphoo.core.CompiledTransformation;
+import org.isisoft.morphoo.core.InvocationEngine;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.SimpleTransformer;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.core.TransformationContext;
+import org.isisoft.morphoo.core.TransformerMethodAnalyzer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single step transformation performed in the different ways the framework offers, against calling the
+ * transformer method by hand.
+ *
+ * @author Carlos Munoz
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InvocationBenchmark
+{
+   @Param({"REFLECTION", "METHOD_HANDLE", "LAMBDA_METAFACTORY"})
+   public InvocationEngine engine;
+
+   private Person person;
+
+   private PersonTransformers transformers;
+
+   private SimpleTransformer simpleTransformer;
+
+   private TransformationContext emptyContext;
+
+   private Transformation<PersonSummary> transformation;
+
+   private CompiledTransformation<Person, PersonSummary> compiled;
+
+
+   @Setup(Level.Trial)
+   public void setUp() throws NoSuchMethodException
+   {
+      Morphoo.reset();
+      Morphoo.setInvocationEngine(this.engine);
+      Morphoo.registerClasses(PersonTransformers.class);
+
+      this.person = new Person("Jane Doe", 42);
+      this.transformers = new PersonTransformers();
+      this.simpleTransformer = new SimpleTransformer(TransformerMethodAnalyzer.analyze(
+            PersonTransformers.class.getMethod("toSummary", Person.class)), this.engine);
+      this.emptyContext = new TransformationContext();
+      this.transformation = Transformation.into(PersonSummary.class);
+      this.compiled = Transformation.into(PersonSummary.class).compile(Person.class);
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown()
+   {
+      Morphoo.reset();
+   }
+
+   @Benchmark
+   public PersonSummary handWritten()
+   {
+      return this.transformers.toSummary(this.person);
+   }
+
+   @Benchmark
+   public Object simpleTransformer()
+   {
+      return this.simpleTransformer.transform(this.person, this.emptyContext);
+   }
+
+   @Benchmark
+   public PersonSummary compiledTransformation()
+   {
+      return this.compiled.performOn(this.person);
+   }
+
+   @Benchmark
+   public PersonSummary reusedTransformation()
+   {
+      return this.transformation.performOn(this.person);
+   }
+
+   @Benchmark
+   public PersonSummary newTransformation()
+   {
+      return Transformation.into(PersonSummary.class).performOn(this.person);
+   }
+}
@@ -0,0 +1,106 @@
+package org.isisoft.morphoo.benchmark;
+
+import org.isisoft.morphoo.benchmark.model.Ladder;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures transformations performed by many threads at once, all of them looking transformers up in the shared
+ * registry for a mix of source types. The baseline makes the same calls by hand.
+ *
+ * @author Carlos Munoz
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class RegistryContentionBenchmark
+{
+   @State(Scope.Benchmark)
+   public static class Registry
+   {
+      final Object[] sources = new Object[Ladder.STEPS - 1];
+
+      @Setup(Level.Trial)
+      public void setUp()
+      {
+         Morphoo.reset();
+         Morphoo.registerClasses(Ladder.Transformers.class);
+         this.sources[0] = new Ladder.S0(0);
+         this.sources[1] = new Ladder.S1(1);
+         this.sources[2] = new Ladder.S2(2);
+         this.sources[3] = new Ladder.S3(3);
+         this.sources[4] = new Ladder.S4(4);
+         this.sources[5] = new Ladder.S5(5);
+         this.sources[6] = new Ladder.S6(6);
+         this.sources[7] = new Ladder.S7(7);
+      }
+
+      @TearDown(Level.Trial)
+      public void tearDown()
+      {
+         Morphoo.reset();
+      }
+   }
+
+   @State(Scope.Thread)
+   public static class Cursor
+   {
+      int next;
+
+      int advance()
+      {
+         this.next = (this.next + 1) & 7;
+         return this.next;
+      }
+   }
+
+   @Benchmark
+   public Object handWritten( Registry registry, Cursor cursor )
+   {
+      int i = cursor.advance();
+      Object src = registry.sources[i];
+      switch( i )
+      {
+         case 0:
+            return Ladder.Transformers.dead0((Ladder.S0) src);
+         case 1:
+            return Ladder.Transformers.dead1((Ladder.S1) src);
+         case 2:
+            return Ladder.Transformers.dead2((Ladder.S2) src);
+         case 3:
+            return Ladder.Transformers.dead3((Ladder.S3) src);
+         case 4:
+            return Ladder.Transformers.dead4((Ladder.S4) src);
+         case 5:
+            return Ladder.Transformers.dead5((Ladder.S5) src);
+         case 6:
+            return Ladder.Transformers.dead6((Ladder.S6) src);
+         default:
+            return Ladder.Transformers.dead7((Ladder.S7) src);
+      }
+   }
+
+   @Benchmark
+   public Object transformation( Registry registry, Cursor cursor )
+   {
+      return Transformation.into(Ladder.Dead.class).performOn(registry.sources[cursor.advance()]);
+   }
+}
@@ -0,0 +1,139 @@
+package org.isisoft.morphoo.benchmark;
+
+import org.isisoft.morphoo.benchmark.model.Branches;
+import org.isisoft.morphoo.benchmark.model.Ladder;
+import org.isisoft.morphoo.core.Transformer;
+import org.isisoft.morphoo.core.TransformerGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the transformer graph takes to derive a route, without the registry's cache in front of it. The
+ * baseline is a plain breadth first search over a map of the same transformer methods. The size of the graph is set
+ * apart from the length of the route, by hanging dead end {@link Branches} off the ladder.
+ *
+ * @author Carlos Munoz
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouteDerivationBenchmark
+{
+   /** Number of types the route goes through, after the first one */
+   @Param({"2", "4", "8"})
+   public int length;
+
+   /** Number of dead end branches registered besides the ladder */
+   @Param({"0", "8", "32"})
+   public int branches;
+
+   private TransformerGraph graph;
+
+   private Map<Class<?>, List<Method>> methodsBySource;
+
+   private Class<?> targetType;
+
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      this.graph = new TransformerGraph();
+      this.methodsBySource = new HashMap<Class<?>, List<Method>>();
+      for( Method m : Ladder.Transformers.class.getDeclaredMethods() )
+      {
+         if( m.isAnnotationPresent(org.isisoft.morphoo.annotation.Transformer.class) )
+         {
+            this.add(m);
+         }
+      }
+      for( int i=0; i<this.branches; i++ )
+      {
+         try
+         {
+            this.add(Branches.Transformers.class.getMethod("branch" + i, Ladder.TYPES[i % (Ladder.STEPS - 1)]));
+         }
+         catch( NoSuchMethodException e )
+         {
+            throw new IllegalStateException(e);
+         }
+      }
+      this.targetType = Ladder.TYPES[this.length];
+   }
+
+   private void add( Method m )
+   {
+      this.graph.addTransformer(m);
+
+      List<Method> methods = this.methodsBySource.get(m.getParameterTypes()[0]);
+      if( methods == null )
+      {
+         methods = new ArrayList<Method>();
+         this.methodsBySource.put(m.getParameterTypes()[0], methods);
+      }
+      methods.add(m);
+   }
+
+   @Benchmark
+   public Transformer graph()
+   {
+      return this.graph.getTransformer(Ladder.S0.class, this.targetType, null, true);
+   }
+
+   @Benchmark
+   public List<Method> handWritten()
+   {
+      Map<Class<?>, Method> reachedBy = new HashMap<Class<?>, Method>();
+      ArrayDeque<Class<?>> queue = new ArrayDeque<Class<?>>();
+      queue.add(Ladder.S0.class);
+      reachedBy.put(Ladder.S0.class, null);
+
+      while( !queue.isEmpty() )
+      {
+         Class<?> type = queue.poll();
+         if( type == this.targetType )
+         {
+            List<Method> route = new ArrayList<Method>();
+            for( Method m = reachedBy.get(type); m != null; m = reachedBy.get(m.getParameterTypes()[0]) )
+            {
+               route.add(0, m);
+            }
+            return route;
+         }
+
+         List<Method> methods = this.methodsBySource.get(type);
+         if( methods != null )
+         {
+            for( Method m : methods )
+            {
+               if( !reachedBy.containsKey(m.getReturnType()) )
+               {
+                  reachedBy.put(m.getReturnType(), m);
+                  queue.add(m.getReturnType());
+               }
+            }
+         }
+      }
+      return null;
+   }
+}
@@ -0,0 +1,24 @@
+package org.isisoft.morphoo.benchmark.model;
+
+import org.isisoft.morphoo.annotation.Transformers;
+
+/**
+ * Source type whose transformers are declared on the class instead of being registered.
+ *
+ * @author Carlos Munoz
+ */
+@Transformers(AccountTransformers.class)
+public class Account
+{
+   private final long number;
+
+   public Account(long number)
+   {
+      this.number = number;
+   }
+
+   public long getNumber()
+   {
+      return number;
+   }
+}
@@ -0,0 +1,15 @@
+package org.isisoft.morphoo.benchmark.model;
+
+import org.isisoft.morphoo.annotation.Transformer;
+
+/**
+ * @author Carlos Munoz
+ */
+public class AccountTransformers
+{
+   @Transformer
+   public static String toAccountNumber( Account account )
+   {
+      return Long.toString(account.getNumber());
+   }
+}
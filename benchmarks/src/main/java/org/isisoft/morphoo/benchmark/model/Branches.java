@@ -0,0 +1,467 @@
+package org.isisoft.morphoo.benchmark.model;
+
+import org.isisoft.morphoo.annotation.Transformer;
+
+/**
+ * Dead end types B0 to B31 that hang off the rungs of the {@link Ladder}, branch i off rung i modulo 8. Registering
+ * some of them makes the transformer graph larger without changing any route along the ladder.
+ *
+ * @author Carlos Munoz
+ */
+public class Branches
+{
+   /** Number of branches available */
+   public static final int COUNT = 32;
+
+   public static final class B0 extends Ladder.Rung
+   {
+      B0(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B1 extends Ladder.Rung
+   {
+      B1(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B2 extends Ladder.Rung
+   {
+      B2(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B3 extends Ladder.Rung
+   {
+      B3(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B4 extends Ladder.Rung
+   {
+      B4(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B5 extends Ladder.Rung
+   {
+      B5(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B6 extends Ladder.Rung
+   {
+      B6(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B7 extends Ladder.Rung
+   {
+      B7(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B8 extends Ladder.Rung
+   {
+      B8(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B9 extends Ladder.Rung
+   {
+      B9(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B10 extends Ladder.Rung
+   {
+      B10(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B11 extends Ladder.Rung
+   {
+      B11(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B12 extends Ladder.Rung
+   {
+      B12(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B13 extends Ladder.Rung
+   {
+      B13(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B14 extends Ladder.Rung
+   {
+      B14(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B15 extends Ladder.Rung
+   {
+      B15(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B16 extends Ladder.Rung
+   {
+      B16(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B17 extends Ladder.Rung
+   {
+      B17(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B18 extends Ladder.Rung
+   {
+      B18(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B19 extends Ladder.Rung
+   {
+      B19(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B20 extends Ladder.Rung
+   {
+      B20(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B21 extends Ladder.Rung
+   {
+      B21(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B22 extends Ladder.Rung
+   {
+      B22(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B23 extends Ladder.Rung
+   {
+      B23(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B24 extends Ladder.Rung
+   {
+      B24(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B25 extends Ladder.Rung
+   {
+      B25(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B26 extends Ladder.Rung
+   {
+      B26(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B27 extends Ladder.Rung
+   {
+      B27(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B28 extends Ladder.Rung
+   {
+      B28(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B29 extends Ladder.Rung
+   {
+      B29(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B30 extends Ladder.Rung
+   {
+      B30(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class B31 extends Ladder.Rung
+   {
+      B31(long value)
+      {
+         super(value);
+      }
+   }
+
+
+   public static class Transformers
+   {
+      @Transformer
+      public static B0 branch0( Ladder.S0 s )
+      {
+         return new B0(s.value);
+      }
+
+      @Transformer
+      public static B1 branch1( Ladder.S1 s )
+      {
+         return new B1(s.value);
+      }
+
+      @Transformer
+      public static B2 branch2( Ladder.S2 s )
+      {
+         return new B2(s.value);
+      }
+
+      @Transformer
+      public static B3 branch3( Ladder.S3 s )
+      {
+         return new B3(s.value);
+      }
+
+      @Transformer
+      public static B4 branch4( Ladder.S4 s )
+      {
+         return new B4(s.value);
+      }
+
+      @Transformer
+      public static B5 branch5( Ladder.S5 s )
+      {
+         return new B5(s.value);
+      }
+
+      @Transformer
+      public static B6 branch6( Ladder.S6 s )
+      {
+         return new B6(s.value);
+      }
+
+      @Transformer
+      public static B7 branch7( Ladder.S7 s )
+      {
+         return new B7(s.value);
+      }
+
+      @Transformer
+      public static B8 branch8( Ladder.S0 s )
+      {
+         return new B8(s.value);
+      }
+
+      @Transformer
+      public static B9 branch9( Ladder.S1 s )
+      {
+         return new B9(s.value);
+      }
+
+      @Transformer
+      public static B10 branch10( Ladder.S2 s )
+      {
+         return new B10(s.value);
+      }
+
+      @Transformer
+      public static B11 branch11( Ladder.S3 s )
+      {
+         return new B11(s.value);
+      }
+
+      @Transformer
+      public static B12 branch12( Ladder.S4 s )
+      {
+         return new B12(s.value);
+      }
+
+      @Transformer
+      public static B13 branch13( Ladder.S5 s )
+      {
+         return new B13(s.value);
+      }
+
+      @Transformer
+      public static B14 branch14( Ladder.S6 s )
+      {
+         return new B14(s.value);
+      }
+
+      @Transformer
+      public static B15 branch15( Ladder.S7 s )
+      {
+         return new B15(s.value);
+      }
+
+      @Transformer
+      public static B16 branch16( Ladder.S0 s )
+      {
+         return new B16(s.value);
+      }
+
+      @Transformer
+      public static B17 branch17( Ladder.S1 s )
+      {
+         return new B17(s.value);
+      }
+
+      @Transformer
+      public static B18 branch18( Ladder.S2 s )
+      {
+         return new B18(s.value);
+      }
+
+      @Transformer
+      public static B19 branch19( Ladder.S3 s )
+      {
+         return new B19(s.value);
+      }
+
+      @Transformer
+      public static B20 branch20( Ladder.S4 s )
+      {
+         return new B20(s.value);
+      }
+
+      @Transformer
+      public static B21 branch21( Ladder.S5 s )
+      {
+         return new B21(s.value);
+      }
+
+      @Transformer
+      public static B22 branch22( Ladder.S6 s )
+      {
+         return new B22(s.value);
+      }
+
+      @Transformer
+      public static B23 branch23( Ladder.S7 s )
+      {
+         return new B23(s.value);
+      }
+
+      @Transformer
+      public static B24 branch24( Ladder.S0 s )
+      {
+         return new B24(s.value);
+      }
+
+      @Transformer
+      public static B25 branch25( Ladder.S1 s )
+      {
+         return new B25(s.value);
+      }
+
+      @Transformer
+      public static B26 branch26( Ladder.S2 s )
+      {
+         return new B26(s.value);
+      }
+
+      @Transformer
+      public static B27 branch27( Ladder.S3 s )
+      {
+         return new B27(s.value);
+      }
+
+      @Transformer
+      public static B28 branch28( Ladder.S4 s )
+      {
+         return new B28(s.value);
+      }
+
+      @Transformer
+      public static B29 branch29( Ladder.S5 s )
+      {
+         return new B29(s.value);
+      }
+
+      @Transformer
+      public static B30 branch30( Ladder.S6 s )
+      {
+         return new B30(s.value);
+      }
+
+      @Transformer
+      public static B31 branch31( Ladder.S7 s )
+      {
+         return new B31(s.value);
+      }
+   }
+}
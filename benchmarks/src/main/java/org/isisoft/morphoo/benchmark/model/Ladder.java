@@ -0,0 +1,216 @@
+package org.isisoft.morphoo.benchmark.model;
+
+import org.isisoft.morphoo.annotation.Transformer;
+
+/**
+ * A ladder of types S0 to S8 with a transformer from each one to the next. Every type also has a transformer into
+ * {@link Dead}, which has no way out, so route searches have more than one edge to follow from each type.
+ *
+ * @author Carlos Munoz
+ */
+public class Ladder
+{
+   /** Number of types on the ladder */
+   public static final int STEPS = 9;
+
+   public static final Class<?>[] TYPES = {
+         S0.class, S1.class, S2.class, S3.class, S4.class, S5.class, S6.class, S7.class, S8.class
+   };
+
+   public static class Rung
+   {
+      public final long value;
+
+      Rung(long value)
+      {
+         this.value = value;
+      }
+   }
+
+   public static final class Dead extends Rung
+   {
+      Dead(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class S0 extends Rung
+   {
+      public S0(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class S1 extends Rung
+   {
+      public S1(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class S2 extends Rung
+   {
+      public S2(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class S3 extends Rung
+   {
+      public S3(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class S4 extends Rung
+   {
+      public S4(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class S5 extends Rung
+   {
+      public S5(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class S6 extends Rung
+   {
+      public S6(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class S7 extends Rung
+   {
+      public S7(long value)
+      {
+         super(value);
+      }
+   }
+
+   public static final class S8 extends Rung
+   {
+      public S8(long value)
+      {
+         super(value);
+      }
+   }
+
+
+   public static class Transformers
+   {
+      @Transformer
+      public static S1 up0( S0 s )
+      {
+         return new S1(s.value + 1);
+      }
+
+      @Transformer
+      public static S2 up1( S1 s )
+      {
+         return new S2(s.value + 1);
+      }
+
+      @Transformer
+      public static S3 up2( S2 s )
+      {
+         return new S3(s.value + 1);
+      }
+
+      @Transformer
+      public static S4 up3( S3 s )
+      {
+         return new S4(s.value + 1);
+      }
+
+      @Transformer
+      public static S5 up4( S4 s )
+      {
+         return new S5(s.value + 1);
+      }
+
+      @Transformer
+      public static S6 up5( S5 s )
+      {
+         return new S6(s.value + 1);
+      }
+
+      @Transformer
+      public static S7 up6( S6 s )
+      {
+         return new S7(s.value + 1);
+      }
+
+      @Transformer
+      public static S8 up7( S7 s )
+      {
+         return new S8(s.value + 1);
+      }
+
+      @Transformer
+      public static Dead dead0( S0 s )
+      {
+         return new Dead(s.value);
+      }
+
+      @Transformer
+      public static Dead dead1( S1 s )
+      {
+         return new Dead(s.value);
+      }
+
+      @Transformer
+      public static Dead dead2( S2 s )
+      {
+         return new Dead(s.value);
+      }
+
+      @Transformer
+      public static Dead dead3( S3 s )
+      {
+         return new Dead(s.value);
+      }
+
+      @Transformer
+      public static Dead dead4( S4 s )
+      {
+         return new Dead(s.value);
+      }
+
+      @Transformer
+      public static Dead dead5( S5 s )
+      {
+         return new Dead(s.value);
+      }
+
+      @Transformer
+      public static Dead dead6( S6 s )
+      {
+         return new Dead(s.value);
+      }
+
+      @Transformer
+      public static Dead dead7( S7 s )
+      {
+         return new Dead(s.value);
+      }
+
+      @Transformer
+      public static Dead dead8( S8 s )
+      {
+         return new Dead(s.value);
+      }
+
+   }
+}
@@ -0,0 +1,27 @@
+package org.isisoft.morphoo.benchmark.model;
+
+/**
+ * @author Carlos Munoz
+ */
+public class Person
+{
+   private final String name;
+
+   private final int age;
+
+   public Person(String name, int age)
+   {
+      this.name = name;
+      this.age = age;
+   }
+
+   public String getName()
+   {
+      return name;
+   }
+
+   public int getAge()
+   {
+      return age;
+   }
+}
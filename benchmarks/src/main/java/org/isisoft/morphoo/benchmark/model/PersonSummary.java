@@ -0,0 +1,19 @@
+package org.isisoft.morphoo.benchmark.model;
+
+/**
+ * @author Carlos Munoz
+ */
+public class PersonSummary
+{
+   private final String text;
+
+   public PersonSummary(String text)
+   {
+      this.text = text;
+   }
+
+   public String getText()
+   {
+      return text;
+   }
+}
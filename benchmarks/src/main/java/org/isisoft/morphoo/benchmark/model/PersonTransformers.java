@@ -0,0 +1,31 @@
+package org.isisoft.morphoo.benchmark.model;
+
+import org.isisoft.morphoo.annotation.ContextParam;
+import org.isisoft.morphoo.annotation.Transformer;
+import org.isisoft.morphoo.core.TransformationContext;
+
+/**
+ * The benchmarks' hand-written baselines call these methods directly.
+ *
+ * @author Carlos Munoz
+ */
+public class PersonTransformers
+{
+   @Transformer
+   public PersonSummary toSummary( Person person )
+   {
+      return new PersonSummary(person.getName());
+   }
+
+   @Transformer(name = "label", isDefault = true)
+   public String toLabel( Person person, @ContextParam(name = "prefix") String prefix )
+   {
+      return prefix + person.getName();
+   }
+
+   @Transformer(name = "labelFromContext")
+   public String toLabelFromContext( Person person, TransformationContext ctx )
+   {
+      return ctx.get("prefix") + person.getName();
+   }
+}
@@ -0,0 +1,29 @@
+package org.isisoft.morphoo.annotation;
+
+/**
+ * The ways in which instances of a class that declares non-static transformer methods can be created and shared.
+ *
+ * @author Carlos Munoz
+ * @see TransformerScope
+ */
+public enum InstanceScope
+{
+   /**
+    * A single instance is shared by all the class's transformer methods and all threads. The class must be thread
+    * safe. This is the default.
+    */
+   SINGLETON,
+
+   /**
+    * Each thread gets its own instance, shared by all the class's transformer methods on that thread. A transformer
+    * method that performs nested transformations may be entered again on the same thread, with the same instance.
+    */
+   THREAD,
+
+   /**
+    * Instances are taken from a bounded pool for the duration of each invocation, so an instance is only used by one
+    * invocation at a time. When the pool is empty a new instance is created, and it is kept afterwards only if there
+    * is room for it in the pool.
+    */
+   POOLED
+}
@@ -15,6 +15,14 @@ import java.lang.annotation.Target;
  * It can also be marked as the default transformer for a source and target type. Two transformer methods for the
  * same source and target cannot be marked as default.
  *
+ * A transformer may also give an estimate of its cost, which is used to choose between routes when transformations
+ * are derived.
+ *
+ * Transformers that are expensive and always return equal results for equal inputs can have their results memoized.
+ * Results are then kept in a bounded cache, keyed by the source object and the context variables the method receives,
+ * and returned again without invoking the method. Sources and context variables used as keys must implement
+ * equals and hashCode, and must not be modified afterwards.
+ *
  * @author Carlos Munoz
  */
 @Retention(RetentionPolicy.RUNTIME)
@@ -27,4 +35,17 @@ public @interface Transformer
    /** Transformer name. Only necessary when there are multiple transformers for the same source and target
     * types */
    String name() default "";
+
+   /** Estimated cost of one invocation of this transformer, relative to other transformers. Derived transformations
+    * choose the route with the lowest total cost. When routes are measured at runtime, costs are compared with
+    * measured durations in nanoseconds, so they should be estimated in nanoseconds as well. Must be positive. */
+   double cost() default 1;
+
+   /** Maximum number of results to memoize, evicting the least recently used ones beyond that. 0, the default,
+    * disables memoization. Must not be negative. */
+   int memoize() default 0;
+
+   /** Milliseconds after which a memoized result is discarded, counting from when it was memoized. 0, the default,
+    * keeps results until they are evicted. Must not be negative. */
+   long memoizeExpiry() default 0;
 }
@@ -0,0 +1,28 @@
+package org.isisoft.morphoo.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sets how instances of a class that declares non-static transformer methods are created and shared. Without this
+ * annotation, the class's transformer methods share a single instance.
+ *
+ * Classes that keep state which is expensive to create and not thread safe, like formatters, parsers or buffers, can
+ * use per-thread or pooled instances to reuse that state safely:
+ * <code>@TransformerScope(InstanceScope.THREAD)</code>
+ *
+ * @author Carlos Munoz
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface TransformerScope
+{
+   /** How instances of the class are created and shared */
+   InstanceScope value() default InstanceScope.SINGLETON;
+
+   /** Maximum number of idle instances kept when the scope is {@link InstanceScope#POOLED}. 0, the default, keeps
+    * one per available processor. Must not be negative. */
+   int poolSize() default 0;
+}
@@ -0,0 +1,271 @@
+package org.isisoft.morphoo.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs compiled transformations asynchronously on the framework's executor.
+ *
+ * Every submitted transformation receives its own copy of the context, taken at submission time, so the caller may
+ * keep modifying its {@link Transformation} and transformer methods may modify their context without affecting other
+ * tasks. When a future completes exceptionally (because of a failure, a deadline or a cancellation), tasks that have
+ * not started yet are skipped and tasks that are running are interrupted.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class AsyncTransformation
+{
+   /** Timeout value indicating that there is no deadline */
+   static final long NO_DEADLINE = -1;
+
+
+   private AsyncTransformation()
+   {
+   }
+
+   /**
+    * Submits a single transformation.
+    *
+    * @param transformation The transformation to perform.
+    * @param src The object to transform.
+    * @param timeout The maximum time to wait for the result, or {@link AsyncTransformation#NO_DEADLINE}.
+    * @param unit The unit of timeout.
+    * @return A future for the result.
+    */
+   static <T> CompletableFuture<T> submit(CompiledTransformation<?, T> transformation, Object src,
+                                          long timeout, TimeUnit unit)
+   {
+      final Task<T> task = new Task<T>(transformation, src);
+      task.future.whenComplete(new BiConsumer<T, Throwable>()
+      {
+         @Override
+         public void accept(T result, Throwable failure)
+         {
+            if( failure != null )
+            {
+               task.abort(failure);
+            }
+         }
+      });
+
+      scheduleDeadline(task.future, timeout, unit);
+      execute(task);
+      return task.future;
+   }
+
+   /**
+    * Submits a transformation for each of the given sources. The returned future fails as soon as any of the
+    * transformations fails, and nothing is submitted if any of the sources cannot be transformed at all.
+    *
+    * @param transformation The transformation to perform.
+    * @param sources The objects to transform.
+    * @param timeout The maximum time to wait for all the results, or {@link AsyncTransformation#NO_DEADLINE}.
+    * @param unit The unit of timeout.
+    * @return A future for all the results, in the same order as the sources.
+    */
+   static <T> CompletableFuture<List<T>> submitAll(CompiledTransformation<?, T> transformation, Object[] sources,
+                                                   long timeout, TimeUnit unit)
+   {
+      final CompletableFuture<List<T>> all = new CompletableFuture<List<T>>();
+      final Object[] results = new Object[ sources.length ];
+      final Task<?>[] tasks = new Task<?>[ sources.length ];
+      final AtomicInteger remaining = new AtomicInteger( sources.length );
+
+      if( sources.length == 0 )
+      {
+         all.complete((List<T>)Arrays.asList(results));
+         return all;
+      }
+
+      // resolve every distinct class once, before any task is submitted
+      try
+      {
+         for( Object src : sources )
+         {
+            transformation.resolveFor(src.getClass());
+         }
+      }
+      catch (RuntimeException e)
+      {
+         // e.g. a null source, or a source no transformer can take
+         all.completeExceptionally(e);
+         return all;
+      }
+
+      for( int i=0; i<sources.length; i++ )
+      {
+         final int idx = i;
+         Task<T> task = new Task<T>(transformation, sources[i]);
+         task.future.whenComplete(new BiConsumer<T, Throwable>()
+         {
+            @Override
+            public void accept(T result, Throwable failure)
+            {
+               if( failure != null )
+               {
+                  all.completeExceptionally(failure);
+               }
+               else
+               {
+                  results[idx] = result;
+                  if( remaining.decrementAndGet() == 0 )
+                  {
+                     all.complete((List<T>)Arrays.asList(results));
+                  }
+               }
+            }
+         });
+         tasks[i] = task;
+      }
+
+      all.whenComplete(new BiConsumer<List<T>, Throwable>()
+      {
+         @Override
+         public void accept(List<T> result, Throwable failure)
+         {
+            if( failure != null )
+            {
+               for( Task<?> t : tasks )
+               {
+                  t.abort(failure);
+               }
+            }
+         }
+      });
+
+      scheduleDeadline(all, timeout, unit);
+      for( Task<?> t : tasks )
+      {
+         execute(t);
+      }
+      return all;
+   }
+
+   private static void execute(Task<?> task)
+   {
+      try
+      {
+         TransformerRegistry.getInstance().getAsyncExecutor().execute(task);
+      }
+      catch (RuntimeException e)
+      {
+         // e.g. the executor rejected the task
+         task.future.completeExceptionally(e);
+      }
+   }
+
+   private static void scheduleDeadline(final CompletableFuture<?> future, final long timeout, final TimeUnit unit)
+   {
+      if( timeout == NO_DEADLINE )
+      {
+         return;
+      }
+
+      final ScheduledFuture<?> deadline = FrameworkScheduler.get().schedule(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            future.completeExceptionally(new TimeoutException("Transformation did not complete within " +
+                  timeout + " " + unit.toString().toLowerCase()));
+         }
+      }, timeout, unit);
+
+      future.whenComplete(new BiConsumer<Object, Throwable>()
+      {
+         @Override
+         public void accept(Object result, Throwable failure)
+         {
+            deadline.cancel(false);
+         }
+      });
+   }
+
+
+   /**
+    * A single transformation, run on the executor.
+    */
+   private static final class Task<T> implements Runnable
+   {
+      private final CompletableFuture<T> future = new CompletableFuture<T>();
+
+      private final CompiledTransformation<?, T> transformation;
+
+      private final Object src;
+
+      private final TransformationContext ctx;
+
+      /** Thread running the transformation, guarded by this */
+      private Thread runner;
+
+      /** Whether the runner was interrupted by abort, guarded by this */
+      private boolean interrupted;
+
+      private Task(CompiledTransformation<?, T> transformation, Object src)
+      {
+         this.transformation = transformation;
+         this.src = src;
+         this.ctx = transformation.getContext().copy();
+      }
+
+      @Override
+      public void run()
+      {
+         synchronized (this)
+         {
+            // skip work that was cancelled or timed out before it started
+            if( this.future.isDone() )
+            {
+               return;
+            }
+            this.runner = Thread.currentThread();
+         }
+
+         try
+         {
+            this.future.complete( this.transformation.transform(this.src, this.ctx) );
+         }
+         catch (Throwable t)
+         {
+            this.future.completeExceptionally(t);
+         }
+         finally
+         {
+            synchronized (this)
+            {
+               this.runner = null;
+               if( this.interrupted )
+               {
+                  // don't leak the interruption to the executor's next task
+                  Thread.interrupted();
+               }
+            }
+         }
+      }
+
+      /**
+       * Fails this task's future and interrupts the transformation if it is running.
+       */
+      private void abort(Throwable reason)
+      {
+         this.future.completeExceptionally(reason);
+
+         synchronized (this)
+         {
+            if( this.runner != null && this.future.isCompletedExceptionally() && !this.interrupted )
+            {
+               this.interrupted = true;
+               this.runner.interrupt();
+            }
+         }
+      }
+   }
+}
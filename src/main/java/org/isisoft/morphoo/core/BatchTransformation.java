@@ -0,0 +1,212 @@
+package org.isisoft.morphoo.core;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Performs a compiled transformation on many source objects at once. The transformer for each distinct source class
+ * is resolved a single time before any object is transformed, and results are written into a presized array.
+ *
+ * Large batches may be split into chunks and transformed on a {@link ForkJoinPool}. When the order of the results
+ * does not matter, sources are first grouped by class so that each chunk runs through as few transformers as
+ * possible.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class BatchTransformation
+{
+   /** Default number of elements below which a batch is not split any further */
+   static final int DEFAULT_SPLIT_THRESHOLD = 1024;
+
+   /** Split threshold indicating that a batch should be transformed sequentially */
+   static final int SEQUENTIAL = 0;
+
+   private final CompiledTransformation<?, ?> transformation;
+
+   private final int splitThreshold;
+
+   private final boolean ordered;
+
+
+   BatchTransformation(CompiledTransformation<?, ?> transformation, int splitThreshold, boolean ordered)
+   {
+      this.transformation = transformation;
+      this.splitThreshold = splitThreshold;
+      this.ordered = ordered;
+   }
+
+   boolean isOrdered()
+   {
+      return ordered;
+   }
+
+   /**
+    * @return A batch transformation like this one that keeps the results in the same order as the sources.
+    */
+   BatchTransformation inOrder()
+   {
+      return new BatchTransformation(this.transformation, this.splitThreshold, true);
+   }
+
+   /**
+    * Transforms all the given sources.
+    *
+    * @param sources The source objects. The array is not modified.
+    * @param ctx The context to perform the transformation with.
+    * @return The transformation results, with null for null sources. If the batch is ordered, they are in the same
+    * order as the sources. Otherwise results for sources of the same class are next to each other.
+    */
+   Object[] perform(Object[] sources, TransformationContext ctx)
+   {
+      Map<Class<?>, Transformer> transformers = this.resolveAll(sources);
+      Object[] work = this.ordered ? sources : groupByClass(sources, transformers);
+      Object[] results = new Object[ work.length ];
+
+      if( this.splitThreshold == SEQUENTIAL || work.length <= this.splitThreshold )
+      {
+         this.transformRange(work, results, transformers, ctx, 0, work.length);
+      }
+      else
+      {
+         TransformerRegistry.getInstance().getForkJoinPool().invoke(
+               new ChunkTask(work, results, transformers, ctx, 0, work.length));
+      }
+      return results;
+   }
+
+   private Map<Class<?>, Transformer> resolveAll(Object[] sources)
+   {
+      Map<Class<?>, Transformer> transformers = new IdentityHashMap<Class<?>, Transformer>();
+      Class<?> last = null;
+
+      for( Object src : sources )
+      {
+         if( src == null )
+         {
+            continue;
+         }
+         Class<?> cls = src.getClass();
+         if( cls != last && !transformers.containsKey(cls) )
+         {
+            transformers.put(cls, this.transformation.resolveFor(cls));
+         }
+         last = cls;
+      }
+      return transformers;
+   }
+
+   /**
+    * Reorders the sources so that all the instances of the same class are contiguous, keeping their relative order.
+    */
+   private static Object[] groupByClass(Object[] sources, Map<Class<?>, Transformer> transformers)
+   {
+      if( transformers.size() <= 1 )
+      {
+         return sources;
+      }
+
+      Map<Class<?>, int[]> offsets = new IdentityHashMap<Class<?>, int[]>();
+      for( Object src : sources )
+      {
+         int[] count = offsets.get(classOf(src));
+         if( count == null )
+         {
+            count = new int[1];
+            offsets.put(classOf(src), count);
+         }
+         count[0]++;
+      }
+
+      // turn the counts into starting positions
+      int position = 0;
+      for( int[] p : offsets.values() )
+      {
+         int count = p[0];
+         p[0] = position;
+         position += count;
+      }
+
+      Object[] grouped = new Object[ sources.length ];
+      for( Object src : sources )
+      {
+         grouped[ offsets.get(classOf(src))[0]++ ] = src;
+      }
+      return grouped;
+   }
+
+   /**
+    * @return The class of a source object, or null for null sources, which are grouped together.
+    */
+   private static Class<?> classOf(Object src)
+   {
+      return src == null ? null : src.getClass();
+   }
+
+   private void transformRange(Object[] sources, Object[] results, Map<Class<?>, Transformer> transformers,
+                               TransformationContext ctx, int from, int to)
+   {
+      Class<?> lastClass = null;
+      Transformer lastTransformer = null;
+
+      for( int i=from; i<to; i++ )
+      {
+         Object src = sources[i];
+         if( src == null )
+         {
+            // results are already null
+            continue;
+         }
+         if( src.getClass() != lastClass )
+         {
+            lastClass = src.getClass();
+            lastTransformer = transformers.get(lastClass);
+         }
+         results[i] = this.transformation.transform(lastTransformer, src, ctx);
+      }
+   }
+
+
+   private final class ChunkTask extends RecursiveAction
+   {
+      private final Object[] sources;
+
+      private final Object[] results;
+
+      private final Map<Class<?>, Transformer> transformers;
+
+      private final TransformationContext ctx;
+
+      private final int from;
+
+      private final int to;
+
+      private ChunkTask(Object[] sources, Object[] results, Map<Class<?>, Transformer> transformers,
+                        TransformationContext ctx, int from, int to)
+      {
+         this.sources = sources;
+         this.results = results;
+         this.transformers = transformers;
+         this.ctx = ctx;
+         this.from = from;
+         this.to = to;
+      }
+
+      @Override
+      protected void compute()
+      {
+         if( this.to - this.from <= splitThreshold )
+         {
+            transformRange(this.sources, this.results, this.transformers, this.ctx, this.from, this.to);
+         }
+         else
+         {
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new ChunkTask(this.sources, this.results, this.transformers, this.ctx, this.from, middle),
+                  new ChunkTask(this.sources, this.results, this.transformers, this.ctx, middle, this.to));
+         }
+      }
+   }
+}
@@ -0,0 +1,79 @@
+package org.isisoft.morphoo.core;
+
+/**
+ * An immutable snapshot of a framework cache's usage counters.
+ *
+ * @author Carlos Munoz
+ */
+public class CacheStatistics
+{
+   private final long hitCount;
+
+   private final long missCount;
+
+   private final long evictionCount;
+
+   private final long size;
+
+
+   public CacheStatistics(long hitCount, long missCount, long size)
+   {
+      this(hitCount, missCount, 0, size);
+   }
+
+   public CacheStatistics(long hitCount, long missCount, long evictionCount, long size)
+   {
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.evictionCount = evictionCount;
+      this.size = size;
+   }
+
+   /**
+    * @return The number of lookups that were answered by the cache.
+    */
+   public long getHitCount()
+   {
+      return hitCount;
+   }
+
+   /**
+    * @return The number of lookups that had to be computed because they were not in the cache.
+    */
+   public long getMissCount()
+   {
+      return missCount;
+   }
+
+   /**
+    * @return The number of entries that were removed from the cache because it was full or because they expired.
+    */
+   public long getEvictionCount()
+   {
+      return evictionCount;
+   }
+
+   /**
+    * @return The number of entries currently held by the cache.
+    */
+   public long getSize()
+   {
+      return size;
+   }
+
+   /**
+    * @return The ratio of hits to total lookups, or 0 if there have been no lookups.
+    */
+   public double getHitRate()
+   {
+      long total = hitCount + missCount;
+      return total == 0 ? 0.0 : (double)hitCount / total;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "CacheStatistics{hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+            + ", size=" + size + "}";
+   }
+}
@@ -0,0 +1,492 @@
+package org.isisoft.morphoo.core;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds classes that declare transformer methods by reading class files directly, without loading them.
+ *
+ * Only the registered packages are scanned. A class file is selected when its constant pool contains the descriptor of
+ * the {@link org.isisoft.morphoo.annotation.Transformer} annotation, which is present in every class that has a method
+ * annotated with it. Each directory and jar on the classpath is scanned as a separate task on a fork/join pool. Package
+ * locations are found through the class loader's resources, so jars must contain directory entries, as the ones written
+ * by build tools do. Locations that are neither directories nor jars, such as the virtual file systems of some
+ * application servers, are skipped with a warning.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class ClasspathScanner
+{
+   private static final Logger LOGGER = Logger.getLogger(ClasspathScanner.class.getName());
+
+   private static final byte[] TRANSFORMER_DESCRIPTOR = bytes("Lorg/isisoft/morphoo/annotation/Transformer;");
+
+   private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+
+   private static final String CLASS_SUFFIX = ".class";
+
+   private ClasspathScanner()
+   {
+   }
+
+   /**
+    * Finds the names of the classes in the given packages that declare transformer methods.
+    *
+    * @param loader The class loader whose classpath should be scanned.
+    * @param packages The package names to scan, recursively.
+    * @param skippedRoots Classpath roots that must not be scanned, because an index already covers them.
+    * @param pool The pool to scan on.
+    * @return The binary names of the classes found.
+    * @throws InitializationException If part of the classpath cannot be read.
+    */
+   static Set<String> findClassNames( ClassLoader loader, Collection<String> packages, Set<File> skippedRoots,
+                                      ForkJoinPool pool )
+   {
+      Map<File, Set<String>> jars = new HashMap<File, Set<String>>();
+      Set<Path> directories = new HashSet<Path>();
+
+      for( String p : packages )
+      {
+         String packagePath = p.replace('.', '/');
+         try
+         {
+            Enumeration<URL> roots = loader.getResources(packagePath);
+            while( roots.hasMoreElements() )
+            {
+               URL root = roots.nextElement();
+               if( !skippedRoots.contains( rootOf(root, packagePath) ) )
+               {
+                  addRoot(root, packagePath, jars, directories);
+               }
+            }
+         }
+         catch (IOException e)
+         {
+            throw new InitializationException("Could not find the classpath locations of package " + p, e);
+         }
+      }
+
+      List<Callable<Set<String>>> tasks = new ArrayList<Callable<Set<String>>>();
+      for( final Map.Entry<File, Set<String>> jar : jars.entrySet() )
+      {
+         tasks.add(new Callable<Set<String>>()
+         {
+            @Override
+            public Set<String> call() throws IOException
+            {
+               return scanJar(jar.getKey(), jar.getValue());
+            }
+         });
+      }
+      for( final Path directory : directories )
+      {
+         tasks.add(new Callable<Set<String>>()
+         {
+            @Override
+            public Set<String> call() throws IOException
+            {
+               return scanDirectory(directory);
+            }
+         });
+      }
+
+      Set<String> classNames = new HashSet<String>();
+      for( Future<Set<String>> result : pool.invokeAll(tasks) )
+      {
+         try
+         {
+            classNames.addAll(result.get());
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            throw new InitializationException("Interrupted while scanning for transformer methods", e);
+         }
+         catch (ExecutionException e)
+         {
+            throw new InitializationException("Error while scanning for transformer methods", e.getCause());
+         }
+      }
+      return classNames;
+   }
+
+   /**
+    * Finds the classpath root a resource was found in.
+    *
+    * @param resource The resource's location.
+    * @param resourcePath The resource's path, relative to the classpath root.
+    * @return The directory or jar file the resource is in, or null if it is not in one.
+    */
+   static File rootOf( URL resource, String resourcePath )
+   {
+      try
+      {
+         if( "file".equals(resource.getProtocol()) )
+         {
+            Path path = Paths.get(resource.toURI());
+            int depth = resourcePath.length() == 0 ? 0 : resourcePath.split("/").length;
+            for( int i=0; i<depth && path != null; i++ )
+            {
+               path = path.getParent();
+            }
+            return path != null ? path.toFile() : null;
+         }
+         else if( "jar".equals(resource.getProtocol()) )
+         {
+            URL jarUrl = ((JarURLConnection)resource.openConnection()).getJarFileURL();
+            return "file".equals(jarUrl.getProtocol()) ? new File(jarUrl.toURI()) : null;
+         }
+      }
+      catch (IOException e)
+      {
+         // not a location that can be told apart from others
+      }
+      catch (URISyntaxException e)
+      {
+         // same as above
+      }
+      return null;
+   }
+
+   private static void addRoot( URL root, String packagePath, Map<File, Set<String>> jars, Set<Path> directories )
+         throws IOException
+   {
+      if( "file".equals(root.getProtocol()) )
+      {
+         try
+         {
+            directories.add( Paths.get(root.toURI()) );
+         }
+         catch (URISyntaxException e)
+         {
+            throw new InitializationException("Invalid classpath location " + root, e);
+         }
+      }
+      else if( "jar".equals(root.getProtocol()) )
+      {
+         URLConnection connection = root.openConnection();
+         URL jarUrl = ((JarURLConnection)connection).getJarFileURL();
+         try
+         {
+            File jarFile = new File(jarUrl.toURI());
+            Set<String> prefixes = jars.get(jarFile);
+            if( prefixes == null )
+            {
+               prefixes = new HashSet<String>();
+               jars.put(jarFile, prefixes);
+            }
+            prefixes.add(packagePath.length() == 0 ? "" : packagePath + "/");
+         }
+         catch (URISyntaxException e)
+         {
+            throw new InitializationException("Invalid classpath location " + root, e);
+         }
+      }
+      else
+      {
+         LOGGER.warning("Cannot scan classpath location " + root + " for transformer methods, so it is skipped. " +
+               "Compile the transformer classes with the transformer index processor, or register them individually.");
+      }
+   }
+
+   private static Set<String> scanJar( File jar, Set<String> prefixes ) throws IOException
+   {
+      Set<String> classNames = new HashSet<String>();
+      ZipFile zip = new ZipFile(jar);
+      try
+      {
+         Enumeration<? extends ZipEntry> entries = zip.entries();
+         while( entries.hasMoreElements() )
+         {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if( !name.endsWith(CLASS_SUFFIX) || !hasPrefix(name, prefixes) )
+            {
+               continue;
+            }
+
+            InputStream in = zip.getInputStream(entry);
+            try
+            {
+               if( declaresTransformers(in) )
+               {
+                  classNames.add(toClassName(name));
+               }
+            }
+            finally
+            {
+               in.close();
+            }
+         }
+      }
+      finally
+      {
+         zip.close();
+      }
+      return classNames;
+   }
+
+   private static Set<String> scanDirectory( final Path packageDirectory ) throws IOException
+   {
+      // the class name is relative to the classpath root, not to the package directory
+      final Set<Path> classFiles = new HashSet<Path>();
+      Files.walkFileTree(packageDirectory, new SimpleFileVisitor<Path>()
+      {
+         @Override
+         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+         {
+            if( file.getFileName().toString().endsWith(CLASS_SUFFIX) )
+            {
+               InputStream in = Files.newInputStream(file);
+               try
+               {
+                  if( declaresTransformers(in) )
+                  {
+                     classFiles.add(file);
+                  }
+               }
+               finally
+               {
+                  in.close();
+               }
+            }
+            return FileVisitResult.CONTINUE;
+         }
+      });
+
+      Set<String> classNames = new HashSet<String>();
+      for( Path classFile : classFiles )
+      {
+         String className = readClassName(classFile);
+         if( className != null )
+         {
+            classNames.add(className);
+         }
+      }
+      return classNames;
+   }
+
+   private static boolean hasPrefix( String entryName, Set<String> prefixes )
+   {
+      for( String prefix : prefixes )
+      {
+         if( entryName.startsWith(prefix) )
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private static String toClassName( String classFilePath )
+   {
+      return classFilePath.substring(0, classFilePath.length() - CLASS_SUFFIX.length()).replace('/', '.');
+   }
+
+   /**
+    * Reads the name of the class defined in a class file.
+    *
+    * @return The binary name of the class, or null if the file is not a valid class file.
+    */
+   private static String readClassName( Path classFile ) throws IOException
+   {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(classFile)));
+      try
+      {
+         ConstantPool pool = ConstantPool.read(in);
+         if( pool == null )
+         {
+            return null;
+         }
+
+         in.readUnsignedShort(); // access flags
+         int thisClass = in.readUnsignedShort();
+         String internalName = pool.utf8At( pool.classNameIndexAt(thisClass) );
+         return internalName != null ? internalName.replace('/', '.') : null;
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   /**
+    * Checks if the constant pool of a class file holds the {@link org.isisoft.morphoo.annotation.Transformer}
+    * descriptor.
+    */
+   static boolean declaresTransformers( InputStream classFile ) throws IOException
+   {
+      ConstantPool pool = ConstantPool.read(new DataInputStream(new BufferedInputStream(classFile)));
+      return pool != null && pool.containsUtf8(TRANSFORMER_DESCRIPTOR);
+   }
+
+   private static byte[] bytes( String ascii )
+   {
+      byte[] b = new byte[ ascii.length() ];
+      for( int i=0; i<b.length; i++ )
+      {
+         b[i] = (byte)ascii.charAt(i);
+      }
+      return b;
+   }
+
+
+   /**
+    * The parts of a class file constant pool needed by the scanner.
+    */
+   private static final class ConstantPool
+   {
+      private static final int UTF8 = 1;
+      private static final int INTEGER = 3;
+      private static final int FLOAT = 4;
+      private static final int LONG = 5;
+      private static final int DOUBLE = 6;
+      private static final int CLASS = 7;
+      private static final int STRING = 8;
+      private static final int FIELD_REF = 9;
+      private static final int METHOD_REF = 10;
+      private static final int INTERFACE_METHOD_REF = 11;
+      private static final int NAME_AND_TYPE = 12;
+      private static final int METHOD_HANDLE = 15;
+      private static final int METHOD_TYPE = 16;
+      private static final int DYNAMIC = 17;
+      private static final int INVOKE_DYNAMIC = 18;
+      private static final int MODULE = 19;
+      private static final int PACKAGE = 20;
+
+      private final byte[][] utf8Entries;
+
+      private final int[] classNameIndexes;
+
+      private ConstantPool(int count)
+      {
+         this.utf8Entries = new byte[count][];
+         this.classNameIndexes = new int[count];
+      }
+
+      /**
+       * Reads the header and constant pool of a class file, leaving the stream positioned right after the pool.
+       *
+       * @return The constant pool, or null if the stream is not a class file.
+       */
+      static ConstantPool read( DataInputStream in ) throws IOException
+      {
+         if( in.readInt() != CLASS_FILE_MAGIC )
+         {
+            return null;
+         }
+         in.readUnsignedShort(); // minor version
+         in.readUnsignedShort(); // major version
+
+         int count = in.readUnsignedShort();
+         ConstantPool pool = new ConstantPool(count);
+
+         for( int i=1; i<count; i++ )
+         {
+            int tag = in.readUnsignedByte();
+            switch (tag)
+            {
+               case UTF8:
+                  byte[] value = new byte[ in.readUnsignedShort() ];
+                  in.readFully(value);
+                  pool.utf8Entries[i] = value;
+                  break;
+               case CLASS:
+                  pool.classNameIndexes[i] = in.readUnsignedShort();
+                  break;
+               case STRING:
+               case METHOD_TYPE:
+               case MODULE:
+               case PACKAGE:
+                  in.skipBytes(2);
+                  break;
+               case METHOD_HANDLE:
+                  in.skipBytes(3);
+                  break;
+               case INTEGER:
+               case FLOAT:
+               case FIELD_REF:
+               case METHOD_REF:
+               case INTERFACE_METHOD_REF:
+               case NAME_AND_TYPE:
+               case DYNAMIC:
+               case INVOKE_DYNAMIC:
+                  in.skipBytes(4);
+                  break;
+               case LONG:
+               case DOUBLE:
+                  in.skipBytes(8);
+                  // 8-byte constants take two entries
+                  i++;
+                  break;
+               default:
+                  throw new IOException("Unknown constant pool tag " + tag);
+            }
+         }
+         return pool;
+      }
+
+      boolean containsUtf8( byte[] value )
+      {
+         for( byte[] entry : this.utf8Entries )
+         {
+            if( entry != null && Arrays.equals(entry, value) )
+            {
+               return true;
+            }
+         }
+         return false;
+      }
+
+      int classNameIndexAt( int index )
+      {
+         return index < this.classNameIndexes.length ? this.classNameIndexes[index] : 0;
+      }
+
+      String utf8At( int index )
+      {
+         if( index <= 0 || index >= this.utf8Entries.length || this.utf8Entries[index] == null )
+         {
+            return null;
+         }
+         try
+         {
+            return new String(this.utf8Entries[index], "UTF-8");
+         }
+         catch (IOException e)
+         {
+            return null;
+         }
+      }
+   }
+}
@@ -0,0 +1,970 @@
+package org.isisoft.morphoo.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable, thread-safe form of a {@link Transformation}, created with {@link Transformation#compile()}.
+ *
+ * A compiled transformation keeps the transformers it has resolved in a small inline cache keyed by the exact class
+ * of the source objects, so performing it on a source class that has been seen before does not go through the
+ * {@link TransformerRegistry} at all. It is meant to be created once (for example in a static field) and performed
+ * many times from any number of threads.
+ *
+ * Context variables are captured in a frozen context when the transformation is compiled, and are shared by all
+ * invocations. Every source object is transformed with its own context layered over them (see
+ * {@link TransformationContext#overlay()}), so transformer methods may modify it without affecting other invocations.
+ *
+ * A compiled transformation is also a {@link Function}, so it can be used directly in stream pipelines, e.g.
+ * <code>sources.stream().map(compiled)</code>.
+ *
+ * Primitive values can be transformed without boxing them with the <code>performOnInt</code>,
+ * <code>performOnLong</code> and <code>performOnDouble</code> methods, and primitive results obtained with the
+ * <code>performAsInt</code>, <code>performAsLong</code> and <code>performAsDouble</code> methods.
+ *
+ * Results that may never be read can be deferred with the <code>performOnDeferred</code>,
+ * <code>performOnAllDeferred</code> and <code>performOnAsProxy</code> methods, which only transform their sources
+ * when the result is first accessed.
+ *
+ * @author Carlos Munoz
+ */
+public final class CompiledTransformation<S, T> implements Function<S, T>
+{
+   /** Maximum number of source classes kept in the inline cache */
+   static final int MAX_INLINE_ENTRIES = 4;
+
+   /**
+    * Immutable inline cache contents. Replaced as a whole when a new source class is resolved.
+    */
+   private static final class InlineCache
+   {
+      private final Object generation;
+
+      private final Class<?>[] sourceTypes;
+
+      private final Transformer[] transformers;
+
+      private InlineCache(Object generation, Class<?>[] sourceTypes, Transformer[] transformers)
+      {
+         this.generation = generation;
+         this.sourceTypes = sourceTypes;
+         this.transformers = transformers;
+      }
+   }
+
+   private final Class<T> targetType;
+
+   private final Collection<String> transformerNames;
+
+   private final boolean deriveTransformation;
+
+   private final List<Class<?>> transformationSteps;
+
+   private final TransformationContext context;
+
+   private final BatchTransformation batch;
+
+   /** Where results are memoized, or null if they are not */
+   private final ResultCache resultCache;
+
+   /** Whether each performance starts a new graph transformation */
+   private final boolean preserveIdentity;
+
+   private volatile InlineCache inlineCache;
+
+
+   CompiledTransformation(Class<T> targetType, Collection<String> transformerNames, boolean deriveTransformation,
+                          List<Class<?>> transformationSteps, TransformationContext context, int splitThreshold,
+                          boolean ordered, ResultCache resultCache, boolean preserveIdentity)
+   {
+      this.targetType = targetType;
+      this.transformerNames = transformerNames.isEmpty() ?
+            Collections.<String>emptySet() : Collections.unmodifiableSet(new HashSet<String>(transformerNames));
+      this.deriveTransformation = deriveTransformation;
+      this.transformationSteps = transformationSteps.isEmpty() ?
+            Collections.<Class<?>>emptyList() : Collections.unmodifiableList(new ArrayList<Class<?>>(transformationSteps));
+      this.context = context.freeze();
+      this.batch = new BatchTransformation(this, splitThreshold, ordered);
+      this.resultCache = resultCache;
+      this.preserveIdentity = preserveIdentity;
+      this.inlineCache = new InlineCache(null, new Class<?>[0], new Transformer[0]);
+   }
+
+   /**
+    * Performs the transformation on a source object instance.
+    *
+    * @param src The object to perform a transformation on.
+    * @return The result of the transformation when applied on src.
+    * @throws TransformationException If there is no transformer for the source object's class, or if the transformation
+    * fails.
+    */
+   public T performOn( S src )
+   {
+      return this.transform(src, this.context);
+   }
+
+   /**
+    * Performs the transformation asynchronously on the framework's executor, which can be set with
+    * {@link Morphoo#setAsyncExecutor(java.util.concurrent.Executor)}. The task receives its own copy of the context.
+    *
+    * @param src The object to perform a transformation on.
+    * @return A future for the result of the transformation.
+    */
+   public CompletableFuture<T> performOnAsync( S src )
+   {
+      return AsyncTransformation.submit(this, src, AsyncTransformation.NO_DEADLINE, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Performs the transformation asynchronously with a deadline. If the result is not ready in time, the future fails
+    * with a {@link java.util.concurrent.TimeoutException} and the transformation is interrupted or, if it has not
+    * started yet, never run.
+    *
+    * @param src The object to perform a transformation on.
+    * @param timeout The maximum time to wait for the result.
+    * @param unit The unit of timeout.
+    * @return A future for the result of the transformation.
+    */
+   public CompletableFuture<T> performOnAsync( S src, long timeout, TimeUnit unit )
+   {
+      return AsyncTransformation.submit(this, src, timeout, unit);
+   }
+
+   /**
+    * Performs the transformation asynchronously on every object in a collection, each as a separate task. The
+    * returned future fails as soon as one of the transformations fails, and the pending ones are then cancelled.
+    *
+    * @param sources The objects to perform the transformation on.
+    * @return A future for a fixed-size list with the results, in the same order as the sources.
+    */
+   public CompletableFuture<List<T>> performOnAllAsync( Collection<? extends S> sources )
+   {
+      return AsyncTransformation.submitAll(this, sources.toArray(), AsyncTransformation.NO_DEADLINE,
+            TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Performs the transformation asynchronously on every object in a collection with a deadline for the whole batch.
+    *
+    * @param sources The objects to perform the transformation on.
+    * @param timeout The maximum time to wait for all the results.
+    * @param unit The unit of timeout.
+    * @return A future for a fixed-size list with the results, in the same order as the sources.
+    * @see CompiledTransformation#performOnAsync(Object, long, TimeUnit)
+    */
+   public CompletableFuture<List<T>> performOnAllAsync( Collection<? extends S> sources, long timeout, TimeUnit unit )
+   {
+      return AsyncTransformation.submitAll(this, sources.toArray(), timeout, unit);
+   }
+
+   /**
+    * Performs the transformation on every object in a collection. The transformer for each distinct source class is
+    * only resolved once. If the transformation was configured with {@link Transformation#inParallel()}, large
+    * collections are transformed on the framework's fork/join pool.
+    *
+    * @param sources The objects to perform the transformation on.
+    * @return A fixed-size list with the transformation results. Unless the transformation was configured with
+    * {@link Transformation#unordered()}, results are in the same order as the sources.
+    */
+   public List<T> performOnAll( Collection<? extends S> sources )
+   {
+      return this.performOnAll( (S[])sources.toArray() );
+   }
+
+   /**
+    * Performs the transformation on every object in an array. The transformer for each distinct source class is
+    * only resolved once. If the transformation was configured with {@link Transformation#inParallel()}, large
+    * arrays are transformed on the framework's fork/join pool.
+    *
+    * @param sources The objects to perform the transformation on. The array is not modified.
+    * @return A fixed-size list with the transformation results. Unless the transformation was configured with
+    * {@link Transformation#unordered()}, results are in the same order as the sources.
+    */
+   public List<T> performOnAll( S[] sources )
+   {
+      return (List<T>)Arrays.asList( this.batch.perform(sources, this.operationContext(this.context)) );
+   }
+
+   /**
+    * Performs the transformation on every object in a collection, and collects the results into a set. The results
+    * keep the iteration order of the sources, unless the transformation was configured with
+    * {@link Transformation#unordered()}.
+    *
+    * @param sources The objects to perform the transformation on. Null elements are transformed into null.
+    * @return A new set with the transformation results.
+    */
+   public Set<T> performOnSet( Collection<? extends S> sources )
+   {
+      Object[] results = this.batch.perform(sources.toArray(), this.operationContext(this.context));
+      Set<T> set = new LinkedHashSet<T>( capacityFor(results.length) );
+      for( Object r : results )
+      {
+         set.add((T)r);
+      }
+      return set;
+   }
+
+   /**
+    * Performs the transformation on every object in an array, and returns the results in an array of the target type.
+    *
+    * @param sources The objects to perform the transformation on. Null elements are transformed into null.
+    * @return A new array with the transformation results. Unless the transformation was configured with
+    * {@link Transformation#unordered()}, results are in the same order as the sources. When the target type is a
+    * primitive type, the array's component type is its wrapper type.
+    */
+   public T[] performOnArray( S[] sources )
+   {
+      Object[] results = this.batch.perform(sources, this.operationContext(this.context));
+      // arrays of primitives are not object arrays
+      Class<?> componentType = MethodType.methodType(this.targetType).wrap().returnType();
+      T[] array = (T[])Array.newInstance(componentType, results.length);
+      System.arraycopy(results, 0, array, 0, results.length);
+      return array;
+   }
+
+   /**
+    * Performs the transformation on the values of a map.
+    *
+    * @param sources The map whose values to perform the transformation on. Null values are transformed into null.
+    * @param <K> The type of the map's keys.
+    * @return A new map with the same keys, in the same iteration order, and the transformed values.
+    */
+   public <K> Map<K, T> performOnValues( Map<K, ? extends S> sources )
+   {
+      Object[] keys = new Object[ sources.size() ];
+      Object[] values = new Object[ sources.size() ];
+      int idx = 0;
+      for( Map.Entry<K, ? extends S> e : sources.entrySet() )
+      {
+         keys[idx] = e.getKey();
+         values[idx] = e.getValue();
+         idx++;
+      }
+
+      // values must stay next to their keys, so the batch is always ordered
+      Object[] results = this.orderedBatch().perform(values, this.operationContext(this.context));
+      Map<K, T> map = new LinkedHashMap<K, T>( capacityFor(results.length) );
+      for( int i=0; i<results.length; i++ )
+      {
+         map.put((K)keys[i], (T)results[i]);
+      }
+      return map;
+   }
+
+   /**
+    * Performs the transformation on the value of an optional, if it has one.
+    *
+    * @param source The optional value to perform the transformation on.
+    * @return An optional with the transformation result, or an empty optional if source is empty or the result is null.
+    */
+   public Optional<T> performOnOptional( Optional<? extends S> source )
+   {
+      return source.isPresent() ? Optional.ofNullable(this.performOn(source.get())) : Optional.<T>empty();
+   }
+
+   /**
+    * Returns a view of a list whose elements are transformed every time they are read. Changes to sources are visible
+    * in the view, and removing from the view removes from sources. The view is meant for consumers that read each
+    * element once; otherwise {@link CompiledTransformation#performOnAll(Collection)} is cheaper.
+    *
+    * @param sources The list of objects to transform. Null elements are transformed into null.
+    * @return A lazily transforming list view.
+    */
+   public List<T> lazily( List<? extends S> sources )
+   {
+      if( sources instanceof RandomAccess )
+      {
+         return new LazyTransformations.RandomAccessTransformingList<S, T>(this, sources);
+      }
+      return new LazyTransformations.TransformingList<S, T>(this, sources);
+   }
+
+   /**
+    * Returns a view of a map whose values are transformed every time they are read. Changes to sources are visible in
+    * the view, and removing from the view removes from sources. The view is meant for consumers that read each value
+    * once; otherwise {@link CompiledTransformation#performOnValues(Map)} is cheaper.
+    *
+    * @param sources The map whose values to transform. Null values are transformed into null.
+    * @param <K> The type of the map's keys.
+    * @return A lazily transforming map view.
+    */
+   public <K> Map<K, T> lazily( Map<K, ? extends S> sources )
+   {
+      return new LazyTransformations.TransformingMap<K, S, T>(this, sources);
+   }
+
+   /**
+    * Defers the transformation of a source object until its result is needed. The transformer is resolved and invoked
+    * the first time {@link Lazy#get()} is called, with a copy of the context taken now, and its result is kept for
+    * later calls.
+    *
+    * @param src The object to perform a transformation on.
+    * @return The deferred result of the transformation.
+    */
+   public Lazy<T> performOnDeferred( final S src )
+   {
+      final TransformationContext ctx = this.context.copy();
+      return new Lazy<T>(new Supplier<T>()
+      {
+         @Override
+         public T get()
+         {
+            return transform(src, ctx);
+         }
+      });
+   }
+
+   /**
+    * Defers the transformation of every object in a collection until the results are needed. The sources are copied
+    * now, and they are all transformed as a batch the first time {@link Lazy#get()} is called.
+    *
+    * @param sources The objects to perform the transformation on. Null elements are transformed into null.
+    * @return The deferred fixed-size list of results.
+    * @see CompiledTransformation#performOnAll(Collection)
+    */
+   public Lazy<List<T>> performOnAllDeferred( Collection<? extends S> sources )
+   {
+      final Object[] copy = sources.toArray();
+      final TransformationContext ctx = this.context.copy();
+      return new Lazy<List<T>>(new Supplier<List<T>>()
+      {
+         @Override
+         public List<T> get()
+         {
+            return (List<T>)Arrays.asList( batch.perform(copy, operationContext(ctx)) );
+         }
+      });
+   }
+
+   /**
+    * Defers the transformation of a source object behind a proxy of the target type, which must be an interface. The
+    * transformation is performed the first time a method is called on the proxy, and every call is forwarded to its
+    * result.
+    *
+    * @param src The object to perform a transformation on.
+    * @return A proxy for the result of the transformation.
+    * @throws TransformationException If the target type is not an interface. Calls on the proxy throw it if the
+    * transformation fails or returns null.
+    * @see CompiledTransformation#performOnDeferred(Object)
+    */
+   public T performOnAsProxy( S src )
+   {
+      return Lazy.proxy(this.targetType, this.performOnDeferred(src));
+   }
+
+   /**
+    * Performs the transformation on a source object and returns its result as a primitive. When the transformer for
+    * the source object's class is a transformer method that returns an int (or a chain of them), the result is
+    * never boxed.
+    *
+    * @param src The object to perform a transformation on.
+    * @return The result of the transformation. The transformation's target type must be int or {@link Integer}.
+    * @throws TransformationException If there is no transformer for the source object's class, if the transformation
+    * fails, or if its result is null.
+    */
+   public int performAsInt( S src )
+   {
+      MethodHandle handle = this.exactHandle(src.getClass(), Object.class, int.class);
+      if( handle == null )
+      {
+         return toInt(this.performOn(src));
+      }
+      try
+      {
+         return (int)handle.invokeExact((Object)src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Same as {@link CompiledTransformation#performAsInt(Object)}, for transformations into long or {@link Long}.
+    */
+   public long performAsLong( S src )
+   {
+      MethodHandle handle = this.exactHandle(src.getClass(), Object.class, long.class);
+      if( handle == null )
+      {
+         return toLong(this.performOn(src));
+      }
+      try
+      {
+         return (long)handle.invokeExact((Object)src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Same as {@link CompiledTransformation#performAsInt(Object)}, for transformations into double or {@link Double}.
+    */
+   public double performAsDouble( S src )
+   {
+      MethodHandle handle = this.exactHandle(src.getClass(), Object.class, double.class);
+      if( handle == null )
+      {
+         return toDouble(this.performOn(src));
+      }
+      try
+      {
+         return (double)handle.invokeExact((Object)src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Performs the transformation on a primitive value. The transformer is resolved for the primitive type itself,
+    * e.g. <code>int.class</code>, and when it is a transformer method that takes an int (or a chain of them), the
+    * value is never boxed.
+    *
+    * @param src The value to perform a transformation on.
+    * @return The result of the transformation.
+    * @throws TransformationException If there is no transformer for the primitive type, or if the transformation
+    * fails.
+    */
+   public T performOnInt( int src )
+   {
+      MethodHandle handle = this.exactHandle(int.class, int.class, Object.class);
+      if( handle == null )
+      {
+         return (T)this.performBoxed(int.class, src);
+      }
+      try
+      {
+         return (T)(Object)handle.invokeExact(src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Same as {@link CompiledTransformation#performOnInt(int)}, for long values.
+    */
+   public T performOnLong( long src )
+   {
+      MethodHandle handle = this.exactHandle(long.class, long.class, Object.class);
+      if( handle == null )
+      {
+         return (T)this.performBoxed(long.class, src);
+      }
+      try
+      {
+         return (T)(Object)handle.invokeExact(src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Same as {@link CompiledTransformation#performOnInt(int)}, for double values.
+    */
+   public T performOnDouble( double src )
+   {
+      MethodHandle handle = this.exactHandle(double.class, double.class, Object.class);
+      if( handle == null )
+      {
+         return (T)this.performBoxed(double.class, src);
+      }
+      try
+      {
+         return (T)(Object)handle.invokeExact(src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Performs the transformation on a primitive value and returns its result as a primitive. The transformer is
+    * resolved for the primitive type itself, and when it is a transformer method from int to int (or a chain of
+    * them), neither the value nor the result is ever boxed.
+    *
+    * @param src The value to perform a transformation on.
+    * @return The result of the transformation. The transformation's target type must be int or {@link Integer}.
+    * @throws TransformationException If there is no transformer for the primitive type, if the transformation fails,
+    * or if its result is null.
+    */
+   public int performAsInt( int src )
+   {
+      MethodHandle handle = this.exactHandle(int.class, int.class, int.class);
+      if( handle == null )
+      {
+         return toInt(this.performBoxed(int.class, src));
+      }
+      try
+      {
+         return (int)handle.invokeExact(src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Same as {@link CompiledTransformation#performAsInt(int)}, from long values into int or {@link Integer}.
+    */
+   public int performAsInt( long src )
+   {
+      MethodHandle handle = this.exactHandle(long.class, long.class, int.class);
+      if( handle == null )
+      {
+         return toInt(this.performBoxed(long.class, src));
+      }
+      try
+      {
+         return (int)handle.invokeExact(src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Same as {@link CompiledTransformation#performAsInt(int)}, from double values into int or {@link Integer}.
+    */
+   public int performAsInt( double src )
+   {
+      MethodHandle handle = this.exactHandle(double.class, double.class, int.class);
+      if( handle == null )
+      {
+         return toInt(this.performBoxed(double.class, src));
+      }
+      try
+      {
+         return (int)handle.invokeExact(src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Same as {@link CompiledTransformation#performAsInt(int)}, from int values into long or {@link Long}.
+    */
+   public long performAsLong( int src )
+   {
+      MethodHandle handle = this.exactHandle(int.class, int.class, long.class);
+      if( handle == null )
+      {
+         return toLong(this.performBoxed(int.class, src));
+      }
+      try
+      {
+         return (long)handle.invokeExact(src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Same as {@link CompiledTransformation#performAsInt(int)}, from long values into long or {@link Long}.
+    */
+   public long performAsLong( long src )
+   {
+      MethodHandle handle = this.exactHandle(long.class, long.class, long.class);
+      if( handle == null )
+      {
+         return toLong(this.performBoxed(long.class, src));
+      }
+      try
+      {
+         return (long)handle.invokeExact(src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Same as {@link CompiledTransformation#performAsInt(int)}, from double values into long or {@link Long}.
+    */
+   public long performAsLong( double src )
+   {
+      MethodHandle handle = this.exactHandle(double.class, double.class, long.class);
+      if( handle == null )
+      {
+         return toLong(this.performBoxed(double.class, src));
+      }
+      try
+      {
+         return (long)handle.invokeExact(src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Same as {@link CompiledTransformation#performAsInt(int)}, from int values into double or {@link Double}.
+    */
+   public double performAsDouble( int src )
+   {
+      MethodHandle handle = this.exactHandle(int.class, int.class, double.class);
+      if( handle == null )
+      {
+         return toDouble(this.performBoxed(int.class, src));
+      }
+      try
+      {
+         return (double)handle.invokeExact(src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Same as {@link CompiledTransformation#performAsInt(int)}, from long values into double or {@link Double}.
+    */
+   public double performAsDouble( long src )
+   {
+      MethodHandle handle = this.exactHandle(long.class, long.class, double.class);
+      if( handle == null )
+      {
+         return toDouble(this.performBoxed(long.class, src));
+      }
+      try
+      {
+         return (double)handle.invokeExact(src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Same as {@link CompiledTransformation#performAsInt(int)}, from double values into double or {@link Double}.
+    */
+   public double performAsDouble( double src )
+   {
+      MethodHandle handle = this.exactHandle(double.class, double.class, double.class);
+      if( handle == null )
+      {
+         return toDouble(this.performBoxed(double.class, src));
+      }
+      try
+      {
+         return (double)handle.invokeExact(src);
+      }
+      catch (Throwable t)
+      {
+         throw propagate(t);
+      }
+   }
+
+   /**
+    * Same as {@link CompiledTransformation#performOn(Object)}.
+    */
+   @Override
+   public T apply( S src )
+   {
+      return this.performOn(src);
+   }
+
+   /**
+    * Returns a collector that transforms each element and passes the result on to a downstream collector, in a single
+    * pass.
+    *
+    * @param downstream The collector that will receive the transformed elements.
+    * @param <A> The downstream collector's accumulation type.
+    * @param <R> The downstream collector's result type.
+    * @return A collector that transforms elements before collecting them.
+    */
+   public <A, R> Collector<S, ?, R> collecting( Collector<? super T, A, R> downstream )
+   {
+      return Collectors.mapping(this, downstream);
+   }
+
+   /**
+    * @return A collector that transforms each element and collects the results into a list.
+    */
+   public Collector<S, ?, List<T>> toList()
+   {
+      return this.collecting(Collectors.<T>toList());
+   }
+
+   /**
+    * Returns an iterator that transforms the elements of another iterator as they are requested.
+    *
+    * @param sources The iterator over the objects to transform.
+    * @return A lazily transforming iterator. Removing from it removes from sources.
+    */
+   public Iterator<T> lazily( Iterator<? extends S> sources )
+   {
+      return new LazyTransformations.TransformingIterator<S, T>(this, sources);
+   }
+
+   /**
+    * Returns a spliterator that transforms the elements of another spliterator as they are traversed. It splits
+    * wherever sources splits, so it parallelizes as well as the underlying source does.
+    *
+    * @param sources The spliterator over the objects to transform.
+    * @return A lazily transforming spliterator.
+    */
+   public Spliterator<T> lazily( Spliterator<? extends S> sources )
+   {
+      return new LazyTransformations.TransformingSpliterator<S, T>(this, sources);
+   }
+
+   /**
+    * Returns a stream of the transformed elements of an iterable. Elements are transformed as the stream consumes them.
+    *
+    * @param sources The objects to transform.
+    * @param parallel Whether the returned stream should be parallel.
+    * @return A stream of transformed elements.
+    */
+   public Stream<T> stream( Iterable<? extends S> sources, boolean parallel )
+   {
+      return StreamSupport.stream(this.lazily(sources.spliterator()), parallel);
+   }
+
+   /**
+    * @return The type this transformation transforms into.
+    */
+   public Class<T> getTargetType()
+   {
+      return targetType;
+   }
+
+   /**
+    * @return The usage statistics of this transformation's memoized results, or null if it is not memoized.
+    */
+   public CacheStatistics getMemoizationStatistics()
+   {
+      return this.resultCache == null ? null : this.resultCache.getStatistics();
+   }
+
+   /**
+    * @return The initial capacity for a hash based collection that will hold the given number of elements without
+    * being resized.
+    */
+   private static int capacityFor( int size )
+   {
+      return size < 3 ? size + 1 : (int)(size / 0.75f + 1.0f);
+   }
+
+   private BatchTransformation orderedBatch()
+   {
+      return this.batch.isOrdered() ? this.batch : this.batch.inOrder();
+   }
+
+   /**
+    * Returns the exactly typed handle for the transformer of a source type, if it has the given primitive types.
+    * Transformations that memoize results or preserve identity, and invocations being recorded by Flight Recorder,
+    * always go through the transformer instead.
+    *
+    * @param sourceType The source type to resolve the transformer for.
+    * @param parameterType The type the handle must take, a primitive or Object.
+    * @param returnType The type the handle must return, a primitive or Object.
+    * @return The handle, or null if the transformer cannot be invoked with those types.
+    */
+   private MethodHandle exactHandle( Class<?> sourceType, Class<?> parameterType, Class<?> returnType )
+   {
+      if( this.resultCache != null || this.preserveIdentity )
+      {
+         return null;
+      }
+      if( FlightRecorderSupport.AVAILABLE && new InvocationEvent().isEnabled() )
+      {
+         return null;
+      }
+
+      Transformer transformer = this.resolveFor(sourceType);
+      MethodHandle handle = null;
+      if( transformer instanceof SimpleTransformer )
+      {
+         handle = ((SimpleTransformer)transformer).asExactHandle();
+      }
+      else if( transformer instanceof TransformerChain )
+      {
+         handle = ((TransformerChain)transformer).asExactHandle();
+      }
+
+      if( handle == null || handle.type().parameterType(0) != parameterType || handle.type().returnType() != returnType )
+      {
+         return null;
+      }
+      return handle;
+   }
+
+   /**
+    * Transforms a boxed primitive value with the transformer for the primitive type.
+    */
+   private Object performBoxed( Class<?> primitiveType, Object src )
+   {
+      return this.transform(this.resolveFor(primitiveType), src, this.operationContext(this.context));
+   }
+
+   private static int toInt( Object result )
+   {
+      return ((Integer)nonNull(result, int.class)).intValue();
+   }
+
+   private static long toLong( Object result )
+   {
+      return ((Long)nonNull(result, long.class)).longValue();
+   }
+
+   private static double toDouble( Object result )
+   {
+      return ((Double)nonNull(result, double.class)).doubleValue();
+   }
+
+   private static Object nonNull( Object result, Class<?> primitiveType )
+   {
+      if( result == null )
+      {
+         throw new TransformationException("The transformation returned null, which cannot be converted to " +
+               primitiveType.getName());
+      }
+      return result;
+   }
+
+   private static RuntimeException propagate( Throwable t )
+   {
+      if( t instanceof TransformationException )
+      {
+         return (TransformationException)t;
+      }
+      if( t instanceof Error )
+      {
+         throw (Error)t;
+      }
+      return new TransformationException("Error while transforming", t);
+   }
+
+   TransformationContext getContext()
+   {
+      return context;
+   }
+
+   /**
+    * Transforms a source object using the given context instead of the compiled one.
+    */
+   T transform( Object src, TransformationContext ctx )
+   {
+      return (T)this.transform(this.resolveFor(src.getClass()), src, this.operationContext(ctx));
+   }
+
+   /**
+    * @return The context to perform the transformation with, whose lazy variables are computed for this performance
+    * only. If it preserves identity, this is a context that belongs to a graph transformation.
+    */
+   TransformationContext operationContext( TransformationContext ctx )
+   {
+      TransformationContext performed = ctx.forPerformance();
+      return this.preserveIdentity ? performed.withObjectGraph() : performed;
+   }
+
+   /**
+    * Transforms a source object with an already resolved transformer, going through the graph transformation's
+    * identity map and the memoized results if there are any.
+    */
+   Object transform( Transformer transformer, Object src, TransformationContext ctx )
+   {
+      ObjectGraph graph = ctx.getObjectGraph();
+      if( graph != null )
+      {
+         return graph.transform(transformer, this.resultCache, src, this.targetType, ctx);
+      }
+      // the compiled context is shared, so each source object gets a context of its own
+      TransformationContext own = ctx.isFrozen() ? ctx.overlay() : ctx;
+      if( this.resultCache != null )
+      {
+         return this.resultCache.transform(transformer, src, own);
+      }
+      return transformer.transform(src, own);
+   }
+
+   /**
+    * Returns the transformer to use for a source class, resolving it if it is not in the inline cache.
+    *
+    * @param sourceType The source class.
+    * @return The transformer for the source class. Never null.
+    * @throws TransformationException If there is no transformer for the source class.
+    */
+   Transformer resolveFor( Class<?> sourceType )
+   {
+      TransformerRegistry registry = TransformerRegistry.getInstance();
+      Object generation = registry.getGeneration();
+      InlineCache cache = this.inlineCache;
+
+      if( cache.generation == generation )
+      {
+         Class<?>[] sourceTypes = cache.sourceTypes;
+         for( int i=0; i<sourceTypes.length; i++ )
+         {
+            if( sourceTypes[i] == sourceType )
+            {
+               return cache.transformers[i];
+            }
+         }
+      }
+
+      Transformer transformer = registry.resolve(sourceType, this.targetType, this.transformerNames,
+            this.deriveTransformation, this.transformationSteps);
+      this.inlineCache = this.extend(cache, generation, sourceType, transformer);
+      return transformer;
+   }
+
+   private InlineCache extend( InlineCache cache, Object generation, Class<?> sourceType, Transformer transformer )
+   {
+      // entries resolved against an older graph are discarded
+      int kept = cache.generation == generation ? Math.min(cache.sourceTypes.length, MAX_INLINE_ENTRIES - 1) : 0;
+
+      Class<?>[] sourceTypes = new Class<?>[ kept + 1 ];
+      Transformer[] transformers = new Transformer[ kept + 1 ];
+
+      // the newest entry goes first, the oldest ones fall off the end
+      sourceTypes[0] = sourceType;
+      transformers[0] = transformer;
+      System.arraycopy(cache.sourceTypes, 0, sourceTypes, 1, kept);
+      System.arraycopy(cache.transformers, 0, transformers, 1, kept);
+
+      return new InlineCache(generation, sourceTypes, transformers);
+   }
+}
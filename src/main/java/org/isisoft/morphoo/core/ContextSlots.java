@@ -0,0 +1,78 @@
+package org.isisoft.morphoo.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns context variable names into dense integer slots. A name is always assigned the same slot for the lifetime of
+ * the class loader, so slots can be resolved once when a transformer method is analyzed and then used to read
+ * {@link TransformationContext} values without hashing.
+ *
+ * Only the first {@link ContextSlots#MAX_SLOTS} names are given a slot, so that neither the table nor the contexts
+ * grow without limit when names are built at runtime. The names that come later never get one, and contexts keep
+ * them in a map instead.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class ContextSlots
+{
+   /**
+    * Slot value returned for names that have never been interned.
+    */
+   static final int NO_SLOT = -1;
+
+   /**
+    * Number of names that are given a slot.
+    */
+   static final int MAX_SLOTS = 256;
+
+   private static final ConcurrentMap<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+
+   private static int nextSlot = 0;
+
+
+   private ContextSlots()
+   {
+   }
+
+   /**
+    * @param name A context variable name.
+    * @return The slot for the given name, assigning a new one if it has not been interned yet, or
+    * {@link ContextSlots#NO_SLOT} if it has not and all the slots are taken.
+    */
+   static int slotOf(String name)
+   {
+      Integer slot = slots.get(name);
+      if( slot != null )
+      {
+         return slot;
+      }
+
+      synchronized (slots)
+      {
+         slot = slots.get(name);
+         if( slot == null )
+         {
+            if( nextSlot == MAX_SLOTS )
+            {
+               return NO_SLOT;
+            }
+            slot = nextSlot++;
+            slots.put(name, slot);
+         }
+         return slot;
+      }
+   }
+
+   /**
+    * @param name A context variable name.
+    * @return The slot for the given name, or {@link ContextSlots#NO_SLOT} if the name has never been interned or
+    * has no slot.
+    */
+   static int existingSlotOf(String name)
+   {
+      Integer slot = slots.get(name);
+      return slot != null ? slot : NO_SLOT;
+   }
+}
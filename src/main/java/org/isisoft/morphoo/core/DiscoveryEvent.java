@@ -0,0 +1,52 @@
+package org.isisoft.morphoo.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.util.Collection;
+
+/**
+ * Flight Recorder event for the discovery of transformer methods when the framework is first used, either from the
+ * transformer index or by scanning the classpath.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+@Name("org.isisoft.morphoo.Discovery")
+@Label("Transformer Discovery")
+@Category(FlightRecorderSupport.CATEGORY)
+@Description("Discovery of the transformer methods in the registered packages and classes")
+final class DiscoveryEvent extends jdk.jfr.Event
+{
+   @Label("Packages")
+   String packages;
+
+   @Label("Indexed")
+   @Description("Whether the classes were read from the transformer index instead of scanning the classpath")
+   boolean indexed;
+
+   @Label("Class Count")
+   @Description("Number of classes read from the transformer index or found by the classpath scan")
+   int classCount;
+
+   @Label("Transformer Method Count")
+   int transformerMethodCount;
+
+   /**
+    * Ends the event and commits it if it is being recorded.
+    */
+   void record( Collection<String> packages, boolean indexed, int classCount, int transformerMethodCount )
+   {
+      this.end();
+      if( this.shouldCommit() )
+      {
+         this.packages = FlightRecorderSupport.join(packages);
+         this.indexed = indexed;
+         this.classCount = classCount;
+         this.transformerMethodCount = transformerMethodCount;
+         this.commit();
+      }
+   }
+}
@@ -0,0 +1,134 @@
+package org.isisoft.morphoo.core;
+
+import java.util.List;
+
+/**
+ * Support for emitting Java Flight Recorder events. The event classes extend {@code jdk.jfr.Event}, which is missing
+ * from Java 8 runtimes older than 8u262, so they are only instantiated when {@link #AVAILABLE} is true. When no
+ * recording is taking place, creating and beginning an event costs next to nothing.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class FlightRecorderSupport
+{
+   /** Category under which all the framework's events are shown */
+   static final String CATEGORY = "Morphoo";
+
+   /** Whether the Flight Recorder API is present in the running JVM */
+   static final boolean AVAILABLE = isAvailable();
+
+   private FlightRecorderSupport()
+   {
+   }
+
+   private static boolean isAvailable()
+   {
+      try
+      {
+         Class.forName("jdk.jfr.Event", false, FlightRecorderSupport.class.getClassLoader());
+         return true;
+      }
+      catch (ClassNotFoundException e)
+      {
+         return false;
+      }
+   }
+
+   /**
+    * @return The names of the transformer methods a transformer invokes, in order and separated by commas. Null if
+    * the transformer does not invoke any transformer method.
+    */
+   static String namesOf( Transformer transformer )
+   {
+      StringBuilder names = new StringBuilder();
+      appendNames(transformer, names);
+      return names.length() > 0 ? names.toString() : null;
+   }
+
+   private static void appendNames( Transformer transformer, StringBuilder names )
+   {
+      if( transformer instanceof SimpleTransformer )
+      {
+         if( names.length() > 0 )
+         {
+            names.append(',');
+         }
+         names.append(((SimpleTransformer)transformer).getTransformerMethod().getName());
+      }
+      else if( transformer instanceof TransformerChain )
+      {
+         for( Transformer t : ((TransformerChain)transformer).transformerSeq )
+         {
+            appendNames(t, names);
+         }
+      }
+   }
+
+   /**
+    * @return The number of transformer methods a transformer invokes.
+    */
+   static int lengthOf( Transformer transformer )
+   {
+      if( transformer instanceof SimpleTransformer )
+      {
+         return 1;
+      }
+      else if( transformer instanceof TransformerChain )
+      {
+         int length = 0;
+         for( Transformer t : ((TransformerChain)transformer).transformerSeq )
+         {
+            length += lengthOf(t);
+         }
+         return length;
+      }
+      return 0;
+   }
+
+   /**
+    * @return The given names separated by commas, or null if there are none.
+    */
+   static String join( Iterable<?> values )
+   {
+      if( values == null )
+      {
+         return null;
+      }
+
+      StringBuilder joined = new StringBuilder();
+      for( Object v : values )
+      {
+         if( joined.length() > 0 )
+         {
+            joined.append(',');
+         }
+         joined.append(v);
+      }
+      return joined.length() > 0 ? joined.toString() : null;
+   }
+
+   /**
+    * @return The target type of the last transformer method in a chain of transformers.
+    */
+   static Class<?> targetTypeOf( List<Transformer> transformers )
+   {
+      for( int i = transformers.size() - 1; i >= 0; i-- )
+      {
+         Transformer t = transformers.get(i);
+         if( t instanceof SimpleTransformer )
+         {
+            return ((SimpleTransformer)t).getTransformerMethod().getTargetType();
+         }
+         else if( t instanceof TransformerChain )
+         {
+            Class<?> target = targetTypeOf(((TransformerChain)t).transformerSeq);
+            if( target != null )
+            {
+               return target;
+            }
+         }
+      }
+      return null;
+   }
+}
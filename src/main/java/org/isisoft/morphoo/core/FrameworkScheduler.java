@@ -0,0 +1,48 @@
+package org.isisoft.morphoo.core;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Holds the single daemon thread that runs the framework's timed tasks, such as transformation deadlines and route
+ * measurements. Tasks run on it must be short.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class FrameworkScheduler
+{
+   private static volatile ScheduledThreadPoolExecutor scheduler;
+
+   private FrameworkScheduler()
+   {
+   }
+
+   static ScheduledThreadPoolExecutor get()
+   {
+      ScheduledThreadPoolExecutor result = scheduler;
+      if( result == null )
+      {
+         synchronized (FrameworkScheduler.class)
+         {
+            result = scheduler;
+            if( result == null )
+            {
+               result = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+               {
+                  @Override
+                  public Thread newThread(Runnable r)
+                  {
+                     Thread t = new Thread(r, "morphoo-scheduler");
+                     t.setDaemon(true);
+                     return t;
+                  }
+               });
+               result.setRemoveOnCancelPolicy(true);
+               scheduler = result;
+            }
+         }
+      }
+      return result;
+   }
+}
@@ -0,0 +1,23 @@
+package org.isisoft.morphoo.core;
+
+/**
+ * Transformer that returns the source object as is. It is used when the source object is already an instance of the
+ * target type.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class IdentityTransformer implements Transformer
+{
+   static final IdentityTransformer INSTANCE = new IdentityTransformer();
+
+   private IdentityTransformer()
+   {
+   }
+
+   @Override
+   public Object transform(Object src, TransformationContext ctx)
+   {
+      return src;
+   }
+}
@@ -0,0 +1,39 @@
+package org.isisoft.morphoo.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for the creation of the instance that a transformer method is invoked on.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+@Name("org.isisoft.morphoo.Instantiation")
+@Label("Transformer Instantiation")
+@Category(FlightRecorderSupport.CATEGORY)
+@Description("Creation of an instance of a class that declares transformer methods")
+final class InstantiationEvent extends jdk.jfr.Event
+{
+   @Label("Transformer Class")
+   Class<?> transformerClass;
+
+   @Label("Transformer Name")
+   String transformerName;
+
+   /**
+    * Ends the event and commits it if it is being recorded.
+    */
+   void record( TransformerMethod transformerMethod )
+   {
+      this.end();
+      if( this.shouldCommit() )
+      {
+         this.transformerClass = transformerMethod.getJavaMethod().getDeclaringClass();
+         this.transformerName = transformerMethod.getName();
+         this.commit();
+      }
+   }
+}
@@ -0,0 +1,29 @@
+package org.isisoft.morphoo.core;
+
+/**
+ * The mechanisms available to invoke transformer methods. The engine is chosen globally using
+ * {@link Morphoo#setInvocationEngine(InvocationEngine)} and is applied when a transformer method is first bound.
+ *
+ * @author Carlos Munoz
+ */
+public enum InvocationEngine
+{
+   /**
+    * Invokes transformer methods using {@link java.lang.reflect.Method#invoke(Object, Object...)}. This is the slowest
+    * engine, but it works in every environment.
+    */
+   REFLECTION,
+
+   /**
+    * Invokes transformer methods through a {@link java.lang.invoke.MethodHandle} that is bound to the transformer
+    * instance once. This is the default engine.
+    */
+   METHOD_HANDLE,
+
+   /**
+    * Invokes transformer methods through a class generated with {@link java.lang.invoke.LambdaMetafactory}, which
+    * the JIT compiler treats like a direct method call. Transformer methods that the generated class cannot access
+    * (for example non-public methods or classes) are bound using {@link InvocationEngine#METHOD_HANDLE} instead.
+    */
+   LAMBDA_METAFACTORY
+}
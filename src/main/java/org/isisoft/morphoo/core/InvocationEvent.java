@@ -0,0 +1,50 @@
+package org.isisoft.morphoo.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for the execution of a transformer. Chains are recorded as a whole, since their steps are
+ * fused into a single invocation. Steps that are not fused directly into the chain are recorded on their own as well.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+@Name("org.isisoft.morphoo.Invocation")
+@Label("Transformer Invocation")
+@Category(FlightRecorderSupport.CATEGORY)
+@Description("Execution of a transformer method, or of a chain of them")
+@StackTrace(false)
+final class InvocationEvent extends jdk.jfr.Event
+{
+   @Label("Source Type")
+   Class<?> sourceType;
+
+   @Label("Target Type")
+   Class<?> targetType;
+
+   @Label("Transformer Names")
+   String transformerNames;
+
+   @Label("Route Length")
+   int routeLength;
+
+   /**
+    * Ends the event and commits it if it is being recorded.
+    */
+   void record( Object src, Class<?> targetType, Transformer transformer )
+   {
+      this.end();
+      if( this.shouldCommit() )
+      {
+         this.sourceType = src != null ? src.getClass() : null;
+         this.targetType = targetType;
+         this.transformerNames = FlightRecorderSupport.namesOf(transformer);
+         this.routeLength = FlightRecorderSupport.lengthOf(transformer);
+         this.commit();
+      }
+   }
+}
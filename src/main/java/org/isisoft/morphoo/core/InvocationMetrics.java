@@ -0,0 +1,45 @@
+package org.isisoft.morphoo.core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Invocation counters and durations of a transformer method, or of transformer chains. Counters are striped, so
+ * threads recording at the same time don't contend.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class InvocationMetrics
+{
+   private final LongAdder invocations = new LongAdder();
+
+   private final LongAdder errors = new LongAdder();
+
+   private final LatencyHistogram latency = new LatencyHistogram();
+
+
+   void record( long nanos, boolean failed )
+   {
+      this.invocations.increment();
+      if( failed )
+      {
+         this.errors.increment();
+      }
+      this.latency.record(nanos);
+   }
+
+   long getInvocationCount()
+   {
+      return this.invocations.sum();
+   }
+
+   long getErrorCount()
+   {
+      return this.errors.sum();
+   }
+
+   LatencyDistribution getLatency()
+   {
+      return this.latency.snapshot();
+   }
+}
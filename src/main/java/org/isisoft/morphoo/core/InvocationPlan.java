@@ -0,0 +1,155 @@
+package org.isisoft.morphoo.core;
+
+import java.util.Arrays;
+
+import static org.isisoft.morphoo.core.TransformerMethod.TransformerMethodArgument;
+
+/**
+ * A transformer method's arguments compiled into a binding plan. Every argument after the source object is reduced
+ * to either the whole {@link TransformationContext} or the slot of a context variable, so building the invocation
+ * only needs array reads. Variables whose names have no slot (see {@link ContextSlots#MAX_SLOTS}) are read by
+ * name. Methods with up to {@link MethodInvoker#MAX_SPECIALIZED_ARITY} arguments are invoked without allocating an
+ * argument array.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class InvocationPlan
+{
+   /** Binding for an argument that receives the transformation context itself */
+   private static final int WHOLE_CONTEXT = -1;
+
+   /** Binding for an argument that receives a context variable whose name has no slot */
+   private static final int BY_NAME = -2;
+
+   private final TransformerMethod transformerMethod;
+
+   private final int arity;
+
+   /** Binding for each argument. Position 0 is the source object and is never read */
+   private final int[] bindings;
+
+   private final boolean[] required;
+
+
+   private InvocationPlan(TransformerMethod transformerMethod, int[] bindings, boolean[] required)
+   {
+      this.transformerMethod = transformerMethod;
+      this.arity = bindings.length;
+      this.bindings = bindings;
+      this.required = required;
+   }
+
+   /**
+    * Compiles the analyzed arguments of a transformer method into a plan.
+    *
+    * @param transformerMethod The analyzed transformer method.
+    * @return The invocation plan for the method.
+    */
+   static InvocationPlan compile(TransformerMethod transformerMethod)
+   {
+      TransformerMethodArgument[] arguments = transformerMethod.getArguments();
+      int[] bindings = new int[ arguments.length ];
+      boolean[] required = new boolean[ arguments.length ];
+
+      for( int i=1; i<arguments.length; i++ )
+      {
+         if( arguments[i].isTransformationContext() )
+         {
+            bindings[i] = WHOLE_CONTEXT;
+         }
+         else
+         {
+            int slot = ContextSlots.slotOf(arguments[i].getCtxVarName());
+            bindings[i] = slot == ContextSlots.NO_SLOT ? BY_NAME : slot;
+            required[i] = !arguments[i].isNullable();
+         }
+      }
+
+      return new InvocationPlan(transformerMethod, bindings, required);
+   }
+
+   /**
+    * Invokes the transformer method following this plan.
+    *
+    * @param invoker The invoker bound to the transformer method.
+    * @param src The source object.
+    * @param ctx The context to read variables from.
+    * @return The result of the invocation.
+    * @throws TransformationException If a non-nullable context variable is null.
+    * @throws Throwable Anything thrown by the transformer method itself.
+    */
+   Object invoke(MethodInvoker invoker, Object src, TransformationContext ctx) throws Throwable
+   {
+      switch (this.arity)
+      {
+         case 1:
+            return invoker.invoke(src);
+         case 2:
+            return invoker.invoke(src, this.argument(1, ctx));
+         case 3:
+            return invoker.invoke(src, this.argument(1, ctx), this.argument(2, ctx));
+         default:
+            Object[] params = new Object[ this.arity ];
+            params[0] = src;
+            for( int i=1; i<this.arity; i++ )
+            {
+               params[i] = this.argument(i, ctx);
+            }
+            return invoker.invoke(params);
+      }
+   }
+
+   /**
+    * Builds the key to memoize a result under. It is the source object itself when the method takes no other
+    * arguments, and otherwise it includes the values of the context variables the method receives.
+    *
+    * @param src The source object.
+    * @param ctx The context to read variables from.
+    * @return The key for the result of invoking the method.
+    */
+   Object resultKey(Object src, TransformationContext ctx)
+   {
+      if( this.arity == 1 )
+      {
+         return src;
+      }
+
+      Object[] arguments = new Object[ this.arity - 1 ];
+      for( int i=1; i<this.arity; i++ )
+      {
+         int binding = this.bindings[i];
+         arguments[i - 1] = binding == WHOLE_CONTEXT ? Arrays.asList(ctx.snapshotValues()) : this.variable(i, ctx);
+      }
+      return new ResultCache.Key(src, arguments);
+   }
+
+   private Object argument(int idx, TransformationContext ctx)
+   {
+      int binding = this.bindings[idx];
+      if( binding == WHOLE_CONTEXT )
+      {
+         return ctx;
+      }
+
+      Object argValue = this.variable(idx, ctx);
+      if( argValue == null && this.required[idx] )
+      {
+         TransformerMethodArgument argument = this.transformerMethod.getArguments()[idx];
+         throw new TransformationException("Context variable " + argument.getCtxVarName() + " cannot be null " +
+               "in Transformer method " + this.transformerMethod.getJavaMethod().getDeclaringClass().getName() + "." +
+               this.transformerMethod.getJavaMethod().getName());
+      }
+      return argValue;
+   }
+
+   private Object variable(int idx, TransformationContext ctx)
+   {
+      int binding = this.bindings[idx];
+      if( binding == BY_NAME )
+      {
+         return ctx.get(this.transformerMethod.getArguments()[idx].getCtxVarName());
+      }
+      return ctx.getSlot(binding);
+   }
+}
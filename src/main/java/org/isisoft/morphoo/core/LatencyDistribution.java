@@ -0,0 +1,96 @@
+package org.isisoft.morphoo.core;
+
+/**
+ * An immutable snapshot of measured durations. Durations are grouped in buckets by their power of two, so percentiles
+ * are accurate to within a factor of two.
+ *
+ * @author Carlos Munoz
+ */
+public class LatencyDistribution
+{
+   private final long[] bucketCounts;
+
+   private final long count;
+
+   private final long totalNanos;
+
+   private final long maxNanos;
+
+
+   LatencyDistribution(long[] bucketCounts, long totalNanos, long maxNanos)
+   {
+      long count = 0;
+      for( long c : bucketCounts )
+      {
+         count += c;
+      }
+      this.bucketCounts = bucketCounts;
+      this.count = count;
+      this.totalNanos = totalNanos;
+      this.maxNanos = maxNanos;
+   }
+
+   /**
+    * @return The number of durations measured.
+    */
+   public long getCount()
+   {
+      return count;
+   }
+
+   /**
+    * @return The mean duration in nanoseconds, or 0 if nothing has been measured.
+    */
+   public double getMeanNanos()
+   {
+      return count == 0 ? 0.0 : (double)totalNanos / count;
+   }
+
+   /**
+    * @return The longest duration in nanoseconds.
+    */
+   public long getMaxNanos()
+   {
+      return maxNanos;
+   }
+
+   /**
+    * Returns an upper bound for a percentile of the durations. At least the given fraction of the durations are
+    * shorter than or equal to the returned value, which is at most twice the actual percentile.
+    *
+    * @param percentile The percentile, between 0 and 100.
+    * @return The upper bound in nanoseconds, or 0 if nothing has been measured.
+    */
+   public long getPercentileNanos(double percentile)
+   {
+      if( percentile < 0 || percentile > 100 )
+      {
+         throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+      }
+      if( count == 0 )
+      {
+         return 0;
+      }
+
+      long rank = (long)Math.ceil(percentile / 100 * count);
+      long seen = 0;
+      for( int i=0; i<bucketCounts.length; i++ )
+      {
+         seen += bucketCounts[i];
+         if( seen >= rank && seen > 0 )
+         {
+            // the bucket's upper bound, but never more than what was actually measured
+            long upperBound = i == 0 ? 0 : (i == 63 ? Long.MAX_VALUE : (1L << i) - 1);
+            return Math.min(upperBound, maxNanos);
+         }
+      }
+      return maxNanos;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "LatencyDistribution{count=" + count + ", mean=" + getMeanNanos() + "ns, p50=" + getPercentileNanos(50) +
+            "ns, p99=" + getPercentileNanos(99) + "ns, max=" + maxNanos + "ns}";
+   }
+}
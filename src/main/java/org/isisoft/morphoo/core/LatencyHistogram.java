@@ -0,0 +1,59 @@
+package org.isisoft.morphoo.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds. Durations are counted in buckets by their power of two, so bucket i
+ * holds durations from 2^(i-1) up to 2^i - 1 nanoseconds, and bucket 0 holds durations of 0.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class LatencyHistogram
+{
+   static final int BUCKETS = 64;
+
+   private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+   private final LongAdder totalNanos = new LongAdder();
+
+   private final AtomicLong maxNanos = new AtomicLong();
+
+
+   void record( long nanos )
+   {
+      if( nanos < 0 )
+      {
+         nanos = 0;
+      }
+      // non-negative longs have at least one leading zero, so the index is at most 63
+      this.buckets.incrementAndGet( bucketOf(nanos) );
+      this.totalNanos.add(nanos);
+
+      long max = this.maxNanos.get();
+      while( nanos > max && !this.maxNanos.compareAndSet(max, nanos) )
+      {
+         max = this.maxNanos.get();
+      }
+   }
+
+   static int bucketOf( long nanos )
+   {
+      return BUCKETS - Long.numberOfLeadingZeros(nanos);
+   }
+
+   /**
+    * @return The durations recorded so far. Durations recorded while the snapshot is taken may be partially included.
+    */
+   LatencyDistribution snapshot()
+   {
+      long[] counts = new long[BUCKETS];
+      for( int i=0; i<BUCKETS; i++ )
+      {
+         counts[i] = this.buckets.get(i);
+      }
+      return new LatencyDistribution(counts, this.totalNanos.sum(), this.maxNanos.get());
+   }
+}
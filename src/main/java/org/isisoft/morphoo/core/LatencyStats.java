@@ -0,0 +1,58 @@
+package org.isisoft.morphoo.core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durations measured for the invocations of a transformer method, used to weigh routes when they are measured at
+ * runtime. Durations are recorded into counters that don't contend between threads, and are periodically folded into
+ * an exponentially weighted average, so that the average follows changes in the method's behaviour.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class LatencyStats
+{
+   /** Weight of the latest period in the average */
+   private static final double SMOOTHING = 0.5;
+
+   private final LongAdder totalNanos = new LongAdder();
+
+   private final LongAdder count = new LongAdder();
+
+   private volatile double averageNanos = Double.NaN;
+
+
+   void record( long nanos )
+   {
+      this.totalNanos.add(nanos);
+      this.count.increment();
+   }
+
+   /**
+    * Folds the durations recorded since the last call into the average.
+    *
+    * @return True if there were any durations to fold.
+    */
+   boolean fold()
+   {
+      long periodCount = this.count.sumThenReset();
+      long periodNanos = this.totalNanos.sumThenReset();
+      if( periodCount == 0 )
+      {
+         return false;
+      }
+
+      double periodAverage = (double)periodNanos / periodCount;
+      double average = this.averageNanos;
+      this.averageNanos = Double.isNaN(average) ? periodAverage : average + SMOOTHING * (periodAverage - average);
+      return true;
+   }
+
+   /**
+    * @return The average duration in nanoseconds, or NaN if nothing has been measured yet.
+    */
+   double getAverageNanos()
+   {
+      return this.averageNanos;
+   }
+}
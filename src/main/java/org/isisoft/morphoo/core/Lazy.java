@@ -0,0 +1,158 @@
+package org.isisoft.morphoo.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.function.Supplier;
+
+/**
+ * The deferred result of a transformation, created with
+ * {@link CompiledTransformation#performOnDeferred(Object)} or
+ * {@link CompiledTransformation#performOnAllDeferred(java.util.Collection)}.
+ *
+ * Nothing is resolved or transformed until {@link Lazy#get()} is first called. The result is then kept, and returned
+ * by every later call. Threads calling get at the same time wait for a single transformation. If the transformation
+ * fails, the exception is thrown to the callers waiting for it, and the next call tries again.
+ *
+ * @author Carlos Munoz
+ */
+public final class Lazy<T> implements Supplier<T>
+{
+   private static final Object UNSET = new Object();
+
+   /** Computes the result. Released once the result is known */
+   private Supplier<T> computation;
+
+   private volatile Object value = UNSET;
+
+
+   Lazy(Supplier<T> computation)
+   {
+      this.computation = computation;
+   }
+
+   /**
+    * Returns the result of the transformation, performing it if this is the first call.
+    *
+    * @return The result of the transformation.
+    * @throws TransformationException If the transformation fails.
+    */
+   @Override
+   public T get()
+   {
+      Object result = this.value;
+      if( result == UNSET )
+      {
+         synchronized (this)
+         {
+            result = this.value;
+            if( result == UNSET )
+            {
+               result = this.computation.get();
+               this.value = result;
+               // the sources and context are no longer needed
+               this.computation = null;
+            }
+         }
+      }
+      return (T)result;
+   }
+
+   /**
+    * @return True if the transformation has been performed and its result is available without waiting.
+    */
+   public boolean isDone()
+   {
+      return this.value != UNSET;
+   }
+
+   @Override
+   public String toString()
+   {
+      Object result = this.value;
+      return result == UNSET ? "Lazy[pending]" : "Lazy[" + result + "]";
+   }
+
+   /**
+    * Creates a proxy that implements an interface by delegating every call to the result of a deferred
+    * transformation. The first call performs the transformation.
+    *
+    * @param targetType The interface to implement.
+    * @param lazy The deferred transformation.
+    * @return The proxy.
+    * @throws TransformationException If targetType is not an interface.
+    */
+   static <T> T proxy( Class<T> targetType, Lazy<T> lazy )
+   {
+      if( !targetType.isInterface() )
+      {
+         throw new TransformationException("Cannot create a deferred proxy for " + targetType.getName() +
+               " because it is not an interface");
+      }
+      return targetType.cast( Proxy.newProxyInstance(targetType.getClassLoader(), new Class<?>[]{targetType},
+            new DeferredInvocationHandler(lazy)) );
+   }
+
+
+   /**
+    * Forwards proxy calls, including equals, hashCode and toString, to the result of a deferred transformation. A
+    * deferred proxy passed to equals is compared by its own result, so that a proxy is equal to itself.
+    */
+   private static final class DeferredInvocationHandler implements InvocationHandler
+   {
+      private final Lazy<?> lazy;
+
+      private DeferredInvocationHandler(Lazy<?> lazy)
+      {
+         this.lazy = lazy;
+      }
+
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+      {
+         Object target = this.lazy.get();
+         if( target == null )
+         {
+            throw new TransformationException("The deferred transformation returned null, so " + method.getName() +
+                  " cannot be invoked on it");
+         }
+
+         if( isEquals(method) )
+         {
+            args = new Object[]{ unwrap(args[0]) };
+         }
+
+         try
+         {
+            return method.invoke(target, args);
+         }
+         catch (InvocationTargetException e)
+         {
+            throw e.getCause();
+         }
+      }
+
+      private static boolean isEquals( Method method )
+      {
+         return method.getName().equals("equals") && method.getParameterTypes().length == 1
+               && method.getParameterTypes()[0] == Object.class;
+      }
+
+      /**
+       * @return The result behind obj if it is a deferred proxy, or obj itself otherwise.
+       */
+      private static Object unwrap( Object obj )
+      {
+         if( obj != null && Proxy.isProxyClass(obj.getClass()) )
+         {
+            InvocationHandler handler = Proxy.getInvocationHandler(obj);
+            if( handler instanceof DeferredInvocationHandler )
+            {
+               return ((DeferredInvocationHandler)handler).lazy.get();
+            }
+         }
+         return obj;
+      }
+   }
+}
@@ -0,0 +1,269 @@
+package org.isisoft.morphoo.core;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Iterator, spliterator, list and map views that apply a compiled transformation to each element of an underlying
+ * source as it is consumed. Nothing is transformed ahead of time and no intermediate collection is built. List and
+ * map views transform an element again every time it is read, so they suit consumers that read each element once.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class LazyTransformations
+{
+   /** Characteristics of a source spliterator that still hold after its elements are transformed */
+   private static final int PRESERVED_CHARACTERISTICS =
+         Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE | Spliterator.CONCURRENT;
+
+   private LazyTransformations()
+   {
+   }
+
+
+   static final class TransformingIterator<S, T> implements Iterator<T>
+   {
+      private final CompiledTransformation<S, T> transformation;
+
+      private final Iterator<? extends S> source;
+
+      TransformingIterator(CompiledTransformation<S, T> transformation, Iterator<? extends S> source)
+      {
+         this.transformation = transformation;
+         this.source = source;
+      }
+
+      @Override
+      public boolean hasNext()
+      {
+         return this.source.hasNext();
+      }
+
+      @Override
+      public T next()
+      {
+         return transformElement(this.transformation, this.source.next());
+      }
+
+      @Override
+      public void remove()
+      {
+         this.source.remove();
+      }
+   }
+
+
+   static final class TransformingSpliterator<S, T> implements Spliterator<T>
+   {
+      private final CompiledTransformation<S, T> transformation;
+
+      private final Spliterator<? extends S> source;
+
+      TransformingSpliterator(CompiledTransformation<S, T> transformation, Spliterator<? extends S> source)
+      {
+         this.transformation = transformation;
+         this.source = source;
+      }
+
+      @Override
+      public boolean tryAdvance(final Consumer<? super T> action)
+      {
+         return this.source.tryAdvance(new Consumer<S>()
+         {
+            @Override
+            public void accept(S src)
+            {
+               action.accept(transformElement(transformation, src));
+            }
+         });
+      }
+
+      @Override
+      public void forEachRemaining(final Consumer<? super T> action)
+      {
+         this.source.forEachRemaining(new Consumer<S>()
+         {
+            @Override
+            public void accept(S src)
+            {
+               action.accept(transformElement(transformation, src));
+            }
+         });
+      }
+
+      @Override
+      public Spliterator<T> trySplit()
+      {
+         Spliterator<? extends S> prefix = this.source.trySplit();
+         return prefix == null ? null : new TransformingSpliterator<S, T>(this.transformation, prefix);
+      }
+
+      @Override
+      public long estimateSize()
+      {
+         return this.source.estimateSize();
+      }
+
+      @Override
+      public int characteristics()
+      {
+         return this.source.characteristics() & PRESERVED_CHARACTERISTICS;
+      }
+   }
+
+
+   /**
+    * Transforms a single element, which may be null.
+    */
+   private static <S, T> T transformElement(CompiledTransformation<S, T> transformation, S src)
+   {
+      return src == null ? null : transformation.performOn(src);
+   }
+
+
+   static class TransformingList<S, T> extends AbstractList<T>
+   {
+      private final CompiledTransformation<S, T> transformation;
+
+      private final List<? extends S> source;
+
+      TransformingList(CompiledTransformation<S, T> transformation, List<? extends S> source)
+      {
+         this.transformation = transformation;
+         this.source = source;
+      }
+
+      @Override
+      public T get(int index)
+      {
+         return transformElement(this.transformation, this.source.get(index));
+      }
+
+      @Override
+      public int size()
+      {
+         return this.source.size();
+      }
+
+      @Override
+      public T remove(int index)
+      {
+         return transformElement(this.transformation, this.source.remove(index));
+      }
+
+      @Override
+      public Iterator<T> iterator()
+      {
+         // iterating the source is cheaper than indexing it when it is not random access
+         return new TransformingIterator<S, T>(this.transformation, this.source.iterator());
+      }
+
+      @Override
+      public Spliterator<T> spliterator()
+      {
+         return new TransformingSpliterator<S, T>(this.transformation, this.source.spliterator());
+      }
+   }
+
+
+   static final class RandomAccessTransformingList<S, T> extends TransformingList<S, T> implements RandomAccess
+   {
+      RandomAccessTransformingList(CompiledTransformation<S, T> transformation, List<? extends S> source)
+      {
+         super(transformation, source);
+      }
+   }
+
+
+   static final class TransformingMap<K, S, T> extends AbstractMap<K, T>
+   {
+      private final CompiledTransformation<S, T> transformation;
+
+      private final Map<K, ? extends S> source;
+
+      private Set<Map.Entry<K, T>> entrySet;
+
+      TransformingMap(CompiledTransformation<S, T> transformation, Map<K, ? extends S> source)
+      {
+         this.transformation = transformation;
+         this.source = source;
+      }
+
+      @Override
+      public T get(Object key)
+      {
+         return transformElement(this.transformation, this.source.get(key));
+      }
+
+      @Override
+      public boolean containsKey(Object key)
+      {
+         return this.source.containsKey(key);
+      }
+
+      @Override
+      public int size()
+      {
+         return this.source.size();
+      }
+
+      @Override
+      public T remove(Object key)
+      {
+         return transformElement(this.transformation, this.source.remove(key));
+      }
+
+      @Override
+      public Set<Map.Entry<K, T>> entrySet()
+      {
+         if( this.entrySet == null )
+         {
+            this.entrySet = new AbstractSet<Map.Entry<K, T>>()
+            {
+               @Override
+               public Iterator<Map.Entry<K, T>> iterator()
+               {
+                  final Iterator<? extends Map.Entry<K, ? extends S>> it = source.entrySet().iterator();
+                  return new Iterator<Map.Entry<K, T>>()
+                  {
+                     @Override
+                     public boolean hasNext()
+                     {
+                        return it.hasNext();
+                     }
+
+                     @Override
+                     public Map.Entry<K, T> next()
+                     {
+                        Map.Entry<K, ? extends S> e = it.next();
+                        return new SimpleImmutableEntry<K, T>(e.getKey(), transformElement(transformation, e.getValue()));
+                     }
+
+                     @Override
+                     public void remove()
+                     {
+                        it.remove();
+                     }
+                  };
+               }
+
+               @Override
+               public int size()
+               {
+                  return source.size();
+               }
+            };
+         }
+         return this.entrySet;
+      }
+   }
+}
@@ -0,0 +1,114 @@
+package org.isisoft.morphoo.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how the results of a transformation are memoized: how many of them are kept, or how much they may weigh
+ * in total, and for how long. When the bound is exceeded, the least recently used results are evicted first.
+ *
+ * Policies are immutable. A policy bounded by size is created with {@link #maximumSize(long)}, and one bounded by
+ * weight with {@link #maximumWeight(long, Weigher)}, e.g.
+ * <code>MemoizationPolicy.maximumSize(10000).expireAfterWrite(5, TimeUnit.MINUTES)</code>
+ *
+ * @author Carlos Munoz
+ */
+public final class MemoizationPolicy
+{
+   /**
+    * Calculates the weight of a memoized result.
+    */
+   public interface Weigher
+   {
+      /**
+       * @param source The source object that was transformed.
+       * @param result The result of the transformation. May be null.
+       * @return The weight of the result. Must not be negative.
+       */
+      long weigh(Object source, Object result);
+   }
+
+   private static final Weigher SINGLETON_WEIGHER = new Weigher()
+   {
+      @Override
+      public long weigh(Object source, Object result)
+      {
+         return 1;
+      }
+   };
+
+   private final long maximumWeight;
+
+   private final Weigher weigher;
+
+   private final long expireAfterWriteNanos;
+
+
+   private MemoizationPolicy(long maximumWeight, Weigher weigher, long expireAfterWriteNanos)
+   {
+      this.maximumWeight = maximumWeight;
+      this.weigher = weigher;
+      this.expireAfterWriteNanos = expireAfterWriteNanos;
+   }
+
+   /**
+    * @param maximumSize The maximum number of results to keep.
+    * @return A policy that keeps at most maximumSize results.
+    * @throws IllegalArgumentException If maximumSize is not positive.
+    */
+   public static MemoizationPolicy maximumSize(long maximumSize)
+   {
+      return maximumWeight(maximumSize, SINGLETON_WEIGHER);
+   }
+
+   /**
+    * @param maximumWeight The maximum total weight of the results to keep.
+    * @param weigher Calculates the weight of each result.
+    * @return A policy that keeps results up to a total weight of maximumWeight.
+    * @throws IllegalArgumentException If maximumWeight is not positive.
+    */
+   public static MemoizationPolicy maximumWeight(long maximumWeight, Weigher weigher)
+   {
+      if( maximumWeight <= 0 )
+      {
+         throw new IllegalArgumentException("The maximum size or weight of memoized results must be positive");
+      }
+      if( weigher == null )
+      {
+         throw new IllegalArgumentException("A weigher is required");
+      }
+      return new MemoizationPolicy(maximumWeight, weigher, 0);
+   }
+
+   /**
+    * @param duration How long results are kept after being memoized.
+    * @param unit The unit of duration.
+    * @return A policy like this one whose results expire after the given duration.
+    * @throws IllegalArgumentException If duration is not positive.
+    */
+   public MemoizationPolicy expireAfterWrite(long duration, TimeUnit unit)
+   {
+      if( duration <= 0 )
+      {
+         throw new IllegalArgumentException("The expiry of memoized results must be positive");
+      }
+      return new MemoizationPolicy(this.maximumWeight, this.weigher, unit.toNanos(duration));
+   }
+
+   long getMaximumWeight()
+   {
+      return maximumWeight;
+   }
+
+   Weigher getWeigher()
+   {
+      return weigher;
+   }
+
+   /**
+    * @return Nanoseconds after which results expire, or 0 if they do not expire.
+    */
+   long getExpireAfterWriteNanos()
+   {
+      return expireAfterWriteNanos;
+   }
+}
@@ -0,0 +1,387 @@
+package org.isisoft.morphoo.core;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Invokes a single java method with a pre-bound receiver. Instances are created once per transformer method by
+ * {@link MethodInvoker#bind(InvocationEngine, Method, Object)} and shared by all threads.
+ * Exceptions thrown by the invoked method are propagated as is, without any wrapping.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+abstract class MethodInvoker
+{
+   /**
+    * Maximum arity for which the fixed-arity invocation methods are specialized by the invokers.
+    */
+   static final int MAX_SPECIALIZED_ARITY = 3;
+
+   /**
+    * Invokes the method with any number of arguments.
+    */
+   abstract Object invoke(Object[] args) throws Throwable;
+
+   /*
+    * Fixed-arity invocations. These may only be used when the method's arity matches the number of arguments and is
+    * not greater than MAX_SPECIALIZED_ARITY.
+    */
+
+   Object invoke(Object a0) throws Throwable
+   {
+      return this.invoke(new Object[]{a0});
+   }
+
+   Object invoke(Object a0, Object a1) throws Throwable
+   {
+      return this.invoke(new Object[]{a0, a1});
+   }
+
+   Object invoke(Object a0, Object a1, Object a2) throws Throwable
+   {
+      return this.invoke(new Object[]{a0, a1, a2});
+   }
+
+   /**
+    * Returns a method handle that invokes the method with the receiver already bound, typed as taking and returning
+    * plain objects. Handles are used to fuse several invocations into a single composed handle.
+    *
+    * @return The method handle, or null if this invoker cannot provide one.
+    */
+   MethodHandle asHandle()
+   {
+      return null;
+   }
+
+   /**
+    * Returns a method handle that invokes the method with the receiver already bound, typed with the method's own
+    * primitive parameter and return types and every reference type erased to Object. Primitive values go through it
+    * without being boxed.
+    *
+    * @return The method handle, or null if this invoker cannot provide one.
+    */
+   MethodHandle asExactHandle()
+   {
+      return null;
+   }
+
+   /**
+    * Binds a java method to an invoker.
+    *
+    * @param engine The engine to use.
+    * @param method The method to bind.
+    * @param receiver The instance the method will be invoked on, or null for static methods.
+    * @return An invoker for the method.
+    * @throws InitializationException If the method cannot be bound.
+    */
+   static MethodInvoker bind(InvocationEngine engine, Method method, Object receiver)
+   {
+      switch (engine)
+      {
+         case REFLECTION:
+            return new ReflectiveInvoker(method, receiver);
+
+         case LAMBDA_METAFACTORY:
+            MethodInvoker generated = LambdaInvoker.tryBind(method, receiver);
+            if( generated != null )
+            {
+               return generated;
+            }
+            return new MethodHandleInvoker(method, receiver);
+
+         default:
+            return new MethodHandleInvoker(method, receiver);
+      }
+   }
+
+   private static String describe(Method method)
+   {
+      return method.getDeclaringClass().getName() + "." + method.getName();
+   }
+
+
+   /**
+    * Invoker based on java reflection.
+    */
+   static final class ReflectiveInvoker extends MethodInvoker
+   {
+      private final Method method;
+
+      private final Object receiver;
+
+      ReflectiveInvoker(Method method, Object receiver)
+      {
+         this.method = method;
+         this.receiver = receiver;
+         method.setAccessible(true);
+      }
+
+      @Override
+      Object invoke(Object[] args) throws Throwable
+      {
+         try
+         {
+            return this.method.invoke(this.receiver, args);
+         }
+         catch (InvocationTargetException e)
+         {
+            throw e.getCause();
+         }
+      }
+   }
+
+
+   /**
+    * Invoker based on a method handle adapted to take and return plain objects.
+    */
+   static final class MethodHandleInvoker extends MethodInvoker
+   {
+      private final MethodHandle handle;
+
+      private final MethodHandle exactHandle;
+
+      private final MethodHandle spreader;
+
+      MethodHandleInvoker(Method method, Object receiver)
+      {
+         MethodHandle target;
+         try
+         {
+            method.setAccessible(true);
+            target = MethodHandles.lookup().unreflect(method);
+         }
+         catch (IllegalAccessException e)
+         {
+            throw new InitializationException("Could not bind transformer method " + describe(method), e);
+         }
+
+         if( !Modifier.isStatic(method.getModifiers()) )
+         {
+            target = target.bindTo(receiver);
+         }
+
+         int arity = method.getParameterTypes().length;
+         this.handle = target.asType(MethodType.genericMethodType(arity));
+         this.exactHandle = target.asType(target.type().erase());
+         this.spreader = this.handle.asSpreader(Object[].class, arity);
+      }
+
+      @Override
+      Object invoke(Object[] args) throws Throwable
+      {
+         return (Object)this.spreader.invokeExact(args);
+      }
+
+      @Override
+      MethodHandle asHandle()
+      {
+         return this.handle;
+      }
+
+      @Override
+      MethodHandle asExactHandle()
+      {
+         return this.exactHandle;
+      }
+
+      @Override
+      Object invoke(Object a0) throws Throwable
+      {
+         return (Object)this.handle.invokeExact(a0);
+      }
+
+      @Override
+      Object invoke(Object a0, Object a1) throws Throwable
+      {
+         return (Object)this.handle.invokeExact(a0, a1);
+      }
+
+      @Override
+      Object invoke(Object a0, Object a1, Object a2) throws Throwable
+      {
+         return (Object)this.handle.invokeExact(a0, a1, a2);
+      }
+   }
+
+
+   /**
+    * Functional shapes implemented by the classes generated with {@link LambdaMetafactory}.
+    */
+   interface Function1
+   {
+      Object apply(Object a0);
+   }
+
+   interface Function2
+   {
+      Object apply(Object a0, Object a1);
+   }
+
+   interface Function3
+   {
+      Object apply(Object a0, Object a1, Object a2);
+   }
+
+
+   /**
+    * Invoker that delegates to a class generated with {@link LambdaMetafactory}.
+    */
+   static final class LambdaInvoker extends MethodInvoker
+   {
+      private static final Class<?>[] SHAPES = {null, Function1.class, Function2.class, Function3.class};
+
+      private final Object function;
+
+      private final int arity;
+
+      /** Handle that bypasses the generated class for methods with primitive types, which it would box. May be null */
+      private final MethodHandle exactHandle;
+
+      private LambdaInvoker(Object function, int arity, MethodHandle exactHandle)
+      {
+         this.function = function;
+         this.arity = arity;
+         this.exactHandle = exactHandle;
+      }
+
+      /**
+       * @return An invoker backed by a generated class, or null if one cannot be generated for the method.
+       */
+      static LambdaInvoker tryBind(Method method, Object receiver)
+      {
+         Class<?>[] paramTypes = method.getParameterTypes();
+         int arity = paramTypes.length;
+         if( arity > MAX_SPECIALIZED_ARITY || !isPubliclyAccessible(method) )
+         {
+            return null;
+         }
+
+         boolean isStatic = Modifier.isStatic(method.getModifiers());
+         Class<?> shape = SHAPES[arity];
+
+         try
+         {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle implMethod = lookup.unreflect(method);
+
+            Class<?>[] boxedParams = new Class<?>[arity];
+            for( int i=0; i<arity; i++ )
+            {
+               boxedParams[i] = box(paramTypes[i]);
+            }
+
+            MethodType factoryType = isStatic ?
+                  MethodType.methodType(shape) : MethodType.methodType(shape, method.getDeclaringClass());
+
+            CallSite site = LambdaMetafactory.metafactory(
+                  lookup,
+                  "apply",
+                  factoryType,
+                  MethodType.genericMethodType(arity),
+                  implMethod,
+                  MethodType.methodType(box(method.getReturnType()), boxedParams));
+
+            Object function = isStatic ? site.getTarget().invoke() : site.getTarget().invoke(receiver);
+
+            MethodHandle exactHandle = null;
+            MethodType erased = implMethod.type().erase();
+            if( erased.hasPrimitives() )
+            {
+               exactHandle = isStatic ? implMethod : implMethod.bindTo(receiver);
+               exactHandle = exactHandle.asType(exactHandle.type().erase());
+            }
+            return new LambdaInvoker(function, arity, exactHandle);
+         }
+         catch (Throwable t)
+         {
+            // The generated class could not be linked against the method (e.g. class loader visibility)
+            return null;
+         }
+      }
+
+      @Override
+      MethodHandle asHandle()
+      {
+         try
+         {
+            return MethodHandles.lookup()
+                  .findVirtual(SHAPES[this.arity], "apply", MethodType.genericMethodType(this.arity))
+                  .bindTo(this.function);
+         }
+         catch (ReflectiveOperationException e)
+         {
+            return null;
+         }
+      }
+
+      @Override
+      MethodHandle asExactHandle()
+      {
+         return this.exactHandle != null ? this.exactHandle : this.asHandle();
+      }
+
+      private static boolean isPubliclyAccessible(Method method)
+      {
+         if( !Modifier.isPublic(method.getModifiers()) )
+         {
+            return false;
+         }
+         for( Class<?> c = method.getDeclaringClass(); c != null; c = c.getEnclosingClass() )
+         {
+            if( !Modifier.isPublic(c.getModifiers()) )
+            {
+               return false;
+            }
+         }
+         return true;
+      }
+
+      private static Class<?> box(Class<?> type)
+      {
+         if( !type.isPrimitive() )
+         {
+            return type;
+         }
+         return MethodType.methodType(type).wrap().returnType();
+      }
+
+      @Override
+      Object invoke(Object[] args) throws Throwable
+      {
+         switch (this.arity)
+         {
+            case 1:
+               return ((Function1)this.function).apply(args[0]);
+            case 2:
+               return ((Function2)this.function).apply(args[0], args[1]);
+            default:
+               return ((Function3)this.function).apply(args[0], args[1], args[2]);
+         }
+      }
+
+      @Override
+      Object invoke(Object a0) throws Throwable
+      {
+         return ((Function1)this.function).apply(a0);
+      }
+
+      @Override
+      Object invoke(Object a0, Object a1) throws Throwable
+      {
+         return ((Function2)this.function).apply(a0, a1);
+      }
+
+      @Override
+      Object invoke(Object a0, Object a1, Object a2) throws Throwable
+      {
+         return ((Function3)this.function).apply(a0, a1, a2);
+      }
+   }
+}
@@ -0,0 +1,102 @@
+package org.isisoft.morphoo.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the framework's metrics, returned by {@link Morphoo#getMetrics()}. Only what happened
+ * while metrics were enabled is counted.
+ *
+ * @author Carlos Munoz
+ */
+public class MetricsSnapshot
+{
+   private final List<TransformerMetrics> transformerMetrics;
+
+   private final long chainInvocationCount;
+
+   private final long chainErrorCount;
+
+   private final LatencyDistribution chainLatency;
+
+   private final CacheStatistics resolutionCache;
+
+   private final LatencyDistribution resolutionLatency;
+
+
+   MetricsSnapshot(List<TransformerMetrics> transformerMetrics, InvocationMetrics chainMetrics,
+                   CacheStatistics resolutionCache, LatencyDistribution resolutionLatency)
+   {
+      this.transformerMetrics = Collections.unmodifiableList(transformerMetrics);
+      this.chainInvocationCount = chainMetrics.getInvocationCount();
+      this.chainErrorCount = chainMetrics.getErrorCount();
+      this.chainLatency = chainMetrics.getLatency();
+      this.resolutionCache = resolutionCache;
+      this.resolutionLatency = resolutionLatency;
+   }
+
+   /**
+    * @return The metrics of every transformer method that has been invoked while metrics were enabled.
+    */
+   public List<TransformerMetrics> getTransformerMetrics()
+   {
+      return transformerMetrics;
+   }
+
+   /**
+    * @param name A transformer name.
+    * @return The metrics of the transformer method with the given name, or null if it has not been invoked. If
+    * several transformer methods share the name, the first one found is returned.
+    */
+   public TransformerMetrics getTransformerMetrics(String name)
+   {
+      for( TransformerMetrics tm : transformerMetrics )
+      {
+         if( tm.getName().equals(name) )
+         {
+            return tm;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * @return The number of times transformer chains (multi-step transformations) have been performed.
+    */
+   public long getChainInvocationCount()
+   {
+      return chainInvocationCount;
+   }
+
+   /**
+    * @return The number of transformer chain invocations that threw an exception.
+    */
+   public long getChainErrorCount()
+   {
+      return chainErrorCount;
+   }
+
+   /**
+    * @return The durations of whole transformer chains.
+    */
+   public LatencyDistribution getChainLatency()
+   {
+      return chainLatency;
+   }
+
+   /**
+    * @return The usage counters of the resolved transformer cache. These are counted even while metrics are disabled.
+    */
+   public CacheStatistics getResolutionCache()
+   {
+      return resolutionCache;
+   }
+
+   /**
+    * @return The durations of transformer resolutions that missed the cache, including route derivations.
+    */
+   public LatencyDistribution getResolutionLatency()
+   {
+      return resolutionLatency;
+   }
+}
@@ -1,5 +1,14 @@
 package org.isisoft.morphoo.core;
 
+import javax.management.ObjectName;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Framework setup class. It has all the functionality offered for the framework's global setup.
  *
@@ -42,9 +51,176 @@ public class Morphoo
       TransformerRegistry.getInstance().addScannableClasses(classes);
    }
 
+   /**
+    * Selects whether registered packages are looked up in the transformer index generated at compile time, which is
+    * enabled by default. The registered packages are still scanned in the directories and jars of the classpath that
+    * have no index, and everywhere when the index is disabled. This should be called before performing
+    * transformations.
+    *
+    * @param enabled True to use the transformer index, false to always scan the classpath.
+    */
+   public static final void useTransformerIndex(boolean enabled)
+   {
+      TransformerRegistry.getInstance().setTransformerIndexEnabled(enabled);
+   }
+
+   /**
+    * Selects the mechanism used to invoke transformer methods. By default {@link InvocationEngine#METHOD_HANDLE} is
+    * used. This should be called once before performing transformations, as changing it re-binds all transformer
+    * methods.
+    *
+    * @param engine The invocation engine to use.
+    */
+   public static final void setInvocationEngine(InvocationEngine engine)
+   {
+      TransformerRegistry.getInstance().setInvocationEngine(engine);
+   }
+
+   /**
+    * Sets the pool used to split large batches of transformations configured with
+    * {@link Transformation#inParallel()}. By default the common fork/join pool is used.
+    *
+    * @param pool The pool to use for parallel batches.
+    */
+   public static final void setForkJoinPool(ForkJoinPool pool)
+   {
+      TransformerRegistry.getInstance().setForkJoinPool(pool);
+   }
+
+   /**
+    * Sets the executor that runs asynchronous transformations, such as
+    * {@link Transformation#performOnAsync(Object)}. By default the common fork/join pool is used, which is not
+    * suitable for transformer methods that block.
+    *
+    * @param executor The executor to use for asynchronous transformations.
+    */
+   public static final void setAsyncExecutor(Executor executor)
+   {
+      TransformerRegistry.getInstance().setAsyncExecutor(executor);
+   }
+
+   /**
+    * Runs every asynchronous transformation on its own virtual thread. This is the best choice when transformer
+    * methods block on I/O, as no thread pool needs to be sized. Virtual threads are available on Java 21 and newer.
+    * The executor is shut down, letting the transformations already submitted finish, when another one is set or the
+    * framework is reset.
+    *
+    * @throws InitializationException If the running JVM does not support virtual threads.
+    */
+   public static final void useVirtualThreads()
+   {
+      ExecutorService executor;
+      try
+      {
+         executor = (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      }
+      catch (NoSuchMethodException e)
+      {
+         throw new InitializationException("Virtual threads are not supported by this JVM", e);
+      }
+      catch (IllegalAccessException e)
+      {
+         throw new InitializationException("Virtual threads are not supported by this JVM", e);
+      }
+      catch (InvocationTargetException e)
+      {
+         throw new InitializationException("Virtual threads are not supported by this JVM", e.getCause());
+      }
+      TransformerRegistry.getInstance().setOwnedAsyncExecutor(executor);
+   }
+
+   /**
+    * Measures transformer methods while transformations are performed, so that derived transformations choose the
+    * fastest route instead of the one with the fewest steps. At the end of every period, the durations measured during
+    * it are folded into the cost of each route, and derived transformations are resolved again. A route is only
+    * replaced by one that is clearly faster, so routes with similar costs don't keep replacing each other.
+    *
+    * A sample of the invocations of each transformer method is timed, which adds a small overhead to transformations.
+    *
+    * @param period The time between route cost updates.
+    * @param unit The unit of the period.
+    */
+   public static final void enableAdaptiveRouting(long period, TimeUnit unit)
+   {
+      TransformerRegistry.getInstance().setAdaptiveRouting(true, period, unit);
+   }
+
+   /**
+    * Stops measuring transformer methods. Derived transformations go back to choosing routes by the cost hints of
+    * their transformer methods.
+    */
+   public static final void disableAdaptiveRouting()
+   {
+      TransformerRegistry.getInstance().setAdaptiveRouting(false, 0, TimeUnit.SECONDS);
+   }
+
+   /**
+    * Returns usage statistics for the cache of resolved transformers. Every transformation looks up its transformer
+    * in this cache before searching for it among the registered transformer methods.
+    *
+    * @return A snapshot of the resolved transformer cache's counters.
+    */
+   public static final CacheStatistics getResolutionCacheStatistics()
+   {
+      return TransformerRegistry.getInstance().getCacheStatistics();
+   }
+
+   /**
+    * Returns usage statistics for the results memoized by transformer methods, as declared with
+    * {@link org.isisoft.morphoo.annotation.Transformer#memoize()}.
+    *
+    * @return A snapshot of the memoized results' counters, by transformer name.
+    */
+   public static final Map<String, CacheStatistics> getMemoizationStatistics()
+   {
+      return TransformerRegistry.getInstance().getMemoizationStatistics();
+   }
+
+   /**
+    * Starts recording metrics: invocation counts, error counts and durations for every transformer method and for
+    * transformer chains, and the duration of transformer resolutions. Metrics are disabled by default. While they are
+    * disabled, transformations don't pay for them.
+    */
+   public static final void enableMetrics()
+   {
+      TransformerRegistry.getInstance().setMetricsEnabled(true);
+   }
+
+   /**
+    * Stops recording metrics. Metrics recorded so far can still be read.
+    */
+   public static final void disableMetrics()
+   {
+      TransformerRegistry.getInstance().setMetricsEnabled(false);
+   }
+
+   /**
+    * Returns the metrics recorded while metrics were enabled.
+    *
+    * @return A snapshot of the framework's metrics.
+    */
+   public static final MetricsSnapshot getMetrics()
+   {
+      return TransformerRegistry.getInstance().getMetrics();
+   }
+
+   /**
+    * Registers a {@link MorphooMXBean} with the platform MBean server, so the framework's metrics and cache statistics
+    * can be read through JMX. Calling this more than once has no further effect.
+    *
+    * @return The name the MBean is registered under.
+    * @throws InitializationException If the MBean cannot be registered.
+    */
+   public static final ObjectName registerMBean()
+   {
+      return TransformerRegistry.getInstance().registerMBean();
+   }
+
    /**
     * Resets the framework clearing out all detected transformer methods and all scanned
-    * packages and classes.
+    * packages and classes. The invocation engine, fork/join pool, asynchronous
+    * executor and transformer index setting are restored to their defaults, and
+    * adaptive routing and metrics are disabled.
     */
    public static final void reset()
    {
@@ -0,0 +1,41 @@
+package org.isisoft.morphoo.core;
+
+import java.util.Map;
+
+/**
+ * Management interface of the framework, registered with {@link Morphoo#registerMBean()}. Transformer methods are
+ * identified as in {@link TransformerMetrics#getMethodId()}.
+ *
+ * @author Carlos Munoz
+ */
+public interface MorphooMXBean
+{
+   boolean isMetricsEnabled();
+
+   void setMetricsEnabled(boolean enabled);
+
+   long getResolutionCacheHitCount();
+
+   long getResolutionCacheMissCount();
+
+   double getResolutionCacheHitRate();
+
+   long getResolutionCacheSize();
+
+   /** Number of transformer resolutions that missed the cache */
+   long getResolutionCount();
+
+   double getResolutionMeanNanos();
+
+   long getChainInvocationCount();
+
+   long getChainErrorCount();
+
+   Map<String, Long> getInvocationCounts();
+
+   Map<String, Long> getErrorCounts();
+
+   Map<String, Double> getMeanLatencyNanos();
+
+   Map<String, Long> getLatency99thPercentileNanos();
+}
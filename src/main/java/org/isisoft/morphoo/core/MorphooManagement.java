@@ -0,0 +1,126 @@
+package org.isisoft.morphoo.core;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * JMX view of the framework. Every attribute read takes a new metrics snapshot.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class MorphooManagement implements MorphooMXBean
+{
+   static final String OBJECT_NAME = "org.isisoft.morphoo:type=Morphoo";
+
+   private final TransformerRegistry registry;
+
+   MorphooManagement(TransformerRegistry registry)
+   {
+      this.registry = registry;
+   }
+
+   @Override
+   public boolean isMetricsEnabled()
+   {
+      return this.registry.isMetricsEnabled();
+   }
+
+   @Override
+   public void setMetricsEnabled(boolean enabled)
+   {
+      this.registry.setMetricsEnabled(enabled);
+   }
+
+   @Override
+   public long getResolutionCacheHitCount()
+   {
+      return this.registry.getCacheStatistics().getHitCount();
+   }
+
+   @Override
+   public long getResolutionCacheMissCount()
+   {
+      return this.registry.getCacheStatistics().getMissCount();
+   }
+
+   @Override
+   public double getResolutionCacheHitRate()
+   {
+      return this.registry.getCacheStatistics().getHitRate();
+   }
+
+   @Override
+   public long getResolutionCacheSize()
+   {
+      return this.registry.getCacheStatistics().getSize();
+   }
+
+   @Override
+   public long getResolutionCount()
+   {
+      return this.registry.getMetrics().getResolutionLatency().getCount();
+   }
+
+   @Override
+   public double getResolutionMeanNanos()
+   {
+      return this.registry.getMetrics().getResolutionLatency().getMeanNanos();
+   }
+
+   @Override
+   public long getChainInvocationCount()
+   {
+      return this.registry.getMetrics().getChainInvocationCount();
+   }
+
+   @Override
+   public long getChainErrorCount()
+   {
+      return this.registry.getMetrics().getChainErrorCount();
+   }
+
+   @Override
+   public Map<String, Long> getInvocationCounts()
+   {
+      Map<String, Long> result = new TreeMap<String, Long>();
+      for( TransformerMetrics tm : this.registry.getMetrics().getTransformerMetrics() )
+      {
+         result.put(tm.getMethodId(), tm.getInvocationCount());
+      }
+      return result;
+   }
+
+   @Override
+   public Map<String, Long> getErrorCounts()
+   {
+      Map<String, Long> result = new TreeMap<String, Long>();
+      for( TransformerMetrics tm : this.registry.getMetrics().getTransformerMetrics() )
+      {
+         result.put(tm.getMethodId(), tm.getErrorCount());
+      }
+      return result;
+   }
+
+   @Override
+   public Map<String, Double> getMeanLatencyNanos()
+   {
+      Map<String, Double> result = new TreeMap<String, Double>();
+      for( TransformerMetrics tm : this.registry.getMetrics().getTransformerMetrics() )
+      {
+         result.put(tm.getMethodId(), tm.getLatency().getMeanNanos());
+      }
+      return result;
+   }
+
+   @Override
+   public Map<String, Long> getLatency99thPercentileNanos()
+   {
+      Map<String, Long> result = new TreeMap<String, Long>();
+      for( TransformerMetrics tm : this.registry.getMetrics().getTransformerMetrics() )
+      {
+         result.put(tm.getMethodId(), tm.getLatency().getPercentileNanos(99));
+      }
+      return result;
+   }
+}
@@ -0,0 +1,305 @@
+package org.isisoft.morphoo.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Identity map of the objects transformed so far in a single graph transformation. Each source instance is only
+ * transformed once into each target type, and transforming it again returns the same target, so shared objects keep
+ * being shared in the result.
+ *
+ * A transformer that builds a target which may be referred back to by its own children must register it with
+ * {@link TransformationContext#registerTarget(Object, Object)} before transforming them. Otherwise, reaching the
+ * same source again while it is still being transformed is reported as a cycle. When subtrees are transformed in
+ * parallel, a task that reaches an object being transformed by another task waits for it.
+ *
+ * Cycles are found through the path of objects being transformed that leads to each nested transformation, which is
+ * carried by its context, so it does not matter which thread performs it. A task reaching one of its own ancestors has
+ * found a cycle. A task reaching an object being transformed in another branch waits for it, unless that branch is
+ * itself waiting, directly or not, for one of the task's ancestors. That would be a cycle split across branches, and
+ * waiting would never end.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class ObjectGraph
+{
+   /**
+    * Key made of a source instance, compared by identity, and a target type.
+    */
+   private static final class NodeKey
+   {
+      private final Object source;
+
+      private final Class<?> targetType;
+
+      private NodeKey(Object source, Class<?> targetType)
+      {
+         this.source = source;
+         this.targetType = targetType;
+      }
+
+      @Override
+      public boolean equals(Object o)
+      {
+         if( !(o instanceof NodeKey) )
+         {
+            return false;
+         }
+         NodeKey other = (NodeKey)o;
+         return this.source == other.source && this.targetType == other.targetType;
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return 31 * System.identityHashCode(this.source) + this.targetType.hashCode();
+      }
+   }
+
+   /**
+    * The target for a source instance, which may still be being transformed.
+    */
+   private static final class Node extends CompletableFuture<Object>
+   {
+      /** The target registered before the transformation finished, or null */
+      private volatile Object earlyTarget;
+   }
+
+   /**
+    * The nodes being transformed that lead to a nested transformation, innermost first. Immutable.
+    */
+   static final class Path
+   {
+      private final Node node;
+
+      private final Path parent;
+
+      private Path(Node node, Path parent)
+      {
+         this.node = node;
+         this.parent = parent;
+      }
+
+      private static boolean contains(Path path, Node node)
+      {
+         for( Path p = path; p != null; p = p.parent )
+         {
+            if( p.node == node )
+            {
+               return true;
+            }
+         }
+         return false;
+      }
+   }
+
+   /**
+    * A task, identified by its path, waiting for a node being transformed in another branch.
+    */
+   private static final class Wait
+   {
+      private final Path waiter;
+
+      private final Node target;
+
+      private Wait(Path waiter, Node target)
+      {
+         this.waiter = waiter;
+         this.target = target;
+      }
+   }
+
+   private final ConcurrentMap<NodeKey, Node> nodes = new ConcurrentHashMap<NodeKey, Node>();
+
+   /** Tasks currently waiting for other branches. Guarded by itself */
+   private final List<Wait> waits = new ArrayList<Wait>();
+
+
+   /**
+    * Transforms a source object, unless it has already been transformed into the same target type.
+    *
+    * @param transformer The transformer for the source object.
+    * @param resultCache Where the results of the transformation are memoized, or null if they are not.
+    * @param src The source object.
+    * @param targetType The type the source is transformed into.
+    * @param ctx The transformation context. Its path leads to the source object.
+    * @return The target for the source object.
+    * @throws TransformationException If the source is reached again while it is being transformed, and the
+    * transformer has not registered its target yet.
+    */
+   Object transform(Transformer transformer, ResultCache resultCache, Object src, Class<?> targetType,
+                    TransformationContext ctx)
+   {
+      NodeKey key = new NodeKey(src, targetType);
+      Node node = new Node();
+      Node existing = this.nodes.putIfAbsent(key, node);
+      if( existing != null )
+      {
+         return this.await(existing, src, targetType, ctx.getGraphPath());
+      }
+
+      try
+      {
+         // transformations nested in this one are reached through the node
+         TransformationContext nodeCtx = ctx.onGraphPath(new Path(node, ctx.getGraphPath()));
+         Object target = resultCache != null ?
+               resultCache.transform(transformer, src, nodeCtx) : transformer.transform(src, nodeCtx);
+         node.complete(target);
+         return target;
+      }
+      catch (RuntimeException e)
+      {
+         this.nodes.remove(key, node);
+         node.completeExceptionally(e);
+         throw e;
+      }
+      catch (Error e)
+      {
+         this.nodes.remove(key, node);
+         node.completeExceptionally(e);
+         throw e;
+      }
+   }
+
+   /**
+    * Registers the target for a source object that is still being transformed on the given path.
+    *
+    * @return True if the source was being transformed into one of the target's types.
+    */
+   boolean registerTarget(Object source, Object target, Path path)
+   {
+      boolean registered = this.registerTarget(source, target.getClass(), target, path);
+      for( Class<?> type : TypeHierarchy.supertypesOf(target.getClass()) )
+      {
+         registered |= this.registerTarget(source, type, target, path);
+      }
+      return registered;
+   }
+
+   private boolean registerTarget(Object source, Class<?> targetType, Object target, Path path)
+   {
+      Node node = this.nodes.get(new NodeKey(source, targetType));
+      if( node != null && !node.isDone() && Path.contains(path, node) )
+      {
+         node.earlyTarget = target;
+         return true;
+      }
+      return false;
+   }
+
+   private Object await(Node node, Object src, Class<?> targetType, Path path)
+   {
+      if( node.isDone() )
+      {
+         return this.join(node);
+      }
+
+      Object early = node.earlyTarget;
+      if( early != null )
+      {
+         return early;
+      }
+      if( Path.contains(path, node) )
+      {
+         throw cycleFound(src, targetType);
+      }
+      if( path == null )
+      {
+         // nothing can be waiting for a top level transformation
+         return this.join(node);
+      }
+
+      Wait wait = new Wait(path, node);
+      synchronized (this.waits)
+      {
+         if( this.waitsFor(node, path) )
+         {
+            throw cycleFound(src, targetType);
+         }
+         this.waits.add(wait);
+      }
+      try
+      {
+         return this.join(node);
+      }
+      finally
+      {
+         synchronized (this.waits)
+         {
+            this.waits.remove(wait);
+         }
+      }
+   }
+
+   /**
+    * @return Whether the transformation of a node is waiting, directly or through other branches, for one of the nodes
+    * on a path. Must be called while holding the lock on waits.
+    */
+   private boolean waitsFor(Node node, Path path)
+   {
+      Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+      Deque<Node> pending = new ArrayDeque<Node>();
+      pending.push(node);
+      seen.add(node);
+
+      while( !pending.isEmpty() )
+      {
+         Node blocked = pending.pop();
+         // a node is not done until every task nested in it is
+         for( Wait w : this.waits )
+         {
+            if( Path.contains(w.waiter, blocked) )
+            {
+               if( Path.contains(path, w.target) )
+               {
+                  return true;
+               }
+               if( seen.add(w.target) )
+               {
+                  pending.push(w.target);
+               }
+            }
+         }
+      }
+      return false;
+   }
+
+   private static TransformationException cycleFound(Object src, Class<?> targetType)
+   {
+      return new TransformationException("Cycle found while transforming an instance of " +
+            src.getClass().getName() + " into " + targetType.getName() + ". The transformer must register " +
+            "its target with TransformationContext.registerTarget before transforming the objects that refer back " +
+            "to the source");
+   }
+
+   private Object join(Node node)
+   {
+      try
+      {
+         return node.join();
+      }
+      catch (CompletionException e)
+      {
+         Throwable cause = e.getCause();
+         if( cause instanceof RuntimeException )
+         {
+            throw (RuntimeException)cause;
+         }
+         if( cause instanceof Error )
+         {
+            throw (Error)cause;
+         }
+         throw new TransformationException("Error while transforming", cause);
+      }
+   }
+}
@@ -0,0 +1,64 @@
+package org.isisoft.morphoo.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.util.Collection;
+
+/**
+ * Flight Recorder event for the resolution of a transformer that was not cached yet, including the processing of
+ * declared transformers and the derivation of routes.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+@Name("org.isisoft.morphoo.Resolution")
+@Label("Transformer Resolution")
+@Category(FlightRecorderSupport.CATEGORY)
+@Description("Resolution of a transformer that was not found in the resolution cache")
+final class ResolutionEvent extends jdk.jfr.Event
+{
+   @Label("Source Type")
+   Class<?> sourceType;
+
+   @Label("Target Type")
+   Class<?> targetType;
+
+   @Label("Requested Names")
+   @Description("The transformer names the transformation asked for, if any")
+   String requestedNames;
+
+   @Label("Transformer Names")
+   @Description("The transformer methods in the resolved route, in order")
+   String transformerNames;
+
+   @Label("Route Length")
+   int routeLength;
+
+   @Label("Derived")
+   @Description("Whether the route could be derived through intermediate types")
+   boolean derived;
+
+   /**
+    * Ends the event and commits it if it is being recorded.
+    *
+    * @param resolved The transformer that was resolved, or null if there is none.
+    */
+   void record( Class<?> sourceType, Class<?> targetType, Collection<String> names, boolean derived,
+                Transformer resolved )
+   {
+      this.end();
+      if( this.shouldCommit() )
+      {
+         this.sourceType = sourceType;
+         this.targetType = targetType;
+         this.requestedNames = FlightRecorderSupport.join(names);
+         this.transformerNames = FlightRecorderSupport.namesOf(resolved);
+         this.routeLength = FlightRecorderSupport.lengthOf(resolved);
+         this.derived = derived;
+         this.commit();
+      }
+   }
+}
@@ -0,0 +1,300 @@
+package org.isisoft.morphoo.core;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded concurrent cache of memoized transformation results, following a {@link MemoizationPolicy}.
+ *
+ * Entries are spread over independently locked segments, each of which evicts its least recently used entries when it
+ * goes over its share of the maximum weight. Expired entries are removed when they are looked up, and before any
+ * other entry is evicted. A result that is computed by several threads at the same time is memoized by all of them,
+ * the last one winning.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class ResultCache
+{
+   /** Returned by {@link #get(Object)} when there is no result for a key */
+   static final Object MISSING = new Object();
+
+   /** Caches smaller than this are not split into segments, so eviction order is exact */
+   private static final long MIN_SEGMENT_WEIGHT = 256;
+
+   private static final int MAX_SEGMENTS = 16;
+
+   /**
+    * Key for results that depend on more than the source object.
+    */
+   static final class Key
+   {
+      private final Object source;
+
+      private final Object[] arguments;
+
+      private final int hash;
+
+      Key(Object source, Object[] arguments)
+      {
+         this.source = source;
+         this.arguments = arguments;
+         this.hash = 31 * source.hashCode() + Arrays.hashCode(arguments);
+      }
+
+      @Override
+      public boolean equals(Object o)
+      {
+         if( this == o )
+         {
+            return true;
+         }
+         if( !(o instanceof Key) )
+         {
+            return false;
+         }
+         Key other = (Key)o;
+         return this.hash == other.hash && this.source.equals(other.source)
+               && Arrays.equals(this.arguments, other.arguments);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return hash;
+      }
+   }
+
+   private static final class Entry
+   {
+      private final Object value;
+
+      private final long weight;
+
+      private final long writtenAt;
+
+      private Entry(Object value, long weight, long writtenAt)
+      {
+         this.value = value;
+         this.weight = weight;
+         this.writtenAt = writtenAt;
+      }
+   }
+
+   private final class Segment
+   {
+      private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+
+      private final long maximumWeight;
+
+      private long weight;
+
+      private Segment(long maximumWeight)
+      {
+         this.maximumWeight = maximumWeight;
+      }
+
+      private synchronized Object get(Object key, long now)
+      {
+         Entry e = this.entries.get(key);
+         if( e == null )
+         {
+            return MISSING;
+         }
+         if( ResultCache.this.isExpired(e, now) )
+         {
+            this.entries.remove(key);
+            this.weight -= e.weight;
+            ResultCache.this.evictions.increment();
+            return MISSING;
+         }
+         return e.value;
+      }
+
+      private synchronized void put(Object key, Entry entry, long now)
+      {
+         Entry previous = this.entries.put(key, entry);
+         if( previous != null )
+         {
+            this.weight -= previous.weight;
+         }
+         this.weight += entry.weight;
+
+         if( this.weight > this.maximumWeight && ResultCache.this.expireAfterWriteNanos > 0 )
+         {
+            this.removeExpired(now);
+         }
+         // least recently used entries come first
+         Iterator<Entry> it = this.entries.values().iterator();
+         while( this.weight > this.maximumWeight && it.hasNext() )
+         {
+            this.weight -= it.next().weight;
+            it.remove();
+            ResultCache.this.evictions.increment();
+         }
+      }
+
+      private void removeExpired(long now)
+      {
+         Iterator<Entry> it = this.entries.values().iterator();
+         while( it.hasNext() )
+         {
+            Entry e = it.next();
+            if( ResultCache.this.isExpired(e, now) )
+            {
+               this.weight -= e.weight;
+               it.remove();
+               ResultCache.this.evictions.increment();
+            }
+         }
+      }
+
+      private synchronized int size()
+      {
+         return this.entries.size();
+      }
+   }
+
+   private final MemoizationPolicy.Weigher weigher;
+
+   private final long expireAfterWriteNanos;
+
+   private final Segment[] segments;
+
+   private final LongAdder hits = new LongAdder();
+
+   private final LongAdder misses = new LongAdder();
+
+   private final LongAdder evictions = new LongAdder();
+
+
+   ResultCache(MemoizationPolicy policy)
+   {
+      this.weigher = policy.getWeigher();
+      this.expireAfterWriteNanos = policy.getExpireAfterWriteNanos();
+
+      long maximumWeight = policy.getMaximumWeight();
+      int segmentCount = 1;
+      while( segmentCount < MAX_SEGMENTS && maximumWeight / (segmentCount * 2) >= MIN_SEGMENT_WEIGHT )
+      {
+         segmentCount *= 2;
+      }
+
+      this.segments = new Segment[ segmentCount ];
+      for( int i=0; i<segmentCount; i++ )
+      {
+         // the first segments take the remainder, so the total is exactly the maximum weight
+         long share = maximumWeight / segmentCount + (i < maximumWeight % segmentCount ? 1 : 0);
+         this.segments[i] = new Segment(share);
+      }
+   }
+
+   /**
+    * @param key The key the result was memoized under.
+    * @return The memoized result, which may be null, or {@link #MISSING} if there is none.
+    */
+   Object get(Object key)
+   {
+      Object value = this.segmentFor(key).get(key, this.now());
+      if( value == MISSING )
+      {
+         this.misses.increment();
+      }
+      else
+      {
+         this.hits.increment();
+      }
+      return value;
+   }
+
+   /**
+    * Memoizes a result.
+    *
+    * @param key The key to memoize the result under.
+    * @param source The source object the result was obtained from.
+    * @param value The result. May be null.
+    */
+   void put(Object key, Object source, Object value)
+   {
+      long weight = this.weigher.weigh(source, value);
+      if( weight < 0 )
+      {
+         throw new TransformationException("The weight of a memoized result must not be negative");
+      }
+      long now = this.now();
+      this.segmentFor(key).put(key, new Entry(value, weight, now), now);
+   }
+
+   /**
+    * Transforms an object, or returns the memoized result of transforming an equal object with the same context
+    * variables.
+    *
+    * @param transformer The transformer to use when there is no memoized result.
+    * @param src The object to transform.
+    * @param ctx The transformation context.
+    * @return The transformation result.
+    */
+   Object transform(Transformer transformer, Object src, TransformationContext ctx)
+   {
+      Object key = new Key(src, ctx.snapshotValues());
+      Object result = this.get(key);
+      if( result == MISSING )
+      {
+         result = transformer.transform(src, ctx);
+         this.put(key, src, result);
+      }
+      return result;
+   }
+
+   CacheStatistics getStatistics()
+   {
+      long size = 0;
+      for( Segment s : this.segments )
+      {
+         size += s.size();
+      }
+      return new CacheStatistics(this.hits.sum(), this.misses.sum(), this.evictions.sum(), size);
+   }
+
+   private Segment segmentFor(Object key)
+   {
+      int h = key.hashCode();
+      h ^= h >>> 16;
+      return this.segments[ h & (this.segments.length - 1) ];
+   }
+
+   private boolean isExpired(Entry e, long now)
+   {
+      return this.expireAfterWriteNanos > 0 && now - e.writtenAt >= this.expireAfterWriteNanos;
+   }
+
+   private long now()
+   {
+      return this.expireAfterWriteNanos > 0 ? System.nanoTime() : 0;
+   }
+
+   /**
+    * Creates the cache declared for a transformer method, if any.
+    *
+    * @param maximumSize The maximum number of results to memoize, or 0 to not memoize them.
+    * @param expiryMillis Milliseconds after which results expire, or 0 if they do not.
+    * @return The cache, or null if maximumSize is 0.
+    */
+   static ResultCache declared(int maximumSize, long expiryMillis)
+   {
+      if( maximumSize == 0 )
+      {
+         return null;
+      }
+
+      MemoizationPolicy policy = MemoizationPolicy.maximumSize(maximumSize);
+      if( expiryMillis > 0 )
+      {
+         policy = policy.expireAfterWrite(expiryMillis, TimeUnit.MILLISECONDS);
+      }
+      return new ResultCache(policy);
+   }
+}
@@ -0,0 +1,73 @@
+package org.isisoft.morphoo.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes the route a transformation takes: the types it goes through and the transformer methods used between
+ * them. Routes are returned by {@link Transformation#getRoute(Class)}.
+ *
+ * @author Carlos Munoz
+ */
+public final class Route
+{
+   private final List<Class<?>> types;
+
+   private final List<String> transformerNames;
+
+   private final double cost;
+
+
+   Route(List<Class<?>> types, List<String> transformerNames, double cost)
+   {
+      this.types = Collections.unmodifiableList(types);
+      this.transformerNames = Collections.unmodifiableList(transformerNames);
+      this.cost = cost;
+   }
+
+   /**
+    * @return The types the transformation goes through, starting with the source type and ending with the target
+    * type. A transformation that returns its source as is only goes through the source type.
+    */
+   public List<Class<?>> getTypes()
+   {
+      return types;
+   }
+
+   /**
+    * @return The names of the transformer methods used for each step of the route.
+    */
+   public List<String> getTransformerNames()
+   {
+      return transformerNames;
+   }
+
+   /**
+    * @return The number of transformer methods invoked along the route.
+    */
+   public int getLength()
+   {
+      return transformerNames.size();
+   }
+
+   /**
+    * @return The total cost of the route. Each step costs its transformer method's cost hint or, when routes are
+    * measured, its average measured duration in nanoseconds.
+    */
+   public double getCost()
+   {
+      return cost;
+   }
+
+   @Override
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder();
+      sb.append(types.get(0).getName());
+      for( int i=0; i<transformerNames.size(); i++ )
+      {
+         sb.append(" -[").append(transformerNames.get(i)).append("]-> ").append(types.get(i + 1).getName());
+      }
+      return sb.append(" (cost ").append(cost).append(')').toString();
+   }
+}
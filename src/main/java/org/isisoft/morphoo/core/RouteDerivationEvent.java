@@ -0,0 +1,51 @@
+package org.isisoft.morphoo.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for the search of a route through the transformer graph.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+@Name("org.isisoft.morphoo.RouteDerivation")
+@Label("Route Derivation")
+@Category(FlightRecorderSupport.CATEGORY)
+@Description("Search of the transformer graph for a route between two types")
+final class RouteDerivationEvent extends jdk.jfr.Event
+{
+   @Label("Source Type")
+   Class<?> sourceType;
+
+   @Label("Target Type")
+   Class<?> targetType;
+
+   @Label("Route Length")
+   @Description("Number of transformer methods in the route found, or 0 if there is none")
+   int routeLength;
+
+   @Label("Weighted")
+   @Description("Whether the cheapest route was searched for, rather than the one with the fewest steps")
+   boolean weighted;
+
+   /**
+    * Ends the event and commits it if it is being recorded.
+    *
+    * @param routeEdges The route found, or null if there is none.
+    */
+   void record( Class<?> sourceType, Class<?> targetType, boolean weighted, int[] routeEdges )
+   {
+      this.end();
+      if( this.shouldCommit() )
+      {
+         this.sourceType = sourceType;
+         this.targetType = targetType;
+         this.routeLength = routeEdges != null ? routeEdges.length : 0;
+         this.weighted = weighted;
+         this.commit();
+      }
+   }
+}
@@ -1,8 +1,7 @@
 package org.isisoft.morphoo.core;
 
-import java.lang.reflect.InvocationTargetException;
-
-import static org.isisoft.morphoo.core.TransformerMethod.TransformerMethodArgument;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 
 /**
  * Simple transformer that offers a one-step unit transformation from one type to another.
@@ -11,96 +10,257 @@ import static org.isisoft.morphoo.core.TransformerMethod.TransformerMethodArgume
  */
 public class SimpleTransformer implements Transformer
 {
+   /** When measuring, one out of this many invocations is timed */
+   private static final int SAMPLE_MASK = 0x7;
+
    private Object transformerInstance;
 
-   private TransformerMethod transformerMethod;
+   /** Provider of the declaring class's instances, or null if the transformer method is static */
+   private TransformerInstances instances;
+
+   private final TransformerMethod transformerMethod;
+
+   private final InvocationEngine engine;
+
+   /** Invoker bound to the shared transformer instance, or null if instances are acquired for each invocation */
+   private final MethodInvoker invoker;
+
+   private final InvocationPlan invocationPlan;
+
+   /** Where to record measured durations, or null if invocations are not measured */
+   private final LatencyStats latency;
+
+   /** Where to record metrics, or null if metrics are disabled */
+   private final InvocationMetrics metrics;
+
+   /** Whether invocations are measured or recorded in metrics */
+   private final boolean instrumented;
+
+   /** Where results are memoized, or null if they are not */
+   private final ResultCache resultCache;
+
+   /** Handle typed with the method's primitive types, or null if the method cannot be invoked through one */
+   private final MethodHandle exactHandle;
+
+   /** Invocation counter for sampling. Updates may be lost between threads, which only affects which calls are timed */
+   private int calls;
 
 
    public SimpleTransformer(TransformerMethod transformerMethod)
+   {
+      this(transformerMethod, TransformerRegistry.getInstance().getInvocationEngine(),
+            TransformerRegistry.getInstance().isAdaptiveRouting(), TransformerRegistry.getInstance().isMetricsEnabled());
+   }
+
+   public SimpleTransformer(TransformerMethod transformerMethod, InvocationEngine engine)
+   {
+      this(transformerMethod, engine, false);
+   }
+
+   /**
+    * @param transformerMethod The transformer method to invoke.
+    * @param engine The mechanism used to invoke the method.
+    * @param measured Whether to record the duration of a sample of the invocations in the method's latency stats.
+    */
+   public SimpleTransformer(TransformerMethod transformerMethod, InvocationEngine engine, boolean measured)
+   {
+      this(transformerMethod, engine, measured, false);
+   }
+
+   /**
+    * @param transformerMethod The transformer method to invoke.
+    * @param engine The mechanism used to invoke the method.
+    * @param measured Whether to record the duration of a sample of the invocations in the method's latency stats.
+    * @param withMetrics Whether to record every invocation in the method's metrics.
+    */
+   public SimpleTransformer(TransformerMethod transformerMethod, InvocationEngine engine, boolean measured,
+                            boolean withMetrics)
    {
       this.transformerMethod = transformerMethod;
+      this.engine = engine;
       this.initTransformerInstance();
+      this.invoker = this.instances == null || this.transformerInstance != null ?
+            MethodInvoker.bind(engine, transformerMethod.getJavaMethod(), this.transformerInstance) : null;
+      this.invocationPlan = transformerMethod.getInvocationPlan();
+      this.latency = measured ? transformerMethod.getLatency() : null;
+      this.metrics = withMetrics ? transformerMethod.getMetrics() : null;
+      this.instrumented = measured || withMetrics;
+      this.resultCache = transformerMethod.getResultCache();
+      this.exactHandle = this.invoker != null && !this.instrumented && this.resultCache == null
+            && transformerMethod.getArguments().length == 1 ? this.invoker.asExactHandle() : null;
    }
 
    private void initTransformerInstance()
    {
       if( transformerMethod.isStatic() )
       {
-         try
-         {
-            this.transformerInstance = transformerMethod.getJavaMethod().getDeclaringClass().newInstance();
-         }
-         catch (InstantiationException e)
-         {
-            throw new InitializationException("Error creating new Transformer instance of class "
-                  + transformerMethod.getJavaMethod().getDeclaringClass().getName(), e);
-         }
-         catch (IllegalAccessException e)
-         {
-            throw new InitializationException("Error creating new Transformer instance of class "
-                  + transformerMethod.getJavaMethod().getDeclaringClass().getName(), e);
-         }
+         this.instances = TransformerRegistry.getInstance()
+               .getTransformerInstances(transformerMethod.getJavaMethod().getDeclaringClass());
+         this.transformerInstance = this.instances.getShared(transformerMethod);
       }
       else
       {
+         this.instances = null;
          this.transformerInstance = null;
       }
    }
 
-   private Object[] buildInvocationParameters(Object src, TransformationContext ctx)
+   /**
+    * Returns a method handle of type (Object, TransformationContext)Object that performs this transformer's
+    * invocation. Transformer methods that only take the source object are exposed directly, without going through
+    * {@link SimpleTransformer#transform(Object, TransformationContext)}, so exceptions thrown by them are not wrapped.
+    * Measured and memoized transformers, transformers with metrics, and transformers whose class has per-thread or
+    * pooled instances are always invoked through transform.
+    *
+    * @return The method handle for this transformer.
+    */
+   MethodHandle asHandle()
    {
-      Object[] params = new Object[ transformerMethod.getArguments().length ];
+      MethodHandle invokerHandle = this.invoker != null ? this.invoker.asHandle() : null;
+      if( invokerHandle != null && !this.instrumented && this.resultCache == null
+            && this.transformerMethod.getArguments().length == 1 )
+      {
+         return MethodHandles.dropArguments(invokerHandle, 1, TransformationContext.class);
+      }
+      return TransformerChain.TRANSFORM.bindTo(this);
+   }
 
-      for( int i=0; i<transformerMethod.getArguments().length; i++ )
+   /**
+    * Returns a method handle that performs this transformer's invocation, typed with the transformer method's own
+    * primitive types and every reference type erased to Object, e.g. (Object)long for <code>long toEpoch(Date)</code>.
+    * Primitive sources and results go through the handle without being boxed. Only transformer methods that take
+    * nothing but the source object, and are neither measured, memoized nor recorded in metrics, have one.
+    *
+    * @return The method handle, or null if this transformer cannot be invoked through one.
+    */
+   MethodHandle asExactHandle()
+   {
+      return this.exactHandle;
+   }
+
+   TransformerMethod getTransformerMethod()
+   {
+      return this.transformerMethod;
+   }
+
+   @Override
+   public Object transform(Object src, TransformationContext ctx)
+   {
+      if( FlightRecorderSupport.AVAILABLE )
       {
-         TransformerMethodArgument argument = transformerMethod.getArguments()[i];
+         InvocationEvent event = new InvocationEvent();
+         if( event.isEnabled() )
+         {
+            return this.recordedTransform(event, src, ctx);
+         }
+      }
+      if( this.resultCache != null )
+      {
+         return this.memoizedTransform(src, ctx);
+      }
+      if( this.instrumented )
+      {
+         return this.instrumentedTransform(src, ctx);
+      }
+      return this.invoke(src, ctx);
+   }
 
-         // source object
-         if( argument.isSourceInstance() )
+   private Object recordedTransform(InvocationEvent event, Object src, TransformationContext ctx)
+   {
+      event.begin();
+      try
+      {
+         if( this.resultCache != null )
          {
-            params[i] = src;
+            return this.memoizedTransform(src, ctx);
          }
-         // Transformation context
-         else if( argument.isTransformationContext() )
+         return this.instrumented ? this.instrumentedTransform(src, ctx) : this.invoke(src, ctx);
+      }
+      finally
+      {
+         event.record(src, this.transformerMethod.getTargetType(), this);
+      }
+   }
+
+   private Object memoizedTransform(Object src, TransformationContext ctx)
+   {
+      Object key = this.invocationPlan.resultKey(src, ctx);
+      Object result = this.resultCache.get(key);
+      if( result == ResultCache.MISSING )
+      {
+         result = this.instrumented ? this.instrumentedTransform(src, ctx) : this.invoke(src, ctx);
+         this.resultCache.put(key, src, result);
+      }
+      return result;
+   }
+
+   private Object instrumentedTransform(Object src, TransformationContext ctx)
+   {
+      boolean sampled = this.latency != null && (++this.calls & SAMPLE_MASK) == 0;
+      if( !sampled && this.metrics == null )
+      {
+         return this.invoke(src, ctx);
+      }
+
+      long start = System.nanoTime();
+      boolean failed = true;
+      try
+      {
+         Object result = this.invoke(src, ctx);
+         failed = false;
+         return result;
+      }
+      finally
+      {
+         long nanos = System.nanoTime() - start;
+         if( sampled )
          {
-            params[i] = ctx;
+            this.latency.record(nanos);
          }
-         // It's a context variable
-         else
+         if( this.metrics != null )
          {
-            Object argValue = ctx.get( argument.getCtxVarName() );
-
-            if( !argument.isNullable() && argValue == null )
-            {
-               throw new TransformationException("Context variable " + argument.getCtxVarName() + " cannot be null " +
-                     "in Transformer method " + transformerMethod.getJavaMethod().getDeclaringClass().getName() + "." +
-                     transformerMethod.getJavaMethod().getName());
-            }
-            else
-            {
-               params[i] = argValue;
-            }
+            this.metrics.record(nanos, failed);
          }
       }
-
-      return params;
    }
 
-   @Override
-   public Object transform(Object src, TransformationContext ctx)
+   private Object invoke(Object src, TransformationContext ctx)
    {
       try
       {
-         Object[] params = this.buildInvocationParameters(src, ctx);
-         return this.transformerMethod.getJavaMethod().invoke(transformerInstance, params);
+         if( this.invoker == null )
+         {
+            return this.scopedInvoke(src, ctx);
+         }
+         return this.invocationPlan.invoke(this.invoker, src, ctx);
+      }
+      catch (TransformationException e)
+      {
+         throw e;
+      }
+      catch (Error e)
+      {
+         throw e;
+      }
+      catch (Throwable t)
+      {
+         throw new TransformationException("Error while transforming", t);
       }
-      catch (IllegalAccessException e)
+   }
+
+   /**
+    * Invokes the transformer method on an instance acquired for this invocation only.
+    */
+   private Object scopedInvoke(Object src, TransformationContext ctx) throws Throwable
+   {
+      TransformerInstances.Instance instance = this.instances.acquire(this.transformerMethod);
+      try
       {
-         throw new TransformationException("Error while transforming", e);
+         return this.invocationPlan.invoke(instance.invokerFor(this.transformerMethod, this.engine), src, ctx);
       }
-      catch (InvocationTargetException e)
+      finally
       {
-         throw new TransformationException("Error while transforming", e);
+         this.instances.release(instance);
       }
    }
 
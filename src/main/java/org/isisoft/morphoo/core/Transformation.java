@@ -1,9 +1,17 @@
 package org.isisoft.morphoo.core;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * The framework's most important class. It offers ways to customize and perform transformations.
@@ -34,12 +42,23 @@ public class Transformation<T>
 
    private boolean deriveTransformation;
 
+   private int splitThreshold;
+
+   private boolean ordered;
+
+   private ResultCache resultCache;
+
+   private boolean preserveIdentity;
+
    private Transformation()
    {
+      // names and steps are only allocated if they are used
       this.context = new TransformationContext();
-      this.transformerNames = new HashSet<String>(0);
-      this.transformationSteps = new ArrayList<Class<?>>();
+      this.transformerNames = Collections.emptySet();
+      this.transformationSteps = Collections.emptyList();
       this.deriveTransformation = false;
+      this.splitThreshold = BatchTransformation.SEQUENTIAL;
+      this.ordered = true;
    }
 
    /**
@@ -67,6 +86,248 @@ public class Transformation<T>
       return (T)this.transform(src);
    }
 
+   /**
+    * Performs the transformation on every object in a collection. The transformer for each distinct source class is
+    * only resolved once, no matter how many objects there are.
+    *
+    * @param sources The objects to perform the transformation on.
+    * @return A fixed-size list with the transformation results.
+    * @see Transformation#inParallel()
+    * @see Transformation#unordered()
+    */
+   public final List<T> performOnAll( Collection<?> sources )
+   {
+      return this.<Object>compile().performOnAll(sources);
+   }
+
+   /**
+    * Performs the transformation on every object in an array. The transformer for each distinct source class is
+    * only resolved once, no matter how many objects there are.
+    *
+    * @param sources The objects to perform the transformation on. The array is not modified.
+    * @return A fixed-size list with the transformation results.
+    * @see Transformation#inParallel()
+    * @see Transformation#unordered()
+    */
+   public final List<T> performOnAll( Object[] sources )
+   {
+      return this.<Object>compile().performOnAll(sources);
+   }
+
+   /**
+    * Performs the transformation on every object in a collection, and collects the results into a set.
+    *
+    * @param sources The objects to perform the transformation on.
+    * @return A new set with the transformation results.
+    * @see CompiledTransformation#performOnSet(Collection)
+    */
+   public final Set<T> performOnSet( Collection<?> sources )
+   {
+      return this.<Object>compile().performOnSet(sources);
+   }
+
+   /**
+    * Performs the transformation on every object in an array, and returns the results in an array of the target type.
+    *
+    * @param sources The objects to perform the transformation on. The array is not modified.
+    * @return A new array with the transformation results.
+    * @see CompiledTransformation#performOnArray(Object[])
+    */
+   public final T[] performOnArray( Object[] sources )
+   {
+      return this.<Object>compile().performOnArray(sources);
+   }
+
+   /**
+    * Performs the transformation on the values of a map.
+    *
+    * @param sources The map whose values to perform the transformation on.
+    * @param <K> The type of the map's keys.
+    * @return A new map with the same keys and the transformed values.
+    * @see CompiledTransformation#performOnValues(Map)
+    */
+   public final <K> Map<K, T> performOnValues( Map<K, ?> sources )
+   {
+      return this.<Object>compile().performOnValues(sources);
+   }
+
+   /**
+    * Performs the transformation on the value of an optional, if it has one.
+    *
+    * @param source The optional value to perform the transformation on.
+    * @return An optional with the transformation result, or an empty optional.
+    * @see CompiledTransformation#performOnOptional(Optional)
+    */
+   public final Optional<T> performOnOptional( Optional<?> source )
+   {
+      return this.<Object>compile().performOnOptional(source);
+   }
+
+   /**
+    * Returns a view of a list whose elements are transformed every time they are read.
+    *
+    * @param sources The list of objects to transform.
+    * @return A lazily transforming list view.
+    * @see CompiledTransformation#lazily(List)
+    */
+   public final List<T> lazily( List<?> sources )
+   {
+      return this.<Object>compile().lazily(sources);
+   }
+
+   /**
+    * Returns a view of a map whose values are transformed every time they are read.
+    *
+    * @param sources The map whose values to transform.
+    * @param <K> The type of the map's keys.
+    * @return A lazily transforming map view.
+    * @see CompiledTransformation#lazily(Map)
+    */
+   public final <K> Map<K, T> lazily( Map<K, ?> sources )
+   {
+      return this.<Object>compile().lazily(sources);
+   }
+
+   /**
+    * Defers the transformation of a source object until its result is first read. The context is copied when this
+    * method is called, so this transformation may be modified or reused right away.
+    *
+    * @param src The object to perform a transformation on.
+    * @return The deferred result of the transformation.
+    * @see CompiledTransformation#performOnDeferred(Object)
+    */
+   public final Lazy<T> performOnDeferred( Object src )
+   {
+      return this.<Object>compile().performOnDeferred(src);
+   }
+
+   /**
+    * Defers the transformation of every object in a collection until the results are first read.
+    *
+    * @param sources The objects to perform the transformation on.
+    * @return The deferred fixed-size list of results.
+    * @see CompiledTransformation#performOnAllDeferred(Collection)
+    */
+   public final Lazy<List<T>> performOnAllDeferred( Collection<?> sources )
+   {
+      return this.<Object>compile().performOnAllDeferred(sources);
+   }
+
+   /**
+    * Defers the transformation of a source object behind a proxy of the target type, which must be an interface.
+    *
+    * @param src The object to perform a transformation on.
+    * @return A proxy that performs the transformation when one of its methods is first called.
+    * @throws TransformationException If the target type is not an interface.
+    * @see CompiledTransformation#performOnAsProxy(Object)
+    */
+   public final T performOnAsProxy( Object src )
+   {
+      return this.<Object>compile().performOnAsProxy(src);
+   }
+
+   /**
+    * Performs the transformation asynchronously on the framework's executor, which can be set with
+    * {@link Morphoo#setAsyncExecutor(java.util.concurrent.Executor)}. The context is copied when this method is
+    * called, so this transformation may be modified or reused right away.
+    *
+    * @param src The object to perform a transformation on.
+    * @return A future for the result of the transformation.
+    */
+   public final CompletableFuture<T> performOnAsync( Object src )
+   {
+      return this.<Object>compile().performOnAsync(src);
+   }
+
+   /**
+    * Performs the transformation asynchronously with a deadline. If the result is not ready in time, the future fails
+    * with a {@link java.util.concurrent.TimeoutException} and the transformation is interrupted or, if it has not
+    * started yet, never run.
+    *
+    * @param src The object to perform a transformation on.
+    * @param timeout The maximum time to wait for the result.
+    * @param unit The unit of timeout.
+    * @return A future for the result of the transformation.
+    */
+   public final CompletableFuture<T> performOnAsync( Object src, long timeout, TimeUnit unit )
+   {
+      return this.<Object>compile().performOnAsync(src, timeout, unit);
+   }
+
+   /**
+    * Performs the transformation asynchronously on every object in a collection, each as a separate task.
+    *
+    * @param sources The objects to perform the transformation on.
+    * @return A future for a fixed-size list with the results, in the same order as the sources.
+    * @see CompiledTransformation#performOnAllAsync(Collection)
+    */
+   public final CompletableFuture<List<T>> performOnAllAsync( Collection<?> sources )
+   {
+      return this.<Object>compile().performOnAllAsync(sources);
+   }
+
+   /**
+    * Performs the transformation asynchronously on every object in a collection with a deadline for the whole batch.
+    *
+    * @param sources The objects to perform the transformation on.
+    * @param timeout The maximum time to wait for all the results.
+    * @param unit The unit of timeout.
+    * @return A future for a fixed-size list with the results, in the same order as the sources.
+    * @see CompiledTransformation#performOnAllAsync(Collection, long, TimeUnit)
+    */
+   public final CompletableFuture<List<T>> performOnAllAsync( Collection<?> sources, long timeout, TimeUnit unit )
+   {
+      return this.<Object>compile().performOnAllAsync(sources, timeout, unit);
+   }
+
+   /**
+    * Indicates that batches transformed with {@link Transformation#performOnAll(Collection)} should be split across
+    * the framework's fork/join pool when they are large enough. The pool can be set with
+    * {@link Morphoo#setForkJoinPool(java.util.concurrent.ForkJoinPool)}.
+    *
+    * Context variables are shared by all the parallel tasks, so transformer methods must not modify the
+    * {@link TransformationContext} when this is used.
+    *
+    * @return A Transformation that performs large batches in parallel.
+    */
+   public Transformation<T> inParallel()
+   {
+      return this.inParallel(BatchTransformation.DEFAULT_SPLIT_THRESHOLD);
+   }
+
+   /**
+    * Indicates that batches transformed with {@link Transformation#performOnAll(Collection)} should be split across
+    * the framework's fork/join pool into chunks of at most splitThreshold elements.
+    *
+    * @param splitThreshold The number of elements below which a batch is not split any further.
+    * @return A Transformation that performs large batches in parallel.
+    * @throws TransformationException If splitThreshold is not positive.
+    * @see Transformation#inParallel()
+    */
+   public Transformation<T> inParallel( int splitThreshold )
+   {
+      if( splitThreshold <= 0 )
+      {
+         throw new TransformationException("The split threshold must be a positive number");
+      }
+
+      this.splitThreshold = splitThreshold;
+      return this;
+   }
+
+   /**
+    * Indicates that the results of {@link Transformation#performOnAll(Collection)} do not need to be in the same
+    * order as the sources. This allows sources to be grouped by class before they are transformed, which improves
+    * throughput on mixed batches.
+    *
+    * @return A Transformation that may return batch results in any order.
+    */
+   public Transformation<T> unordered()
+   {
+      this.ordered = false;
+      return this;
+   }
+
    /**
     * Indicates that this transformation should go through the specified class.
     * If there is a {@link org.isisoft.morphoo.annotation.Transformer} method specified from ClassA to ClassB, and
@@ -93,6 +354,10 @@ public class Transformation<T>
          throw new TransformationException("A Transformation path cannot be derived and specified simultaneously");
       }
 
+      if( this.transformationSteps.isEmpty() )
+      {
+         this.transformationSteps = new ArrayList<Class<?>>();
+      }
       this.transformationSteps.add(intermediateClass);
       return this;
    }
@@ -107,6 +372,10 @@ public class Transformation<T>
     */
    public Transformation<T> using(String transformerName)
    {
+      if( this.transformerNames.isEmpty() )
+      {
+         this.transformerNames = new HashSet<String>();
+      }
       this.transformerNames.add(transformerName);
       return this;
    }
@@ -130,6 +399,24 @@ public class Transformation<T>
       return this;
    }
 
+   /**
+    * Adds a context variable whose value is only computed if a transformer method reads it. The supplier is called
+    * the first time the variable is read, and its value is then kept for every later read by any of the transformers
+    * this transformation goes through, until the performance ends. Every performance of this transformation calls the
+    * supplier again, at most once. Threads reading the variable at the same time wait for a single call to the
+    * supplier.
+    *
+    * @param name The name of the context variable to add.
+    * @param supplier The supplier of the context variable's value.
+    * @return A Transformation that will use the given context variable when performing the transformation.
+    * @see TransformationContext#putLazy(String, Supplier)
+    */
+   public Transformation<T> withLazyContext(String name, Supplier<?> supplier)
+   {
+      this.context.putLazy(name, supplier);
+      return this;
+   }
+
    /**
     * Indicates that this transformation should derive the shortest possible path to perform the transformation.
     * If the following transformer methods have been defined:
@@ -163,46 +450,152 @@ public class Transformation<T>
    }
 
    /**
-    * Performs the transformation from the src object to the targetClass.
+    * Indicates that this transformation should preserve the identity of the objects in the graph it transforms. Each
+    * time it is performed, a new identity map is started, and every source instance reached while performing it is
+    * transformed only once into each target type. Objects that are shared in the source graph are then shared in the
+    * result as well, and each of them is transformed a single time.
+    *
+    * Nested transformations, performed by transformer methods on the children of their source object, join the graph
+    * transformation when they are set up with {@link Transformation#within(TransformationContext)}. They can then be
+    * performed in parallel with {@link Transformation#inParallel()} to transform independent subtrees on the
+    * framework's fork/join pool. Transformer methods whose targets may be reached again through cyclic references must
+    * register them with {@link TransformationContext#registerTarget(Object, Object)} before transforming their
+    * children.
+    *
+    * @return A Transformation that preserves the identity of the transformed objects.
     */
-   private Object transform( Object src )
+   public Transformation<T> preservingIdentity()
    {
-      Transformer transformer = null;
+      this.preserveIdentity = true;
+      return this;
+   }
 
-      if( this.transformationSteps.size() > 0 )
-      {
-         transformer =
-            TransformerRegistry.getInstance().getTransformer( this.buildTransformationSteps(src) );
-      }
-      else
-      {
-         transformer =
-               TransformerRegistry.getInstance().getTransformer(src.getClass(), this.targetType, this.transformerNames, this.deriveTransformation);
-      }
+   /**
+    * Performs this transformation as part of the one that the given context belongs to. It starts with the same
+    * context variables and, if the context belongs to a graph transformation (see
+    * {@link Transformation#preservingIdentity()}), it shares its identity map. This is meant for transformer methods
+    * that transform the children of their source object.
+    *
+    * It is also the way to start from context variables shared by many transformations. If ctx is frozen (see
+    * {@link TransformationContext#freeze()}), its variables are not copied, and the ones added with
+    * {@link Transformation#withContext(String, Object)} are layered over them.
+    *
+    * @param ctx The context received by a transformer method, or a frozen context.
+    * @return A Transformation that is performed as part of the one ctx belongs to.
+    */
+   public Transformation<T> within( TransformationContext ctx )
+   {
+      this.context = ctx.copy();
+      return this;
+   }
 
-      // If still not found then it is not registered
-      if( transformer == null )
-      {
-         throw new TransformationException("No Transformer method found to transform from " + src.getClass().getName() +
-               " to " + targetType.getName());
-      }
+   /**
+    * Indicates that the results of this transformation should be memoized. Performing the transformation again on an
+    * object equal to one it was performed on before, with the same context variables, returns the same result
+    * without invoking any transformer. Transformations compiled from this one share its memoized results.
+    *
+    * Only transformations that always return equal results for equal inputs should be memoized. Source objects and
+    * context variables must implement equals and hashCode, and must not be modified after being transformed.
+    * Transformer methods can also memoize their own results with {@link org.isisoft.morphoo.annotation.Transformer#memoize()}.
+    *
+    * @param policy How many results to keep and for how long.
+    * @return A Transformation that memoizes its results.
+    */
+   public Transformation<T> memoized( MemoizationPolicy policy )
+   {
+      this.resultCache = new ResultCache(policy);
+      return this;
+   }
 
-      return transformer.transform(src, this.context);
+   /**
+    * @return The usage statistics of this transformation's memoized results, or null if it is not memoized.
+    */
+   public CacheStatistics getMemoizationStatistics()
+   {
+      return this.resultCache == null ? null : this.resultCache.getStatistics();
    }
 
-   private Class<?>[] buildTransformationSteps( Object src )
+   /**
+    * Compiles this transformation into an immutable, thread-safe {@link CompiledTransformation}. Changes made to this
+    * transformation afterwards do not affect the compiled one.
+    *
+    * @param <S> The type of the objects the compiled transformation will accept.
+    * @return The compiled transformation.
+    */
+   public <S> CompiledTransformation<S, T> compile()
    {
-      Class<?>[] stepArray = new Class<?>[ this.transformationSteps.size() + 2 ];
-      int idx = 0;
-      stepArray[idx++] = src.getClass();
+      return new CompiledTransformation<S, T>(this.targetType, this.transformerNames, this.deriveTransformation,
+            this.transformationSteps, this.context, this.splitThreshold, this.ordered, this.resultCache,
+            this.preserveIdentity);
+   }
 
-      for( Class<?> c : this.transformationSteps )
+   /**
+    * Returns this transformation as a {@link Function} that can be used in stream pipelines.
+    * The transformer for sourceType is resolved right away.
+    *
+    * @param sourceType The type of the objects the function will be applied to.
+    * @param <S> The type of the objects the function will accept.
+    * @return A function that performs this transformation.
+    * @throws TransformationException If no transformer can be found from sourceType.
+    */
+   public <S> Function<S, T> asFunction( Class<S> sourceType )
+   {
+      return this.compile(sourceType);
+   }
+
+   /**
+    * Compiles this transformation into an immutable, thread-safe {@link CompiledTransformation} and resolves its
+    * transformer for the given source type right away.
+    *
+    * @param sourceType The type of the objects the compiled transformation will be performed on.
+    * @param <S> The type of the objects the compiled transformation will accept.
+    * @return The compiled transformation.
+    * @throws TransformationException If no transformer can be found from sourceType.
+    */
+   public <S> CompiledTransformation<S, T> compile( Class<S> sourceType )
+   {
+      CompiledTransformation<S, T> compiled = this.compile();
+      compiled.resolveFor(sourceType);
+      return compiled;
+   }
+
+   /**
+    * Describes the route this transformation would take for objects of the given type, without performing it.
+    *
+    * @param sourceType The type of the objects to transform.
+    * @return The route for the source type.
+    * @throws TransformationException If no transformer can be found from sourceType.
+    */
+   public Route getRoute( Class<?> sourceType )
+   {
+      return TransformerRegistry.getInstance().getRoute(sourceType, this.targetType, this.transformerNames,
+            this.deriveTransformation, this.transformationSteps);
+   }
+
+   /**
+    * Performs the transformation from the src object to the targetClass.
+    */
+   private Object transform( Object src )
+   {
+      Transformer transformer =
+            TransformerRegistry.getInstance().resolve(src.getClass(), this.targetType, this.transformerNames,
+                  this.deriveTransformation, this.transformationSteps);
+
+      // lazy context variables are computed again for every performance
+      TransformationContext ctx = this.context.forPerformance();
+      if( this.preserveIdentity )
       {
-         stepArray[idx++] = c;
+         ctx = ctx.withObjectGraph();
       }
-
-      stepArray[idx++] = targetType;
-      return stepArray;
+      if( ctx.getObjectGraph() != null )
+      {
+         return ctx.getObjectGraph().transform(transformer, this.resultCache, src, this.targetType, ctx);
+      }
+      if( this.resultCache != null )
+      {
+         return this.resultCache.transform(transformer, src, ctx);
+      }
+      return transformer.transform(src, ctx);
    }
 
 }
@@ -1,7 +1,9 @@
 package org.isisoft.morphoo.core;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * The context to be used when performing a transformation. It holds name-value pairs with the different variables
@@ -11,25 +13,243 @@ import java.util.Map;
  * a parameter of this type on the method. The Transformation context may be modified in a transformation, but extreme
  * care must be taken if chaining transformation when doing this.
  *
+ * Values are stored in a flat array indexed by the slot each variable name is interned to, which lets
+ * {@link org.isisoft.morphoo.annotation.ContextParam} injection read them without any hashing. The few variables whose
+ * names were interned after all the slots were taken are kept in a map instead.
+ *
+ * Variables that are the same for many transformations can be kept in a context that is frozen once with
+ * {@link TransformationContext#freeze()}, and shared by any number of threads. Contexts created from it with
+ * {@link TransformationContext#overlay()} hold only the variables that are put into them, and fall back on the frozen
+ * base for the rest, so creating them copies nothing.
+ *
+ * Variables that are expensive to compute can be put as suppliers with
+ * {@link TransformationContext#putLazy(String, Supplier)}. A supplier is only called when its variable is first read
+ * during a transformation, and its value is kept for every later read of that transformation, by any thread and by
+ * every transformer it goes through. The next transformation performed with the same context calls the supplier
+ * again.
+ *
  * @author Carlos Munoz
  */
 public class TransformationContext
 {
-   private Map<String, Object> contextMap = new HashMap<String, Object>();
+   private static final Object[] EMPTY_VALUES = new Object[0];
+
+   /** Stored in place of null values, so that they can be told apart from absent variables */
+   private static final Object NULL_VALUE = new Object();
+
+   /** Stored in an overlay in place of variables removed from its base */
+   private static final Object REMOVED = new Object();
+
+   /**
+    * A variable whose value is computed on first read. Threads reading it at the same time wait for a single
+    * computation. If the supplier fails, the next read tries again.
+    */
+   private static final class LazyValue
+   {
+      private static final Object UNSET = new Object();
+
+      private final Supplier<?> supplier;
+
+      private volatile Object value = UNSET;
+
+      private LazyValue(Supplier<?> supplier)
+      {
+         this.supplier = supplier;
+      }
+
+      private Object get()
+      {
+         Object result = this.value;
+         if( result == UNSET )
+         {
+            synchronized (this)
+            {
+               result = this.value;
+               if( result == UNSET )
+               {
+                  result = this.supplier.get();
+                  this.value = result;
+               }
+            }
+         }
+         return result;
+      }
+
+      /**
+       * @return The value, or null if it has not been computed yet.
+       */
+      private Object peek()
+      {
+         Object result = this.value;
+         return result == UNSET ? null : result;
+      }
+
+      /**
+       * @return A variable with the same supplier whose value has not been computed yet.
+       */
+      private LazyValue fresh()
+      {
+         return new LazyValue(this.supplier);
+      }
+
+      /**
+       * Lazy variables are equal when they have the same supplier, whether their values have been computed or not.
+       */
+      @Override
+      public boolean equals(Object o)
+      {
+         return o instanceof LazyValue && ((LazyValue)o).supplier == this.supplier;
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return System.identityHashCode(this.supplier);
+      }
+   }
+
+   private Object[] values = EMPTY_VALUES;
+
+   /** Variables whose names have no slot, stored like the values, or null if there are none */
+   private Map<String, Object> overflow;
+
+   private int size;
+
+   /** The frozen context this one is layered over, or null */
+   private final TransformationContext base;
+
+   private boolean frozen;
+
+   /** Whether lazy variables may have been put into this context or its base */
+   private boolean lazy;
+
+   /** Whether this context belongs to a transformation being performed, whose lazy variables are its own */
+   private boolean performing;
+
+   /** The identity map of the graph transformation this context belongs to, or null */
+   private ObjectGraph objectGraph;
+
+   /** The objects of the graph transformation being transformed that lead to this context, or null */
+   private ObjectGraph.Path graphPath;
+
+
+   public TransformationContext()
+   {
+      this.base = null;
+   }
+
+   private TransformationContext(TransformationContext base)
+   {
+      this.base = base;
+      if( base != null )
+      {
+         this.size = base.size;
+         this.lazy = base.lazy;
+         this.performing = base.performing;
+      }
+   }
 
    public Object put(String name, Object o)
    {
-      return contextMap.put(name, o);
+      return this.putRaw(name, o == null ? NULL_VALUE : o);
+   }
+
+   /**
+    * Puts a variable whose value is computed by a supplier the first time it is read. The supplier is called at most
+    * once per transformation performed with this context, even if several threads read the variable at the same time,
+    * unless it throws an exception.
+    *
+    * @param name The name of the variable.
+    * @param supplier The supplier of the variable's value. It may supply null.
+    * @return The previous value of the variable. If it was a lazy variable whose value had not been computed yet, it is
+    * not computed and null is returned.
+    */
+   public Object putLazy(String name, Supplier<?> supplier)
+   {
+      if( supplier == null )
+      {
+         throw new NullPointerException("supplier");
+      }
+      Object previous = this.putRaw(name, new LazyValue(supplier));
+      this.lazy = true;
+      return previous;
+   }
+
+   private Object putRaw(String name, Object raw)
+   {
+      this.checkMutable();
+      int slot = ContextSlots.slotOf(name);
+      Object previous;
+      if( slot == ContextSlots.NO_SLOT )
+      {
+         previous = this.overflowValue(name);
+         if( this.overflow == null )
+         {
+            this.overflow = new HashMap<String, Object>();
+         }
+         this.overflow.put(name, raw);
+      }
+      else
+      {
+         this.ensureCapacity(slot);
+         previous = this.rawValue(slot);
+         this.values[slot] = raw;
+      }
+      if( previous == null )
+      {
+         this.size++;
+      }
+      return peek(previous);
    }
 
    public Object remove(Object o)
    {
-      return contextMap.remove(o);
+      this.checkMutable();
+      if( !(o instanceof String) )
+      {
+         return null;
+      }
+      String name = (String)o;
+      Object previous = this.rawValue(name);
+      if( previous == null )
+      {
+         return null;
+      }
+
+      // hide the base's variable, if it has one
+      boolean inBase = this.base != null && this.base.rawValue(name) != null;
+      int slot = ContextSlots.existingSlotOf(name);
+      if( slot == ContextSlots.NO_SLOT )
+      {
+         if( inBase )
+         {
+            if( this.overflow == null )
+            {
+               this.overflow = new HashMap<String, Object>();
+            }
+            this.overflow.put(name, REMOVED);
+         }
+         else
+         {
+            this.overflow.remove(name);
+         }
+      }
+      else if( inBase )
+      {
+         this.ensureCapacity(slot);
+         this.values[slot] = REMOVED;
+      }
+      else
+      {
+         this.values[slot] = null;
+      }
+      this.size--;
+      return peek(previous);
    }
 
    public Object get(String name)
    {
-      return contextMap.get(name);
+      return resolve(this.rawValue(name));
    }
 
    public <T> T get(String name, Class<T> asClass)
@@ -39,11 +259,355 @@ public class TransformationContext
 
    public int size()
    {
-      return contextMap.size();
+      return size;
    }
 
    public boolean containsKey(String name)
    {
-      return contextMap.containsKey(name);
+      return this.rawValue(name) != null;
+   }
+
+   /**
+    * Registers the target that a transformer method is building for its source object, before it is finished. This is
+    * needed in graph transformations (see {@link Transformation#preservingIdentity()}) when the source object may be
+    * reached again while transforming its children, as happens with cyclic references. Those references are then
+    * transformed into the registered target. Outside of graph transformations, this method does nothing.
+    *
+    * @param source The source object being transformed.
+    * @param target The target being built for it.
+    */
+   public void registerTarget(Object source, Object target)
+   {
+      if( this.objectGraph != null )
+      {
+         this.objectGraph.registerTarget(source, target, this.graphPath);
+      }
+   }
+
+   /**
+    * Returns an immutable context with the same variables as this one, which may be read by many threads at once and
+    * used as the base of other contexts with {@link TransformationContext#overlay()}. Trying to modify a frozen
+    * context throws {@link UnsupportedOperationException}.
+    *
+    * @return This context if it is already frozen, or otherwise a frozen copy of it, which belongs to the same graph
+    * transformation.
+    */
+   public TransformationContext freeze()
+   {
+      if( this.frozen )
+      {
+         return this;
+      }
+      TransformationContext frozenCopy = new TransformationContext();
+      frozenCopy.values = this.mergedValues();
+      frozenCopy.overflow = this.mergedOverflow();
+      frozenCopy.size = this.size;
+      frozenCopy.frozen = true;
+      frozenCopy.lazy = this.lazy;
+      frozenCopy.performing = this.performing;
+      frozenCopy.objectGraph = this.objectGraph;
+      frozenCopy.graphPath = this.graphPath;
+      return frozenCopy;
+   }
+
+   /**
+    * @return Whether this context is immutable.
+    * @see TransformationContext#freeze()
+    */
+   public boolean isFrozen()
+   {
+      return frozen;
+   }
+
+   /**
+    * Returns a new, empty context layered over this one. Variables are looked up in the new context first, and then
+    * in this one. Putting and removing variables only affects the new context. If this context is frozen, nothing is
+    * copied.
+    *
+    * @return A new mutable context that falls back on the variables in this one.
+    */
+   public TransformationContext overlay()
+   {
+      TransformationContext overlay = new TransformationContext(this.freeze());
+      overlay.objectGraph = this.objectGraph;
+      overlay.graphPath = this.graphPath;
+      return overlay;
+   }
+
+   /**
+    * @return A new mutable context holding the same variables as this one, and belonging to the same graph
+    * transformation. The variables of a frozen context, or of the base a context is layered over, are not copied.
+    */
+   TransformationContext copy()
+   {
+      if( this.frozen )
+      {
+         return this.overlay();
+      }
+      TransformationContext copy = new TransformationContext(this.base);
+      copy.values = this.values.length == 0 ? EMPTY_VALUES : this.values.clone();
+      copy.overflow = this.overflow == null ? null : new HashMap<String, Object>(this.overflow);
+      copy.size = this.size;
+      copy.lazy = this.lazy;
+      copy.performing = this.performing;
+      copy.objectGraph = this.objectGraph;
+      copy.graphPath = this.graphPath;
+      return copy;
+   }
+
+   /**
+    * @return The identity map of the graph transformation this context belongs to, or null if it does not belong to
+    * one.
+    */
+   ObjectGraph getObjectGraph()
+   {
+      return objectGraph;
+   }
+
+   /**
+    * @return This context if it already belongs to a graph transformation, or otherwise a copy of it that belongs to a
+    * new one.
+    */
+   TransformationContext withObjectGraph()
+   {
+      if( this.objectGraph != null )
+      {
+         return this;
+      }
+      TransformationContext copy = this.copy();
+      copy.objectGraph = new ObjectGraph();
+      copy.graphPath = null;
+      return copy;
+   }
+
+   /**
+    * Returns the context to perform a transformation with. Its lazy variables are computed at most once for that
+    * transformation, and shared by every transformer it goes through, including the nested transformations set up
+    * with {@link Transformation#within(TransformationContext)}.
+    *
+    * @return This context if it has no lazy variables or already belongs to a transformation being performed, or
+    * otherwise a copy of it whose lazy variables have not been computed yet, frozen if this context is.
+    */
+   TransformationContext forPerformance()
+   {
+      if( !this.lazy || this.performing )
+      {
+         return this;
+      }
+
+      TransformationContext fresh = new TransformationContext();
+      fresh.values = this.mergedValues();
+      for( int i=0; i<fresh.values.length; i++ )
+      {
+         if( fresh.values[i] instanceof LazyValue )
+         {
+            fresh.values[i] = ((LazyValue)fresh.values[i]).fresh();
+         }
+      }
+      fresh.overflow = this.mergedOverflow();
+      if( fresh.overflow != null )
+      {
+         for( Map.Entry<String, Object> e : fresh.overflow.entrySet() )
+         {
+            if( e.getValue() instanceof LazyValue )
+            {
+               e.setValue(((LazyValue)e.getValue()).fresh());
+            }
+         }
+      }
+      fresh.size = this.size;
+      fresh.frozen = this.frozen;
+      fresh.lazy = true;
+      fresh.performing = true;
+      fresh.objectGraph = this.objectGraph;
+      fresh.graphPath = this.graphPath;
+      return fresh;
+   }
+
+   /**
+    * @return The objects of the graph transformation being transformed that lead to this context, or null if it is
+    * not nested in any of them.
+    */
+   ObjectGraph.Path getGraphPath()
+   {
+      return graphPath;
+   }
+
+   /**
+    * @return A copy of this context for the transformations nested in the given path.
+    */
+   TransformationContext onGraphPath(ObjectGraph.Path path)
+   {
+      TransformationContext copy = this.copy();
+      copy.graphPath = path;
+      return copy;
+   }
+
+   /**
+    * Returns the variables in this context indexed by slot, without any empty slots at the end. Variables whose names
+    * have no slot are gathered in a map placed right after the last slot. Two contexts holding equal variables return
+    * equal arrays. Lazy variables are not computed: they are equal when they have the same supplier, so contexts copied
+    * from the same one, or performing the same transformation again, still return equal arrays.
+    *
+    * @return A copy of the variables in this context, still masked.
+    */
+   Object[] snapshotValues()
+   {
+      Object[] merged = this.mergedValues();
+      Map<String, Object> mergedOverflow = this.mergedOverflow();
+      if( mergedOverflow == null )
+      {
+         return merged;
+      }
+      Object[] snapshot = Arrays.copyOf(merged, ContextSlots.MAX_SLOTS + 1);
+      snapshot[ContextSlots.MAX_SLOTS] = mergedOverflow;
+      return snapshot;
+   }
+
+   /**
+    * @return The variables in this context and its base indexed by slot, still masked, without any empty slots at the
+    * end.
+    */
+   private Object[] mergedValues()
+   {
+      Object[] merged = this.values;
+      if( this.base != null )
+      {
+         merged = Arrays.copyOf(this.base.values, Math.max(this.base.values.length, this.values.length));
+         for( int i=0; i<this.values.length; i++ )
+         {
+            Object v = this.values[i];
+            if( v != null )
+            {
+               merged[i] = v == REMOVED ? null : v;
+            }
+         }
+      }
+
+      int length = merged.length;
+      while( length > 0 && merged[length - 1] == null )
+      {
+         length--;
+      }
+      return length == 0 ? EMPTY_VALUES : Arrays.copyOf(merged, length);
+   }
+
+   /**
+    * @return The variables in this context and its base whose names have no slot, still masked, or null if there are
+    * none.
+    */
+   private Map<String, Object> mergedOverflow()
+   {
+      Map<String, Object> merged = this.base != null && this.base.overflow != null ?
+            new HashMap<String, Object>(this.base.overflow) : new HashMap<String, Object>();
+      if( this.overflow != null )
+      {
+         for( Map.Entry<String, Object> e : this.overflow.entrySet() )
+         {
+            if( e.getValue() == REMOVED )
+            {
+               merged.remove(e.getKey());
+            }
+            else
+            {
+               merged.put(e.getKey(), e.getValue());
+            }
+         }
+      }
+      return merged.isEmpty() ? null : merged;
+   }
+
+   /**
+    * Returns the value stored in a slot.
+    *
+    * @param slot A slot obtained from {@link ContextSlots}.
+    * @return The value in the slot, or null if there is none.
+    */
+   Object getSlot(int slot)
+   {
+      return resolve(this.rawValue(slot));
+   }
+
+   /**
+    * @return The value stored for a slot in this context or its base, still masked, or null if there is none.
+    */
+   private Object rawValue(int slot)
+   {
+      Object[] v = this.values;
+      Object value = slot < v.length ? v[slot] : null;
+      if( value == null && this.base != null )
+      {
+         Object[] baseValues = this.base.values;
+         value = slot < baseValues.length ? baseValues[slot] : null;
+      }
+      return value == REMOVED ? null : value;
+   }
+
+   /**
+    * @return The value stored for a variable in this context or its base, still masked, or null if there is none.
+    */
+   private Object rawValue(String name)
+   {
+      if( name == null )
+      {
+         return null;
+      }
+      int slot = ContextSlots.existingSlotOf(name);
+      return slot != ContextSlots.NO_SLOT ? this.rawValue(slot) : this.overflowValue(name);
+   }
+
+   /**
+    * @return The value stored for a variable whose name has no slot, still masked, or null if there is none.
+    */
+   private Object overflowValue(String name)
+   {
+      Object value = this.overflow != null ? this.overflow.get(name) : null;
+      if( value == null && this.base != null && this.base.overflow != null )
+      {
+         value = this.base.overflow.get(name);
+      }
+      return value == REMOVED ? null : value;
+   }
+
+   private void ensureCapacity(int slot)
+   {
+      if( slot >= this.values.length )
+      {
+         Object[] grown = new Object[ Math.max(slot + 1, this.values.length * 2) ];
+         System.arraycopy(this.values, 0, grown, 0, this.values.length);
+         this.values = grown;
+      }
+   }
+
+   private void checkMutable()
+   {
+      if( this.frozen )
+      {
+         throw new UnsupportedOperationException("A frozen transformation context cannot be modified");
+      }
+   }
+
+   /**
+    * @return The unmasked value, computing it if it is a lazy variable.
+    */
+   private static Object resolve(Object value)
+   {
+      if( value instanceof LazyValue )
+      {
+         return ((LazyValue)value).get();
+      }
+      return value == NULL_VALUE ? null : value;
+   }
+
+   /**
+    * @return The unmasked value, without computing it if it is a lazy variable.
+    */
+   private static Object peek(Object value)
+   {
+      if( value instanceof LazyValue )
+      {
+         return ((LazyValue)value).peek();
+      }
+      return value == NULL_VALUE ? null : value;
    }
 }
@@ -0,0 +1,102 @@
+package org.isisoft.morphoo.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent cache of resolved transformers. Resolutions that yielded no transformer are cached as well, so repeated
+ * misses are answered without searching the graph again.
+ *
+ * A cache instance only holds resolutions made against a single graph snapshot. When a new snapshot is published, a
+ * new generation of the cache is started with {@link TransformerCache#nextGeneration()}, which keeps the usage counters
+ * but none of the entries. Late writes from resolutions still running against an older snapshot therefore land in
+ * an unreachable generation instead of polluting the current one.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+class TransformerCache
+{
+   /**
+    * Cached value indicating that a resolution did not produce a transformer.
+    */
+   static final class NoRoute
+   {
+      private final String message;
+
+      NoRoute(String message)
+      {
+         this.message = message;
+      }
+
+      /**
+       * @return The message of the exception raised by the original resolution, or null if it simply found nothing.
+       */
+      String getMessage()
+      {
+         return message;
+      }
+   }
+
+   private static final NoRoute NOT_FOUND = new NoRoute(null);
+
+   private final ConcurrentMap<TransformerKey, Object> entries = new ConcurrentHashMap<TransformerKey, Object>();
+
+   private final LongAdder hits;
+
+   private final LongAdder misses;
+
+
+   TransformerCache()
+   {
+      this(new LongAdder(), new LongAdder());
+   }
+
+   private TransformerCache(LongAdder hits, LongAdder misses)
+   {
+      this.hits = hits;
+      this.misses = misses;
+   }
+
+   /**
+    * @return An empty cache that shares this cache's usage counters.
+    */
+   TransformerCache nextGeneration()
+   {
+      return new TransformerCache(this.hits, this.misses);
+   }
+
+   /**
+    * @param key The resolution key.
+    * @return The cached {@link Transformer}, a {@link NoRoute} marker, or null if the key has not been resolved yet.
+    */
+   Object get(TransformerKey key)
+   {
+      Object value = this.entries.get(key);
+      if( value != null )
+      {
+         this.hits.increment();
+      }
+      else
+      {
+         this.misses.increment();
+      }
+      return value;
+   }
+
+   void putTransformer(TransformerKey key, Transformer transformer)
+   {
+      this.entries.put(key.snapshot(), transformer != null ? transformer : NOT_FOUND);
+   }
+
+   void putNoRoute(TransformerKey key, String message)
+   {
+      this.entries.put(key.snapshot(), new NoRoute(message));
+   }
+
+   CacheStatistics getStatistics()
+   {
+      return new CacheStatistics(this.hits.sum(), this.misses.sum(), this.entries.size());
+   }
+}
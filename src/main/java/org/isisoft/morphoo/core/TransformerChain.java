@@ -1,5 +1,8 @@
 package org.isisoft.morphoo.core;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -7,15 +10,52 @@ import java.util.List;
  * A transformer chain is an ordered sequence of transformers in which the output of each transformer is the input to
  * the next one. The output from the last transformer in the sequence is then the result of the transformation.
  *
+ * The first time a chain is used, its transformers are fused into a single composed method handle, so performing
+ * the chain is one invocation instead of a call per transformer. Transformer methods that only take a source object
+ * are composed directly into the handle, which lets the JIT compiler treat a whole route as one compilation unit.
+ * Consecutive steps of that kind are composed with their own primitive types, so a primitive passed from one of them
+ * to the next is never boxed.
+ *
  * @author Carlos Munoz
  */
 public class TransformerChain implements Transformer
 {
+   /**
+    * Handle for {@link Transformer#transform(Object, TransformationContext)}.
+    */
+   static final MethodHandle TRANSFORM;
+
+   static
+   {
+      try
+      {
+         TRANSFORM = MethodHandles.lookup().findVirtual(Transformer.class, "transform",
+               MethodType.methodType(Object.class, Object.class, TransformationContext.class));
+      }
+      catch (ReflectiveOperationException e)
+      {
+         throw new ExceptionInInitializerError(e);
+      }
+   }
+
    List<Transformer> transformerSeq;
 
+   /** The fused chain, created on first use. Typed as (Object, TransformationContext)Object */
+   private volatile MethodHandle fusedHandle;
+
+   /**
+    * The fused chain typed with the primitive types of its first source and last result, or null if some step cannot
+    * be composed that way. Set before fusedHandle.
+    */
+   private volatile MethodHandle exactHandle;
+
+   /** Where to record metrics, or null if metrics were disabled when the chain was created */
+   private final InvocationMetrics metrics;
+
    public TransformerChain()
    {
       this.transformerSeq = new ArrayList<Transformer>();
+      this.metrics = TransformerRegistry.getInstance().getChainMetrics();
    }
 
    /**
@@ -26,20 +66,188 @@ public class TransformerChain implements Transformer
    public void addTransformer( Transformer transformer )
    {
       this.transformerSeq.add(transformer);
+      this.fusedHandle = null;
+      this.exactHandle = null;
    }
 
    @Override
    public Object transform( Object src, TransformationContext ctx )
    {
-      Object from = src;
-      Object result = null;
+      MethodHandle fused = this.getFusedHandle();
+      if( fused == null )
+      {
+         return null;
+      }
+
+      if( FlightRecorderSupport.AVAILABLE )
+      {
+         InvocationEvent event = new InvocationEvent();
+         if( event.isEnabled() )
+         {
+            return this.recordedTransform(event, fused, src, ctx);
+         }
+      }
+      if( this.metrics != null )
+      {
+         return this.instrumentedTransform(fused, src, ctx);
+      }
+      return invoke(fused, src, ctx);
+   }
+
+   private Object recordedTransform( InvocationEvent event, MethodHandle fused, Object src, TransformationContext ctx )
+   {
+      event.begin();
+      try
+      {
+         return this.metrics != null ? this.instrumentedTransform(fused, src, ctx) : invoke(fused, src, ctx);
+      }
+      finally
+      {
+         event.record(src, FlightRecorderSupport.targetTypeOf(this.transformerSeq), this);
+      }
+   }
+
+   private Object instrumentedTransform( MethodHandle fused, Object src, TransformationContext ctx )
+   {
+      long start = System.nanoTime();
+      boolean failed = true;
+      try
+      {
+         Object result = invoke(fused, src, ctx);
+         failed = false;
+         return result;
+      }
+      finally
+      {
+         this.metrics.record(System.nanoTime() - start, failed);
+      }
+   }
+
+   private static Object invoke( MethodHandle fused, Object src, TransformationContext ctx )
+   {
+      try
+      {
+         return (Object)fused.invokeExact(src, ctx);
+      }
+      catch (TransformationException e)
+      {
+         throw e;
+      }
+      catch (Error e)
+      {
+         throw e;
+      }
+      catch (Throwable t)
+      {
+         throw new TransformationException("Error while transforming", t);
+      }
+   }
+
+   /**
+    * @return The fused handle for this chain, or null if the chain is empty.
+    */
+   MethodHandle getFusedHandle()
+   {
+      MethodHandle fused = this.fusedHandle;
+      if( fused == null && !this.transformerSeq.isEmpty() )
+      {
+         fused = this.fuse();
+         this.fusedHandle = fused;
+      }
+      return fused;
+   }
+
+   /**
+    * @return The fused handle for this chain typed with the primitive types of its first source and last result, or
+    * null if the chain cannot be invoked that way. Chains with metrics never can, so their invocations are recorded.
+    */
+   MethodHandle asExactHandle()
+   {
+      return this.metrics == null ? this.getExactHandle() : null;
+   }
+
+   private MethodHandle getExactHandle()
+   {
+      return this.getFusedHandle() != null ? this.exactHandle : null;
+   }
+
+   private MethodHandle fuse()
+   {
+      MethodHandle fused = null;
+      // consecutive steps composed with their own types, not yet appended to fused
+      MethodHandle segment = null;
+      boolean exact = true;
 
       for( int i=0; i<this.transformerSeq.size(); i++ )
       {
-         result = this.transformerSeq.get(i).transform(from, ctx);
-         from = result;
+         Transformer transformer = this.transformerSeq.get(i);
+         MethodHandle exactHop = exactHandleFor(transformer);
+         if( exactHop != null )
+         {
+            // exactHop(segment(src)), converting between primitives and objects only where the types differ
+            segment = segment == null ? exactHop : MethodHandles.filterReturnValue(segment,
+                  exactHop.asType(exactHop.type().changeParameterType(0, segment.type().returnType())));
+            continue;
+         }
+
+         exact = false;
+         if( segment != null )
+         {
+            fused = append(fused, generic(segment));
+            segment = null;
+         }
+         fused = append(fused, handleFor(transformer));
+      }
+
+      if( segment != null )
+      {
+         fused = append(fused, generic(segment));
       }
+      this.exactHandle = exact ? segment : null;
+      return fused;
+   }
+
+   private static MethodHandle append( MethodHandle fused, MethodHandle hop )
+   {
+      if( fused == null )
+      {
+         return hop;
+      }
+      // hop(fused(src, ctx), ctx)
+      return MethodHandles.foldArguments( MethodHandles.dropArguments(hop, 1, Object.class), fused );
+   }
 
-      return result;
+   /**
+    * @return An exactly typed handle adapted to (Object, TransformationContext)Object.
+    */
+   private static MethodHandle generic( MethodHandle exact )
+   {
+      return MethodHandles.dropArguments(exact.asType(MethodType.genericMethodType(1)), 1, TransformationContext.class);
+   }
+
+   private static MethodHandle exactHandleFor( Transformer transformer )
+   {
+      if( transformer instanceof SimpleTransformer )
+      {
+         return ((SimpleTransformer)transformer).asExactHandle();
+      }
+      else if( transformer instanceof TransformerChain )
+      {
+         return ((TransformerChain)transformer).getExactHandle();
+      }
+      return null;
+   }
+
+   private static MethodHandle handleFor( Transformer transformer )
+   {
+      if( transformer instanceof SimpleTransformer )
+      {
+         return ((SimpleTransformer)transformer).asHandle();
+      }
+      else if( transformer instanceof TransformerChain && !((TransformerChain)transformer).transformerSeq.isEmpty() )
+      {
+         return ((TransformerChain)transformer).getFusedHandle();
+      }
+      return TRANSFORM.bindTo(transformer);
    }
 }
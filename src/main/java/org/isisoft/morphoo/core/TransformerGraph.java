@@ -1,32 +1,113 @@
 package org.isisoft.morphoo.core;
 
-import org.jgrapht.DirectedGraph;
-import org.jgrapht.alg.DijkstraShortestPath;
-import org.jgrapht.graph.DefaultDirectedGraph;
-import org.jgrapht.graph.DefaultEdge;
-
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Internal structure to keep a relationship between transformers.
  *
+ * Every type in the graph gets a dense integer id, in the order in which types are added, and every pair of types
+ * that has transformers between them gets an edge id. Ids depend on the order in which transformer methods are found,
+ * which may change from one run to the next, so routes never depend on them: when several routes are equally good,
+ * the one through the types whose names come first is chosen. Edges are found by their source and target ids through a
+ * primitive hash table. For route derivation, the edges are laid out as compressed adjacency arrays (one array of
+ * neighbours for all types, and one array of offsets into it), which are built the first time a route is searched.
+ *
+ * While all transformer methods have the same cost, derived routes are the ones with the fewest transformer methods.
+ * Otherwise, they are the ones with the lowest total cost. Each edge costs as much as the transformer method that
+ * would be used on it by default: its cost hint or, when costs are measured, its average measured duration. As
+ * measured costs change over time, a derived route is only replaced when another one becomes cheaper by a margin, so
+ * routes don't keep switching between alternatives of similar cost.
+ *
+ * A graph may be read by multiple threads at once, but it must not be modified once it has been shared. To add
+ * transformers to a shared graph, modify a {@link TransformerGraph#copy()} instead.
+ *
  * @author Carlos Munoz
  */
 public class TransformerGraph
 {
-   private DirectedGraph<Class<?>, DefaultEdge> graphImpl;
+   private static final int NONE = -1;
+
+   /** How much cheaper a route must be to replace the one chosen before */
+   private static final double HYSTERESIS = 0.2;
+
+   private Map<Class<?>, Integer> typeIds;
+
+   private Class<?>[] types;
+
+   private int typeCount;
+
+   private int[] edgeSources;
+
+   private int[] edgeTargets;
+
+   private TransformerMethodSet[] edgeMethods;
+
+   /** Whether each edge's method set belongs to this graph, or is still shared with the graph it was copied from */
+   private boolean[] edgeMethodsOwned;
+
+   private int edgeCount;
+
+   private EdgeTable edgeTable;
+
+   /** Built on first use, and discarded whenever an edge is added */
+   private volatile Adjacency adjacency;
 
-   private Map<DefaultEdge, TransformerMethodSet> transformerMethodMap;
+   private boolean measuredCosts;
+
+   /** Built on first use, and discarded whenever transformer methods are added or costs are updated */
+   private volatile EdgeCosts edgeCosts;
+
+   /** The last route chosen between each pair of types, while costs are not all the same */
+   private ConcurrentMap<Long, int[]> chosenRoutes;
 
 
    public TransformerGraph()
    {
-      this.graphImpl = new DefaultDirectedGraph<Class<?>, DefaultEdge>(DefaultEdge.class);
-      this.transformerMethodMap = new HashMap<DefaultEdge, TransformerMethodSet>();
+      this.typeIds = new HashMap<Class<?>, Integer>();
+      this.types = new Class<?>[16];
+      this.edgeSources = new int[16];
+      this.edgeTargets = new int[16];
+      this.edgeMethods = new TransformerMethodSet[16];
+      this.edgeMethodsOwned = new boolean[16];
+      this.edgeTable = new EdgeTable(16);
+      this.chosenRoutes = new ConcurrentHashMap<Long, int[]>();
+   }
+
+   /**
+    * Creates a copy of this graph that can be modified without affecting this one. Transformer methods themselves are
+    * shared between both graphs.
+    *
+    * @return A new graph with the same transformers as this one.
+    */
+   public TransformerGraph copy()
+   {
+      TransformerGraph copy = new TransformerGraph();
+
+      copy.typeIds = new HashMap<Class<?>, Integer>(this.typeIds);
+      copy.types = this.types.clone();
+      copy.typeCount = this.typeCount;
+      copy.edgeSources = this.edgeSources.clone();
+      copy.edgeTargets = this.edgeTargets.clone();
+      // method sets are only copied when the copy adds methods to them
+      copy.edgeMethods = this.edgeMethods.clone();
+      copy.edgeMethodsOwned = new boolean[ this.edgeMethodsOwned.length ];
+      copy.edgeCount = this.edgeCount;
+      copy.edgeTable = this.edgeTable.copy();
+      copy.adjacency = this.adjacency;
+      copy.measuredCosts = this.measuredCosts;
+      // edges keep their ids in copies
+      copy.chosenRoutes = new ConcurrentHashMap<Long, int[]>(this.chosenRoutes);
+
+      return copy;
    }
 
    /**
@@ -42,27 +123,21 @@ public class TransformerGraph
       Class<?> from = newTrans.getSourceType();
       Class<?> to = newTrans.getTargetType();
 
-      this.graphImpl.addVertex(from);
-      this.graphImpl.addVertex(to);
-      DefaultEdge graphEdge = this.graphImpl.addEdge(from, to);
-
-      // not a new edge, the graph impl will return null
-      if( graphEdge == null )
-      {
-         graphEdge = this.graphImpl.getEdge(from, to);
-      }
+      int fromId = this.addType(from);
+      int toId = this.addType(to);
 
       // Add / Get a transformer method set
-      TransformerMethodSet edgeMethods;
-      if( this.transformerMethodMap.containsKey( graphEdge ) )
+      int edge = this.edgeTable.get(fromId, toId);
+      if( edge == NONE )
       {
-         edgeMethods = this.transformerMethodMap.get( graphEdge );
+         edge = this.addEdge(fromId, toId);
       }
-      else
+      else if( !this.edgeMethodsOwned[edge] )
       {
-         edgeMethods = new TransformerMethodSet();
-         this.transformerMethodMap.put(graphEdge, edgeMethods);
+         this.edgeMethods[edge] = new TransformerMethodSet( this.edgeMethods[edge] );
+         this.edgeMethodsOwned[edge] = true;
       }
+      TransformerMethodSet edgeMethods = this.edgeMethods[edge];
 
 
       // if there is a default transformer already defined
@@ -85,6 +160,39 @@ public class TransformerGraph
       }
 
       edgeMethods.add(newTrans);
+      this.edgeCosts = null;
+   }
+
+   /**
+    * Selects whether edges cost the measured duration of their transformer methods instead of their cost hints.
+    * Transformer methods that have not been measured yet cost their hint times the shortest duration per unit of hint
+    * among those that have. That keeps their cost in the same unit as measured ones, while still letting routes
+    * through them be tried, and so measured.
+    * Must not be called once the graph has been shared.
+    *
+    * @param measuredCosts True to use measured durations, where available.
+    */
+   public void setMeasuredCosts( boolean measuredCosts )
+   {
+      this.measuredCosts = measuredCosts;
+      this.edgeCosts = null;
+   }
+
+   /**
+    * Folds the durations measured since the last update into the average duration of each transformer method, and
+    * recalculates the edge costs. Routes derived after this call use the new costs. Transformer methods are shared
+    * between copies of a graph, so this should be called on a new copy, which then replaces the shared graph.
+    */
+   public void updateMeasuredCosts()
+   {
+      for( int edge=0; edge<this.edgeCount; edge++ )
+      {
+         for( TransformerMethod tm : this.edgeMethods[edge] )
+         {
+            tm.getLatency().fold();
+         }
+      }
+      this.edgeCosts = null;
    }
 
    /**
@@ -102,83 +210,53 @@ public class TransformerGraph
     */
    public Transformer getTransformer(Class<?> from, Class<?> to, Collection<String> usingNames, boolean includeNonDirect)
    {
-      // Make sure the graphImpl contains both vertexes. If not, then there is no transformer
-      if( !this.graphImpl.containsVertex(from) || !this.graphImpl.containsVertex(to) )
+      TransformerMethod[] route = this.findRoute(from, to, usingNames, includeNonDirect);
+      if( route == null )
       {
          return null;
       }
-
-      DefaultEdge grapEdge = this.graphImpl.getEdge(from, to);
-      // No direct transformer between the two types
-      if( grapEdge == null )
+      else if( route.length == 1 )
       {
-         // if non direct transformers are to be used, try to find one that way
-         if( includeNonDirect )
-         {
-            Transformer nonDirectTrans = this.getNonDirectTransformer(from, to, usingNames);
-            if( nonDirectTrans != null )
-            {
-               return nonDirectTrans;
-            }
-            else
-            {
-               return null;
-            }
-         }
-         else
-         {
-            return null;
-         }
+         return route[0].getExecutor();
       }
 
-      TransformerMethodSet methodSet = this.transformerMethodMap.get(grapEdge);
-      // No direct transformer between the two types
-      if( methodSet.isEmpty() )
+      TransformerChain transChain = new TransformerChain();
+      // Get a sequence of direct-only transformers
+      for( TransformerMethod tm : route )
       {
-         // if non direct transformers are to be used, try to find one that way
-         if( includeNonDirect )
-         {
-            return this.getNonDirectTransformer(from, to, usingNames);
-         }
-         else
-         {
-            return null;
-         }
+         transChain.addTransformer( tm.getExecutor() );
       }
-      // only one, use that one
-      else if( methodSet.size() == 1 )
+      return transChain;
+   }
+
+   /**
+    * Describes the route that {@link #getTransformer(Class, Class, Collection, boolean)} would return a transformer
+    * for.
+    *
+    * @return The route for the given parameters. Null if no such route can be determined
+    * @throws TransformationException If there is an unresolvable conflict when trying to determine what transformer to
+    * use.
+    */
+   public Route getRoute(Class<?> from, Class<?> to, Collection<String> usingNames, boolean includeNonDirect)
+   {
+      TransformerMethod[] route = this.findRoute(from, to, usingNames, includeNonDirect);
+      if( route == null )
       {
-         return methodSet.iterator().next().getExecutor();
+         return null;
       }
-      // more than one transformer
-      else
-      {
-         // Try to resolve the conflict using the given names (first one to find is used)
-         if( usingNames != null && !usingNames.isEmpty() )
-         {
-            for( String name : usingNames )
-            {
-               TransformerMethod foundByName = methodSet.getByName( name );
-               if( foundByName != null )
-               {
-                  return foundByName.getExecutor();
-               }
-            }
-         }
 
-         // resolve the conflict by getting the default one
-         TransformerMethod defaultTrans = methodSet.getDefault();
-         if( defaultTrans != null )
-         {
-            return defaultTrans.getExecutor();
-         }
-         // no default, cannot resolve conflict
-         else
-         {
-            throw new TransformationException("Multiple Transformers found from " + from.getName() + " to " + to.getName() +
-                  " but couldn't decide which one to use. Make sure all transformer methods have been named to avoid this");
-         }
+      List<Class<?>> types = new ArrayList<Class<?>>();
+      List<String> names = new ArrayList<String>();
+      double cost = 0;
+      double hintScale = this.getEdgeCosts().hintScale;
+      types.add(from);
+      for( TransformerMethod tm : route )
+      {
+         types.add(tm.getTargetType());
+         names.add(tm.getName());
+         cost += this.costOf(tm, hintScale);
       }
+      return new Route(types, names, cost);
    }
 
    /**
@@ -249,29 +327,852 @@ public class TransformerGraph
       }
    }
 
-   private Transformer getNonDirectTransformer(Class<?> from, Class<?> to, Collection<String> usingNames)
+   /**
+    * @return All the transformer methods in the graph.
+    */
+   public List<TransformerMethod> getTransformerMethods()
+   {
+      List<TransformerMethod> methods = new ArrayList<TransformerMethod>();
+      for( int edge=0; edge<this.edgeCount; edge++ )
+      {
+         methods.addAll( this.edgeMethods[edge] );
+      }
+      return methods;
+   }
+
+   /**
+    * Discards the executors of all the transformer methods in the graph so that they are bound again on their next
+    * use.
+    */
+   public void resetExecutors()
+   {
+      for( int edge=0; edge<this.edgeCount; edge++ )
+      {
+         for( TransformerMethod tm : this.edgeMethods[edge] )
+         {
+            tm.resetExecutor();
+         }
+      }
+   }
+
+   private int typeIdOf( Class<?> type )
+   {
+      Integer id = this.typeIds.get(type);
+      return id != null ? id : NONE;
+   }
+
+   private int addType( Class<?> type )
    {
-      // Make sure the graphImpl contains both vertexes. If not, return an empty list
-      if( !this.graphImpl.containsVertex(from) || !this.graphImpl.containsVertex(to) )
+      int id = this.typeIdOf(type);
+      if( id == NONE )
+      {
+         id = this.typeCount++;
+         if( id == this.types.length )
+         {
+            this.types = Arrays.copyOf(this.types, id * 2);
+         }
+         this.types[id] = type;
+         this.typeIds.put(type, id);
+      }
+      return id;
+   }
+
+   private int addEdge( int fromId, int toId )
+   {
+      int edge = this.edgeCount++;
+      if( edge == this.edgeSources.length )
+      {
+         int capacity = edge * 2;
+         this.edgeSources = Arrays.copyOf(this.edgeSources, capacity);
+         this.edgeTargets = Arrays.copyOf(this.edgeTargets, capacity);
+         this.edgeMethods = Arrays.copyOf(this.edgeMethods, capacity);
+         this.edgeMethodsOwned = Arrays.copyOf(this.edgeMethodsOwned, capacity);
+      }
+      this.edgeSources[edge] = fromId;
+      this.edgeTargets[edge] = toId;
+      this.edgeMethods[edge] = new TransformerMethodSet();
+      this.edgeMethodsOwned[edge] = true;
+      this.edgeTable.put(fromId, toId, edge);
+      this.adjacency = null;
+      return edge;
+   }
+
+   /**
+    * Finds the transformer methods to invoke, in order, to transform between two types.
+    */
+   private TransformerMethod[] findRoute(Class<?> from, Class<?> to, Collection<String> usingNames,
+                                         boolean includeNonDirect)
+   {
+      // Make sure the graph contains both types. If not, then there is no transformer
+      int fromId = this.typeIdOf(from);
+      int toId = this.typeIdOf(to);
+      if( fromId == NONE || toId == NONE )
       {
          return null;
       }
 
-      List<DefaultEdge> route = DijkstraShortestPath.findPathBetween(this.graphImpl, from, to);
+      int edge = this.edgeTable.get(fromId, toId);
+      // A direct transformer between the two types
+      if( edge != NONE && !this.edgeMethods[edge].isEmpty() )
+      {
+         return new TransformerMethod[]{ this.selectMethod(edge, usingNames) };
+      }
+      // if non direct transformers are to be used, try to find one that way
+      else if( includeNonDirect )
+      {
+         int[] routeEdges = this.findRouteEdges(fromId, toId);
+         if( routeEdges == null )
+         {
+            return null;
+         }
 
-      TransformerChain transChain = null;
-      // if there is a route between the two classes
-      if( route != null )
+         TransformerMethod[] route = new TransformerMethod[ routeEdges.length ];
+         for( int i=0; i<routeEdges.length; i++ )
+         {
+            route[i] = this.selectMethod(routeEdges[i], usingNames);
+         }
+         return route;
+      }
+      else
       {
-         transChain = new TransformerChain();
-         // Get a sequence of direct-only transformers
-         for( DefaultEdge edge : route )
+         return null;
+      }
+   }
+
+   private int[] findRouteEdges( int fromId, int toId )
+   {
+      if( FlightRecorderSupport.AVAILABLE )
+      {
+         RouteDerivationEvent event = new RouteDerivationEvent();
+         if( event.isEnabled() )
          {
-            transChain.addTransformer(
-                  this.getTransformer( this.graphImpl.getEdgeSource(edge), this.graphImpl.getEdgeTarget(edge), usingNames ) );
+            event.begin();
+            int[] routeEdges = this.searchRouteEdges(fromId, toId);
+            event.record(this.types[fromId], this.types[toId], !this.getEdgeCosts().uniform, routeEdges);
+            return routeEdges;
          }
       }
+      return this.searchRouteEdges(fromId, toId);
+   }
 
-      return transChain;
+   private int[] searchRouteEdges( int fromId, int toId )
+   {
+      EdgeCosts costs = this.getEdgeCosts();
+      if( costs.uniform )
+      {
+         return this.getAdjacency().shortestRoute(fromId, toId);
+      }
+
+      int[] cheapest = this.getAdjacency().cheapestRoute(fromId, toId, costs.values);
+      if( cheapest == null )
+      {
+         return null;
+      }
+
+      // keep the previous route unless the new one is clearly cheaper
+      Long key = EdgeTable.key(fromId, toId);
+      int[] previous = this.chosenRoutes.get(key);
+      if( previous != null && costs.of(cheapest) >= costs.of(previous) * (1 - HYSTERESIS) )
+      {
+         return previous;
+      }
+      this.chosenRoutes.put(key, cheapest);
+      return cheapest;
+   }
+
+   private double costOf( TransformerMethod tm, double hintScale )
+   {
+      if( this.measuredCosts )
+      {
+         double measured = tm.getLatency().getAverageNanos();
+         if( !Double.isNaN(measured) )
+         {
+            return measured;
+         }
+      }
+      return tm.getCost() * hintScale;
+   }
+
+   /**
+    * @return The shortest measured duration per unit of cost hint among the transformer methods that have been
+    * measured, which converts the hints of the others into durations. 1 if costs are not measured or nothing with a
+    * positive hint has been measured.
+    */
+   private double hintScale()
+   {
+      if( !this.measuredCosts )
+      {
+         return 1;
+      }
+
+      double scale = Double.POSITIVE_INFINITY;
+      for( int edge=0; edge<this.edgeCount; edge++ )
+      {
+         for( TransformerMethod tm : this.edgeMethods[edge] )
+         {
+            double measured = tm.getLatency().getAverageNanos();
+            if( !Double.isNaN(measured) && tm.getCost() > 0 )
+            {
+               scale = Math.min(scale, measured / tm.getCost());
+            }
+         }
+      }
+      return scale == Double.POSITIVE_INFINITY ? 1 : scale;
+   }
+
+   private EdgeCosts getEdgeCosts()
+   {
+      EdgeCosts result = this.edgeCosts;
+      if( result == null )
+      {
+         double[] values = new double[ this.edgeCount ];
+         double hintScale = this.hintScale();
+         boolean uniform = true;
+         for( int edge=0; edge<this.edgeCount; edge++ )
+         {
+            TransformerMethodSet methodSet = this.edgeMethods[edge];
+            TransformerMethod preferred = methodSet.size() == 1 ? methodSet.iterator().next() : methodSet.getDefault();
+
+            double cost = Double.POSITIVE_INFINITY;
+            if( preferred != null )
+            {
+               cost = this.costOf(preferred, hintScale);
+            }
+            else
+            {
+               for( TransformerMethod tm : methodSet )
+               {
+                  cost = Math.min(cost, this.costOf(tm, hintScale));
+               }
+            }
+            values[edge] = cost;
+            uniform &= cost == 1;
+         }
+         result = new EdgeCosts(values, uniform, hintScale);
+         this.edgeCosts = result;
+      }
+      return result;
+   }
+
+   /**
+    * Selects the transformer method to use from those on an edge.
+    */
+   private TransformerMethod selectMethod( int edge, Collection<String> usingNames )
+   {
+      TransformerMethodSet methodSet = this.edgeMethods[edge];
+
+      // only one, use that one
+      if( methodSet.size() == 1 )
+      {
+         return methodSet.iterator().next();
+      }
+      // more than one transformer
+      else
+      {
+         // Try to resolve the conflict using the given names (first one to find is used)
+         if( usingNames != null && !usingNames.isEmpty() )
+         {
+            for( String name : usingNames )
+            {
+               TransformerMethod foundByName = methodSet.getByName( name );
+               if( foundByName != null )
+               {
+                  return foundByName;
+               }
+            }
+         }
+
+         // resolve the conflict by getting the default one
+         TransformerMethod defaultTrans = methodSet.getDefault();
+         if( defaultTrans != null )
+         {
+            return defaultTrans;
+         }
+         // no default, cannot resolve conflict
+         else
+         {
+            throw new TransformationException("Multiple Transformers found from " + this.types[ this.edgeSources[edge] ].getName() +
+                  " to " + this.types[ this.edgeTargets[edge] ].getName() +
+                  " but couldn't decide which one to use. Make sure all transformer methods have been named to avoid this");
+         }
+      }
+   }
+
+   private Adjacency getAdjacency()
+   {
+      Adjacency result = this.adjacency;
+      if( result == null )
+      {
+         // a shared graph is never modified, so threads that race here build the same arrays
+         result = new Adjacency(this.types, this.typeCount, this.edgeCount, this.edgeSources, this.edgeTargets,
+               this.edgeMethods);
+         this.adjacency = result;
+      }
+      return result;
+   }
+
+
+   /**
+    * The cost of each edge, indexed by edge id.
+    */
+   private static final class EdgeCosts
+   {
+      private final double[] values;
+
+      /** Whether all edges have the default cost, so routes can be compared by their length */
+      private final boolean uniform;
+
+      /** The factor the cost hints of unmeasured transformer methods were multiplied by */
+      private final double hintScale;
+
+      EdgeCosts(double[] values, boolean uniform, double hintScale)
+      {
+         this.values = values;
+         this.uniform = uniform;
+         this.hintScale = hintScale;
+      }
+
+      double of( int[] route )
+      {
+         double cost = 0;
+         for( int edge : route )
+         {
+            cost += this.values[edge];
+         }
+         return cost;
+      }
+   }
+
+
+   /**
+    * Open addressing hash table from a (source id, target id) pair to an edge id.
+    */
+   private static final class EdgeTable
+   {
+      private long[] keys;
+
+      private int[] edges;
+
+      private int size;
+
+      EdgeTable(int capacity)
+      {
+         this.keys = new long[capacity];
+         this.edges = new int[capacity];
+         Arrays.fill(this.edges, NONE);
+      }
+
+      EdgeTable copy()
+      {
+         EdgeTable copy = new EdgeTable(0);
+         copy.keys = this.keys.clone();
+         copy.edges = this.edges.clone();
+         copy.size = this.size;
+         return copy;
+      }
+
+      int get( int fromId, int toId )
+      {
+         long key = key(fromId, toId);
+         int mask = this.keys.length - 1;
+         for( int i = slot(key, mask); this.edges[i] != NONE; i = (i + 1) & mask )
+         {
+            if( this.keys[i] == key )
+            {
+               return this.edges[i];
+            }
+         }
+         return NONE;
+      }
+
+      void put( int fromId, int toId, int edge )
+      {
+         // keep the table at most half full
+         if( (this.size + 1) * 2 > this.keys.length )
+         {
+            this.resize( this.keys.length * 2 );
+         }
+         this.insert(key(fromId, toId), edge);
+         this.size++;
+      }
+
+      private void insert( long key, int edge )
+      {
+         int mask = this.keys.length - 1;
+         int i = slot(key, mask);
+         while( this.edges[i] != NONE )
+         {
+            i = (i + 1) & mask;
+         }
+         this.keys[i] = key;
+         this.edges[i] = edge;
+      }
+
+      private void resize( int capacity )
+      {
+         long[] oldKeys = this.keys;
+         int[] oldEdges = this.edges;
+         this.keys = new long[capacity];
+         this.edges = new int[capacity];
+         Arrays.fill(this.edges, NONE);
+         for( int i=0; i<oldKeys.length; i++ )
+         {
+            if( oldEdges[i] != NONE )
+            {
+               this.insert(oldKeys[i], oldEdges[i]);
+            }
+         }
+      }
+
+      private static long key( int fromId, int toId )
+      {
+         return ((long)fromId << 32) | (toId & 0xFFFFFFFFL);
+      }
+
+      private static int slot( long key, int mask )
+      {
+         long h = key * 0x9E3779B97F4A7C15L;
+         return (int)(h >>> 32) & mask;
+      }
+   }
+
+
+   /**
+    * Compressed adjacency arrays of a graph, for searching routes. The neighbours of each type are stored in one
+    * contiguous range, ordered by their type's name, so routes are searched in the same order on every run.
+    */
+   private static final class Adjacency
+   {
+      private final int typeCount;
+
+      /** Position of each type when all types are sorted by name, indexed by type id */
+      private final int[] ranks;
+
+      private final int[] edgeSources;
+
+      private final int[] edgeTargets;
+
+      /** Range of each type's outgoing edges, as [outOffsets[id], outOffsets[id + 1]) */
+      private final int[] outOffsets;
+
+      private final int[] outTargets;
+
+      private final int[] outEdges;
+
+      /** Range of each type's incoming edges, as [inOffsets[id], inOffsets[id + 1]) */
+      private final int[] inOffsets;
+
+      private final int[] inSources;
+
+      private final int[] inEdges;
+
+      Adjacency(Class<?>[] types, int typeCount, int edgeCount, int[] edgeSources, int[] edgeTargets,
+                TransformerMethodSet[] edgeMethods)
+      {
+         this.typeCount = typeCount;
+         this.ranks = rank(types, typeCount);
+         this.edgeSources = Arrays.copyOf(edgeSources, edgeCount);
+         this.edgeTargets = Arrays.copyOf(edgeTargets, edgeCount);
+         this.outOffsets = new int[ typeCount + 1 ];
+         this.inOffsets = new int[ typeCount + 1 ];
+
+         // edges without transformer methods are not part of any route
+         int usableEdges = 0;
+         for( int edge=0; edge<edgeCount; edge++ )
+         {
+            if( !edgeMethods[edge].isEmpty() )
+            {
+               this.outOffsets[ edgeSources[edge] + 1 ]++;
+               this.inOffsets[ edgeTargets[edge] + 1 ]++;
+               usableEdges++;
+            }
+         }
+         for( int id=0; id<typeCount; id++ )
+         {
+            this.outOffsets[id + 1] += this.outOffsets[id];
+            this.inOffsets[id + 1] += this.inOffsets[id];
+         }
+
+         this.outTargets = new int[usableEdges];
+         this.outEdges = new int[usableEdges];
+         this.inSources = new int[usableEdges];
+         this.inEdges = new int[usableEdges];
+
+         int[] outNext = Arrays.copyOf(this.outOffsets, typeCount);
+         int[] inNext = Arrays.copyOf(this.inOffsets, typeCount);
+         for( int edge=0; edge<edgeCount; edge++ )
+         {
+            if( !edgeMethods[edge].isEmpty() )
+            {
+               int out = outNext[ edgeSources[edge] ]++;
+               this.outTargets[out] = edgeTargets[edge];
+               this.outEdges[out] = edge;
+
+               int in = inNext[ edgeTargets[edge] ]++;
+               this.inSources[in] = edgeSources[edge];
+               this.inEdges[in] = edge;
+            }
+         }
+
+         for( int id=0; id<typeCount; id++ )
+         {
+            sortRange(this.outTargets, this.outEdges, this.outOffsets[id], this.outOffsets[id + 1], this.ranks);
+            sortRange(this.inSources, this.inEdges, this.inOffsets[id], this.inOffsets[id + 1], this.ranks);
+         }
+      }
+
+      /**
+       * Searches for a route with the fewest edges between two types, using a breadth first search from both ends.
+       * The frontier with fewer types is expanded on each step. When several routes are equally short, the same one
+       * is always returned for the same transformers, whatever the order in which they were added.
+       *
+       * @return The edge ids along the route, or null if there is none.
+       */
+      int[] shortestRoute( int fromId, int toId )
+      {
+         if( fromId == toId )
+         {
+            return null;
+         }
+
+         // distance from the source / to the target, and the edge each type was reached through
+         int[] forwardDepth = new int[this.typeCount];
+         int[] backwardDepth = new int[this.typeCount];
+         int[] forwardEdge = new int[this.typeCount];
+         int[] backwardEdge = new int[this.typeCount];
+         Arrays.fill(forwardDepth, NONE);
+         Arrays.fill(backwardDepth, NONE);
+
+         int[] forwardFrontier = new int[this.typeCount];
+         int[] backwardFrontier = new int[this.typeCount];
+         int[] nextFrontier = new int[this.typeCount];
+         int forwardSize = 1;
+         int backwardSize = 1;
+         forwardFrontier[0] = fromId;
+         backwardFrontier[0] = toId;
+         forwardDepth[fromId] = 0;
+         backwardDepth[toId] = 0;
+         int forwardLevel = 0;
+         int backwardLevel = 0;
+
+         int best = Integer.MAX_VALUE;
+         int meeting = NONE;
+
+         // no route shorter than the explored levels plus an edge between the frontiers can still be found
+         while( forwardSize > 0 && backwardSize > 0 && forwardLevel + backwardLevel + 1 < best )
+         {
+            int nextSize = 0;
+            if( forwardSize <= backwardSize )
+            {
+               for( int i=0; i<forwardSize; i++ )
+               {
+                  int type = forwardFrontier[i];
+                  for( int e = this.outOffsets[type]; e < this.outOffsets[type + 1]; e++ )
+                  {
+                     int next = this.outTargets[e];
+                     if( forwardDepth[next] == NONE )
+                     {
+                        forwardDepth[next] = forwardLevel + 1;
+                        forwardEdge[next] = this.outEdges[e];
+                        nextFrontier[nextSize++] = next;
+
+                        if( backwardDepth[next] != NONE && forwardDepth[next] + backwardDepth[next] < best )
+                        {
+                           best = forwardDepth[next] + backwardDepth[next];
+                           meeting = next;
+                        }
+                     }
+                  }
+               }
+               int[] swap = forwardFrontier;
+               forwardFrontier = nextFrontier;
+               nextFrontier = swap;
+               forwardSize = nextSize;
+               forwardLevel++;
+            }
+            else
+            {
+               for( int i=0; i<backwardSize; i++ )
+               {
+                  int type = backwardFrontier[i];
+                  for( int e = this.inOffsets[type]; e < this.inOffsets[type + 1]; e++ )
+                  {
+                     int previous = this.inSources[e];
+                     if( backwardDepth[previous] == NONE )
+                     {
+                        backwardDepth[previous] = backwardLevel + 1;
+                        backwardEdge[previous] = this.inEdges[e];
+                        nextFrontier[nextSize++] = previous;
+
+                        if( forwardDepth[previous] != NONE && forwardDepth[previous] + backwardDepth[previous] < best )
+                        {
+                           best = forwardDepth[previous] + backwardDepth[previous];
+                           meeting = previous;
+                        }
+                     }
+                  }
+               }
+               int[] swap = backwardFrontier;
+               backwardFrontier = nextFrontier;
+               nextFrontier = swap;
+               backwardSize = nextSize;
+               backwardLevel++;
+            }
+         }
+
+         if( meeting == NONE )
+         {
+            return null;
+         }
+
+         int[] route = new int[best];
+         int idx = forwardDepth[meeting];
+         for( int type = meeting; type != fromId; )
+         {
+            int edge = forwardEdge[type];
+            route[--idx] = edge;
+            type = this.edgeSources[edge];
+         }
+         idx = forwardDepth[meeting];
+         for( int type = meeting; type != toId; )
+         {
+            int edge = backwardEdge[type];
+            route[idx++] = edge;
+            type = this.edgeTargets[edge];
+         }
+         return route;
+      }
+
+      /**
+       * Searches for the route with the lowest total cost between two types. Among routes of the same cost, the one
+       * with fewer edges is preferred, and then the one through the types whose names come first, so the same route
+       * is always returned for the same transformers and costs.
+       *
+       * @param edgeCosts The cost of each edge, indexed by edge id.
+       * @return The edge ids along the route, or null if there is none.
+       */
+      int[] cheapestRoute( int fromId, int toId, double[] edgeCosts )
+      {
+         if( fromId == toId )
+         {
+            return null;
+         }
+
+         double[] cost = new double[this.typeCount];
+         int[] length = new int[this.typeCount];
+         int[] reachedBy = new int[this.typeCount];
+         Arrays.fill(cost, Double.POSITIVE_INFINITY);
+         cost[fromId] = 0;
+
+         TypeQueue queue = new TypeQueue(this.typeCount, cost, length, this.ranks);
+         queue.offer(fromId);
+
+         while( !queue.isEmpty() )
+         {
+            int type = queue.poll();
+            if( type == toId )
+            {
+               break;
+            }
+
+            for( int e = this.outOffsets[type]; e < this.outOffsets[type + 1]; e++ )
+            {
+               int next = this.outTargets[e];
+               double nextCost = cost[type] + edgeCosts[ this.outEdges[e] ];
+               if( nextCost < cost[next] || (nextCost == cost[next] && length[type] + 1 < length[next]) )
+               {
+                  cost[next] = nextCost;
+                  length[next] = length[type] + 1;
+                  reachedBy[next] = this.outEdges[e];
+                  queue.offer(next);
+               }
+            }
+         }
+
+         if( cost[toId] == Double.POSITIVE_INFINITY )
+         {
+            return null;
+         }
+
+         int[] route = new int[ length[toId] ];
+         for( int type = toId, idx = route.length; type != fromId; )
+         {
+            int edge = reachedBy[type];
+            route[--idx] = edge;
+            type = this.edgeSources[edge];
+         }
+         return route;
+      }
+
+      /**
+       * @return The position of each type when all types are sorted by name. Types with the same name, from different
+       * class loaders, keep the order of their ids.
+       */
+      private static int[] rank( final Class<?>[] types, int typeCount )
+      {
+         Integer[] byName = new Integer[typeCount];
+         for( int id=0; id<typeCount; id++ )
+         {
+            byName[id] = id;
+         }
+         Arrays.sort(byName, new Comparator<Integer>()
+         {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+               int byTypeName = types[a].getName().compareTo(types[b].getName());
+               return byTypeName != 0 ? byTypeName : a.compareTo(b);
+            }
+         });
+
+         int[] ranks = new int[typeCount];
+         for( int i=0; i<typeCount; i++ )
+         {
+            ranks[ byName[i] ] = i;
+         }
+         return ranks;
+      }
+
+      /**
+       * Sorts a range of neighbours by rank, moving their edge ids along. Ranges are short, so insertion sort is used.
+       */
+      private static void sortRange( int[] neighbours, int[] edges, int start, int end, int[] ranks )
+      {
+         for( int i = start + 1; i < end; i++ )
+         {
+            int neighbour = neighbours[i];
+            int edge = edges[i];
+            int j = i - 1;
+            while( j >= start && ranks[ neighbours[j] ] > ranks[neighbour] )
+            {
+               neighbours[j + 1] = neighbours[j];
+               edges[j + 1] = edges[j];
+               j--;
+            }
+            neighbours[j + 1] = neighbour;
+            edges[j + 1] = edge;
+         }
+      }
+   }
+
+
+   /**
+    * Binary heap of type ids ordered by cost, then by route length, then by rank. A type that is offered again with a
+    * lower cost is moved up instead of being added twice.
+    */
+   private static final class TypeQueue
+   {
+      private final int[] heap;
+
+      /** Position of each type in the heap, or NONE */
+      private final int[] positions;
+
+      private final double[] cost;
+
+      private final int[] length;
+
+      private final int[] ranks;
+
+      private int size;
+
+      TypeQueue(int typeCount, double[] cost, int[] length, int[] ranks)
+      {
+         this.heap = new int[typeCount];
+         this.positions = new int[typeCount];
+         this.cost = cost;
+         this.length = length;
+         this.ranks = ranks;
+         Arrays.fill(this.positions, NONE);
+      }
+
+      boolean isEmpty()
+      {
+         return this.size == 0;
+      }
+
+      void offer( int type )
+      {
+         int pos = this.positions[type];
+         if( pos == NONE )
+         {
+            pos = this.size++;
+            this.heap[pos] = type;
+            this.positions[type] = pos;
+         }
+         // the type's cost only ever decreases
+         this.siftUp(pos);
+      }
+
+      int poll()
+      {
+         int first = this.heap[0];
+         this.positions[first] = NONE;
+         int last = this.heap[--this.size];
+         if( this.size > 0 )
+         {
+            this.heap[0] = last;
+            this.positions[last] = 0;
+            this.siftDown(0);
+         }
+         return first;
+      }
+
+      private void siftUp( int pos )
+      {
+         int type = this.heap[pos];
+         while( pos > 0 )
+         {
+            int parentPos = (pos - 1) >>> 1;
+            int parent = this.heap[parentPos];
+            if( !this.before(type, parent) )
+            {
+               break;
+            }
+            this.heap[pos] = parent;
+            this.positions[parent] = pos;
+            pos = parentPos;
+         }
+         this.heap[pos] = type;
+         this.positions[type] = pos;
+      }
+
+      private void siftDown( int pos )
+      {
+         int type = this.heap[pos];
+         int half = this.size >>> 1;
+         while( pos < half )
+         {
+            int childPos = 2 * pos + 1;
+            int child = this.heap[childPos];
+            int rightPos = childPos + 1;
+            if( rightPos < this.size && this.before(this.heap[rightPos], child) )
+            {
+               childPos = rightPos;
+               child = this.heap[childPos];
+            }
+            if( !this.before(child, type) )
+            {
+               break;
+            }
+            this.heap[pos] = child;
+            this.positions[child] = pos;
+            pos = childPos;
+         }
+         this.heap[pos] = type;
+         this.positions[type] = pos;
+      }
+
+      private boolean before( int a, int b )
+      {
+         if( this.cost[a] != this.cost[b] )
+         {
+            return this.cost[a] < this.cost[b];
+         }
+         if( this.length[a] != this.length[b] )
+         {
+            return this.length[a] < this.length[b];
+         }
+         return this.ranks[a] < this.ranks[b];
+      }
    }
 }
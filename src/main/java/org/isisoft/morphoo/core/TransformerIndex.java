@@ -0,0 +1,114 @@
+package org.isisoft.morphoo.core;
+
+import org.isisoft.morphoo.processor.TransformerIndexProcessor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads the transformer index written at compile time by {@link TransformerIndexProcessor}. Finding transformer
+ * classes through the index only costs reading a few resources, instead of scanning the whole classpath.
+ *
+ * Each index only covers the classpath root (directory or jar) it is found in. The roots that have an index are
+ * reported, so that {@link ClasspathScanner} can still scan the others, like plugins or code compiled without the
+ * processor.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class TransformerIndex
+{
+   private TransformerIndex()
+   {
+   }
+
+   /**
+    * Finds the names of the classes in the registered packages that declare transformer methods, using the indexes
+    * available to a class loader.
+    *
+    * @param loader The class loader whose resources should be searched for indexes.
+    * @param packages The registered package names.
+    * @param indexedRoots Where the classpath roots that have an index are added.
+    * @return The names of the indexed classes in the given packages, or null if the class loader doesn't see any
+    * index.
+    * @throws InitializationException If an index cannot be read.
+    */
+   static Set<String> findClassNames( ClassLoader loader, Collection<String> packages, Set<File> indexedRoots )
+   {
+      Enumeration<URL> indexes;
+      try
+      {
+         indexes = loader.getResources(TransformerIndexProcessor.INDEX_RESOURCE);
+      }
+      catch (IOException e)
+      {
+         throw new InitializationException("Could not look up transformer indexes", e);
+      }
+
+      if( !indexes.hasMoreElements() )
+      {
+         return null;
+      }
+
+      Set<String> classNames = new HashSet<String>();
+      while( indexes.hasMoreElements() )
+      {
+         URL index = indexes.nextElement();
+         readIndex(index, packages, classNames);
+         File root = ClasspathScanner.rootOf(index, TransformerIndexProcessor.INDEX_RESOURCE);
+         if( root != null )
+         {
+            indexedRoots.add(root);
+         }
+      }
+      return classNames;
+   }
+
+   private static void readIndex( URL index, Collection<String> packages, Set<String> classNames )
+   {
+      try
+      {
+         BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), "UTF-8"));
+         try
+         {
+            String className;
+            while( (className = reader.readLine()) != null )
+            {
+               className = className.trim();
+               // only keep classes that are in a registered package
+               if( className.length() > 0 && isInPackages(className, packages) )
+               {
+                  classNames.add(className);
+               }
+            }
+         }
+         finally
+         {
+            reader.close();
+         }
+      }
+      catch (IOException e)
+      {
+         throw new InitializationException("Could not read transformer index " + index, e);
+      }
+   }
+
+   private static boolean isInPackages( String className, Collection<String> packages )
+   {
+      for( String p : packages )
+      {
+         if( className.startsWith(p) )
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+}
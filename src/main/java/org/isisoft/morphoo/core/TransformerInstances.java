@@ -0,0 +1,271 @@
+package org.isisoft.morphoo.core;
+
+import org.isisoft.morphoo.annotation.InstanceScope;
+import org.isisoft.morphoo.annotation.TransformerScope;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides the instances of a class that declares non-static transformer methods, following the class's
+ * {@link TransformerScope}. There is one provider per class, shared by all of its transformer methods.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+abstract class TransformerInstances
+{
+   /**
+    * An instance of the class, and the invokers that have been bound to it. Shared instances are used by all threads
+    * at once; any other instance may only be used by the thread that acquired it until it is released.
+    */
+   static final class Instance
+   {
+      private final Object target;
+
+      /** Keyed by transformer method, which outlives the transformers rebuilt when the executors are reset */
+      private final ConcurrentMap<TransformerMethod, MethodInvoker> invokers =
+            new ConcurrentHashMap<TransformerMethod, MethodInvoker>();
+
+      /** The engine the invokers were bound with */
+      private volatile InvocationEngine engine;
+
+      private Instance(Object target)
+      {
+         this.target = target;
+      }
+
+      Object getTarget()
+      {
+         return this.target;
+      }
+
+      /**
+       * @return The invoker for a transformer method bound to this instance, bound on first use.
+       */
+      MethodInvoker invokerFor(TransformerMethod transformerMethod, InvocationEngine engine)
+      {
+         if( this.engine != engine )
+         {
+            // the invocation engine was changed, so the invokers bound with the previous one are stale
+            this.invokers.clear();
+            this.engine = engine;
+         }
+
+         MethodInvoker invoker = this.invokers.get(transformerMethod);
+         if( invoker == null )
+         {
+            invoker = MethodInvoker.bind(engine, transformerMethod.getJavaMethod(), this.target);
+            this.invokers.put(transformerMethod, invoker);
+         }
+         return invoker;
+      }
+   }
+
+   private final Class<?> transformerClass;
+
+
+   private TransformerInstances(Class<?> transformerClass)
+   {
+      this.transformerClass = transformerClass;
+   }
+
+   /**
+    * Creates the provider for a class, following its scope annotation.
+    *
+    * @param transformerClass The class that declares non-static transformer methods.
+    * @return The instance provider for the class.
+    */
+   static TransformerInstances of(Class<?> transformerClass)
+   {
+      TransformerScope scope = transformerClass.getAnnotation(TransformerScope.class);
+      if( scope == null || scope.value() == InstanceScope.SINGLETON )
+      {
+         return new Singleton(transformerClass);
+      }
+      else if( scope.value() == InstanceScope.THREAD )
+      {
+         return new PerThread(transformerClass);
+      }
+
+      int poolSize = scope.poolSize() > 0 ? scope.poolSize() : Runtime.getRuntime().availableProcessors();
+      return new Pooled(transformerClass, poolSize);
+   }
+
+   /**
+    * @param requester The transformer method that needs the instance.
+    * @return The instance shared by all threads, or null if instances are not shared.
+    */
+   Object getShared(TransformerMethod requester)
+   {
+      return null;
+   }
+
+   /**
+    * Takes an instance for the current thread, which is the shared instance if there is one. It must be given back
+    * with {@link #release(Instance)}.
+    *
+    * @param requester The transformer method that needs the instance.
+    * @return The instance to use.
+    */
+   abstract Instance acquire(TransformerMethod requester);
+
+   /**
+    * Gives back an instance taken with {@link #acquire(TransformerMethod)}.
+    */
+   void release(Instance instance)
+   {
+   }
+
+   Object newInstance(TransformerMethod requester)
+   {
+      InstantiationEvent event = FlightRecorderSupport.AVAILABLE ? new InstantiationEvent() : null;
+      if( event != null )
+      {
+         event.begin();
+      }
+      try
+      {
+         Object target = this.transformerClass.getDeclaredConstructor().newInstance();
+         if( event != null )
+         {
+            event.record(requester);
+         }
+         return target;
+      }
+      catch (InstantiationException e)
+      {
+         throw new InitializationException("Error creating new Transformer instance of class "
+               + this.transformerClass.getName(), e);
+      }
+      catch (IllegalAccessException e)
+      {
+         throw new InitializationException("Error creating new Transformer instance of class "
+               + this.transformerClass.getName(), e);
+      }
+      catch (NoSuchMethodException e)
+      {
+         throw new InitializationException("Error creating new Transformer instance of class "
+               + this.transformerClass.getName(), e);
+      }
+      catch (InvocationTargetException e)
+      {
+         throw new InitializationException("Error creating new Transformer instance of class "
+               + this.transformerClass.getName(), e);
+      }
+   }
+
+
+   /**
+    * One instance for all threads.
+    */
+   private static final class Singleton extends TransformerInstances
+   {
+      private volatile Instance shared;
+
+      private Singleton(Class<?> transformerClass)
+      {
+         super(transformerClass);
+      }
+
+      @Override
+      Object getShared(TransformerMethod requester)
+      {
+         return this.acquire(requester).getTarget();
+      }
+
+      @Override
+      Instance acquire(TransformerMethod requester)
+      {
+         Instance result = this.shared;
+         if( result == null )
+         {
+            synchronized (this)
+            {
+               result = this.shared;
+               if( result == null )
+               {
+                  result = new Instance(this.newInstance(requester));
+                  this.shared = result;
+               }
+            }
+         }
+         return result;
+      }
+   }
+
+
+   /**
+    * One instance per thread.
+    */
+   private static final class PerThread extends TransformerInstances
+   {
+      private final ThreadLocal<Instance> instances = new ThreadLocal<Instance>();
+
+      private PerThread(Class<?> transformerClass)
+      {
+         super(transformerClass);
+      }
+
+      @Override
+      Instance acquire(TransformerMethod requester)
+      {
+         Instance instance = this.instances.get();
+         if( instance == null )
+         {
+            instance = new Instance(this.newInstance(requester));
+            this.instances.set(instance);
+         }
+         return instance;
+      }
+   }
+
+
+   /**
+    * Instances lent to one invocation at a time.
+    */
+   private static final class Pooled extends TransformerInstances
+   {
+      private final Queue<Instance> idle = new ConcurrentLinkedQueue<Instance>();
+
+      /** Number of instances in the idle queue, which never goes over the pool size */
+      private final AtomicInteger idleCount = new AtomicInteger();
+
+      private final int poolSize;
+
+      private Pooled(Class<?> transformerClass, int poolSize)
+      {
+         super(transformerClass);
+         this.poolSize = poolSize;
+      }
+
+      @Override
+      Instance acquire(TransformerMethod requester)
+      {
+         Instance instance = this.idle.poll();
+         if( instance != null )
+         {
+            this.idleCount.decrementAndGet();
+            return instance;
+         }
+         // never wait, so nested transformations that need another instance can't deadlock
+         return new Instance(this.newInstance(requester));
+      }
+
+      @Override
+      void release(Instance instance)
+      {
+         if( this.idleCount.incrementAndGet() > this.poolSize )
+         {
+            // instances that don't fit are dropped
+            this.idleCount.decrementAndGet();
+            return;
+         }
+         this.idle.offer(instance);
+      }
+   }
+}
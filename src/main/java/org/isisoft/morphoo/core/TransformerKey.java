@@ -0,0 +1,114 @@
+package org.isisoft.morphoo.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * Identifies a transformer resolution request. Two keys are equal when they would resolve to the same transformer
+ * on an unchanged graph.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class TransformerKey
+{
+   private final Class<?> sourceType;
+
+   private final Class<?> targetType;
+
+   private final Collection<String> names;
+
+   private final boolean derive;
+
+   private final Class<?>[] steps;
+
+   private final int hash;
+
+
+   private TransformerKey(Class<?> sourceType, Class<?> targetType, Collection<String> names, boolean derive,
+                          Class<?>[] steps)
+   {
+      this.sourceType = sourceType;
+      this.targetType = targetType;
+      this.names = names;
+      this.derive = derive;
+      this.steps = steps;
+
+      int h = sourceType != null ? sourceType.hashCode() : 0;
+      h = 31 * h + (targetType != null ? targetType.hashCode() : 0);
+      h = 31 * h + (names != null ? names.hashCode() : 0);
+      h = 31 * h + (derive ? 1 : 0);
+      h = 31 * h + Arrays.hashCode(steps);
+      this.hash = h;
+   }
+
+   /**
+    * Creates a key for a direct or derived resolution. The names collection is referenced, not copied, so the key
+    * should only be used for lookups until {@link TransformerKey#snapshot()} is called.
+    */
+   static TransformerKey forRoute(Class<?> sourceType, Class<?> targetType, Collection<String> names, boolean derive)
+   {
+      return new TransformerKey(sourceType, targetType, normalizeNames(names), derive, null);
+   }
+
+   /**
+    * Creates a key for a multi-step resolution. The steps array is referenced, not copied.
+    */
+   static TransformerKey forSteps(Class<?> ... steps)
+   {
+      return new TransformerKey(null, null, null, false, steps);
+   }
+
+   /**
+    * @return A key equal to this one that does not share any mutable state with the caller, suitable to be stored.
+    */
+   TransformerKey snapshot()
+   {
+      Collection<String> namesCopy = this.names;
+      if( namesCopy != null && !namesCopy.isEmpty() )
+      {
+         namesCopy = Collections.unmodifiableSet(new HashSet<String>(namesCopy));
+      }
+      Class<?>[] stepsCopy = this.steps != null ? this.steps.clone() : null;
+
+      return new TransformerKey(this.sourceType, this.targetType, namesCopy, this.derive, stepsCopy);
+   }
+
+   private static Collection<String> normalizeNames(Collection<String> names)
+   {
+      if( names == null || names.isEmpty() )
+      {
+         return Collections.emptySet();
+      }
+      return names;
+   }
+
+   @Override
+   public boolean equals(Object o)
+   {
+      if( this == o )
+      {
+         return true;
+      }
+      if( !(o instanceof TransformerKey) )
+      {
+         return false;
+      }
+
+      TransformerKey other = (TransformerKey)o;
+      return this.hash == other.hash
+            && this.derive == other.derive
+            && this.sourceType == other.sourceType
+            && this.targetType == other.targetType
+            && (this.names == null ? other.names == null : this.names.equals(other.names))
+            && Arrays.equals(this.steps, other.steps);
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return this.hash;
+   }
+}
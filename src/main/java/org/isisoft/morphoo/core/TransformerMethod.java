@@ -9,7 +9,7 @@ import java.lang.reflect.Method;
  */
 public class TransformerMethod
 {
-   private Transformer executor;
+   private volatile Transformer executor;
 
    private Class<?> sourceType;
 
@@ -23,16 +23,43 @@ public class TransformerMethod
 
    private String name;
 
+   private double cost;
+
+   private final LatencyStats latency = new LatencyStats();
+
+   private volatile InvocationMetrics metrics;
+
+   private ResultCache resultCache;
+
    private TransformerMethodArgument[] arguments;
 
+   private InvocationPlan invocationPlan;
+
 
    public Transformer getExecutor()
    {
-      if( executor == null )
+      Transformer result = executor;
+      if( result == null )
       {
-         executor = new SimpleTransformer(this);
+         synchronized (this)
+         {
+            result = executor;
+            if( result == null )
+            {
+               result = new SimpleTransformer(this);
+               executor = result;
+            }
+         }
       }
-      return executor;
+      return result;
+   }
+
+   /**
+    * Discards this method's executor. A new one will be created on the next call to {@link #getExecutor()}.
+    */
+   public void resetExecutor()
+   {
+      executor = null;
    }
 
    public Class<?> getSourceType()
@@ -95,6 +122,66 @@ public class TransformerMethod
       this.name = name;
    }
 
+   public double getCost()
+   {
+      return cost;
+   }
+
+   public void setCost(double cost)
+   {
+      this.cost = cost;
+   }
+
+   /**
+    * @return The durations measured for this method's invocations.
+    */
+   LatencyStats getLatency()
+   {
+      return latency;
+   }
+
+   /**
+    * @return The metrics for this method's invocations, created on first use.
+    */
+   InvocationMetrics getMetrics()
+   {
+      InvocationMetrics result = metrics;
+      if( result == null )
+      {
+         synchronized (this)
+         {
+            result = metrics;
+            if( result == null )
+            {
+               result = new InvocationMetrics();
+               metrics = result;
+            }
+         }
+      }
+      return result;
+   }
+
+   /**
+    * @return The metrics for this method's invocations, or null if none have been recorded.
+    */
+   InvocationMetrics peekMetrics()
+   {
+      return metrics;
+   }
+
+   /**
+    * @return The cache this method's results are memoized in, or null if they are not memoized.
+    */
+   ResultCache getResultCache()
+   {
+      return resultCache;
+   }
+
+   void setResultCache(ResultCache resultCache)
+   {
+      this.resultCache = resultCache;
+   }
+
    public TransformerMethodArgument[] getArguments()
    {
       return arguments;
@@ -105,6 +192,16 @@ public class TransformerMethod
       this.arguments = arguments;
    }
 
+   InvocationPlan getInvocationPlan()
+   {
+      return invocationPlan;
+   }
+
+   void setInvocationPlan(InvocationPlan invocationPlan)
+   {
+      this.invocationPlan = invocationPlan;
+   }
+
    public static class TransformerMethodArgument
    {
       private String ctxVarName;
@@ -2,6 +2,7 @@ package org.isisoft.morphoo.core;
 
 import org.isisoft.morphoo.annotation.ContextParam;
 import org.isisoft.morphoo.annotation.Transformer;
+import org.isisoft.morphoo.annotation.TransformerScope;
 import org.isisoft.morphoo.annotation.Transformers;
 
 import java.lang.annotation.Annotation;
@@ -58,15 +59,41 @@ public class TransformerMethodAnalyzer
          transformerName = method.getName();
       }
 
+      // cost must be a positive number
+      double cost = transformerAnn.cost();
+      if( !(cost > 0) || Double.isInfinite(cost) )
+      {
+         throw new InitializationException("Transformer method " + method.getName() + " on class "
+               + method.getDeclaringClass().getName() + " must have a positive cost");
+      }
+
+      // memoization bounds must not be negative
+      if( transformerAnn.memoize() < 0 || transformerAnn.memoizeExpiry() < 0 )
+      {
+         throw new InitializationException("Transformer method " + method.getName() + " on class "
+               + method.getDeclaringClass().getName() + " must not have a negative memoization size or expiry");
+      }
+
+      // pool size must not be negative
+      TransformerScope scopeAnn = method.getDeclaringClass().getAnnotation(TransformerScope.class);
+      if( scopeAnn != null && scopeAnn.poolSize() < 0 )
+      {
+         throw new InitializationException("Class " + method.getDeclaringClass().getName()
+               + " must not have a negative transformer pool size");
+      }
+
       sourceType = parameterTypes[0];
 
       newTransformer.setDefault(transformerAnn.isDefault());
       newTransformer.setJavaMethod(method);
       newTransformer.setName(transformerName);
+      newTransformer.setCost(cost);
       newTransformer.setStatic(!Modifier.isStatic(method.getModifiers()));
       newTransformer.setSourceType(sourceType);
       newTransformer.setTargetType(targetType);
       newTransformer.setArguments(analyzeArguments(method));
+      newTransformer.setInvocationPlan(InvocationPlan.compile(newTransformer));
+      newTransformer.setResultCache(ResultCache.declared(transformerAnn.memoize(), transformerAnn.memoizeExpiry()));
 
       return newTransformer;
    }
@@ -1,35 +1,123 @@
 package org.isisoft.morphoo.core;
 
-import java.util.HashSet;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Implements a set of transformer method abstractions and adds utility methods to operate on its contents.
  *
+ * The set keeps the default transformer method and an index of the methods by name, so looking them up does not
+ * go through all of its elements.
+ *
  * @author Carlos Munoz
  */
-public class TransformerMethodSet extends HashSet<TransformerMethod>
+public class TransformerMethodSet extends AbstractSet<TransformerMethod>
 {
+   private final List<TransformerMethod> methods;
+
+   private final Map<String, TransformerMethod> methodsByName;
+
+   private TransformerMethod defaultMethod;
+
+
+   public TransformerMethodSet()
+   {
+      this.methods = new ArrayList<TransformerMethod>(1);
+      this.methodsByName = new HashMap<String, TransformerMethod>(2);
+   }
+
+   /**
+    * Creates a set with the same transformer methods as another one.
+    *
+    * @param other The set to copy.
+    */
+   public TransformerMethodSet( TransformerMethodSet other )
+   {
+      this.methods = new ArrayList<TransformerMethod>(other.methods);
+      this.methodsByName = new HashMap<String, TransformerMethod>(other.methodsByName);
+      this.defaultMethod = other.defaultMethod;
+   }
+
    public TransformerMethod getDefault()
    {
-      for( TransformerMethod tm : this )
+      return this.defaultMethod;
+   }
+
+   public TransformerMethod getByName( String name )
+   {
+      return this.methodsByName.get(name);
+   }
+
+   @Override
+   public boolean add( TransformerMethod tm )
+   {
+      if( this.methods.contains(tm) )
       {
-         if( tm.isDefault() )
-         {
-            return tm;
-         }
+         return false;
       }
-      return null;
+
+      this.methods.add(tm);
+      this.index(tm);
+      return true;
    }
 
-   public TransformerMethod getByName( String name )
+   @Override
+   public Iterator<TransformerMethod> iterator()
    {
-      for( TransformerMethod tm : this )
+      final Iterator<TransformerMethod> it = this.methods.iterator();
+      return new Iterator<TransformerMethod>()
       {
-         if( tm.getName().equals(name) )
+         @Override
+         public boolean hasNext()
+         {
+            return it.hasNext();
+         }
+
+         @Override
+         public TransformerMethod next()
          {
-            return tm;
+            return it.next();
          }
+
+         @Override
+         public void remove()
+         {
+            it.remove();
+            TransformerMethodSet.this.reindex();
+         }
+      };
+   }
+
+   @Override
+   public int size()
+   {
+      return this.methods.size();
+   }
+
+   private void index( TransformerMethod tm )
+   {
+      // the first method wins, as when searching the set
+      if( tm.isDefault() && this.defaultMethod == null )
+      {
+         this.defaultMethod = tm;
+      }
+      if( !this.methodsByName.containsKey(tm.getName()) )
+      {
+         this.methodsByName.put(tm.getName(), tm);
+      }
+   }
+
+   private void reindex()
+   {
+      this.defaultMethod = null;
+      this.methodsByName.clear();
+      for( TransformerMethod tm : this.methods )
+      {
+         this.index(tm);
       }
-      return null;
    }
 }
@@ -0,0 +1,113 @@
+package org.isisoft.morphoo.core;
+
+import java.lang.reflect.Method;
+
+/**
+ * An immutable snapshot of the metrics of a single transformer method.
+ *
+ * @author Carlos Munoz
+ */
+public class TransformerMetrics
+{
+   private final String name;
+
+   private final Method javaMethod;
+
+   private final Class<?> sourceType;
+
+   private final Class<?> targetType;
+
+   private final long invocationCount;
+
+   private final long errorCount;
+
+   private final LatencyDistribution latency;
+
+
+   TransformerMetrics(TransformerMethod transformerMethod, InvocationMetrics metrics)
+   {
+      this.name = transformerMethod.getName();
+      this.javaMethod = transformerMethod.getJavaMethod();
+      this.sourceType = transformerMethod.getSourceType();
+      this.targetType = transformerMethod.getTargetType();
+      this.invocationCount = metrics.getInvocationCount();
+      this.errorCount = metrics.getErrorCount();
+      this.latency = metrics.getLatency();
+   }
+
+   /**
+    * @return The transformer's name.
+    */
+   public String getName()
+   {
+      return name;
+   }
+
+   /**
+    * @return The transformer java method.
+    */
+   public Method getJavaMethod()
+   {
+      return javaMethod;
+   }
+
+   /**
+    * @return An identifier for the transformer method made of its class, name and parameter types.
+    */
+   public String getMethodId()
+   {
+      StringBuilder sb = new StringBuilder();
+      sb.append(javaMethod.getDeclaringClass().getName()).append('.').append(javaMethod.getName()).append('(');
+      Class<?>[] parameterTypes = javaMethod.getParameterTypes();
+      for( int i=0; i<parameterTypes.length; i++ )
+      {
+         if( i > 0 )
+         {
+            sb.append(',');
+         }
+         sb.append(parameterTypes[i].getSimpleName());
+      }
+      return sb.append(')').toString();
+   }
+
+   public Class<?> getSourceType()
+   {
+      return sourceType;
+   }
+
+   public Class<?> getTargetType()
+   {
+      return targetType;
+   }
+
+   /**
+    * @return The number of times the transformer has been invoked, including failed invocations.
+    */
+   public long getInvocationCount()
+   {
+      return invocationCount;
+   }
+
+   /**
+    * @return The number of invocations that threw an exception.
+    */
+   public long getErrorCount()
+   {
+      return errorCount;
+   }
+
+   /**
+    * @return The durations of the transformer's invocations.
+    */
+   public LatencyDistribution getLatency()
+   {
+      return latency;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "TransformerMetrics{" + getMethodId() + ", invocations=" + invocationCount + ", errors=" + errorCount +
+            ", latency=" + latency + "}";
+   }
+}
@@ -1,39 +1,101 @@
 package org.isisoft.morphoo.core;
 
-import org.reflections.Reflections;
-import org.reflections.scanners.MethodAnnotationsScanner;
-import org.reflections.scanners.Scanner;
-
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The Singleton registry where all transformer methods get stored. It is the framework's main storage mechanism.
  * This class is for the framework's internal use only.
  *
+ * The registry is safe to use from multiple threads. Lookups read an immutable snapshot of the transformer graph
+ * (together with its resolved transformer cache) that is published through a volatile field, so they never lock.
+ * Anything that adds transformer methods builds a modified copy of the current graph while holding the registry's
+ * write lock, and then publishes it as a new snapshot.
+ *
  * @author Carlos Munoz
  */
 class TransformerRegistry
 {
 
-   private static final Object[] DEFAULT_SCAN_HINTS = new Object[]{
-         org.isisoft.morphoo.annotation.Transformer.class
-   };
+   private static final TransformerRegistry instance = new TransformerRegistry();
+
+   /**
+    * An immutable transformer graph and the cache of transformers resolved from it.
+    */
+   private static final class Snapshot
+   {
+      private final TransformerGraph graph;
+
+      private final TransformerCache cache;
+
+      private Snapshot(TransformerGraph graph, TransformerCache cache)
+      {
+         this.graph = graph;
+         this.cache = cache;
+      }
+   }
+
+   private final Object writeLock = new Object();
+
+   private volatile Snapshot snapshot;
+
+   private volatile boolean initialized;
+
+   private final Set<String> registeredPackages = new CopyOnWriteArraySet<String>();
+
+   private final Set<Class<?>> registeredClasses = new CopyOnWriteArraySet<Class<?>>();
+
+   private final Set<Class<?>> runtimeCollectedClasses = ConcurrentHashMap.newKeySet();
+
+   /** Instance providers for classes declaring non-static transformer methods, created on first use */
+   private final ConcurrentMap<Class<?>, TransformerInstances> transformerInstances =
+         new ConcurrentHashMap<Class<?>, TransformerInstances>();
+
+   private volatile InvocationEngine invocationEngine;
+
+   private volatile ForkJoinPool forkJoinPool;
+
+   private volatile Executor asyncExecutor;
 
-   private static TransformerRegistry instance;
+   /** The asynchronous executor created by the framework, which is shut down once it is replaced, or null */
+   private ExecutorService ownedAsyncExecutor;
 
-   private TransformerGraph transformerGraph;
+   private volatile boolean transformerIndexEnabled;
 
-   private boolean initialized;
+   private volatile boolean adaptiveRouting;
 
-   private Collection<String> registeredPackages;
+   private ScheduledFuture<?> routeCostUpdates;
 
-   private Collection<Class<?>> registeredClasses;
+   private volatile boolean metricsEnabled;
 
-   private Collection<Class<?>> runtimeCollectedClasses;
+   /** Metrics for transformer chains, or null while metrics are disabled */
+   private volatile InvocationMetrics chainMetrics;
+
+   /** Durations of resolutions that missed the cache, or null while metrics are disabled */
+   private volatile LatencyHistogram resolutionLatency;
+
+   private ObjectName mbeanName;
 
 
    protected TransformerRegistry()
@@ -46,11 +108,28 @@ class TransformerRegistry
     */
    public void reset()
    {
-      this.registeredPackages = new HashSet<String>();
-      this.registeredClasses = new HashSet<Class<?>>();
-      this.transformerGraph = new TransformerGraph();
-      this.runtimeCollectedClasses = new HashSet<Class<?>>();
-      this.initialized = false;
+      synchronized (this.writeLock)
+      {
+         this.registeredPackages.clear();
+         this.registeredClasses.clear();
+         this.runtimeCollectedClasses.clear();
+         this.transformerInstances.clear();
+         this.invocationEngine = InvocationEngine.METHOD_HANDLE;
+         this.forkJoinPool = ForkJoinPool.commonPool();
+         this.replaceAsyncExecutor(ForkJoinPool.commonPool(), null);
+         this.transformerIndexEnabled = true;
+         this.adaptiveRouting = false;
+         this.metricsEnabled = false;
+         this.chainMetrics = null;
+         this.resolutionLatency = null;
+         if( this.routeCostUpdates != null )
+         {
+            this.routeCostUpdates.cancel(false);
+            this.routeCostUpdates = null;
+         }
+         this.snapshot = new Snapshot(new TransformerGraph(), new TransformerCache());
+         this.initialized = false;
+      }
    }
 
    /**
@@ -58,10 +137,6 @@ class TransformerRegistry
     */
    public static final TransformerRegistry getInstance()
    {
-      if( instance == null )
-      {
-         instance = new TransformerRegistry();
-      }
       return instance;
    }
 
@@ -96,70 +171,676 @@ class TransformerRegistry
       }
    }
 
+   public InvocationEngine getInvocationEngine()
+   {
+      return this.invocationEngine;
+   }
+
+   /**
+    * Changes the engine used to invoke transformer methods. Transformer methods that were already bound are re-bound
+    * with the new engine on their next use.
+    */
+   public void setInvocationEngine(InvocationEngine engine)
+   {
+      if( engine == null )
+      {
+         throw new InitializationException("The invocation engine cannot be null");
+      }
+
+      synchronized (this.writeLock)
+      {
+         this.invocationEngine = engine;
+         Snapshot current = this.snapshot;
+         current.graph.resetExecutors();
+         // resolved chains hold on to the old executors
+         this.snapshot = new Snapshot(current.graph, current.cache.nextGeneration());
+      }
+   }
+
+   /**
+    * @param transformerClass A class that declares non-static transformer methods.
+    * @return The provider of the class's instances, shared by all of its transformer methods.
+    */
+   TransformerInstances getTransformerInstances(Class<?> transformerClass)
+   {
+      TransformerInstances instances = this.transformerInstances.get(transformerClass);
+      if( instances == null )
+      {
+         instances = TransformerInstances.of(transformerClass);
+         TransformerInstances existing = this.transformerInstances.putIfAbsent(transformerClass, instances);
+         if( existing != null )
+         {
+            instances = existing;
+         }
+      }
+      return instances;
+   }
+
+   public ForkJoinPool getForkJoinPool()
+   {
+      return this.forkJoinPool;
+   }
+
+   public void setForkJoinPool(ForkJoinPool forkJoinPool)
+   {
+      if( forkJoinPool == null )
+      {
+         throw new InitializationException("The fork/join pool cannot be null");
+      }
+      this.forkJoinPool = forkJoinPool;
+   }
+
+   public Executor getAsyncExecutor()
+   {
+      return this.asyncExecutor;
+   }
+
+   public void setAsyncExecutor(Executor asyncExecutor)
+   {
+      if( asyncExecutor == null )
+      {
+         throw new InitializationException("The asynchronous executor cannot be null");
+      }
+      this.replaceAsyncExecutor(asyncExecutor, null);
+   }
+
+   /**
+    * Sets an asynchronous executor created by the framework, which is shut down when it is replaced or the registry is
+    * reset.
+    */
+   void setOwnedAsyncExecutor(ExecutorService asyncExecutor)
+   {
+      this.replaceAsyncExecutor(asyncExecutor, asyncExecutor);
+   }
+
+   private void replaceAsyncExecutor(Executor asyncExecutor, ExecutorService owned)
+   {
+      ExecutorService previous;
+      synchronized (this.writeLock)
+      {
+         previous = this.ownedAsyncExecutor;
+         this.asyncExecutor = asyncExecutor;
+         this.ownedAsyncExecutor = owned;
+      }
+      if( previous != null && previous != owned )
+      {
+         // tasks already submitted to it still run
+         previous.shutdown();
+      }
+   }
+
+   public boolean isTransformerIndexEnabled()
+   {
+      return this.transformerIndexEnabled;
+   }
+
+   /**
+    * Selects whether registered packages are looked up in the compile-time transformer index. When disabled, or when
+    * there is no index, the classpath is scanned instead.
+    */
+   public void setTransformerIndexEnabled(boolean transformerIndexEnabled)
+   {
+      this.transformerIndexEnabled = transformerIndexEnabled;
+   }
+
+   public boolean isAdaptiveRouting()
+   {
+      return this.adaptiveRouting;
+   }
+
+   /**
+    * Starts or stops measuring transformer methods to weigh derived routes. While enabled, the durations measured
+    * during each period are folded into the edge costs at the end of the period, and derived routes are resolved
+    * again with the new costs.
+    *
+    * @param enabled Whether to measure routes.
+    * @param period The time between cost updates. Ignored when disabling.
+    * @param unit The unit of the period.
+    */
+   public void setAdaptiveRouting(boolean enabled, long period, TimeUnit unit)
+   {
+      if( enabled && period <= 0 )
+      {
+         throw new InitializationException("The route cost update period must be positive");
+      }
+
+      synchronized (this.writeLock)
+      {
+         if( this.routeCostUpdates != null )
+         {
+            this.routeCostUpdates.cancel(false);
+            this.routeCostUpdates = null;
+         }
+
+         this.adaptiveRouting = enabled;
+         Snapshot current = this.snapshot;
+         TransformerGraph newGraph = current.graph.copy();
+         newGraph.setMeasuredCosts(enabled);
+         // executors measure their invocations depending on the setting
+         newGraph.resetExecutors();
+         this.snapshot = new Snapshot(newGraph, current.cache.nextGeneration());
+
+         if( enabled )
+         {
+            this.routeCostUpdates = FrameworkScheduler.get().scheduleAtFixedRate(new Runnable()
+            {
+               @Override
+               public void run()
+               {
+                  TransformerRegistry.this.updateRouteCosts();
+               }
+            }, period, period, unit);
+         }
+      }
+   }
+
+   /**
+    * Folds the durations measured so far into the route costs, and discards the routes resolved with the old costs.
+    */
+   void updateRouteCosts()
+   {
+      synchronized (this.writeLock)
+      {
+         Snapshot current = this.snapshot;
+         // threads resolving routes keep using the published graph and its costs
+         TransformerGraph newGraph = current.graph.copy();
+         newGraph.updateMeasuredCosts();
+         this.snapshot = new Snapshot(newGraph, current.cache.nextGeneration());
+      }
+   }
+
+   public boolean isMetricsEnabled()
+   {
+      return this.metricsEnabled;
+   }
+
+   /**
+    * Starts or stops recording metrics. Transformer methods are re-bound on their next use, so that only
+    * transformers bound while metrics are enabled pay for recording them. Enabling metrics again starts new chain and
+    * resolution metrics, while transformer methods keep adding to theirs.
+    */
+   public void setMetricsEnabled(boolean enabled)
+   {
+      synchronized (this.writeLock)
+      {
+         if( enabled == this.metricsEnabled )
+         {
+            return;
+         }
+
+         this.metricsEnabled = enabled;
+         this.chainMetrics = enabled ? new InvocationMetrics() : null;
+         this.resolutionLatency = enabled ? new LatencyHistogram() : null;
+
+         Snapshot current = this.snapshot;
+         TransformerGraph newGraph = current.graph.copy();
+         // executors record metrics depending on the setting
+         newGraph.resetExecutors();
+         // resolved chains hold on to the old executors
+         this.snapshot = new Snapshot(newGraph, current.cache.nextGeneration());
+      }
+   }
+
+   /**
+    * @return The metrics new transformer chains should record into, or null if metrics are disabled.
+    */
+   InvocationMetrics getChainMetrics()
+   {
+      return this.chainMetrics;
+   }
+
+   /**
+    * @return A snapshot of the metrics recorded so far.
+    */
+   public MetricsSnapshot getMetrics()
+   {
+      List<TransformerMetrics> transformerMetrics = new ArrayList<TransformerMetrics>();
+      for( TransformerMethod tm : this.snapshot.graph.getTransformerMethods() )
+      {
+         InvocationMetrics metrics = tm.peekMetrics();
+         if( metrics != null )
+         {
+            transformerMetrics.add( new TransformerMetrics(tm, metrics) );
+         }
+      }
+
+      InvocationMetrics chains = this.chainMetrics;
+      LatencyHistogram resolutions = this.resolutionLatency;
+      return new MetricsSnapshot(transformerMetrics, chains != null ? chains : new InvocationMetrics(),
+            this.getCacheStatistics(), (resolutions != null ? resolutions : new LatencyHistogram()).snapshot());
+   }
+
+   /**
+    * @return The usage statistics of the memoized results of every transformer method that memoizes them, by
+    * transformer name. Methods that share a name are added up.
+    */
+   public Map<String, CacheStatistics> getMemoizationStatistics()
+   {
+      Map<String, CacheStatistics> statistics = new TreeMap<String, CacheStatistics>();
+      for( TransformerMethod tm : this.snapshot.graph.getTransformerMethods() )
+      {
+         ResultCache cache = tm.getResultCache();
+         if( cache != null )
+         {
+            CacheStatistics s = cache.getStatistics();
+            CacheStatistics other = statistics.get(tm.getName());
+            if( other != null )
+            {
+               s = new CacheStatistics(s.getHitCount() + other.getHitCount(), s.getMissCount() + other.getMissCount(),
+                     s.getEvictionCount() + other.getEvictionCount(), s.getSize() + other.getSize());
+            }
+            statistics.put(tm.getName(), s);
+         }
+      }
+      return statistics;
+   }
+
+   /**
+    * Registers the framework's {@link MorphooMXBean} with the platform MBean server, unless it is already registered.
+    *
+    * @return The name the MBean is registered under.
+    * @throws InitializationException If the MBean cannot be registered.
+    */
+   public ObjectName registerMBean()
+   {
+      synchronized (this.writeLock)
+      {
+         if( this.mbeanName == null )
+         {
+            try
+            {
+               ObjectName name = new ObjectName(MorphooManagement.OBJECT_NAME);
+               MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+               if( !server.isRegistered(name) )
+               {
+                  server.registerMBean(new MorphooManagement(this), name);
+               }
+               this.mbeanName = name;
+            }
+            catch (JMException e)
+            {
+               throw new InitializationException("Could not register the Morphoo MBean", e);
+            }
+         }
+         return this.mbeanName;
+      }
+   }
+
    public Transformer getTransformer(Class<?> sourceType, Class<?> targetType, Collection<String> names, boolean derive)
    {
       this.initializeIfNotReady();
+
+      TransformerKey key = TransformerKey.forRoute(sourceType, targetType, names, derive);
+      Object cached = this.snapshot.cache.get(key);
+      if( cached != null )
+      {
+         return this.unwrapCached(cached);
+      }
+
+      LatencyHistogram timer = this.resolutionLatency;
+      long start = timer != null ? System.nanoTime() : 0;
+      ResolutionEvent event = FlightRecorderSupport.AVAILABLE ? new ResolutionEvent() : null;
+      if( event != null )
+      {
+         event.begin();
+      }
+
       this.processClassDeclaredTransformers(sourceType);
       this.processClassDeclaredTransformers(targetType);
 
-      return this.transformerGraph.getTransformer(sourceType, targetType, names, derive);
+      // read after processing, another thread may have published the declared transformers in the meantime
+      Snapshot snap = this.snapshot;
+
+      Transformer transformer = snap.graph.getTransformer(sourceType, targetType, names, derive);
+      // named transformers declared for a supertype are preferred to handing the source back unchanged
+      boolean named = names != null && !names.isEmpty();
+      if( transformer == null && !named && targetType.isAssignableFrom(sourceType) )
+      {
+         transformer = IdentityTransformer.INSTANCE;
+      }
+      else if( transformer == null )
+      {
+         transformer = this.getInheritedTransformer(sourceType, targetType, names, derive);
+         snap = this.snapshot;
+         if( transformer == null && targetType.isAssignableFrom(sourceType) )
+         {
+            transformer = IdentityTransformer.INSTANCE;
+         }
+      }
+
+      // cached under the concrete source type, so the hierarchy is only walked once per class
+      snap.cache.putTransformer(key, transformer);
+      if( timer != null )
+      {
+         timer.record(System.nanoTime() - start);
+      }
+      if( event != null )
+      {
+         event.record(sourceType, targetType, names, derive, transformer);
+      }
+      return transformer;
    }
 
    public Transformer getTransformer( Class<?> ... steps )
    {
       this.initializeIfNotReady();
-      for( Class<?> c : steps )
+
+      TransformerKey key = TransformerKey.forSteps(steps);
+      Object cached = this.snapshot.cache.get(key);
+      if( cached != null )
       {
-         this.processClassDeclaredTransformers(c);
+         return this.unwrapCached(cached);
+      }
+
+      LatencyHistogram timer = this.resolutionLatency;
+      long start = timer != null ? System.nanoTime() : 0;
+      ResolutionEvent event = FlightRecorderSupport.AVAILABLE ? new ResolutionEvent() : null;
+      if( event != null )
+      {
+         event.begin();
       }
+      Transformer transformer = null;
+      try
+      {
+         for( Class<?> c : steps )
+         {
+            this.processClassDeclaredTransformers(c);
+         }
 
-      return this.transformerGraph.getTransformer( steps );
+         Snapshot snap = this.snapshot;
+
+         try
+         {
+            transformer = snap.graph.getTransformer( steps );
+         }
+         catch (TransformationException e)
+         {
+            snap.cache.putNoRoute(key, e.getMessage());
+            throw e;
+         }
+         snap.cache.putTransformer(key, transformer);
+         return transformer;
+      }
+      finally
+      {
+         if( timer != null )
+         {
+            timer.record(System.nanoTime() - start);
+         }
+         if( event != null )
+         {
+            event.record(steps[0], steps[steps.length - 1], null, false, transformer);
+         }
+      }
    }
 
-   private Object[] getReflectionScanHints()
+   /**
+    * Resolves the transformer for a transformation, failing if there is none.
+    *
+    * @param sourceType The type of the object being transformed.
+    * @param targetType The type to transform into.
+    * @param names The transformer names to use when resolving conflicts.
+    * @param derive Whether the route may be derived.
+    * @param intermediateSteps The types to transform through, or an empty list to go directly.
+    * @return The resolved transformer. Never null.
+    * @throws TransformationException If there is no transformer for the given parameters.
+    */
+   public Transformer resolve(Class<?> sourceType, Class<?> targetType, Collection<String> names, boolean derive,
+                              List<Class<?>> intermediateSteps)
    {
-      Object[] scanHints =
-            new Object[ DEFAULT_SCAN_HINTS.length + this.registeredClasses.size() + this.registeredPackages.size() ];
+      Transformer transformer;
 
-      int pos = 0;
-      for(Object o : DEFAULT_SCAN_HINTS)
+      if( intermediateSteps.size() > 0 )
       {
-         scanHints[pos++] = o;
+         Class<?>[] stepArray = new Class<?>[ intermediateSteps.size() + 2 ];
+         int idx = 0;
+         stepArray[idx++] = sourceType;
+         for( Class<?> c : intermediateSteps )
+         {
+            stepArray[idx++] = c;
+         }
+         stepArray[idx] = targetType;
+
+         transformer = this.getTransformer( stepArray );
       }
-      for(Class c : this.registeredClasses )
+      else
       {
-         scanHints[pos++] = c;
+         transformer = this.getTransformer(sourceType, targetType, names, derive);
       }
-      for(String p : this.registeredPackages)
+
+      // If still not found then it is not registered
+      if( transformer == null )
       {
-         scanHints[pos++] = p;
+         throw new TransformationException("No Transformer method found to transform from " + sourceType.getName() +
+               " to " + targetType.getName());
       }
+      return transformer;
+   }
 
-      return scanHints;
+   /**
+    * Describes the route that {@link #resolve(Class, Class, Collection, boolean, List)} resolves a transformer for.
+    * Routes are not cached, so this is meant for inspection rather than for every transformation.
+    *
+    * @return The route. Never null.
+    * @throws TransformationException If there is no transformer for the given parameters.
+    */
+   public Route getRoute(Class<?> sourceType, Class<?> targetType, Collection<String> names, boolean derive,
+                         List<Class<?>> intermediateSteps)
+   {
+      this.initializeIfNotReady();
+
+      Route route;
+      if( intermediateSteps.size() > 0 )
+      {
+         List<Class<?>> stepList = new ArrayList<Class<?>>();
+         stepList.add(sourceType);
+         stepList.addAll(intermediateSteps);
+         stepList.add(targetType);
+         route = this.getStepsRoute(stepList);
+      }
+      else
+      {
+         this.processClassDeclaredTransformers(sourceType);
+         this.processClassDeclaredTransformers(targetType);
+
+         route = this.snapshot.graph.getRoute(sourceType, targetType, names, derive);
+         if( route == null && targetType.isAssignableFrom(sourceType) )
+         {
+            route = new Route(Collections.<Class<?>>singletonList(sourceType), Collections.<String>emptyList(), 0);
+         }
+         else if( route == null )
+         {
+            // same as for transformers, the nearest supertype with a route
+            for( Class<?> supertype : TypeHierarchy.supertypesOf(sourceType) )
+            {
+               this.processClassDeclaredTransformers(supertype);
+               route = this.snapshot.graph.getRoute(supertype, targetType, names, derive);
+               if( route != null )
+               {
+                  break;
+               }
+            }
+         }
+      }
+
+      if( route == null )
+      {
+         throw new TransformationException("No Transformer method found to transform from " + sourceType.getName() +
+               " to " + targetType.getName());
+      }
+      return route;
+   }
+
+   private Route getStepsRoute( List<Class<?>> steps )
+   {
+      for( Class<?> c : steps )
+      {
+         this.processClassDeclaredTransformers(c);
+      }
+
+      TransformerGraph graph = this.snapshot.graph;
+      List<Class<?>> types = new ArrayList<Class<?>>();
+      List<String> transformerNames = new ArrayList<String>();
+      double cost = 0;
+      types.add(steps.get(0));
+
+      for( int i=1; i<steps.size(); i++ )
+      {
+         Route hop = graph.getRoute(steps.get(i - 1), steps.get(i), null, false);
+         if( hop == null )
+         {
+            throw new TransformationException("Could not find a transformer between " + steps.get(i - 1).getName() +
+                  " to " + steps.get(i).getName() + " when building a multi-step transformer");
+         }
+         types.add(steps.get(i));
+         transformerNames.addAll(hop.getTransformerNames());
+         cost += hop.getCost();
+      }
+      return new Route(types, transformerNames, cost);
+   }
+
+   /**
+    * Returns a token that identifies the currently published graph. The token changes whenever transformers are
+    * added, the framework is reset, the invocation engine is changed or route costs are updated, so holders of resolved transformers can
+    * compare it to know when to resolve them again.
+    *
+    * @return The current graph token.
+    */
+   public Object getGeneration()
+   {
+      return this.snapshot;
+   }
+
+   /**
+    * @return Usage statistics for the resolved transformer cache.
+    */
+   public CacheStatistics getCacheStatistics()
+   {
+      return this.snapshot.cache.getStatistics();
+   }
+
+   /**
+    * Looks for a transformer from the nearest supertype of the source type that has one. Used for subclasses and
+    * proxies of the types that transformers have been declared for.
+    */
+   private Transformer getInheritedTransformer(Class<?> sourceType, Class<?> targetType, Collection<String> names,
+                                               boolean derive)
+   {
+      for( Class<?> supertype : TypeHierarchy.supertypesOf(sourceType) )
+      {
+         this.processClassDeclaredTransformers(supertype);
+
+         Transformer transformer = this.snapshot.graph.getTransformer(supertype, targetType, names, derive);
+         if( transformer != null )
+         {
+            return transformer;
+         }
+      }
+      return null;
+   }
+
+   private Transformer unwrapCached( Object cached )
+   {
+      if( cached instanceof TransformerCache.NoRoute )
+      {
+         String message = ((TransformerCache.NoRoute)cached).getMessage();
+         if( message != null )
+         {
+            throw new TransformationException(message);
+         }
+         return null;
+      }
+      return (Transformer)cached;
+   }
+
+   private ClassLoader getClassLoader()
+   {
+      ClassLoader loader = Thread.currentThread().getContextClassLoader();
+      return loader != null ? loader : TransformerRegistry.class.getClassLoader();
    }
 
    private void initializeIfNotReady()
    {
-      if( !this.initialized )
+      if( this.initialized )
       {
-         Reflections reflections =
-            new Reflections(
-                  this.getReflectionScanHints(),
-                  new Scanner[]{ new MethodAnnotationsScanner()}
-            );
+         return;
+      }
 
-         Set<Method> transformerMethods =
-               reflections.getMethodsAnnotatedWith(org.isisoft.morphoo.annotation.Transformer.class);
+      synchronized (this.writeLock)
+      {
+         if( !this.initialized )
+         {
+            ClassLoader loader = this.getClassLoader();
+            DiscoveryEvent event = FlightRecorderSupport.AVAILABLE ? new DiscoveryEvent() : null;
+            if( event != null )
+            {
+               event.begin();
+            }
 
-         this.removeNonParticipatingMethods(transformerMethods);
+            // Prefer the compile-time indexes, and scan the parts of the classpath that none of them covers
+            Set<String> classNames = null;
+            Set<File> indexedRoots = new HashSet<File>();
+            if( this.transformerIndexEnabled )
+            {
+               classNames = TransformerIndex.findClassNames(loader, this.registeredPackages, indexedRoots);
+            }
+            boolean indexed = classNames != null;
+            Set<String> scanned =
+                  ClasspathScanner.findClassNames(loader, this.registeredPackages, indexedRoots, this.forkJoinPool);
+            if( classNames == null )
+            {
+               classNames = scanned;
+            }
+            else
+            {
+               classNames.addAll(scanned);
+            }
+
+            Collection<Method> transformerMethods = this.extractTransformerMethods(loader, classNames);
+            if( event != null )
+            {
+               event.record(this.registeredPackages, indexed, classNames.size(), transformerMethods.size());
+            }
+
+            this.removeNonParticipatingMethods(transformerMethods);
 
-         for( Method m : transformerMethods )
+            this.publish(transformerMethods);
+            this.initialized = true;
+         }
+      }
+   }
+
+   /**
+    * Collects the transformer methods declared by the registered classes and by the named classes. Named classes are
+    * loaded without being initialized, so their static initializers only run once they are used.
+    */
+   private Collection<Method> extractTransformerMethods( ClassLoader loader, Collection<String> classNames )
+   {
+      Set<Class<?>> declaringClasses = new HashSet<Class<?>>(this.registeredClasses);
+      for( String className : classNames )
+      {
+         try
+         {
+            declaringClasses.add( Class.forName(className, false, loader) );
+         }
+         catch (ClassNotFoundException e)
          {
-            this.registerTransformerMethod(m);
+            // indexed or scanned, but not visible to this class loader
          }
+      }
 
-         this.initialized = true;
+      Collection<Method> transformerMethods = new ArrayList<Method>();
+      for( Class<?> c : declaringClasses )
+      {
+         for( Method m : c.getDeclaredMethods() )
+         {
+            if( m.getAnnotation(org.isisoft.morphoo.annotation.Transformer.class) != null )
+            {
+               transformerMethods.add(m);
+            }
+         }
       }
+      return transformerMethods;
    }
 
    private void removeNonParticipatingMethods(final Collection<Method> candidateMethods)
@@ -189,28 +870,62 @@ class TransformerRegistry
       }
    }
 
-   private void registerTransformerMethod( Method method )
+   /**
+    * Publishes a new snapshot containing the current graph plus the given transformer methods. Must be called while
+    * holding the write lock.
+    *
+    * @param transformerMethods The java methods to add to the graph.
+    */
+   private void publish( Collection<Method> transformerMethods )
    {
-      this.transformerGraph.addTransformer(method);
+      Snapshot current = this.snapshot;
+      TransformerGraph newGraph = current.graph.copy();
+
+      for( Method m : transformerMethods )
+      {
+         newGraph.addTransformer(m);
+      }
+
+      this.snapshot = new Snapshot(newGraph, current.cache.nextGeneration());
    }
 
+   /**
+    * Adds the transformer methods declared with {@link org.isisoft.morphoo.annotation.Transformers} on a class, if it
+    * has not been processed yet. A class is only marked as processed after its transformers have been published.
+    */
    private void processClassDeclaredTransformers( Class<?> cls )
    {
-      if( !this.runtimeCollectedClasses.contains( cls ) )
+      if( this.runtimeCollectedClasses.contains( cls ) )
       {
+         return;
+      }
+
+      synchronized (this.writeLock)
+      {
+         if( this.runtimeCollectedClasses.contains( cls ) )
+         {
+            return;
+         }
+
          Method[] candidateTransMethods =
                TransformerMethodAnalyzer.extractClassDeclaredTransformerCandidates( cls );
 
+         Collection<Method> participatingMethods = new ArrayList<Method>();
          for( Method candidate : candidateTransMethods )
          {
             // only process those methods which either transform into or from the object class
             if( candidate.getReturnType() == cls ||
                 (candidate.getParameterTypes().length > 0 && candidate.getParameterTypes()[0] == cls) )
             {
-               this.registerTransformerMethod(candidate);
+               participatingMethods.add(candidate);
             }
          }
 
+         if( !participatingMethods.isEmpty() )
+         {
+            this.publish(participatingMethods);
+         }
+
          // cache the processed class so it's not processed again
          this.runtimeCollectedClasses.add( cls );
       }
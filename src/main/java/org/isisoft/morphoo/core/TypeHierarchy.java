@@ -0,0 +1,110 @@
+package org.isisoft.morphoo.core;
+
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Lists the supertypes of classes in the order in which they are considered as transformation sources. The list for
+ * each class is computed once and kept in a {@link ClassValue}, so it can be read again without walking the hierarchy.
+ * This class is for the framework's internal use only.
+ *
+ * @author Carlos Munoz
+ */
+final class TypeHierarchy
+{
+   private static final ClassValue<Class<?>[]> SUPERTYPES = new ClassValue<Class<?>[]>()
+   {
+      @Override
+      protected Class<?>[] computeValue(Class<?> type)
+      {
+         return computeSupertypes(type);
+      }
+   };
+
+   private TypeHierarchy()
+   {
+   }
+
+   /**
+    * Returns the supertypes of a class ordered from nearest to farthest. Types at the same distance are ordered with
+    * the superclass before the interfaces, and interfaces in declaration order. {@link Object} always comes last.
+    * Wrapper classes and primitive types are considered to extend each other, ahead of any other supertype, so
+    * <code>long</code> comes first for {@link Long}, and <code>long</code> has the supertypes of {@link Long}.
+    *
+    * @param type The class whose supertypes to list.
+    * @return The supertypes of the class, not including the class itself. Must not be modified.
+    */
+   static Class<?>[] supertypesOf( Class<?> type )
+   {
+      return SUPERTYPES.get(type);
+   }
+
+   private static Class<?>[] computeSupertypes( Class<?> type )
+   {
+      Set<Class<?>> supertypes = new LinkedHashSet<Class<?>>();
+
+      // boxing and unboxing come before widening
+      Class<?> counterpart = counterpartOf(type);
+      if( counterpart != null )
+      {
+         supertypes.add(counterpart);
+         if( type.isPrimitive() )
+         {
+            type = counterpart;
+         }
+      }
+
+      // breadth first, so nearer supertypes are found first
+      List<Class<?>> level = new ArrayList<Class<?>>();
+      level.add(type);
+
+      while( !level.isEmpty() )
+      {
+         List<Class<?>> nextLevel = new ArrayList<Class<?>>();
+         for( Class<?> c : level )
+         {
+            Class<?> superclass = c.getSuperclass();
+            if( superclass != null && superclass != Object.class && supertypes.add(superclass) )
+            {
+               nextLevel.add(superclass);
+            }
+            for( Class<?> i : c.getInterfaces() )
+            {
+               if( supertypes.add(i) )
+               {
+                  nextLevel.add(i);
+               }
+            }
+         }
+         level = nextLevel;
+      }
+
+      if( type != Object.class && !type.isPrimitive() )
+      {
+         supertypes.add(Object.class);
+      }
+      return supertypes.toArray(new Class<?>[supertypes.size()]);
+   }
+
+   /**
+    * @return The wrapper class for a primitive type, the primitive type for a wrapper class, or null for any other
+    * class.
+    */
+   private static Class<?> counterpartOf( Class<?> type )
+   {
+      if( type == void.class || type == Void.class )
+      {
+         return null;
+      }
+      MethodType boxed = MethodType.methodType(type).wrap();
+      MethodType unboxed = MethodType.methodType(type).unwrap();
+      if( boxed.returnType() != type )
+      {
+         return boxed.returnType();
+      }
+      return unboxed.returnType() != type ? unboxed.returnType() : null;
+   }
+}
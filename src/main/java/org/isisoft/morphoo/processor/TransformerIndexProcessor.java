@@ -0,0 +1,329 @@
+package org.isisoft.morphoo.processor;
+
+import org.isisoft.morphoo.annotation.ContextParam;
+import org.isisoft.morphoo.annotation.Transformer;
+import org.isisoft.morphoo.annotation.TransformerScope;
+import org.isisoft.morphoo.annotation.Transformers;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.SimpleAnnotationValueVisitor8;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Annotation processor that validates transformer methods at compile time and writes an index of the classes that
+ * declare them. When the index is present on the classpath, the framework reads it instead of scanning the
+ * classpath for transformer methods.
+ *
+ * Transformer methods are validated following the same rules applied at runtime by
+ * {@link org.isisoft.morphoo.core.TransformerMethodAnalyzer}. Classes referenced from
+ * {@link org.isisoft.morphoo.annotation.Transformers} annotations are checked to actually declare transformer methods.
+ *
+ * The processor is registered as a service, so it runs automatically when the framework's jar is on the compiler's
+ * classpath.
+ *
+ * @author Carlos Munoz
+ */
+@SupportedAnnotationTypes({
+      "org.isisoft.morphoo.annotation.Transformer",
+      "org.isisoft.morphoo.annotation.Transformers",
+      "org.isisoft.morphoo.annotation.TransformerScope"
+})
+public class TransformerIndexProcessor extends AbstractProcessor
+{
+   /**
+    * Location of the index in the class output. Each line holds the binary name of a class declaring transformer
+    * methods.
+    */
+   public static final String INDEX_RESOURCE = "META-INF/morphoo/transformers.idx";
+
+   private static final String TRANSFORMATION_CONTEXT = "org.isisoft.morphoo.core.TransformationContext";
+
+   /** The elements of an array annotation value, or none for any other value */
+   private static final SimpleAnnotationValueVisitor8<List<? extends AnnotationValue>, Void> ARRAY_ELEMENTS =
+         new SimpleAnnotationValueVisitor8<List<? extends AnnotationValue>, Void>(
+               Collections.<AnnotationValue>emptyList())
+         {
+            @Override
+            public List<? extends AnnotationValue> visitArray( List<? extends AnnotationValue> values, Void p )
+            {
+               return values;
+            }
+         };
+
+   /** The class named by a class annotation value, or null for any other value */
+   private static final SimpleAnnotationValueVisitor8<TypeElement, Void> CLASS_ELEMENT =
+         new SimpleAnnotationValueVisitor8<TypeElement, Void>()
+         {
+            @Override
+            public TypeElement visitType( TypeMirror type, Void p )
+            {
+               return type.getKind() == TypeKind.DECLARED ? (TypeElement)((DeclaredType)type).asElement() : null;
+            }
+         };
+
+   private final Set<String> indexedClasses = new TreeSet<String>();
+
+
+   @Override
+   public SourceVersion getSupportedSourceVersion()
+   {
+      return SourceVersion.latestSupported();
+   }
+
+   @Override
+   public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+   {
+      for( Element e : roundEnv.getElementsAnnotatedWith(Transformer.class) )
+      {
+         if( e.getKind() == ElementKind.METHOD && this.validate((ExecutableElement)e) )
+         {
+            TypeElement declaringClass = (TypeElement)e.getEnclosingElement();
+            this.indexedClasses.add( processingEnv.getElementUtils().getBinaryName(declaringClass).toString() );
+         }
+      }
+
+      for( Element e : roundEnv.getElementsAnnotatedWith(Transformers.class) )
+      {
+         this.validateDeclaredTransformers(e);
+      }
+
+      for( Element e : roundEnv.getElementsAnnotatedWith(TransformerScope.class) )
+      {
+         // pool size must not be negative
+         if( e.getAnnotation(TransformerScope.class).poolSize() < 0 )
+         {
+            this.error(e, "Class " + ((TypeElement)e).getQualifiedName()
+                  + " must not have a negative transformer pool size");
+         }
+      }
+
+      if( roundEnv.processingOver() )
+      {
+         this.writeIndex();
+      }
+      return false;
+   }
+
+   private boolean validate( ExecutableElement method )
+   {
+      TypeElement declaringClass = (TypeElement)method.getEnclosingElement();
+      List<? extends VariableElement> params = method.getParameters();
+      boolean valid = true;
+
+      // return type must not be void
+      if( method.getReturnType().getKind() == TypeKind.VOID )
+      {
+         this.error(method, "Transformer method " + method.getSimpleName() + " on class "
+               + declaringClass.getQualifiedName() + " must not return void");
+         valid = false;
+      }
+      // Must have at least one argument
+      if( params.isEmpty() )
+      {
+         this.error(method, "Transformer method " + method.getSimpleName() + " on class "
+               + declaringClass.getQualifiedName() + " must have at least one argument");
+         valid = false;
+      }
+
+      // cost must be a positive number
+      double cost = method.getAnnotation(Transformer.class).cost();
+      if( !(cost > 0) || Double.isInfinite(cost) )
+      {
+         this.error(method, "Transformer method " + method.getSimpleName() + " on class "
+               + declaringClass.getQualifiedName() + " must have a positive cost");
+         valid = false;
+      }
+
+      // memoization bounds must not be negative
+      Transformer annotation = method.getAnnotation(Transformer.class);
+      if( annotation.memoize() < 0 || annotation.memoizeExpiry() < 0 )
+      {
+         this.error(method, "Transformer method " + method.getSimpleName() + " on class "
+               + declaringClass.getQualifiedName() + " must not have a negative memoization size or expiry");
+         valid = false;
+      }
+
+      // all arguments after the source must be the context or be annotated
+      for( int i=1; i<params.size(); i++ )
+      {
+         VariableElement param = params.get(i);
+         boolean isContext = processingEnv.getTypeUtils().erasure(param.asType()).toString()
+               .equals(TRANSFORMATION_CONTEXT);
+
+         if( !isContext && param.getAnnotation(ContextParam.class) == null )
+         {
+            this.error(param, "A parameter of type " + param.asType() + " in Transformer method " +
+                  declaringClass.getQualifiedName() + "." + method.getSimpleName() +
+                  " has not been annotated with " + ContextParam.class.getName() + " as expected.");
+            valid = false;
+         }
+      }
+
+      // non-static transformer methods need an instance of their class
+      if( !method.getModifiers().contains(Modifier.STATIC) && !this.isInstantiable(declaringClass) )
+      {
+         this.error(method, "Class " + declaringClass.getQualifiedName() + " declares the non-static transformer " +
+               "method " + method.getSimpleName() + ", so it must not be abstract and must have a no-arg constructor");
+         valid = false;
+      }
+
+      return valid;
+   }
+
+   private boolean isInstantiable( TypeElement cls )
+   {
+      if( cls.getKind() != ElementKind.CLASS || cls.getModifiers().contains(Modifier.ABSTRACT) )
+      {
+         return false;
+      }
+      // inner classes can't be created without an enclosing instance
+      if( cls.getEnclosingElement().getKind() != ElementKind.PACKAGE && !cls.getModifiers().contains(Modifier.STATIC) )
+      {
+         return false;
+      }
+
+      for( ExecutableElement constructor : ElementFilter.constructorsIn(cls.getEnclosedElements()) )
+      {
+         if( constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE) )
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private void validateDeclaredTransformers( Element annotated )
+   {
+      for( AnnotationMirror mirror : annotated.getAnnotationMirrors() )
+      {
+         if( !((TypeElement)mirror.getAnnotationType().asElement()).getQualifiedName()
+               .contentEquals(Transformers.class.getName()) )
+         {
+            continue;
+         }
+
+         for( AnnotationValue value : mirror.getElementValues().values() )
+         {
+            for( AnnotationValue classValue : value.accept(ARRAY_ELEMENTS, null) )
+            {
+               TypeElement transformerClass = classValue.accept(CLASS_ELEMENT, null);
+               if( transformerClass != null && !this.declaresTransformers(transformerClass) )
+               {
+                  processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "Class " + transformerClass.getQualifiedName() + " is listed in the " +
+                        Transformers.class.getName() + " annotation but declares no transformer methods",
+                        annotated, mirror, classValue);
+               }
+            }
+         }
+      }
+   }
+
+   private boolean declaresTransformers( TypeElement cls )
+   {
+      for( ExecutableElement method : ElementFilter.methodsIn(cls.getEnclosedElements()) )
+      {
+         if( method.getAnnotation(Transformer.class) != null )
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private void writeIndex()
+   {
+      // keep entries from a previous (possibly partial) compilation
+      this.readExistingIndex();
+
+      if( this.indexedClasses.isEmpty() )
+      {
+         return;
+      }
+
+      try
+      {
+         FileObject index =
+               processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+         Writer writer = new OutputStreamWriter(index.openOutputStream(), "UTF-8");
+         try
+         {
+            for( String className : this.indexedClasses )
+            {
+               writer.write(className);
+               writer.write('\n');
+            }
+         }
+         finally
+         {
+            writer.close();
+         }
+      }
+      catch (IOException e)
+      {
+         processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+               "Could not write the transformer index " + INDEX_RESOURCE + ": " + e.getMessage());
+      }
+   }
+
+   private void readExistingIndex()
+   {
+      try
+      {
+         FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+         Reader reader = new InputStreamReader(existing.openInputStream(), "UTF-8");
+         BufferedReader lines = new BufferedReader(reader);
+         try
+         {
+            String line;
+            while( (line = lines.readLine()) != null )
+            {
+               if( line.trim().length() > 0 )
+               {
+                  this.indexedClasses.add(line.trim());
+               }
+            }
+         }
+         finally
+         {
+            lines.close();
+         }
+      }
+      catch (IOException e)
+      {
+         // there is no previous index
+      }
+   }
+
+   private void error( Element element, String message )
+   {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+   }
+}
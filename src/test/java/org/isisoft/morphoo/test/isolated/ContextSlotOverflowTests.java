@@ -0,0 +1,59 @@
+package org.isisoft.morphoo.test.isolated;
+
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.core.TransformationContext;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.InjectionTransformers;
+import org.isisoft.morphoo.test.model.transformer.LateInjectionTransformers;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Uses up every context variable slot, which lasts for the rest of the JVM. These tests run in a JVM of their own, so
+ * that the unit tests keep reading context variables through their slots.
+ *
+ * @author Carlos Munoz
+ */
+public class ContextSlotOverflowTests extends AbstractTransformationTest
+{
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(InjectionTransformers.class, LateInjectionTransformers.class);
+   }
+
+   @Test
+   public void manyVariableNames()
+   {
+      TransformationContext ctx = new TransformationContext();
+      for( int i=0; i<300; i++ )
+      {
+         ctx.put("generatedName" + i, i);
+      }
+      // there are more names than slots, so the last ones are kept apart
+      assertThat(ctx.size(), is(300));
+      assertThat(ctx.get("generatedName0"), is((Object)0));
+      assertThat(ctx.get("generatedName299"), is((Object)299));
+
+      TransformationContext base = ctx.freeze();
+      TransformationContext overlay = base.overlay();
+      assertThat(overlay.remove("generatedName299"), is((Object)299));
+      assertThat(overlay.put("generatedName298", null), is((Object)298));
+      assertThat(overlay.containsKey("generatedName299"), is(false));
+      assertThat(overlay.containsKey("generatedName298"), is(true));
+      assertThat(overlay.get("generatedName298"), nullValue());
+      assertThat(overlay.size(), is(299));
+      assertThat(base.get("generatedName299"), is((Object)299));
+      assertThat(base.get("generatedName298"), is((Object)298));
+
+      // context params with names that have no slot are injected too, as the transformer methods are only analyzed
+      // when the first transformation is performed
+      String result = Transformation.into(String.class).using("lateSuffix").withContext("lateSuffix", "!")
+            .performOn("late");
+      assertThat(result, is("late!"));
+   }
+}
@@ -0,0 +1,21 @@
+package org.isisoft.morphoo.test.model.transformer;
+
+import org.isisoft.morphoo.annotation.Transformer;
+import org.isisoft.morphoo.core.TransformationContext;
+
+/**
+ * A transformer method that modifies its context, counting how many times it has been called with it.
+ *
+ * @author Carlos Munoz
+ */
+public class ContextCountingTransformers
+{
+   @Transformer
+   public static Integer toVisitCount(StringBuilder sb, TransformationContext ctx)
+   {
+      Integer visits = (Integer)ctx.get("visits");
+      int count = visits == null ? 1 : visits + 1;
+      ctx.put("visits", count);
+      return count;
+   }
+}
@@ -0,0 +1,31 @@
+package org.isisoft.morphoo.test.model.transformer;
+
+import org.isisoft.morphoo.annotation.Transformer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transformer methods that count how many times they are invoked.
+ *
+ * @author Carlos Munoz
+ */
+public class DeferredTransformers
+{
+   public static final AtomicInteger INVOCATIONS = new AtomicInteger();
+
+   @Transformer
+   public static CharSequence toReversed( String src ) throws InterruptedException
+   {
+      INVOCATIONS.incrementAndGet();
+      // leave time for concurrent callers to pile up
+      Thread.sleep(10);
+      return new StringBuilder(src).reverse();
+   }
+
+   @Transformer
+   public static Integer toLength( String src )
+   {
+      INVOCATIONS.incrementAndGet();
+      return src.length();
+   }
+}
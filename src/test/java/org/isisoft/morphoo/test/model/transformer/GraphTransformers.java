@@ -0,0 +1,100 @@
+package org.isisoft.morphoo.test.model.transformer;
+
+import org.isisoft.morphoo.annotation.Transformer;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.core.TransformationContext;
+import org.isisoft.morphoo.test.model.unit.Employee;
+import org.isisoft.morphoo.test.model.unit.EmployeeDto;
+
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transformers for an object graph with cyclic references between employees and their managers.
+ *
+ * @author Carlos Munoz
+ */
+public class GraphTransformers
+{
+   public static final AtomicInteger INVOCATIONS = new AtomicInteger();
+
+   private static final CyclicBarrier PEERS = new CyclicBarrier(2);
+
+   @Transformer
+   public static EmployeeDto toDto( Employee employee, TransformationContext ctx )
+   {
+      INVOCATIONS.incrementAndGet();
+      EmployeeDto dto = new EmployeeDto(employee.getName());
+      ctx.registerTarget(employee, dto);
+
+      if( employee.getManager() != null )
+      {
+         dto.setManager(Transformation.into(EmployeeDto.class).within(ctx).performOn(employee.getManager()));
+      }
+      dto.setReports(
+            Transformation.into(EmployeeDto.class).within(ctx).inParallel(1).performOnAll(employee.getReports()));
+      return dto;
+   }
+
+   /**
+    * Follows the manager without registering the target first.
+    */
+   @Transformer
+   public static String toChainOfCommand( Employee employee, TransformationContext ctx )
+   {
+      if( employee.getManager() == null && employee.getReports().isEmpty() )
+      {
+         return employee.getName();
+      }
+      Employee next = employee.getManager() != null ? employee.getManager() : employee.getReports().get(0);
+      return employee.getName() + " > " + Transformation.into(String.class).within(ctx).performOn(next);
+   }
+
+   /**
+    * Transforms the reports in parallel, and then the manager, without registering the target first.
+    */
+   @Transformer
+   public static Integer toTeamSize( Employee employee, TransformationContext ctx )
+   {
+      int size = 1;
+      for( Integer reportTeam :
+            Transformation.into(Integer.class).within(ctx).inParallel(1).performOnAll(employee.getReports()) )
+      {
+         size += reportTeam;
+      }
+      if( employee.getManager() != null )
+      {
+         Transformation.into(Integer.class).within(ctx).performOn(employee.getManager());
+      }
+      return size;
+   }
+
+   /**
+    * Transforms the reports in parallel. Each report follows the next one under the same manager, wrapping around,
+    * without registering the target first. With two reports, each waits for the other one to start.
+    */
+   @Transformer
+   public static Long toPeerCount( Employee employee, TransformationContext ctx )
+   {
+      if( employee.getManager() == null )
+      {
+         PEERS.reset();
+         return (long)Transformation.into(Long.class).within(ctx).inParallel(1).performOnAll(employee.getReports())
+               .size();
+      }
+      try
+      {
+         // let the other report start before following it, when they are transformed by different tasks
+         PEERS.await(100, TimeUnit.MILLISECONDS);
+      }
+      catch (Exception e)
+      {
+         // both reports are transformed by the same task
+      }
+      List<Employee> peers = employee.getManager().getReports();
+      Employee next = peers.get( (peers.indexOf(employee) + 1) % peers.size() );
+      return Transformation.into(Long.class).within(ctx).performOn(next) + 1;
+   }
+}
@@ -19,4 +19,10 @@ public class InjectionTransformers
    {
       return pre + src + pos + " with name!";
    }
+
+   @Transformer(name = "requiredPrefix")
+   public String prependRequired(String src, @ContextParam(name = "pre", nullable = false)String pre)
+   {
+      return pre + src;
+   }
 }
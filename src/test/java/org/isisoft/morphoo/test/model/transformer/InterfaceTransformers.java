@@ -0,0 +1,15 @@
+package org.isisoft.morphoo.test.model.transformer;
+
+import org.isisoft.morphoo.annotation.Transformer;
+
+/**
+ * @author Carlos Munoz
+ */
+public class InterfaceTransformers
+{
+   @Transformer
+   public static Integer toLength( CharSequence seq )
+   {
+      return seq.length();
+   }
+}
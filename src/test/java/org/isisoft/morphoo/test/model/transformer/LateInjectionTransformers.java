@@ -0,0 +1,18 @@
+package org.isisoft.morphoo.test.model.transformer;
+
+import org.isisoft.morphoo.annotation.ContextParam;
+import org.isisoft.morphoo.annotation.Transformer;
+
+/**
+ * Transformer methods registered after many other context variable names have been used.
+ *
+ * @author Carlos Munoz
+ */
+public class LateInjectionTransformers
+{
+   @Transformer(name = "lateSuffix")
+   public String appendLateSuffix(String src, @ContextParam(name = "lateSuffix", nullable = false)String suffix)
+   {
+      return src + suffix;
+   }
+}
@@ -0,0 +1,44 @@
+package org.isisoft.morphoo.test.model.transformer;
+
+import org.isisoft.morphoo.annotation.ContextParam;
+import org.isisoft.morphoo.annotation.Transformer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transformer methods that count how many times they are actually invoked.
+ *
+ * @author Carlos Munoz
+ */
+public class MemoizedTransformers
+{
+   public static final AtomicInteger INVOCATIONS = new AtomicInteger();
+
+   @Transformer(memoize = 2)
+   public static String toCode( Integer n )
+   {
+      INVOCATIONS.incrementAndGet();
+      return "CODE-" + n;
+   }
+
+   @Transformer(memoize = 100)
+   public static String toSuffixed( Long n, @ContextParam(name = "suffix") String suffix )
+   {
+      INVOCATIONS.incrementAndGet();
+      return n + suffix;
+   }
+
+   @Transformer(memoize = 100, memoizeExpiry = 50)
+   public static String toShortLived( Short n )
+   {
+      INVOCATIONS.incrementAndGet();
+      return "SHORT-" + n;
+   }
+
+   @Transformer
+   public static String toPlain( Double n )
+   {
+      INVOCATIONS.incrementAndGet();
+      return "DOUBLE-" + n;
+   }
+}
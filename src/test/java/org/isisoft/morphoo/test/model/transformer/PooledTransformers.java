@@ -0,0 +1,55 @@
+package org.isisoft.morphoo.test.model.transformer;
+
+import org.isisoft.morphoo.annotation.InstanceScope;
+import org.isisoft.morphoo.annotation.Transformer;
+import org.isisoft.morphoo.annotation.TransformerScope;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transformer methods that reuse a buffer through pooled instances, and fail if an instance is used by two
+ * invocations at the same time.
+ *
+ * @author Carlos Munoz
+ */
+@TransformerScope(value = InstanceScope.POOLED, poolSize = 2)
+public class PooledTransformers
+{
+   public static final AtomicInteger INSTANCES = new AtomicInteger();
+
+   private final StringBuilder buffer = new StringBuilder();
+
+   private boolean busy;
+
+   public PooledTransformers()
+   {
+      INSTANCES.incrementAndGet();
+   }
+
+   @Transformer
+   public String toBinaryString( Long n )
+   {
+      if( this.busy )
+      {
+         throw new IllegalStateException("Instance used by two invocations at once");
+      }
+      this.busy = true;
+      try
+      {
+         this.buffer.setLength(0);
+         long value = n;
+         do
+         {
+            this.buffer.append(value & 1);
+            value >>>= 1;
+            Thread.yield();
+         }
+         while( value != 0 );
+         return this.buffer.reverse().toString();
+      }
+      finally
+      {
+         this.busy = false;
+      }
+   }
+}
@@ -0,0 +1,56 @@
+package org.isisoft.morphoo.test.model.transformer;
+
+import org.isisoft.morphoo.annotation.Transformer;
+
+import java.util.Date;
+
+/**
+ * Transformer methods that take or return primitive values.
+ *
+ * @author Carlos Munoz
+ */
+public class PrimitiveTransformers
+{
+   @Transformer
+   public static long toEpochMillis( Date date )
+   {
+      return date.getTime();
+   }
+
+   @Transformer
+   public static Date fromEpochMillis( long millis )
+   {
+      return new Date(millis);
+   }
+
+   @Transformer
+   public static double toSeconds( long millis )
+   {
+      return millis / 1000.0;
+   }
+
+   @Transformer
+   public int toDays( double seconds )
+   {
+      return (int)(seconds / 86400);
+   }
+
+   @Transformer
+   public static String toLabel( int n )
+   {
+      return "#" + n;
+   }
+
+   @Transformer
+   public static Long parseOrNull( String s )
+   {
+      try
+      {
+         return Long.valueOf(s);
+      }
+      catch (NumberFormatException e)
+      {
+         return null;
+      }
+   }
+}
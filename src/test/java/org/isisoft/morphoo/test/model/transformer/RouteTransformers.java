@@ -0,0 +1,38 @@
+package org.isisoft.morphoo.test.model.transformer;
+
+import org.isisoft.morphoo.annotation.Transformer;
+
+import java.math.BigInteger;
+
+/**
+ * Two routes from Short to BigInteger. The one through Float is hinted as cheaper, but is actually much slower.
+ *
+ * @author Carlos Munoz
+ */
+public class RouteTransformers
+{
+   @Transformer
+   public static Long toLong( Short s )
+   {
+      return s.longValue();
+   }
+
+   @Transformer
+   public static BigInteger longToBigInteger( Long l )
+   {
+      return BigInteger.valueOf(l);
+   }
+
+   @Transformer(cost = 0.5)
+   public static Float toFloat( Short s )
+   {
+      return s.floatValue();
+   }
+
+   @Transformer(cost = 0.5)
+   public static BigInteger floatToBigInteger( Float f ) throws InterruptedException
+   {
+      Thread.sleep(2);
+      return BigInteger.valueOf(f.longValue());
+   }
+}
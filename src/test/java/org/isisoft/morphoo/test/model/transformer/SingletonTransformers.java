@@ -0,0 +1,32 @@
+package org.isisoft.morphoo.test.model.transformer;
+
+import org.isisoft.morphoo.annotation.Transformer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transformer methods that share the default single instance of their class.
+ *
+ * @author Carlos Munoz
+ */
+public class SingletonTransformers
+{
+   public static final AtomicInteger INSTANCES = new AtomicInteger();
+
+   public SingletonTransformers()
+   {
+      INSTANCES.incrementAndGet();
+   }
+
+   @Transformer
+   public String toUpperCase( Character c )
+   {
+      return String.valueOf(Character.toUpperCase(c));
+   }
+
+   @Transformer
+   public Integer toCodePoint( Character c )
+   {
+      return (int)c;
+   }
+}
@@ -0,0 +1,21 @@
+package org.isisoft.morphoo.test.model.transformer;
+
+import org.isisoft.morphoo.annotation.ContextParam;
+import org.isisoft.morphoo.annotation.Transformer;
+
+/**
+ * @author Carlos Munoz
+ */
+public class SlowTransformers
+{
+   @Transformer
+   public StringBuilder toStringBuilderSlowly( String src, @ContextParam(name = "delay") Long delay )
+         throws InterruptedException
+   {
+      if( delay != null )
+      {
+         Thread.sleep(delay);
+      }
+      return new StringBuilder(src);
+   }
+}
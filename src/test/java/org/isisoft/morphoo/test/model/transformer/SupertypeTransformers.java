@@ -0,0 +1,18 @@
+package org.isisoft.morphoo.test.model.transformer;
+
+import org.isisoft.morphoo.annotation.Transformer;
+import org.isisoft.morphoo.test.model.unit.SourceType;
+
+/**
+ * @author Carlos Munoz
+ */
+public class SupertypeTransformers
+{
+   @Transformer(name = "upperCaseName")
+   public static SourceType toUpperCaseName( SourceType src )
+   {
+      SourceType copy = new SourceType();
+      copy.setName(src.getName().toUpperCase());
+      return copy;
+   }
+}
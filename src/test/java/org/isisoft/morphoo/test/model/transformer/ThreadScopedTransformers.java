@@ -0,0 +1,35 @@
+package org.isisoft.morphoo.test.model.transformer;
+
+import org.isisoft.morphoo.annotation.InstanceScope;
+import org.isisoft.morphoo.annotation.Transformer;
+import org.isisoft.morphoo.annotation.TransformerScope;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transformer methods that reuse a formatter, which is not thread safe, through per-thread instances.
+ *
+ * @author Carlos Munoz
+ */
+@TransformerScope(InstanceScope.THREAD)
+public class ThreadScopedTransformers
+{
+   public static final AtomicInteger INSTANCES = new AtomicInteger();
+
+   private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+
+   public ThreadScopedTransformers()
+   {
+      INSTANCES.incrementAndGet();
+      this.format.setTimeZone(TimeZone.getTimeZone("UTC"));
+   }
+
+   @Transformer
+   public String toIsoString( Date date )
+   {
+      return this.format.format(date);
+   }
+}
@@ -0,0 +1,47 @@
+package org.isisoft.morphoo.test.model.unit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Carlos Munoz
+ */
+public class Employee
+{
+   private final String name;
+
+   private Employee manager;
+
+   private final List<Employee> reports = new ArrayList<Employee>();
+
+
+   public Employee(String name)
+   {
+      this.name = name;
+   }
+
+   public String getName()
+   {
+      return name;
+   }
+
+   public Employee getManager()
+   {
+      return manager;
+   }
+
+   public List<Employee> getReports()
+   {
+      return reports;
+   }
+
+   /**
+    * Adds a report to this employee, who becomes the report's manager.
+    */
+   public Employee addReport(Employee report)
+   {
+      this.reports.add(report);
+      report.manager = this;
+      return report;
+   }
+}
@@ -0,0 +1,46 @@
+package org.isisoft.morphoo.test.model.unit;
+
+import java.util.List;
+
+/**
+ * @author Carlos Munoz
+ */
+public class EmployeeDto
+{
+   private final String name;
+
+   private EmployeeDto manager;
+
+   private List<EmployeeDto> reports;
+
+
+   public EmployeeDto(String name)
+   {
+      this.name = name;
+   }
+
+   public String getName()
+   {
+      return name;
+   }
+
+   public EmployeeDto getManager()
+   {
+      return manager;
+   }
+
+   public void setManager(EmployeeDto manager)
+   {
+      this.manager = manager;
+   }
+
+   public List<EmployeeDto> getReports()
+   {
+      return reports;
+   }
+
+   public void setReports(List<EmployeeDto> reports)
+   {
+      this.reports = reports;
+   }
+}
@@ -0,0 +1,8 @@
+package org.isisoft.morphoo.test.model.unit;
+
+/**
+ * @author Carlos Munoz
+ */
+public class SourceSubType extends SourceType
+{
+}
@@ -0,0 +1,140 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.InitializationException;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.SlowTransformers;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Carlos Munoz
+ */
+public class AsyncTransformationTests extends AbstractTransformationTest
+{
+   private ExecutorService executor;
+
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(SlowTransformers.class);
+   }
+
+   @BeforeClass(dependsOnMethods = "configure")
+   public void createExecutor()
+   {
+      this.executor = Executors.newFixedThreadPool(8);
+      Morphoo.setAsyncExecutor(this.executor);
+   }
+
+   @AfterClass
+   public void shutdownExecutor()
+   {
+      this.executor.shutdownNow();
+   }
+
+   @Test
+   public void asyncTransformation() throws Exception
+   {
+      Transformation<StringBuilder> t = Transformation.into(StringBuilder.class).withContext("delay", 10L);
+      StringBuilder result = t.performOnAsync("async").get(5, TimeUnit.SECONDS);
+
+      assertThat(result.toString(), is("async"));
+   }
+
+   @Test
+   public void asyncBatch() throws Exception
+   {
+      List<String> sources = new ArrayList<String>();
+      for( int i=0; i<50; i++ )
+      {
+         sources.add("source " + i);
+      }
+
+      List<StringBuilder> results =
+            Transformation.into(StringBuilder.class).withContext("delay", 5L).performOnAllAsync(sources)
+                  .get(5, TimeUnit.SECONDS);
+
+      for( int i=0; i<sources.size(); i++ )
+      {
+         assertThat(results.get(i).toString(), is(sources.get(i)));
+      }
+   }
+
+   @Test
+   public void asyncBatchWithNullSource() throws Exception
+   {
+      CompletableFuture<List<StringBuilder>> results =
+            Transformation.into(StringBuilder.class).performOnAllAsync(Arrays.asList("source", null));
+
+      try
+      {
+         results.get(5, TimeUnit.SECONDS);
+         throw new AssertionError("The batch should have failed");
+      }
+      catch (ExecutionException e)
+      {
+         assertThat(e.getCause(), instanceOf(NullPointerException.class));
+      }
+   }
+
+   @Test
+   public void deadline() throws Exception
+   {
+      try
+      {
+         Transformation.into(StringBuilder.class).withContext("delay", 10000L)
+               .performOnAsync("too slow", 50, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+         throw new AssertionError("The transformation should have timed out");
+      }
+      catch (ExecutionException e)
+      {
+         assertThat(e.getCause(), instanceOf(TimeoutException.class));
+      }
+   }
+
+   @Test
+   public void virtualThreads() throws Exception
+   {
+      boolean supported;
+      try
+      {
+         Morphoo.useVirtualThreads();
+         supported = true;
+      }
+      catch (InitializationException e)
+      {
+         supported = false;
+      }
+
+      try
+      {
+         if( supported )
+         {
+            StringBuilder result = Transformation.into(StringBuilder.class).performOnAsync("virtual")
+                  .get(5, TimeUnit.SECONDS);
+            assertThat(result.toString(), is("virtual"));
+         }
+      }
+      finally
+      {
+         Morphoo.setAsyncExecutor(this.executor);
+      }
+   }
+}
@@ -0,0 +1,92 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.TransformerMethods;
+import org.isisoft.morphoo.test.model.transformer.TransformerMethodsWithContext;
+import org.isisoft.morphoo.test.model.unit.SourceType;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Carlos Munoz
+ */
+public class BatchTransformationTests extends AbstractTransformationTest
+{
+   private static final int BATCH_SIZE = 10000;
+
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(TransformerMethods.class, TransformerMethodsWithContext.class);
+   }
+
+   private List<Object> mixedSources()
+   {
+      List<Object> sources = new ArrayList<Object>(BATCH_SIZE);
+      for( int i=0; i<BATCH_SIZE; i++ )
+      {
+         if( i % 3 == 0 )
+         {
+            SourceType s = new SourceType();
+            s.setName("source " + i);
+            sources.add(s);
+         }
+         else
+         {
+            sources.add("string " + i);
+         }
+      }
+      return sources;
+   }
+
+   private List<String> expectedResults(List<Object> sources)
+   {
+      List<String> expected = new ArrayList<String>(sources.size());
+      for( Object src : sources )
+      {
+         expected.add( src instanceof SourceType ? ((SourceType)src).getName() : src + "!" );
+      }
+      return expected;
+   }
+
+   @Test
+   public void sequentialBatch()
+   {
+      List<Object> sources = this.mixedSources();
+
+      List<String> results = Transformation.into(String.class).withContext("additional", "!").performOnAll(sources);
+
+      assertThat(results, is(this.expectedResults(sources)));
+   }
+
+   @Test
+   public void parallelOrderedBatch()
+   {
+      List<Object> sources = this.mixedSources();
+
+      List<String> results = Transformation.into(String.class).withContext("additional", "!")
+            .inParallel(100).performOnAll(sources.toArray());
+
+      assertThat(results, is(this.expectedResults(sources)));
+   }
+
+   @Test
+   public void parallelUnorderedBatch()
+   {
+      List<Object> sources = this.mixedSources();
+
+      List<String> results = Transformation.into(String.class).withContext("additional", "!")
+            .inParallel(100).unordered().performOnAll(sources);
+
+      assertThat(results.size(), is(BATCH_SIZE));
+      assertThat(new HashSet<String>(results), is(new HashSet<String>(this.expectedResults(sources))));
+   }
+}
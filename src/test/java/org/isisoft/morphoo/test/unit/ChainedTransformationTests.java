@@ -2,6 +2,9 @@ package org.isisoft.morphoo.test.unit;
 
 import org.isisoft.morphoo.core.Morphoo;
 import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.core.TransformationContext;
+import org.isisoft.morphoo.core.Transformer;
+import org.isisoft.morphoo.core.TransformerChain;
 import org.isisoft.morphoo.test.AbstractTransformationTest;
 import org.isisoft.morphoo.test.model.transformer.TransformerMethods;
 import org.isisoft.morphoo.test.model.unit.FinalTargetType;
@@ -38,4 +41,37 @@ public class ChainedTransformationTests extends AbstractTransformationTest
 
       assertThat(target.getDate(), equalTo(src.getDate()));
    }
+
+   @Test
+   public void nestedChains()
+   {
+      Transformer increment = new Transformer()
+      {
+         @Override
+         public Object transform(Object src, TransformationContext ctx)
+         {
+            return (Integer)src + 1;
+         }
+      };
+
+      TransformerChain inner = new TransformerChain();
+      inner.addTransformer(increment);
+      inner.addTransformer(increment);
+
+      TransformerChain outer = new TransformerChain();
+      outer.addTransformer(increment);
+      outer.addTransformer(inner);
+      outer.addTransformer(new TransformerChain());
+
+      // an empty chain yields null
+      assertThat(outer.transform(1, new TransformationContext()), equalTo(null));
+
+      TransformerChain fused = new TransformerChain();
+      fused.addTransformer(inner);
+      assertThat(fused.transform(1, new TransformationContext()), equalTo((Object)3));
+
+      // adding to a chain that was already used
+      fused.addTransformer(increment);
+      assertThat(fused.transform(1, new TransformationContext()), equalTo((Object)4));
+   }
 }
@@ -0,0 +1,232 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.processor.TransformerIndexProcessor;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.testng.annotations.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Carlos Munoz
+ */
+public class ClasspathScanTests extends AbstractTransformationTest
+{
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.useTransformerIndex(false);
+   }
+
+   @Test
+   public void scanDirectory()
+   {
+      Morphoo.reset();
+      Morphoo.useTransformerIndex(false);
+      Morphoo.registerPackages("org.isisoft.morphoo.test.model.integration");
+
+      Date d = new Date(0);
+      String shortDate = Transformation.into(String.class).using("toShortString").performOn(d);
+      String defaultDate = Transformation.into(String.class).performOn(d);
+
+      assertThat(shortDate.equals(defaultDate), is(false));
+   }
+
+   @Test
+   public void scanJar() throws Exception
+   {
+      File jar = this.createJar("sample.scan.IntegerTransformers",
+            "package sample.scan;\n" +
+            "public class IntegerTransformers {\n" +
+            "   @org.isisoft.morphoo.annotation.Transformer\n" +
+            "   public static String toHex(Integer i) { return Integer.toHexString(i); }\n" +
+            "}\n");
+
+      ClassLoader previous = Thread.currentThread().getContextClassLoader();
+      URLClassLoader loader = new URLClassLoader(new URL[]{ jar.toURI().toURL() }, previous);
+      Thread.currentThread().setContextClassLoader(loader);
+      try
+      {
+         Morphoo.reset();
+         Morphoo.useTransformerIndex(false);
+         Morphoo.registerPackages("sample.scan");
+
+         String hex = Transformation.into(String.class).performOn(255);
+
+         assertThat(hex, is("ff"));
+      }
+      finally
+      {
+         Thread.currentThread().setContextClassLoader(previous);
+         loader.close();
+         Morphoo.reset();
+      }
+   }
+
+   @Test
+   public void scanUnindexedJarNextToIndex() throws Exception
+   {
+      File jar = this.createJar("sample.plugin.IntegerTransformers",
+            "package sample.plugin;\n" +
+            "public class IntegerTransformers {\n" +
+            "   @org.isisoft.morphoo.annotation.Transformer\n" +
+            "   public static String toOctal(Integer i) { return Integer.toOctalString(i); }\n" +
+            "}\n");
+
+      ClassLoader previous = Thread.currentThread().getContextClassLoader();
+      URLClassLoader loader = new URLClassLoader(new URL[]{ jar.toURI().toURL() }, previous);
+      Thread.currentThread().setContextClassLoader(loader);
+      try
+      {
+         // the test classes are indexed, the jar is not
+         assertThat(loader.getResource(TransformerIndexProcessor.INDEX_RESOURCE) != null, is(true));
+
+         Morphoo.reset();
+         Morphoo.registerPackages("sample.plugin", "org.isisoft.morphoo.test.model.integration");
+
+         String octal = Transformation.into(String.class).performOn(8);
+         String shortDate = Transformation.into(String.class).using("toShortString").performOn(new Date(0));
+
+         assertThat(octal, is("10"));
+         assertThat(shortDate.length() > 0, is(true));
+      }
+      finally
+      {
+         Thread.currentThread().setContextClassLoader(previous);
+         loader.close();
+         Morphoo.reset();
+      }
+   }
+
+   @Test
+   public void skipUnsupportedLocation() throws Exception
+   {
+      File jar = this.createJar("sample.vfs.IntegerTransformers",
+            "package sample.vfs;\n" +
+            "public class IntegerTransformers {\n" +
+            "   @org.isisoft.morphoo.annotation.Transformer\n" +
+            "   public static String toBinary(Integer i) { return Integer.toBinaryString(i); }\n" +
+            "}\n");
+
+      // the package is also found in a location of an application server's virtual file system
+      final URL virtualRoot = new URL("vfs", null, -1, "/content/app.war/WEB-INF/classes/sample/vfs",
+            new URLStreamHandler()
+            {
+               @Override
+               protected URLConnection openConnection(URL u) throws IOException
+               {
+                  throw new IOException("Not readable");
+               }
+            });
+
+      ClassLoader previous = Thread.currentThread().getContextClassLoader();
+      URLClassLoader loader = new URLClassLoader(new URL[]{ jar.toURI().toURL() }, previous)
+      {
+         @Override
+         public Enumeration<URL> getResources(String name) throws IOException
+         {
+            List<URL> resources = Collections.list(super.getResources(name));
+            if( name.equals("sample/vfs") )
+            {
+               resources.add(virtualRoot);
+            }
+            return Collections.enumeration(resources);
+         }
+      };
+      Thread.currentThread().setContextClassLoader(loader);
+      try
+      {
+         Morphoo.reset();
+         Morphoo.useTransformerIndex(false);
+         Morphoo.registerPackages("sample.vfs");
+
+         String binary = Transformation.into(String.class).performOn(5);
+
+         assertThat(binary, is("101"));
+      }
+      finally
+      {
+         Thread.currentThread().setContextClassLoader(previous);
+         loader.close();
+         Morphoo.reset();
+      }
+   }
+
+   private File createJar(final String className, final String code) throws Exception
+   {
+      File classesDir = Files.createTempDirectory("morphoo-scan").toFile();
+
+      JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+      StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+      fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(classesDir));
+      SimpleJavaFileObject source = new SimpleJavaFileObject(
+            URI.create("string:///" + className.replace('.', '/') + SimpleJavaFileObject.Kind.SOURCE.extension),
+            SimpleJavaFileObject.Kind.SOURCE)
+      {
+         @Override
+         public CharSequence getCharContent(boolean ignoreEncodingErrors)
+         {
+            return code;
+         }
+      };
+      try
+      {
+         boolean compiled = compiler.getTask(null, fileManager, null,
+               Arrays.asList("-proc:none", "-classpath", System.getProperty("java.class.path")), null,
+               Collections.singletonList(source)).call();
+         assertThat(compiled, is(true));
+      }
+      finally
+      {
+         fileManager.close();
+      }
+
+      String entryName = className.replace('.', '/') + ".class";
+      File jar = File.createTempFile("morphoo-scan", ".jar");
+      JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+      try
+      {
+         // packages are found through their directory entries, which build tools always write
+         String[] path = className.split("\\.");
+         String directory = "";
+         for( int i=0; i<path.length - 1; i++ )
+         {
+            directory += path[i] + "/";
+            out.putNextEntry(new JarEntry(directory));
+            out.closeEntry();
+         }
+         out.putNextEntry(new JarEntry(entryName));
+         out.write(Files.readAllBytes(new File(classesDir, entryName).toPath()));
+         out.closeEntry();
+      }
+      finally
+      {
+         out.close();
+      }
+      return jar;
+   }
+}
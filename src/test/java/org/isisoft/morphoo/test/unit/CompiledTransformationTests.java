@@ -0,0 +1,118 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.CompiledTransformation;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.core.TransformationException;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.ContextCountingTransformers;
+import org.isisoft.morphoo.test.model.transformer.TransformerMethods;
+import org.isisoft.morphoo.test.model.transformer.TransformerMethodsWithContext;
+import org.isisoft.morphoo.test.model.unit.FinalTargetType;
+import org.isisoft.morphoo.test.model.unit.SourceType;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Carlos Munoz
+ */
+public class CompiledTransformationTests extends AbstractTransformationTest
+{
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(TransformerMethods.class, TransformerMethodsWithContext.class,
+            ContextCountingTransformers.class);
+   }
+
+   @Test
+   public void polymorphicSources()
+   {
+      Transformation<String> t = Transformation.into(String.class).withContext("additional", " World!");
+      CompiledTransformation<Object, String> compiled = t.compile();
+
+      // the compiled transformation must not see later changes
+      t.withContext("additional", " Moon!");
+
+      SourceType s = new SourceType();
+      s.setName("My name is Morphoo!");
+
+      for( int i=0; i<3; i++ )
+      {
+         assertThat(compiled.performOn("Hello"), is("Hello World!"));
+         assertThat(compiled.performOn(s), is(s.getName()));
+      }
+   }
+
+   @Test
+   public void compiledDerivation()
+   {
+      CompiledTransformation<SourceType, FinalTargetType> compiled =
+            Transformation.into(FinalTargetType.class).deriving().compile(SourceType.class);
+
+      SourceType src = new SourceType();
+      src.setDate(new Date());
+
+      assertThat(compiled.performOn(src).getDate(), is(src.getDate()));
+   }
+
+   @Test(expectedExceptions = TransformationException.class)
+   public void compileWithoutRoute()
+   {
+      Transformation.into(Calendar.class).compile(String.class);
+   }
+
+   @Test
+   public void performancesDoNotShareTheirContext() throws Exception
+   {
+      final CompiledTransformation<StringBuilder, Integer> visits =
+            Transformation.into(Integer.class).withContext("visits", 10).compile(StringBuilder.class);
+
+      assertThat(visits.performOn(new StringBuilder()), is(11));
+      assertThat(visits.performOn(new StringBuilder()), is(11));
+      assertThat(visits.performOnAll(Arrays.asList(new StringBuilder(), new StringBuilder())),
+            is(Arrays.asList(11, 11)));
+
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try
+      {
+         List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+         for( int t=0; t<4; t++ )
+         {
+            results.add(executor.submit(new Callable<Boolean>()
+            {
+               @Override
+               public Boolean call()
+               {
+                  boolean correct = true;
+                  for( int i=0; i<1000; i++ )
+                  {
+                     correct &= visits.performOn(new StringBuilder()) == 11;
+                  }
+                  return correct;
+               }
+            }));
+         }
+         for( Future<Boolean> correct : results )
+         {
+            assertThat(correct.get(), is(true));
+         }
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+   }
+}
@@ -0,0 +1,84 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.TransformerMethods;
+import org.isisoft.morphoo.test.model.unit.FinalTargetType;
+import org.isisoft.morphoo.test.model.unit.SourceType;
+import org.isisoft.morphoo.test.model.unit.SourceTypeWithTransformers;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Carlos Munoz
+ */
+public class ConcurrentRegistryTests extends AbstractTransformationTest
+{
+   private static final int THREADS = 16;
+
+   private static final int ITERATIONS = 500;
+
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(TransformerMethods.class);
+   }
+
+   @Test
+   public void concurrentFirstUse() throws Exception
+   {
+      final Date date = new Date();
+      ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+      try
+      {
+         List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+         for( int t=0; t<THREADS; t++ )
+         {
+            results.add(executor.submit(new Callable<Integer>()
+            {
+               @Override
+               public Integer call() throws Exception
+               {
+                  int ok = 0;
+                  for( int i=0; i<ITERATIONS; i++ )
+                  {
+                     SourceType src = new SourceType();
+                     src.setDate(date);
+                     FinalTargetType derived = Transformation.into(FinalTargetType.class).deriving().performOn(src);
+
+                     SourceTypeWithTransformers declared =
+                           Transformation.into(SourceTypeWithTransformers.class).performOn(date);
+
+                     if( derived.getDate() == date && declared.getCreationDate() == date )
+                     {
+                        ok++;
+                     }
+                  }
+                  return ok;
+               }
+            }));
+         }
+
+         for( Future<Integer> result : results )
+         {
+            assertThat(result.get(), is(ITERATIONS));
+         }
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+   }
+}
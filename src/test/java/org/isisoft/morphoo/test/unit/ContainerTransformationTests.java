@@ -0,0 +1,150 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.TransformerMethods;
+import org.isisoft.morphoo.test.model.unit.SourceType;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * @author Carlos Munoz
+ */
+public class ContainerTransformationTests extends AbstractTransformationTest
+{
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(TransformerMethods.class);
+   }
+
+   private static SourceType source( String name )
+   {
+      SourceType s = new SourceType();
+      s.setName(name);
+      return s;
+   }
+
+   @Test
+   public void transformSet()
+   {
+      List<SourceType> sources = Arrays.asList(source("b"), source("a"), source("b"), source("c"));
+
+      Set<String> results = Transformation.into(String.class).performOnSet(sources);
+
+      assertThat(new ArrayList<Object>(results), equalTo(Arrays.<Object>asList("b", "a", "c")));
+   }
+
+   @Test
+   public void transformArray()
+   {
+      SourceType[] sources = {source("a"), null, source("c")};
+
+      String[] results = Transformation.into(String.class).performOnArray(sources);
+
+      assertThat(results.getClass(), equalTo((Object)String[].class));
+      assertThat(new ArrayList<Object>(Arrays.asList(results)), equalTo(Arrays.<Object>asList("a", null, "c")));
+   }
+
+   @Test
+   public void transformMapValues()
+   {
+      Map<Integer, SourceType> sources = new LinkedHashMap<Integer, SourceType>();
+      sources.put(3, source("three"));
+      sources.put(1, source("one"));
+      sources.put(2, null);
+
+      Map<Integer, String> results = Transformation.into(String.class).unordered().performOnValues(sources);
+
+      assertThat(new ArrayList<Object>(results.keySet()), equalTo(Arrays.<Object>asList(3, 1, 2)));
+      assertThat(new ArrayList<Object>(results.values()), equalTo(Arrays.<Object>asList("three", "one", null)));
+   }
+
+   @Test
+   public void transformOptional()
+   {
+      Optional<String> result = Transformation.into(String.class).performOnOptional(Optional.of(source("name")));
+      Optional<String> empty = Transformation.into(String.class).performOnOptional(Optional.empty());
+
+      assertThat(result.get(), is("name"));
+      assertThat(empty.isPresent(), is(false));
+   }
+
+   @Test
+   public void transformNullElements()
+   {
+      List<SourceType> sources = Arrays.asList(null, source("a"), null);
+
+      List<String> results = Transformation.into(String.class).performOnAll(sources);
+
+      assertThat(new ArrayList<Object>(results), equalTo(Arrays.<Object>asList(null, "a", null)));
+   }
+
+   @Test
+   public void lazyListView()
+   {
+      List<SourceType> sources = new ArrayList<SourceType>(Arrays.asList(source("a"), source("b")));
+
+      List<String> view = Transformation.into(String.class).lazily(sources);
+      assertThat(view, instanceOf(RandomAccess.class));
+      assertThat(new ArrayList<Object>(view), equalTo(Arrays.<Object>asList("a", "b")));
+
+      // changes to the sources are visible in the view
+      sources.add(null);
+      sources.get(0).setName("z");
+      assertThat(view.size(), is(3));
+      assertThat(view.get(0), is("z"));
+      assertThat(view.get(2), nullValue());
+
+      assertThat(view.remove(1), is("b"));
+      assertThat(sources.size(), is(2));
+   }
+
+   @Test
+   public void lazySequentialListView()
+   {
+      List<SourceType> sources = new LinkedList<SourceType>(Arrays.asList(source("a"), source("b")));
+
+      List<String> view = Transformation.into(String.class).lazily(sources);
+
+      assertThat(view, not(instanceOf(RandomAccess.class)));
+      assertThat(new ArrayList<Object>(view), equalTo(Arrays.<Object>asList("a", "b")));
+   }
+
+   @Test
+   public void lazyMapView()
+   {
+      Map<String, SourceType> sources = new LinkedHashMap<String, SourceType>();
+      sources.put("first", source("a"));
+      sources.put("second", source("b"));
+
+      Map<String, String> view = Transformation.into(String.class).lazily(sources);
+
+      assertThat(view.get("second"), is("b"));
+      assertThat(view.get("missing"), nullValue());
+      assertThat(new ArrayList<Object>(view.values()), equalTo(Arrays.<Object>asList("a", "b")));
+
+      sources.put("third", source("c"));
+      assertThat(new ArrayList<Object>(view.keySet()), equalTo(Arrays.<Object>asList("first", "second", "third")));
+
+      assertThat(view.remove("first"), is("a"));
+      assertThat(sources.containsKey("first"), is(false));
+   }
+}
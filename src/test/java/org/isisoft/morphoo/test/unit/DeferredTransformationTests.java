@@ -0,0 +1,157 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.Lazy;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.core.TransformationException;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.DeferredTransformers;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Carlos Munoz
+ */
+public class DeferredTransformationTests extends AbstractTransformationTest
+{
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(DeferredTransformers.class);
+   }
+
+   @BeforeMethod
+   public void resetInvocations()
+   {
+      DeferredTransformers.INVOCATIONS.set(0);
+   }
+
+   @Test
+   public void deferredResultIsTransformedOnFirstAccess()
+   {
+      Lazy<Integer> lazy = Transformation.into(Integer.class).performOnDeferred("four");
+
+      assertThat(lazy.isDone(), is(false));
+      assertThat(DeferredTransformers.INVOCATIONS.get(), is(0));
+
+      assertThat(lazy.get(), is(4));
+      assertThat(lazy.get(), is(4));
+      assertThat(lazy.isDone(), is(true));
+      assertThat(DeferredTransformers.INVOCATIONS.get(), is(1));
+   }
+
+   @Test
+   public void unreadDeferredResultIsNeverTransformed()
+   {
+      // the route is not even resolved, so a missing transformer goes unnoticed
+      Transformation.into(Integer.class).performOnDeferred("unused");
+      Transformation.into(Thread.class).performOnDeferred("no transformer");
+
+      assertThat(DeferredTransformers.INVOCATIONS.get(), is(0));
+   }
+
+   @Test(expectedExceptions = TransformationException.class)
+   public void deferredFailureIsThrownOnAccess()
+   {
+      Transformation.into(Thread.class).performOnDeferred("no transformer").get();
+   }
+
+   @Test
+   public void deferredCollection()
+   {
+      Lazy<List<Integer>> lazy =
+            Transformation.into(Integer.class).performOnAllDeferred(Arrays.asList("a", null, "abc"));
+
+      assertThat(DeferredTransformers.INVOCATIONS.get(), is(0));
+      assertThat(new ArrayList<Object>(lazy.get()), equalTo(Arrays.<Object>asList(1, null, 3)));
+      assertThat(lazy.get() == lazy.get(), is(true));
+      assertThat(DeferredTransformers.INVOCATIONS.get(), is(2));
+   }
+
+   @Test
+   public void deferredProxy()
+   {
+      CharSequence proxy = Transformation.into(CharSequence.class).performOnAsProxy("abc");
+
+      assertThat(DeferredTransformers.INVOCATIONS.get(), is(0));
+      assertThat(proxy.length(), is(3));
+      assertThat(proxy.charAt(0), is('c'));
+      assertThat(proxy.toString(), is("cba"));
+      assertThat(DeferredTransformers.INVOCATIONS.get(), is(1));
+   }
+
+   @Test
+   public void deferredProxyEquality()
+   {
+      CharSequence proxy = Transformation.into(CharSequence.class).performOnAsProxy("abc");
+      CharSequence other = Transformation.into(CharSequence.class).performOnAsProxy("abc");
+
+      // the results are string builders, which are only equal to themselves
+      assertThat(proxy.equals(proxy), is(true));
+      assertThat(other.equals(other), is(true));
+      assertThat(proxy.equals(other), is(false));
+      assertThat(proxy.equals(null), is(false));
+   }
+
+   @Test(expectedExceptions = TransformationException.class)
+   public void deferredProxyNeedsAnInterface()
+   {
+      Transformation.into(Integer.class).performOnAsProxy("abc");
+   }
+
+   @Test
+   public void deferredResultIsTransformedOnceByConcurrentReaders() throws Exception
+   {
+      final Lazy<CharSequence> lazy = Transformation.into(CharSequence.class).performOnDeferred("concurrent");
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Object> results = new ArrayList<Object>();
+
+      List<Thread> readers = new ArrayList<Thread>();
+      for( int i=0; i<8; i++ )
+      {
+         Thread reader = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+               }
+               catch (InterruptedException e)
+               {
+                  return;
+               }
+               Object result = lazy.get();
+               synchronized (results)
+               {
+                  results.add(result);
+               }
+            }
+         };
+         reader.start();
+         readers.add(reader);
+      }
+      start.countDown();
+      for( Thread reader : readers )
+      {
+         reader.join();
+      }
+
+      assertThat(results.size(), is(8));
+      for( Object result : results )
+      {
+         assertThat(result == lazy.get(), is(true));
+      }
+      assertThat(DeferredTransformers.INVOCATIONS.get(), is(1));
+   }
+}
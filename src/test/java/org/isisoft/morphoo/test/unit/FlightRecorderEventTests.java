@@ -0,0 +1,134 @@
+package org.isisoft.morphoo.test.unit;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.TransformerMethods;
+import org.isisoft.morphoo.test.model.unit.FinalTargetType;
+import org.isisoft.morphoo.test.model.unit.SourceType;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * @author Carlos Munoz
+ */
+public class FlightRecorderEventTests extends AbstractTransformationTest
+{
+   @Override
+   protected void prepareTransformationFramework()
+   {
+   }
+
+   private List<RecordedEvent> record( Runnable work ) throws IOException
+   {
+      File file = File.createTempFile("morphoo", ".jfr");
+      try
+      {
+         Recording recording = new Recording();
+         try
+         {
+            for( String name : new String[]{"Discovery", "Resolution", "RouteDerivation", "Instantiation", "Invocation"} )
+            {
+               recording.enable("org.isisoft.morphoo." + name).withoutThreshold();
+            }
+            recording.start();
+            work.run();
+            recording.stop();
+            recording.dump(file.toPath());
+         }
+         finally
+         {
+            recording.close();
+         }
+         return RecordingFile.readAllEvents(file.toPath());
+      }
+      finally
+      {
+         file.delete();
+      }
+   }
+
+   private static RecordedEvent find( List<RecordedEvent> events, String name )
+   {
+      for( RecordedEvent e : events )
+      {
+         if( e.getEventType().getName().equals("org.isisoft.morphoo." + name) )
+         {
+            return e;
+         }
+      }
+      return null;
+   }
+
+   private static List<RecordedEvent> findAll( List<RecordedEvent> events, String name )
+   {
+      List<RecordedEvent> found = new ArrayList<RecordedEvent>();
+      for( RecordedEvent e : events )
+      {
+         if( e.getEventType().getName().equals("org.isisoft.morphoo." + name) )
+         {
+            found.add(e);
+         }
+      }
+      return found;
+   }
+
+   @Test
+   public void derivedTransformation() throws IOException
+   {
+      List<RecordedEvent> events = this.record(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            Morphoo.reset();
+            Morphoo.registerClasses(TransformerMethods.class);
+
+            SourceType src = new SourceType();
+            src.setDate(new Date());
+            src.setName("Source Name");
+            Transformation.into(FinalTargetType.class).deriving().performOn(src);
+            Transformation.into(FinalTargetType.class).deriving().performOn(src);
+         }
+      });
+
+      RecordedEvent discovery = find(events, "Discovery");
+      assertThat(discovery, notNullValue());
+      assertThat(discovery.getInt("transformerMethodCount"), is(5));
+
+      RecordedEvent derivation = find(events, "RouteDerivation");
+      assertThat(derivation, notNullValue());
+      assertThat(derivation.getClass("sourceType").getName(), equalTo(SourceType.class.getName()));
+      assertThat(derivation.getInt("routeLength"), is(2));
+
+      // the second transformation finds the transformer in the cache
+      List<RecordedEvent> resolutions = findAll(events, "Resolution");
+      assertThat(resolutions.size(), is(1));
+      assertThat(resolutions.get(0).getClass("targetType").getName(), equalTo(FinalTargetType.class.getName()));
+      assertThat(resolutions.get(0).getString("transformerNames"),
+            equalTo("toIntermediateType,toFileTargetType"));
+      assertThat(resolutions.get(0).getBoolean("derived"), is(true));
+
+      RecordedEvent instantiation = find(events, "Instantiation");
+      assertThat(instantiation, notNullValue());
+      assertThat(instantiation.getClass("transformerClass").getName(), equalTo(TransformerMethods.class.getName()));
+
+      List<RecordedEvent> invocations = findAll(events, "Invocation");
+      assertThat(invocations.size(), is(2));
+      assertThat(invocations.get(0).getInt("routeLength"), is(2));
+      assertThat(invocations.get(0).getClass("sourceType").getName(), equalTo(SourceType.class.getName()));
+   }
+}
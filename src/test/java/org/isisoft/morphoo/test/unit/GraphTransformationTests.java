@@ -0,0 +1,212 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.core.TransformationException;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.GraphTransformers;
+import org.isisoft.morphoo.test.model.unit.Employee;
+import org.isisoft.morphoo.test.model.unit.EmployeeDto;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * @author Carlos Munoz
+ */
+public class GraphTransformationTests extends AbstractTransformationTest
+{
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(GraphTransformers.class);
+   }
+
+   @BeforeMethod
+   public void resetInvocations()
+   {
+      GraphTransformers.INVOCATIONS.set(0);
+   }
+
+   @Test
+   public void cyclesAreTransformedOnce()
+   {
+      Employee boss = new Employee("Boss");
+      Employee first = boss.addReport(new Employee("First"));
+      first.addReport(new Employee("Second"));
+
+      EmployeeDto dto = Transformation.into(EmployeeDto.class).preservingIdentity().performOn(boss);
+
+      assertThat(GraphTransformers.INVOCATIONS.get(), is(3));
+      EmployeeDto firstDto = dto.getReports().get(0);
+      EmployeeDto secondDto = firstDto.getReports().get(0);
+      assertThat(firstDto.getName(), equalTo("First"));
+      assertThat(firstDto.getManager(), sameInstance(dto));
+      assertThat(secondDto.getManager(), sameInstance(firstDto));
+   }
+
+   @Test
+   public void eachPerformanceIsSeparate()
+   {
+      Employee boss = new Employee("Boss");
+      boss.addReport(new Employee("Report"));
+
+      Transformation<EmployeeDto> t = Transformation.into(EmployeeDto.class).preservingIdentity();
+      EmployeeDto one = t.performOn(boss);
+      EmployeeDto other = t.performOn(boss);
+
+      assertThat(one == other, is(false));
+      assertThat(GraphTransformers.INVOCATIONS.get(), is(4));
+   }
+
+   @Test
+   public void parallelSubtreesAreTransformedOnce()
+   {
+      Employee boss = new Employee("Boss");
+      int unique = 1;
+      for( int i=0; i<20; i++ )
+      {
+         Employee manager = boss.addReport(new Employee("Manager " + i));
+         unique++;
+         for( int j=0; j<20; j++ )
+         {
+            manager.addReport(new Employee("Employee " + i + "." + j));
+            unique++;
+         }
+      }
+
+      EmployeeDto dto = Transformation.into(EmployeeDto.class).preservingIdentity().performOn(boss);
+
+      assertThat(GraphTransformers.INVOCATIONS.get(), is(unique));
+      for( EmployeeDto manager : dto.getReports() )
+      {
+         assertThat(manager.getManager(), sameInstance(dto));
+         List<EmployeeDto> reports = manager.getReports();
+         assertThat(reports.size(), is(20));
+         for( EmployeeDto report : reports )
+         {
+            assertThat(report.getManager(), sameInstance(manager));
+         }
+      }
+   }
+
+   @Test
+   public void batchSharesIdentityMap()
+   {
+      Employee boss = new Employee("Boss");
+      Employee report = boss.addReport(new Employee("Report"));
+
+      List<EmployeeDto> dtos = Transformation.into(EmployeeDto.class).preservingIdentity()
+            .performOnAll(new Object[]{boss, report});
+
+      assertThat(GraphTransformers.INVOCATIONS.get(), is(2));
+      assertThat(dtos.get(1).getManager(), sameInstance(dtos.get(0)));
+   }
+
+   @Test(expectedExceptions = TransformationException.class)
+   public void unregisteredCycle()
+   {
+      Employee boss = new Employee("Boss");
+      boss.addReport(new Employee("Report"));
+
+      Transformation.into(String.class).preservingIdentity().performOn(boss);
+   }
+
+   @Test(timeOut = 10000)
+   public void unregisteredCycleInParallelSubtrees()
+   {
+      Employee boss = new Employee("Boss");
+      for( int i=0; i<64; i++ )
+      {
+         boss.addReport(new Employee("Report " + i));
+      }
+
+      // every forked report refers back to the boss, whichever thread transforms it
+      ForkJoinPool pool = new ForkJoinPool(4);
+      Morphoo.setForkJoinPool(pool);
+      int cycles = 0;
+      try
+      {
+         for( int attempt=0; attempt<20; attempt++ )
+         {
+            try
+            {
+               Transformation.into(Integer.class).preservingIdentity().performOn(boss);
+            }
+            catch (TransformationException e)
+            {
+               cycles++;
+            }
+         }
+      }
+      finally
+      {
+         Morphoo.setForkJoinPool(ForkJoinPool.commonPool());
+         pool.shutdownNow();
+      }
+      assertThat(cycles, is(20));
+   }
+
+   @Test(timeOut = 10000)
+   public void unregisteredCycleAcrossParallelSubtrees()
+   {
+      Employee boss = new Employee("Boss");
+      boss.addReport(new Employee("First"));
+      boss.addReport(new Employee("Second"));
+
+      // the reports refer to each other, and may be transformed by different tasks
+      ForkJoinPool pool = new ForkJoinPool(4);
+      Morphoo.setForkJoinPool(pool);
+      int cycles = 0;
+      try
+      {
+         for( int attempt=0; attempt<20; attempt++ )
+         {
+            try
+            {
+               Transformation.into(Long.class).preservingIdentity().performOn(boss);
+            }
+            catch (TransformationException e)
+            {
+               cycles++;
+            }
+         }
+      }
+      finally
+      {
+         Morphoo.setForkJoinPool(ForkJoinPool.commonPool());
+         pool.shutdownNow();
+      }
+      assertThat(cycles, is(20));
+   }
+
+   @Test(timeOut = 10000)
+   public void sharedObjectInParallelSubtrees()
+   {
+      Employee boss = new Employee("Boss");
+      for( int i=0; i<8; i++ )
+      {
+         boss.addReport(new Employee("Report " + i));
+      }
+
+      // the same report reached by many tasks at once is not a cycle
+      List<Employee> sources = new ArrayList<Employee>();
+      for( int i=0; i<64; i++ )
+      {
+         sources.add(boss.getReports().get(i % 8));
+      }
+      List<EmployeeDto> dtos =
+            Transformation.into(EmployeeDto.class).preservingIdentity().inParallel(1).performOnAll(sources);
+
+      assertThat(dtos.get(8), sameInstance(dtos.get(0)));
+      assertThat(dtos.get(0).getManager(), sameInstance(dtos.get(1).getManager()));
+   }
+}
@@ -0,0 +1,87 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.CompiledTransformation;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.InterfaceTransformers;
+import org.isisoft.morphoo.test.model.transformer.SupertypeTransformers;
+import org.isisoft.morphoo.test.model.transformer.TransformerMethods;
+import org.isisoft.morphoo.test.model.unit.SourceSubType;
+import org.isisoft.morphoo.test.model.unit.SourceType;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * @author Carlos Munoz
+ */
+public class HierarchyTransformationTests extends AbstractTransformationTest
+{
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(TransformerMethods.class, InterfaceTransformers.class, SupertypeTransformers.class);
+   }
+
+   @Test
+   public void transformSubclass()
+   {
+      SourceSubType src = new SourceSubType();
+      src.setName("Sub type");
+
+      String strVal = Transformation.into(String.class).performOn(src);
+
+      assertThat(strVal, is(src.getName()));
+   }
+
+   @Test
+   public void transformThroughInterface()
+   {
+      assertThat(Transformation.into(Integer.class).performOn("abc"), is(3));
+      assertThat(Transformation.into(Integer.class).performOn(new StringBuilder("abcd")), is(4));
+   }
+
+   @Test
+   public void sourceIsAlreadyTarget()
+   {
+      SourceSubType src = new SourceSubType();
+
+      SourceType target = Transformation.into(SourceType.class).performOn(src);
+      Object object = Transformation.into(Object.class).performOn(src);
+
+      assertThat(target, sameInstance((SourceType)src));
+      assertThat(object, sameInstance((Object)src));
+   }
+
+   @Test
+   public void namedSupertypeTransformerIsPreferredToIdentity()
+   {
+      SourceSubType src = new SourceSubType();
+      src.setName("Sub type");
+
+      SourceType named = Transformation.into(SourceType.class).using("upperCaseName").performOn(src);
+      SourceType unnamed = Transformation.into(SourceType.class).performOn(src);
+
+      assertThat(named.getName(), is("SUB TYPE"));
+      assertThat(unnamed, sameInstance((SourceType)src));
+   }
+
+   @Test
+   public void compiledSubclassTransformation()
+   {
+      CompiledTransformation<SourceType, String> compiled =
+            Transformation.into(String.class).compile(SourceType.class);
+
+      SourceType src = new SourceType();
+      src.setName("Base type");
+      SourceSubType subSrc = new SourceSubType();
+      subSrc.setName("Sub type");
+
+      assertThat(compiled.performOn(src), is("Base type"));
+      assertThat(compiled.performOn(subSrc), is("Sub type"));
+      assertThat(compiled.performOn(subSrc), is("Sub type"));
+   }
+}
@@ -0,0 +1,167 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.CompiledTransformation;
+import org.isisoft.morphoo.core.InvocationEngine;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.PooledTransformers;
+import org.isisoft.morphoo.test.model.transformer.SingletonTransformers;
+import org.isisoft.morphoo.test.model.transformer.ThreadScopedTransformers;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * @author Carlos Munoz
+ */
+public class InstanceScopeTests extends AbstractTransformationTest
+{
+   private static final int THREADS = 4;
+
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(SingletonTransformers.class, ThreadScopedTransformers.class, PooledTransformers.class);
+   }
+
+   @AfterClass
+   public void restoreEngine()
+   {
+      Morphoo.setInvocationEngine(InvocationEngine.METHOD_HANDLE);
+   }
+
+   @DataProvider(name = "engines")
+   public Object[][] engines()
+   {
+      InvocationEngine[] values = InvocationEngine.values();
+      Object[][] data = new Object[values.length][];
+      for( int i=0; i<values.length; i++ )
+      {
+         data[i] = new Object[]{ values[i] };
+      }
+      return data;
+   }
+
+   private static <R> List<R> runConcurrently( final Callable<R> task ) throws Exception
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+      try
+      {
+         List<Future<R>> futures = new ArrayList<Future<R>>();
+         for( int i=0; i<THREADS; i++ )
+         {
+            futures.add(executor.submit(task));
+         }
+         List<R> results = new ArrayList<R>();
+         for( Future<R> f : futures )
+         {
+            results.add(f.get());
+         }
+         return results;
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   public void singletonIsSharedByAllMethods()
+   {
+      SingletonTransformers.INSTANCES.set(0);
+
+      assertThat(Transformation.into(String.class).performOn('a'), is("A"));
+      assertThat(Transformation.into(Integer.class).performOn('a'), is(97));
+      assertThat(SingletonTransformers.INSTANCES.get(), is(1));
+   }
+
+   @Test
+   public void threadScopedInstances() throws Exception
+   {
+      ThreadScopedTransformers.INSTANCES.set(0);
+      final CompiledTransformation<Date, String> toIso = Transformation.into(String.class).compile(Date.class);
+
+      // the same thread always gets the same instance
+      assertThat(toIso.performOn(new Date(0)), is("1970-01-01T00:00:00.000"));
+      assertThat(toIso.performOn(new Date(1000)), is("1970-01-01T00:00:01.000"));
+      assertThat(ThreadScopedTransformers.INSTANCES.get(), is(1));
+
+      List<Boolean> results = runConcurrently(new Callable<Boolean>()
+      {
+         @Override
+         public Boolean call()
+         {
+            boolean correct = true;
+            for( int i=0; i<1000; i++ )
+            {
+               correct &= toIso.performOn(new Date(86400000L + i))
+                     .equals(String.format("1970-01-02T00:00:00.%03d", i));
+            }
+            return correct;
+         }
+      });
+
+      for( Boolean correct : results )
+      {
+         assertThat(correct, is(true));
+      }
+      assertThat(ThreadScopedTransformers.INSTANCES.get(), lessThanOrEqualTo(THREADS + 1));
+   }
+
+   @Test(dataProvider = "engines")
+   public void pooledInstancesAreNotShared(InvocationEngine engine) throws Exception
+   {
+      Morphoo.setInvocationEngine(engine);
+      final CompiledTransformation<Long, String> toBinary = Transformation.into(String.class).compile(Long.class);
+
+      List<Boolean> results = runConcurrently(new Callable<Boolean>()
+      {
+         @Override
+         public Boolean call()
+         {
+            boolean correct = true;
+            for( long i=0; i<2000; i++ )
+            {
+               correct &= toBinary.performOn(i).equals(Long.toBinaryString(i));
+            }
+            return correct;
+         }
+      });
+
+      for( Boolean correct : results )
+      {
+         assertThat(correct, is(true));
+      }
+   }
+
+   @Test
+   public void pooledInstancesAreReusedAcrossEngines()
+   {
+      PooledTransformers.INSTANCES.set(0);
+      for( InvocationEngine engine : InvocationEngine.values() )
+      {
+         Morphoo.setInvocationEngine(engine);
+         CompiledTransformation<Long, String> toBinary = Transformation.into(String.class).compile(Long.class);
+         for( long i=0; i<100; i++ )
+         {
+            assertThat(toBinary.performOn(i), is(Long.toBinaryString(i)));
+         }
+      }
+
+      // sequential invocations always find an idle instance, whichever transformer was built for the engine
+      assertThat(PooledTransformers.INSTANCES.get(), lessThanOrEqualTo(1));
+   }
+}
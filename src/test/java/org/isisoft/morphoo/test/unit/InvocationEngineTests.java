@@ -0,0 +1,69 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.InvocationEngine;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.InjectionTransformers;
+import org.isisoft.morphoo.test.model.transformer.TransformerMethods;
+import org.isisoft.morphoo.test.model.unit.SourceType;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Carlos Munoz
+ */
+public class InvocationEngineTests extends AbstractTransformationTest
+{
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(TransformerMethods.class, InjectionTransformers.class);
+   }
+
+   @AfterClass
+   public void restoreEngine()
+   {
+      Morphoo.setInvocationEngine(InvocationEngine.METHOD_HANDLE);
+   }
+
+   @DataProvider(name = "engines")
+   public Object[][] engines()
+   {
+      InvocationEngine[] values = InvocationEngine.values();
+      Object[][] data = new Object[values.length][];
+      for( int i=0; i<values.length; i++ )
+      {
+         data[i] = new Object[]{ values[i] };
+      }
+      return data;
+   }
+
+   @Test(dataProvider = "engines")
+   public void transformWithEngine(InvocationEngine engine)
+   {
+      Morphoo.setInvocationEngine(engine);
+
+      SourceType s = new SourceType();
+      s.setName("My name is Morphoo!");
+      s.setValue(7);
+      s.setDate(new Date());
+
+      String strVal = Transformation.into(String.class).performOn(s);
+      int intVal = Transformation.into(int.class).performOn(s);
+      Date dateVal = Transformation.into(Date.class).performOn(s);
+      String injected = Transformation.into(String.class).withContext("pre", "<").withContext("pos", ">")
+            .performOn("injected");
+
+      assertThat(strVal, is(s.getName()));
+      assertThat(intVal, is(s.getValue()));
+      assertThat(dateVal, is(s.getDate()));
+      assertThat(injected, is("<injected>"));
+   }
+}
@@ -0,0 +1,146 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.CacheStatistics;
+import org.isisoft.morphoo.core.CompiledTransformation;
+import org.isisoft.morphoo.core.MemoizationPolicy;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.MemoizedTransformers;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * @author Carlos Munoz
+ */
+public class MemoizationTests extends AbstractTransformationTest
+{
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(MemoizedTransformers.class);
+   }
+
+   @BeforeMethod
+   public void resetInvocations()
+   {
+      MemoizedTransformers.INVOCATIONS.set(0);
+   }
+
+   @Test
+   public void declaredMemoization()
+   {
+      assertThat(Transformation.into(String.class).performOn(1000), equalTo("CODE-1000"));
+      assertThat(Transformation.into(String.class).performOn(1000), equalTo("CODE-1000"));
+      // an equal but distinct instance, as values this large are not cached by Integer.valueOf
+      assertThat(Transformation.into(String.class).performOn(Integer.valueOf(1000)), equalTo("CODE-1000"));
+      assertThat(MemoizedTransformers.INVOCATIONS.get(), is(1));
+
+      // only 2 results are kept, so the least recently used one is evicted
+      Transformation.into(String.class).performOn(2);
+      Transformation.into(String.class).performOn(3);
+      Transformation.into(String.class).performOn(1000);
+      assertThat(MemoizedTransformers.INVOCATIONS.get(), is(4));
+
+      CacheStatistics stats = Morphoo.getMemoizationStatistics().get("toCode");
+      assertThat(stats.getHitCount(), is(2L));
+      assertThat(stats.getMissCount(), is(4L));
+      assertThat(stats.getEvictionCount(), is(2L));
+      assertThat(stats.getSize(), is(2L));
+   }
+
+   @Test
+   public void contextParamsAreKeys()
+   {
+      assertThat(Transformation.into(String.class).withContext("suffix", "A").performOn(5L), equalTo("5A"));
+      assertThat(Transformation.into(String.class).withContext("suffix", "B").performOn(5L), equalTo("5B"));
+      assertThat(Transformation.into(String.class).withContext("suffix", "A").performOn(5L), equalTo("5A"));
+      assertThat(MemoizedTransformers.INVOCATIONS.get(), is(2));
+   }
+
+   @Test
+   public void expiry() throws InterruptedException
+   {
+      Transformation.into(String.class).performOn((short)1);
+      Transformation.into(String.class).performOn((short)1);
+      assertThat(MemoizedTransformers.INVOCATIONS.get(), is(1));
+
+      Thread.sleep(100);
+      Transformation.into(String.class).performOn((short)1);
+      assertThat(MemoizedTransformers.INVOCATIONS.get(), is(2));
+   }
+
+   @Test
+   public void transformationMemoization()
+   {
+      Transformation<String> t = Transformation.into(String.class).memoized(MemoizationPolicy.maximumSize(10));
+      CompiledTransformation<Double, String> compiled = t.compile(Double.class);
+
+      assertThat(t.performOn(1.5), equalTo("DOUBLE-1.5"));
+      assertThat(compiled.performOn(1.5), equalTo("DOUBLE-1.5"));
+      List<String> all = compiled.performOnAll(Arrays.asList(1.5, 2.5, 2.5));
+      assertThat(all, equalTo(Arrays.asList("DOUBLE-1.5", "DOUBLE-2.5", "DOUBLE-2.5")));
+      assertThat(MemoizedTransformers.INVOCATIONS.get(), is(2));
+
+      CacheStatistics stats = compiled.getMemoizationStatistics();
+      assertThat(stats.getHitCount(), is(3L));
+      assertThat(stats.getMissCount(), is(2L));
+      assertThat(t.getMemoizationStatistics().getSize(), is(2L));
+
+      assertThat(Transformation.into(String.class).getMemoizationStatistics(), nullValue());
+   }
+
+   @Test
+   public void lazyContextIsNotComputedForKeys()
+   {
+      final AtomicInteger calls = new AtomicInteger();
+      Transformation<String> t = Transformation.into(String.class).memoized(MemoizationPolicy.maximumSize(10))
+            .withLazyContext("unused", new Supplier<Object>()
+            {
+               @Override
+               public Object get()
+               {
+                  calls.incrementAndGet();
+                  return "value";
+               }
+            });
+
+      assertThat(t.performOn(1.5), equalTo("DOUBLE-1.5"));
+      assertThat(t.performOn(1.5), equalTo("DOUBLE-1.5"));
+
+      assertThat(calls.get(), is(0));
+      assertThat(MemoizedTransformers.INVOCATIONS.get(), is(1));
+      assertThat(t.getMemoizationStatistics().getHitCount(), is(1L));
+   }
+
+   @Test
+   public void weightBound()
+   {
+      MemoizationPolicy policy = MemoizationPolicy.maximumWeight(20, new MemoizationPolicy.Weigher()
+      {
+         @Override
+         public long weigh(Object source, Object result)
+         {
+            return ((String)result).length();
+         }
+      });
+      Transformation<String> t = Transformation.into(String.class).memoized(policy);
+
+      // each result weighs 10, so only two of them fit
+      t.performOn(1.5);
+      t.performOn(2.5);
+      t.performOn(3.5);
+      assertThat(t.getMemoizationStatistics().getSize(), is(2L));
+      assertThat(t.getMemoizationStatistics().getEvictionCount(), is(1L));
+   }
+}
@@ -0,0 +1,144 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.MetricsSnapshot;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.core.TransformationException;
+import org.isisoft.morphoo.core.TransformerMetrics;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.InjectionTransformers;
+import org.isisoft.morphoo.test.model.transformer.TransformerMethods;
+import org.isisoft.morphoo.test.model.unit.FinalTargetType;
+import org.isisoft.morphoo.test.model.unit.IntermediateType;
+import org.isisoft.morphoo.test.model.unit.SourceType;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * @author Carlos Munoz
+ */
+public class MetricsTests extends AbstractTransformationTest
+{
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(TransformerMethods.class, InjectionTransformers.class);
+   }
+
+   private SourceType createSource()
+   {
+      SourceType src = new SourceType();
+      src.setName("Source Name");
+      src.setDate(new Date());
+      return src;
+   }
+
+   @Test
+   public void invocationsAndErrors()
+   {
+      Morphoo.enableMetrics();
+      try
+      {
+         for( int i=0; i<10; i++ )
+         {
+            Transformation.into(String.class).performOn(this.createSource());
+         }
+         for( int i=0; i<3; i++ )
+         {
+            try
+            {
+               Transformation.into(String.class).using("requiredPrefix").performOn("text");
+            }
+            catch (TransformationException e)
+            {
+               // expected, the prefix is required
+            }
+         }
+
+         MetricsSnapshot metrics = Morphoo.getMetrics();
+         TransformerMetrics toString = metrics.getTransformerMetrics("toString");
+         assertThat(toString.getInvocationCount(), is(10L));
+         assertThat(toString.getErrorCount(), is(0L));
+         assertThat(toString.getLatency().getCount(), is(10L));
+         assertThat(toString.getLatency().getPercentileNanos(99), greaterThanOrEqualTo(0L));
+         assertThat(toString.getLatency().getPercentileNanos(100), is(toString.getLatency().getMaxNanos()));
+
+         TransformerMetrics requiredPrefix = metrics.getTransformerMetrics("requiredPrefix");
+         assertThat(requiredPrefix.getInvocationCount(), is(3L));
+         assertThat(requiredPrefix.getErrorCount(), is(3L));
+
+         assertThat(metrics.getResolutionLatency().getCount(), greaterThan(0L));
+      }
+      finally
+      {
+         Morphoo.disableMetrics();
+      }
+   }
+
+   @Test
+   public void chains()
+   {
+      Morphoo.enableMetrics();
+      try
+      {
+         Transformation<FinalTargetType> transformation =
+               Transformation.into(FinalTargetType.class).through(IntermediateType.class);
+         for( int i=0; i<5; i++ )
+         {
+            transformation.performOn(this.createSource());
+         }
+
+         MetricsSnapshot metrics = Morphoo.getMetrics();
+         assertThat(metrics.getChainInvocationCount(), is(5L));
+         assertThat(metrics.getChainErrorCount(), is(0L));
+         // the transformers in the chain are counted on their own as well
+         assertThat(metrics.getTransformerMetrics("toIntermediateType").getInvocationCount(), is(5L));
+      }
+      finally
+      {
+         Morphoo.disableMetrics();
+      }
+   }
+
+   @Test
+   public void disabledMetrics()
+   {
+      Transformation.into(Date.class).performOn(this.createSource());
+
+      assertThat(Morphoo.getMetrics().getTransformerMetrics("toDate"), nullValue());
+   }
+
+   @Test
+   public void mbean() throws Exception
+   {
+      ObjectName name = Morphoo.registerMBean();
+      assertThat(Morphoo.registerMBean(), is(name));
+
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      server.setAttribute(name, new javax.management.Attribute("MetricsEnabled", true));
+      try
+      {
+         Transformation.into(int.class).performOn(this.createSource());
+
+         assertThat((Boolean)server.getAttribute(name, "MetricsEnabled"), is(true));
+         TabularData counts = (TabularData)server.getAttribute(name, "InvocationCounts");
+         assertThat(counts.isEmpty(), is(false));
+         assertThat((Long)server.getAttribute(name, "ResolutionCacheMissCount"), greaterThan(0L));
+      }
+      finally
+      {
+         Morphoo.disableMetrics();
+      }
+   }
+}
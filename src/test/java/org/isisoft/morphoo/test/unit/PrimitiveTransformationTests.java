@@ -0,0 +1,132 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.CompiledTransformation;
+import org.isisoft.morphoo.core.InvocationEngine;
+import org.isisoft.morphoo.core.MemoizationPolicy;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.core.TransformationException;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.PrimitiveTransformers;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Carlos Munoz
+ */
+public class PrimitiveTransformationTests extends AbstractTransformationTest
+{
+   private static final long MILLIS = 3L * 86400 * 1000 + 1500;
+
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(PrimitiveTransformers.class);
+   }
+
+   @AfterClass
+   public void restoreEngine()
+   {
+      Morphoo.setInvocationEngine(InvocationEngine.METHOD_HANDLE);
+   }
+
+   @DataProvider(name = "engines")
+   public Object[][] engines()
+   {
+      InvocationEngine[] values = InvocationEngine.values();
+      Object[][] data = new Object[values.length][];
+      for( int i=0; i<values.length; i++ )
+      {
+         data[i] = new Object[]{ values[i] };
+      }
+      return data;
+   }
+
+   @Test(dataProvider = "engines")
+   public void objectToPrimitive(InvocationEngine engine)
+   {
+      Morphoo.setInvocationEngine(engine);
+
+      CompiledTransformation<Date, Long> toMillis = Transformation.into(long.class).compile(Date.class);
+
+      assertThat(toMillis.performAsLong(new Date(MILLIS)), is(MILLIS));
+   }
+
+   @Test(dataProvider = "engines")
+   public void primitiveToObject(InvocationEngine engine)
+   {
+      Morphoo.setInvocationEngine(engine);
+
+      CompiledTransformation<Object, Date> toDate = Transformation.into(Date.class).compile();
+      CompiledTransformation<Object, String> toLabel = Transformation.into(String.class).compile();
+
+      assertThat(toDate.performOnLong(MILLIS), is(new Date(MILLIS)));
+      assertThat(toLabel.performOnInt(3), is("#3"));
+   }
+
+   @Test(dataProvider = "engines")
+   public void primitiveToPrimitive(InvocationEngine engine)
+   {
+      Morphoo.setInvocationEngine(engine);
+
+      CompiledTransformation<Object, Double> toSeconds = Transformation.into(double.class).compile();
+      CompiledTransformation<Object, Integer> toDays = Transformation.into(int.class).compile();
+
+      assertThat(toSeconds.performAsDouble(MILLIS), is(MILLIS / 1000.0));
+      assertThat(toDays.performAsInt(toSeconds.performAsDouble(MILLIS)), is(3));
+   }
+
+   @Test(dataProvider = "engines")
+   public void derivedPrimitiveRoute(InvocationEngine engine)
+   {
+      Morphoo.setInvocationEngine(engine);
+
+      Transformation<Integer> transformation = Transformation.into(int.class).deriving();
+      CompiledTransformation<Date, Integer> toDays = transformation.compile(Date.class);
+
+      assertThat(transformation.getRoute(Date.class).getTypes(),
+            is(Arrays.<Class<?>>asList(Date.class, long.class, double.class, int.class)));
+      assertThat(toDays.performAsInt(new Date(MILLIS)), is(3));
+      assertThat(toDays.performOn(new Date(MILLIS)), is(3));
+   }
+
+   @Test
+   public void boxedSourceUsesPrimitiveTransformer()
+   {
+      assertThat(Transformation.into(Date.class).performOn(Long.valueOf(MILLIS)), is(new Date(MILLIS)));
+      assertThat(Transformation.into(String.class).performOn(Integer.valueOf(7)), is("#7"));
+   }
+
+   @Test
+   public void memoizedTransformationStillTransformsPrimitives()
+   {
+      CompiledTransformation<Object, Date> toDate = Transformation.into(Date.class)
+            .memoized(MemoizationPolicy.maximumSize(10)).compile();
+
+      assertThat(toDate.performOnLong(MILLIS), is(new Date(MILLIS)));
+      assertThat(toDate.performOnLong(MILLIS), is(new Date(MILLIS)));
+      assertThat(toDate.getMemoizationStatistics().getHitCount(), is(1L));
+   }
+
+   @Test
+   public void primitiveTargetArrayUsesWrapperType()
+   {
+      Long[] millis = Transformation.into(long.class).performOnArray(new Object[]{new Date(1), null, new Date(2)});
+
+      assertThat(millis.getClass().getComponentType(), is((Object)Long.class));
+      assertThat(Arrays.asList(millis), is(Arrays.asList(1L, null, 2L)));
+   }
+
+   @Test(expectedExceptions = TransformationException.class)
+   public void nullPrimitiveResult()
+   {
+      Transformation.into(Long.class).<String>compile().performAsLong("not a number");
+   }
+}
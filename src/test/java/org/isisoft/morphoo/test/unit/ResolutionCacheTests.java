@@ -0,0 +1,97 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.CacheStatistics;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.core.TransformationException;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.TransformerMethods;
+import org.isisoft.morphoo.test.model.unit.FinalTargetType;
+import org.isisoft.morphoo.test.model.unit.SourceType;
+import org.testng.annotations.Test;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Carlos Munoz
+ */
+public class ResolutionCacheTests extends AbstractTransformationTest
+{
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(TransformerMethods.class);
+   }
+
+   @Test
+   public void repeatedTransformationsHitCache()
+   {
+      SourceType src = new SourceType();
+      src.setDate(new Date());
+
+      Transformation<FinalTargetType> t = Transformation.into(FinalTargetType.class).deriving();
+      FinalTargetType first = t.performOn(src);
+
+      CacheStatistics before = Morphoo.getResolutionCacheStatistics();
+      FinalTargetType second = t.performOn(src);
+      CacheStatistics after = Morphoo.getResolutionCacheStatistics();
+
+      assertThat(second, equalTo(first));
+      assertThat(after.getHitCount(), is(before.getHitCount() + 1));
+      assertThat(after.getMissCount(), is(before.getMissCount()));
+   }
+
+   @Test
+   public void missingRoutesAreCached()
+   {
+      Transformation<Calendar> t = Transformation.into(Calendar.class).deriving();
+
+      for( int i=0; i<3; i++ )
+      {
+         CacheStatistics before = Morphoo.getResolutionCacheStatistics();
+         try
+         {
+            t.performOn("I am the source");
+         }
+         catch (TransformationException e)
+         {
+            // expected
+         }
+         CacheStatistics after = Morphoo.getResolutionCacheStatistics();
+
+         // only the first attempt should search the graph
+         assertThat(after.getMissCount(), is(before.getMissCount() + (i == 0 ? 1 : 0)));
+      }
+   }
+
+   @Test
+   public void missingStepsAreCached()
+   {
+      Transformation<FinalTargetType> t = Transformation.into(FinalTargetType.class).through(Calendar.class);
+
+      for( int i=0; i<3; i++ )
+      {
+         CacheStatistics before = Morphoo.getResolutionCacheStatistics();
+         boolean failed = false;
+         try
+         {
+            t.performOn(new SourceType());
+         }
+         catch (TransformationException e)
+         {
+            failed = true;
+         }
+         CacheStatistics after = Morphoo.getResolutionCacheStatistics();
+
+         // every attempt fails the same way, but only the first one searches the graph
+         assertThat(failed, is(true));
+         assertThat(after.getMissCount(), is(before.getMissCount() + (i == 0 ? 1 : 0)));
+         assertThat(after.getHitCount(), is(before.getHitCount() + (i == 0 ? 0 : 1)));
+      }
+   }
+}
@@ -0,0 +1,120 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Route;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.RouteTransformers;
+import org.isisoft.morphoo.test.model.transformer.TransformerMethods;
+import org.isisoft.morphoo.test.model.unit.FinalTargetType;
+import org.isisoft.morphoo.test.model.unit.IntermediateType;
+import org.isisoft.morphoo.test.model.unit.SourceType;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Carlos Munoz
+ */
+public class RouteCostTests extends AbstractTransformationTest
+{
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(RouteTransformers.class, TransformerMethods.class);
+   }
+
+   @AfterMethod
+   public void stopMeasuring()
+   {
+      Morphoo.disableAdaptiveRouting();
+   }
+
+   @Test
+   public void cheapestRouteByHints()
+   {
+      Route route = Transformation.into(BigInteger.class).deriving().getRoute(Short.class);
+
+      assertThat(route.getTypes(), is(Arrays.<Class<?>>asList(Short.class, Float.class, BigInteger.class)));
+      assertThat(route.getTransformerNames(), is(Arrays.asList("toFloat", "floatToBigInteger")));
+      assertThat(route.getCost(), is(1.0));
+   }
+
+   @Test
+   public void stepsAndIdentityRoutes()
+   {
+      Route route = Transformation.into(FinalTargetType.class).through(IntermediateType.class)
+            .getRoute(SourceType.class);
+      assertThat(route.getLength(), is(2));
+      assertThat(route.getCost(), is(2.0));
+
+      route = Transformation.into(Number.class).getRoute(Short.class);
+      assertThat(route.getTypes(), is(Collections.<Class<?>>singletonList(Short.class)));
+      assertThat(route.getLength(), is(0));
+   }
+
+   @Test
+   public void measuredRoutes() throws Exception
+   {
+      Morphoo.enableAdaptiveRouting(50, TimeUnit.MILLISECONDS);
+
+      Transformation<BigInteger> transformation = Transformation.into(BigInteger.class).deriving();
+      for( short i=0; i<32; i++ )
+      {
+         assertThat(transformation.performOn(i), is(BigInteger.valueOf(i)));
+      }
+
+      // wait for the measurements to be folded into the route costs
+      long deadline = System.currentTimeMillis() + 5000;
+      Route route = transformation.getRoute(Short.class);
+      while( route.getTypes().contains(Float.class) && System.currentTimeMillis() < deadline )
+      {
+         Thread.sleep(50);
+         route = transformation.getRoute(Short.class);
+      }
+
+      assertThat(route.getTypes(), is(Arrays.<Class<?>>asList(Short.class, Long.class, BigInteger.class)));
+      assertThat(transformation.performOn((short)7), is(BigInteger.valueOf(7)));
+   }
+
+   @Test
+   public void unmeasuredRoutesCostLikeMeasuredOnes() throws Exception
+   {
+      // start without any measurements
+      Morphoo.reset();
+      this.prepareTransformationFramework();
+      Morphoo.enableAdaptiveRouting(50, TimeUnit.MILLISECONDS);
+
+      // only the route through Long is measured
+      for( short i=0; i<64; i++ )
+      {
+         assertThat(Transformation.into(Long.class).performOn(i), is((long)i));
+         assertThat(Transformation.into(BigInteger.class).performOn((long)i), is(BigInteger.valueOf(i)));
+      }
+
+      long deadline = System.currentTimeMillis() + 5000;
+      Transformation<BigInteger> throughLong = Transformation.into(BigInteger.class).through(Long.class);
+      while( throughLong.getRoute(Short.class).getCost() == 2.0 && System.currentTimeMillis() < deadline )
+      {
+         Thread.sleep(50);
+      }
+      // let every measurement be folded
+      Thread.sleep(200);
+
+      // the unmeasured route through Float costs its hints in the shortest measured duration per unit of hint
+      double toLong = Transformation.into(Long.class).getRoute(Short.class).getCost();
+      double toBigInteger = Transformation.into(BigInteger.class).getRoute(Long.class).getCost();
+      double shortest = Math.min(toLong, toBigInteger);
+      Route unmeasured = Transformation.into(BigInteger.class).through(Float.class).getRoute(Short.class);
+      assertThat(throughLong.getRoute(Short.class).getCost(), closeTo(toLong + toBigInteger, shortest * 1e-9));
+      assertThat(unmeasured.getCost(), closeTo(shortest, shortest * 1e-9));
+   }
+}
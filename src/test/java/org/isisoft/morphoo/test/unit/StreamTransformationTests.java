@@ -0,0 +1,97 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.CompiledTransformation;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.TransformerMethods;
+import org.isisoft.morphoo.test.model.unit.SourceType;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Carlos Munoz
+ */
+public class StreamTransformationTests extends AbstractTransformationTest
+{
+   private static final int SIZE = 5000;
+
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(TransformerMethods.class);
+   }
+
+   private List<SourceType> sources()
+   {
+      List<SourceType> sources = new ArrayList<SourceType>(SIZE);
+      for( int i=0; i<SIZE; i++ )
+      {
+         SourceType s = new SourceType();
+         s.setName("source " + i);
+         sources.add(s);
+      }
+      return sources;
+   }
+
+   private List<String> names(List<SourceType> sources)
+   {
+      List<String> names = new ArrayList<String>(sources.size());
+      for( SourceType s : sources )
+      {
+         names.add(s.getName());
+      }
+      return names;
+   }
+
+   @Test
+   public void functionInStream()
+   {
+      List<SourceType> sources = this.sources();
+
+      List<String> results = sources.parallelStream()
+            .map(Transformation.into(String.class).asFunction(SourceType.class))
+            .collect(Collectors.<String>toList());
+
+      assertThat(results, is(this.names(sources)));
+   }
+
+   @Test
+   public void collector()
+   {
+      List<SourceType> sources = this.sources();
+      CompiledTransformation<SourceType, String> toString = Transformation.into(String.class).compile(SourceType.class);
+
+      List<String> results = sources.stream().collect(toString.toList());
+      String joined = sources.stream().limit(2).collect(toString.collecting(Collectors.joining(",")));
+
+      assertThat(results, is(this.names(sources)));
+      assertThat(joined, is("source 0,source 1"));
+   }
+
+   @Test
+   public void lazyViews()
+   {
+      List<SourceType> sources = this.sources();
+      CompiledTransformation<SourceType, String> toString = Transformation.into(String.class).compile(SourceType.class);
+
+      Iterator<String> it = toString.lazily(sources.iterator());
+      List<String> iterated = new ArrayList<String>();
+      while( it.hasNext() )
+      {
+         iterated.add(it.next());
+      }
+
+      List<String> streamed = toString.stream(sources, true).collect(Collectors.<String>toList());
+
+      assertThat(iterated, is(this.names(sources)));
+      assertThat(streamed, is(this.names(sources)));
+   }
+}
@@ -0,0 +1,264 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.core.CompiledTransformation;
+import org.isisoft.morphoo.core.Morphoo;
+import org.isisoft.morphoo.core.Transformation;
+import org.isisoft.morphoo.core.TransformationContext;
+import org.isisoft.morphoo.core.TransformationException;
+import org.isisoft.morphoo.core.Transformer;
+import org.isisoft.morphoo.core.TransformerChain;
+import org.isisoft.morphoo.test.AbstractTransformationTest;
+import org.isisoft.morphoo.test.model.transformer.InjectionTransformers;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * @author Carlos Munoz
+ */
+public class TransformationContextTests extends AbstractTransformationTest
+{
+   @Override
+   protected void prepareTransformationFramework()
+   {
+      Morphoo.registerClasses(InjectionTransformers.class);
+   }
+
+   @Test
+   public void contextBehavesLikeAMap()
+   {
+      TransformationContext ctx = new TransformationContext();
+      ctx.put("a", "1");
+      ctx.put("b", null);
+
+      assertThat(ctx.size(), is(2));
+      assertThat(ctx.containsKey("b"), is(true));
+      assertThat(ctx.get("b"), nullValue());
+      assertThat(ctx.containsKey("neverUsedName"), is(false));
+
+      assertThat(ctx.put("a", "2"), is((Object)"1"));
+      assertThat(ctx.size(), is(2));
+
+      assertThat(ctx.remove("a"), is((Object)"2"));
+      assertThat(ctx.remove("a"), nullValue());
+      assertThat(ctx.containsKey("a"), is(false));
+      assertThat(ctx.size(), is(1));
+   }
+
+   @Test
+   public void overlayFallsBackOnFrozenBase()
+   {
+      TransformationContext mutable = new TransformationContext();
+      mutable.put("a", "1");
+      mutable.put("b", "2");
+      TransformationContext base = mutable.freeze();
+      mutable.put("a", "changed");
+
+      TransformationContext overlay = base.overlay();
+      assertThat(overlay.get("a"), is((Object)"1"));
+      assertThat(overlay.size(), is(2));
+
+      assertThat(overlay.put("b", "3"), is((Object)"2"));
+      assertThat(overlay.put("c", null), nullValue());
+      assertThat(overlay.remove("a"), is((Object)"1"));
+
+      assertThat(overlay.containsKey("a"), is(false));
+      assertThat(overlay.get("b"), is((Object)"3"));
+      assertThat(overlay.containsKey("c"), is(true));
+      assertThat(overlay.size(), is(2));
+
+      // the base is not affected
+      assertThat(base.get("a"), is((Object)"1"));
+      assertThat(base.get("b"), is((Object)"2"));
+      assertThat(base.containsKey("c"), is(false));
+      assertThat(base.size(), is(2));
+   }
+
+   @Test(expectedExceptions = UnsupportedOperationException.class)
+   public void frozenContextCannotBeModified()
+   {
+      TransformationContext base = new TransformationContext().freeze();
+      assertThat(base.isFrozen(), is(true));
+      assertThat(base.freeze() == base, is(true));
+
+      base.put("a", "1");
+   }
+
+   @Test
+   public void transformationWithinFrozenBase()
+   {
+      TransformationContext ctx = new TransformationContext();
+      ctx.put("pre", "<");
+      ctx.put("pos", "]");
+      TransformationContext base = ctx.freeze();
+
+      String result = Transformation.into(String.class).within(base).withContext("pos", ">").performOn("layered");
+      String compiled = Transformation.into(String.class).within(base).<String>compile().performOn("compiled");
+
+      assertThat(result, is("<layered>"));
+      assertThat(compiled, is("<compiled]"));
+      assertThat(base.get("pos"), is((Object)"]"));
+   }
+
+   @Test
+   public void requiredContextParam()
+   {
+      String result = Transformation.into(String.class).using("requiredPrefix").withContext("pre", "<")
+            .performOn("required");
+
+      assertThat(result, is("<required"));
+   }
+
+   @Test(expectedExceptions = TransformationException.class)
+   public void missingRequiredContextParam()
+   {
+      Transformation.into(String.class).using("requiredPrefix").performOn("required");
+   }
+
+   private static Supplier<String> counting( final String value, final AtomicInteger calls )
+   {
+      return new Supplier<String>()
+      {
+         @Override
+         public String get()
+         {
+            calls.incrementAndGet();
+            return value;
+         }
+      };
+   }
+
+   @Test
+   public void lazyContextNotComputedUnlessRead()
+   {
+      AtomicInteger calls = new AtomicInteger();
+
+      String result = Transformation.into(String.class).withContext("pre", "<").withContext("pos", ">")
+            .withLazyContext("unused", counting("value", calls)).performOn("lazy");
+
+      assertThat(result, is("<lazy>"));
+      assertThat(calls.get(), is(0));
+   }
+
+   @Test
+   public void lazyContextComputedOncePerPerformance()
+   {
+      AtomicInteger calls = new AtomicInteger();
+      Transformation<String> transformation = Transformation.into(String.class).withContext("pos", ">")
+            .withLazyContext("pre", counting("<", calls));
+
+      // once per performance, so that values don't go stale
+      assertThat(transformation.performOn("first"), is("<first>"));
+      assertThat(transformation.performOn("second"), is("<second>"));
+      assertThat(calls.get(), is(2));
+
+      CompiledTransformation<String, String> compiled = transformation.compile(String.class);
+      assertThat(compiled.performOn("third"), is("<third>"));
+      assertThat(compiled.performOn("fourth"), is("<fourth>"));
+      assertThat(calls.get(), is(4));
+
+      // every hop of a chain reads the same value
+      Transformer prepend = new Transformer()
+      {
+         @Override
+         public Object transform(Object src, TransformationContext ctx)
+         {
+            return ctx.get("pre") + (String)src;
+         }
+      };
+      TransformerChain chain = new TransformerChain();
+      chain.addTransformer(prepend);
+      chain.addTransformer(prepend);
+      chain.addTransformer(prepend);
+
+      AtomicInteger chainCalls = new AtomicInteger();
+      TransformationContext ctx = new TransformationContext();
+      ctx.putLazy("pre", counting("-", chainCalls));
+
+      assertThat(chain.transform("chain", ctx), is((Object)"---chain"));
+      assertThat(chainCalls.get(), is(1));
+      assertThat(ctx.freeze().overlay().get("pre"), is((Object)"-"));
+      assertThat(chainCalls.get(), is(1));
+   }
+
+   @Test
+   public void lazyContextComputedOnceByConcurrentReaders() throws Exception
+   {
+      final AtomicInteger calls = new AtomicInteger();
+      final CountDownLatch start = new CountDownLatch(1);
+      final TransformationContext ctx = new TransformationContext();
+      ctx.putLazy("slow", new Supplier<Object>()
+      {
+         @Override
+         public Object get()
+         {
+            calls.incrementAndGet();
+            try
+            {
+               Thread.sleep(50);
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+            }
+            return "computed";
+         }
+      });
+      final TransformationContext base = ctx.freeze();
+
+      final List<Object> results = new ArrayList<Object>();
+      List<Thread> readers = new ArrayList<Thread>();
+      for( int i=0; i<8; i++ )
+      {
+         Thread reader = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+               }
+               catch (InterruptedException e)
+               {
+                  return;
+               }
+               Object value = base.overlay().get("slow");
+               synchronized (results)
+               {
+                  results.add(value);
+               }
+            }
+         };
+         reader.start();
+         readers.add(reader);
+      }
+      start.countDown();
+      for( Thread reader : readers )
+      {
+         reader.join();
+      }
+
+      assertThat(results.size(), is(8));
+      for( Object result : results )
+      {
+         assertThat(result, is((Object)"computed"));
+      }
+      assertThat(calls.get(), is(1));
+   }
+
+   @Test(expectedExceptions = TransformationException.class)
+   public void lazyContextSupplyingNullForRequiredParam()
+   {
+      Transformation.into(String.class).using("requiredPrefix").withLazyContext("pre", counting(null, new AtomicInteger()))
+            .performOn("required");
+   }
+}
@@ -0,0 +1,183 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.annotation.Transformer;
+import org.isisoft.morphoo.core.TransformationContext;
+import org.isisoft.morphoo.core.TransformerGraph;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * @author Carlos Munoz
+ */
+public class TransformerGraphTests
+{
+   public static class RouteTransformers
+   {
+      @Transformer
+      public static Double toDouble( Integer i )
+      {
+         return i.doubleValue();
+      }
+
+      @Transformer
+      public static BigDecimal toBigDecimal( Double d )
+      {
+         return BigDecimal.valueOf(d);
+      }
+
+      @Transformer
+      public static String bigDecimalToString( BigDecimal bd )
+      {
+         return "long route";
+      }
+
+      @Transformer
+      public static Long toLong( Integer i )
+      {
+         return i.longValue();
+      }
+
+      @Transformer
+      public static String longToString( Long l )
+      {
+         return "short route";
+      }
+
+      @Transformer
+      public static Integer toInteger( Character c )
+      {
+         return (int)c.charValue();
+      }
+   }
+
+   public static class TiedRouteTransformers
+   {
+      @Transformer
+      public static Long toLong( Short s )
+      {
+         return s.longValue();
+      }
+
+      @Transformer
+      public static String longToString( Long l )
+      {
+         return "through Long";
+      }
+
+      @Transformer
+      public static Float toFloat( Short s )
+      {
+         return s.floatValue();
+      }
+
+      @Transformer
+      public static String floatToString( Float f )
+      {
+         return "through Float";
+      }
+
+      @Transformer(cost = 2)
+      public static Long byteToLong( Byte b )
+      {
+         return b.longValue();
+      }
+
+      @Transformer(cost = 2)
+      public static Float byteToFloat( Byte b )
+      {
+         return b.floatValue();
+      }
+   }
+
+   private TransformerGraph createGraph()
+   {
+      TransformerGraph graph = new TransformerGraph();
+      for( Method m : RouteTransformers.class.getDeclaredMethods() )
+      {
+         graph.addTransformer(m);
+      }
+      return graph;
+   }
+
+   @Test
+   public void shortestRouteIsDerived()
+   {
+      TransformerGraph graph = this.createGraph();
+
+      Object result = graph.getTransformer(Integer.class, String.class, null, true)
+            .transform(1, new TransformationContext());
+      assertThat(result, is((Object)"short route"));
+
+      result = graph.getTransformer(Character.class, String.class, null, true)
+            .transform('a', new TransformationContext());
+      assertThat(result, is((Object)"short route"));
+   }
+
+   @Test
+   public void noRoute()
+   {
+      TransformerGraph graph = this.createGraph();
+
+      assertThat(graph.getTransformer(String.class, Integer.class, null, true), nullValue());
+      assertThat(graph.getTransformer(Integer.class, String.class, null, false), nullValue());
+      assertThat(graph.getTransformer(Integer.class, Object.class, null, true), nullValue());
+   }
+
+   @Test
+   public void copiesAreIndependent()
+   {
+      TransformerGraph graph = new TransformerGraph();
+      TransformerGraph copy = graph.copy();
+      for( Method m : RouteTransformers.class.getDeclaredMethods() )
+      {
+         copy.addTransformer(m);
+      }
+
+      assertThat(graph.getTransformer(Integer.class, Long.class), nullValue());
+      assertThat(copy.getTransformer(Integer.class, Long.class).transform(1, new TransformationContext()),
+            is((Object)1L));
+   }
+
+   @Test
+   public void tiedRoutesDoNotDependOnInsertionOrder()
+   {
+      List<Method> methods = new ArrayList<Method>(Arrays.asList(TiedRouteTransformers.class.getDeclaredMethods()));
+      Collections.sort(methods, new Comparator<Method>()
+      {
+         @Override
+         public int compare(Method a, Method b)
+         {
+            return a.getName().compareTo(b.getName());
+         }
+      });
+
+      for( int attempt=0; attempt<2; attempt++ )
+      {
+         TransformerGraph graph = new TransformerGraph();
+         for( Method m : methods )
+         {
+            graph.addTransformer(m);
+         }
+
+         // equally short routes
+         assertThat(graph.getTransformer(Short.class, String.class, null, true).transform((short)1,
+               new TransformationContext()), is((Object)"through Float"));
+         // equally cheap routes
+         assertThat(graph.getTransformer(Byte.class, String.class, null, true).transform((byte)1,
+               new TransformationContext()), is((Object)"through Float"));
+
+         Collections.reverse(methods);
+      }
+   }
+}
@@ -0,0 +1,148 @@
+package org.isisoft.morphoo.test.unit;
+
+import org.isisoft.morphoo.processor.TransformerIndexProcessor;
+import org.testng.annotations.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Carlos Munoz
+ */
+public class TransformerIndexProcessorTests
+{
+   private static class Source extends SimpleJavaFileObject
+   {
+      private final String code;
+
+      Source(String className, String code)
+      {
+         super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+         this.code = code;
+      }
+
+      @Override
+      public CharSequence getCharContent(boolean ignoreEncodingErrors)
+      {
+         return code;
+      }
+   }
+
+   private boolean compile(File outputDir, DiagnosticCollector<JavaFileObject> diagnostics, Source source)
+         throws Exception
+   {
+      JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+      StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+      fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(outputDir));
+
+      JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+            Arrays.asList("-classpath", System.getProperty("java.class.path")), null, Collections.singletonList(source));
+      task.setProcessors(Collections.singletonList(new TransformerIndexProcessor()));
+
+      try
+      {
+         return task.call();
+      }
+      finally
+      {
+         fileManager.close();
+      }
+   }
+
+   @Test
+   public void indexIsWritten() throws Exception
+   {
+      File outputDir = Files.createTempDirectory("morphoo-index").toFile();
+      DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+
+      boolean compiled = this.compile(outputDir, diagnostics, new Source("sample.Valid",
+            "package sample;\n" +
+            "public class Valid {\n" +
+            "   @org.isisoft.morphoo.annotation.Transformer\n" +
+            "   public String toString(Integer i, org.isisoft.morphoo.core.TransformationContext ctx) { return \"\"; }\n" +
+            "}\n"));
+
+      assertThat(diagnostics.getDiagnostics().toString(), compiled, is(true));
+
+      List<String> index = Files.readAllLines(
+            new File(outputDir, TransformerIndexProcessor.INDEX_RESOURCE).toPath(), Charset.forName("UTF-8"));
+      assertThat(index, is(Collections.singletonList("sample.Valid")));
+   }
+
+   @Test
+   public void invalidTransformersAreRejected() throws Exception
+   {
+      File outputDir = Files.createTempDirectory("morphoo-index").toFile();
+      DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+
+      boolean compiled = this.compile(outputDir, diagnostics, new Source("sample.Invalid",
+            "package sample;\n" +
+            "@org.isisoft.morphoo.annotation.TransformerScope(poolSize = -1)\n" +
+            "public abstract class Invalid {\n" +
+            "   @org.isisoft.morphoo.annotation.Transformer\n" +
+            "   public void toNothing(Integer i) { }\n" +
+            "   @org.isisoft.morphoo.annotation.Transformer\n" +
+            "   public static String notInjectable(Integer i, String s) { return s; }\n" +
+            "}\n"));
+
+      assertThat(compiled, is(false));
+
+      StringBuilder messages = new StringBuilder();
+      for( Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics() )
+      {
+         messages.append(d.getMessage(null)).append('\n');
+      }
+      assertThat(messages.toString(), containsString("must not return void"));
+      assertThat(messages.toString(), containsString("has not been annotated with"));
+      assertThat(messages.toString(), containsString("must not be abstract"));
+      assertThat(messages.toString(), containsString("negative transformer pool size"));
+   }
+
+   @Test
+   public void listedClassWithoutTransformersIsReported() throws Exception
+   {
+      File outputDir = Files.createTempDirectory("morphoo-index").toFile();
+      DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+
+      boolean compiled = this.compile(outputDir, diagnostics, new Source("sample.Listing",
+            "package sample;\n" +
+            "@org.isisoft.morphoo.annotation.Transformers({Listing.Empty.class, Listing.Full.class})\n" +
+            "public class Listing {\n" +
+            "   public static class Empty { }\n" +
+            "   public static class Full {\n" +
+            "      @org.isisoft.morphoo.annotation.Transformer\n" +
+            "      public static Listing toListing(Integer i) { return null; }\n" +
+            "   }\n" +
+            "}\n"));
+
+      assertThat(diagnostics.getDiagnostics().toString(), compiled, is(true));
+
+      StringBuilder warnings = new StringBuilder();
+      for( Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics() )
+      {
+         if( d.getKind() == Diagnostic.Kind.WARNING )
+         {
+            warnings.append(d.getMessage(null)).append('\n');
+         }
+      }
+      assertThat(warnings.toString(), containsString("Class sample.Listing.Empty is listed"));
+      assertThat(warnings.toString().contains("sample.Listing.Full"), is(false));
+   }
+}